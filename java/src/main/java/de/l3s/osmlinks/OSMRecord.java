@@ -6,15 +6,18 @@ package de.l3s.osmlinks;
 public class OSMRecord {
     private String osmId;
     private String kgId;
+    private String wikidataId, dbpediaId;
     private String name;
     private String name_en;
     private String lat, lon;
+    private String tsvEntry;
 
     /**
      * Creates a OSMRecord from a line in the tsv file
      * @param tsvEntry Line in the tsv file.
      */
     public OSMRecord(String tsvEntry) {
+        this.tsvEntry = tsvEntry;
         String[] cols = tsvEntry.split("\t");
 
         osmId = cols[0];
@@ -23,16 +26,29 @@ public class OSMRecord {
         name = cols[3];
         name_en = cols[4];
 
-        switch (Options.getKGName()) {
-            case dbpedia_de:
-            case dbpedia_it:
-            case dbpedia_fr:
-                kgId=cols[7];
-                break;
-            case wikidata:
-                kgId=cols[5];
-                break;
-        }
+        //trailing empty columns are dropped by split
+        wikidataId = cols.length > 5 ? cols[5] : "";
+        dbpediaId = cols.length > 7 ? cols[7] : "";
+        kgId = getKgId(Options.getKGName());
+    }
+
+    /**
+     * Creates a OSMRecord that is not linked to an entity, e.g. a node sent to the linking service
+     * @param osmId ID of the node
+     * @param lat First coordinate, as in the tsv file
+     * @param lon Second coordinate, as in the tsv file
+     * @param name Name of the node
+     */
+    public OSMRecord(String osmId, String lat, String lon, String name) {
+        this.osmId = osmId;
+        this.lat = lat;
+        this.lon = lon;
+        this.name = name;
+        this.name_en = "";
+        this.kgId = "";
+        this.wikidataId = "";
+        this.dbpediaId = "";
+        this.tsvEntry = String.join("\t", osmId, lat, lon, name);
     }
 
     public String getLat() {
@@ -51,6 +67,23 @@ public class OSMRecord {
         return kgId;
     }
 
+    /**
+     * Returns the ID of the entity the node is linked to in a knowledge graph
+     * @param kg The knowledge graph
+     * @return ID of the entity, empty if the node is not linked to the knowledge graph
+     */
+    public String getKgId(Options.KGName kg) {
+        switch (kg) {
+            case dbpedia_de:
+            case dbpedia_it:
+            case dbpedia_fr:
+                return dbpediaId;
+            case wikidata:
+            default:
+                return wikidataId;
+        }
+    }
+
     public String getName() {
         return name;
     }
@@ -62,6 +95,23 @@ public class OSMRecord {
         return name_en;
     }
 
+    /**
+     * Returns the line of the tsv file this record was created from
+     * @return Line in the tsv file
+     */
+    public String getTsvEntry() {
+        return tsvEntry;
+    }
+
+    /**
+     * Returns a fingerprint over all columns of the record, i.e. coordinates, names and tags.
+     * The fingerprint is stable across runs and used to detect changed nodes.
+     * @return The fingerprint
+     */
+    public long fingerprint() {
+        return Util.fingerprint(tsvEntry.split("\t"));
+    }
+
     @Override
     public String toString() {
         return "OSMRecord{" +
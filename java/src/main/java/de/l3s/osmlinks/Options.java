@@ -2,12 +2,17 @@ package de.l3s.osmlinks;
 
 
 import com.sun.org.apache.xpath.internal.operations.Mod;
+import de.l3s.osmlinks.blocking.CandidateSampler;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeSet;
 
 /**
  * This class represents the options parsed from the configuration file.
@@ -27,6 +32,17 @@ public class Options {
 
     private static Properties config;
 
+    //keys that only influence the classifier, but not the blocking and the features
+    private static final List<String> CLASSIFIER_KEYS = Arrays.asList("classifier", "MLModelPath", "pythonCmd", "inference",
+            "compareClassifiers");
+
+    //keys that do not influence the results of a fold
+    private static final List<String> RUN_KEYS = Arrays.asList("checkpointPath", "print", "experimentName",
+            "logCandidates", "resultStorePath", "compactResultStore", "previousRun", "osmChangePath", "shards",
+            "workerHosts", "workerJvmArgs", "dbMaxConnections", "dbPassword", "inferenceBatchSize",
+            "servingModel", "servicePort", "maxBatchSize", "maxBatchDelay", "featureMemory", "tuningCache", "retune",
+            "classifierCores", "flightRecording");
+
     /**
      * Parses a configuration file
      * @param path Path to the configuration file.
@@ -47,6 +63,29 @@ public class Options {
 
     }
 
+    /**
+     * Computes a fingerprint of the configuration. Files that are referenced by the configuration
+     * contribute their size and modification time, such that changed input data is detected.
+     * @param classifier If true, only the keys of the classifier are considered,
+     *                   otherwise all keys that influence the blocking and the features
+     * @return The fingerprint as hex string
+     */
+    public static String configFingerprint(boolean classifier) {
+        List<String> values = new ArrayList<>();
+        for (String key: new TreeSet<>(config.stringPropertyNames())) {
+            if (RUN_KEYS.contains(key) || CLASSIFIER_KEYS.contains(key) != classifier) continue;
+
+            String value = config.getProperty(key).trim();
+            values.add(key);
+            values.add(value);
+            File f = new File(value);
+            if (!value.isEmpty() && f.isFile()) {
+                values.add(f.length()+" "+f.lastModified());
+            }
+        }
+        return Long.toHexString(Util.fingerprint(values.toArray(new String[0])));
+    }
+
     /*
     The following methods simply return the values specified in the configuration file.
      */
@@ -151,10 +190,38 @@ public class Options {
         return config.getProperty("classifier");
     }
 
+    /**
+     * Returns the classifiers of the experiment. All classifiers of the list of classifier are evaluated if
+     * compareClassifiers is set, otherwise only the last one, as BinaryLinkClassifier.py does.
+     */
+    public static List<String> getClassifiers() {
+        List<String> result = new ArrayList<>();
+        for (String classifier: getClassifier().split(",")) {
+            classifier = classifier.trim();
+            if (!classifier.isEmpty() && !result.contains(classifier)) result.add(classifier);
+        }
+        if (!compareClassifiers() && result.size() > 1) {
+            return Collections.singletonList(result.get(result.size()-1));
+        }
+        return result;
+    }
+
+    public static boolean compareClassifiers() {
+        if (config.containsKey("compareClassifiers")) {
+            return Boolean.parseBoolean(config.getProperty("compareClassifiers"));
+        } else {
+            return false;
+        }
+    }
+
     public static String getKGFeaturePath() {
         return config.getProperty("featurePath");
     }
 
+    public static String getKGFeaturePath(KGName kg) {
+        return getKGProperty("featurePath", kg);
+    }
+
     public static String dbHost() {
         return config.getProperty("dbHost");
     }
@@ -183,8 +250,338 @@ public class Options {
         }
     }
 
+    public static String getPreviousRunPath() {
+        return config.getProperty("previousRun");
+    }
+
+    public static String getOSMChangePath() {
+        return config.getProperty("osmChangePath");
+    }
+
+    public static String getResultStorePath() {
+        if (config.containsKey("resultStorePath")) {
+            return config.getProperty("resultStorePath");
+        } else if (getPreviousRunPath() != null) {
+            return "linkResults";
+        } else {
+            return null;
+        }
+    }
+
+    public static boolean compactResultStore() {
+        if (config.containsKey("compactResultStore")) {
+            return Boolean.parseBoolean(config.getProperty("compactResultStore"));
+        } else {
+            return true;
+        }
+    }
+
+    public static int getTopK() {
+        if (config.containsKey("topK")) {
+            return Integer.parseInt(config.getProperty("topK"));
+        } else {
+            return 5;
+        }
+    }
+
+    public static int getShards() {
+        if (config.containsKey("shards")) {
+            return Integer.parseInt(config.getProperty("shards"));
+        } else {
+            return 1;
+        }
+    }
+
+    public static List<String> getWorkerHosts() {
+        List<String> result = new ArrayList<>();
+        if (config.containsKey("workerHosts") && !config.getProperty("workerHosts").equals("")) {
+            result.addAll(Arrays.asList(config.getProperty("workerHosts").split(",")));
+        }
+        return result;
+    }
+
+    public static List<String> getWorkerJvmArgs() {
+        List<String> result = new ArrayList<>();
+        if (config.containsKey("workerJvmArgs") && !config.getProperty("workerJvmArgs").equals("")) {
+            result.addAll(Arrays.asList(config.getProperty("workerJvmArgs").split("\\s+")));
+        }
+        return result;
+    }
+
+    public static int getTileSize() {
+        if (config.containsKey("tileSize")) {
+            return Integer.parseInt(config.getProperty("tileSize"));
+        } else {
+            return 256;
+        }
+    }
+
+    public static int getSampleCandidates() {
+        if (config.containsKey("sampleCandidates")) {
+            return Integer.parseInt(config.getProperty("sampleCandidates"));
+        } else {
+            return 10;
+        }
+    }
+
+    public static CandidateSampler.Strategy getSamplingStrategy() {
+        if (config.containsKey("samplingStrategy")) {
+            return CandidateSampler.Strategy.valueOf(config.getProperty("samplingStrategy"));
+        } else {
+            return CandidateSampler.Strategy.uniform;
+        }
+    }
+
+    public static long getExperimentSeed() {
+        if (config.containsKey("experimentSeed")) {
+            return Long.parseLong(config.getProperty("experimentSeed"));
+        } else {
+            return 2;
+        }
+    }
+
+    public static boolean sparseTypes() {
+        return "sparse".equals(config.getProperty("typeEncoding"));
+    }
+
+    public static boolean sparseTfIdf() {
+        return "sparse".equals(config.getProperty("tfIdfEncoding"));
+    }
+
+    public static int getMaxTypes() {
+        if (config.containsKey("maxTypes")) {
+            return Integer.parseInt(config.getProperty("maxTypes"));
+        } else {
+            return 20;
+        }
+    }
+
+    public static String getStandInKGPath() {
+        return config.getProperty("standInKG");
+    }
+
+    public static String getStandInKGPath(KGName kg) {
+        return getKGProperty("standInKG", kg);
+    }
+
+    public static String getKGSnapshotPath() {
+        return config.getProperty("kgSnapshot");
+    }
+
+    public static String getKGSnapshotPath(KGName kg) {
+        return getKGProperty("kgSnapshot", kg);
+    }
+
+    public static String getServingModelPath() {
+        if (config.containsKey("servingModel")) {
+            return config.getProperty("servingModel");
+        } else {
+            return "servingModel";
+        }
+    }
+
+    public static int getServicePort() {
+        if (config.containsKey("servicePort")) {
+            return Integer.parseInt(config.getProperty("servicePort"));
+        } else {
+            return 8080;
+        }
+    }
+
+    public static int getMaxBatchSize() {
+        if (config.containsKey("maxBatchSize")) {
+            return Integer.parseInt(config.getProperty("maxBatchSize"));
+        } else {
+            return 64;
+        }
+    }
+
+    public static int getMaxBatchDelay() {
+        if (config.containsKey("maxBatchDelay")) {
+            return Integer.parseInt(config.getProperty("maxBatchDelay"));
+        } else {
+            return 5;
+        }
+    }
+
+    /**
+     * Returns the budget of the feature matrices in bytes, configured in MB
+     */
+    public static long getFeatureMemory() {
+        if (config.containsKey("featureMemory")) {
+            return Long.parseLong(config.getProperty("featureMemory")) << 20;
+        } else {
+            return Runtime.getRuntime().maxMemory() / 4;
+        }
+    }
+
+    public static String getTuningCachePath() {
+        return config.getProperty("tuningCache");
+    }
+
+    public static boolean retune() {
+        if (config.containsKey("retune")) {
+            return Boolean.parseBoolean(config.getProperty("retune"));
+        } else {
+            return false;
+        }
+    }
+
+    public static boolean flightRecording() {
+        if (config.containsKey("flightRecording")) {
+            return Boolean.parseBoolean(config.getProperty("flightRecording"));
+        } else {
+            return false;
+        }
+    }
+
+    public static int getClassifierCores() {
+        if (config.containsKey("classifierCores")) {
+            return Integer.parseInt(config.getProperty("classifierCores"));
+        } else {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * Returns whether the geographic distances of the candidates are computed by Geodesic instead of the database
+     */
+    public static boolean localDistance() {
+        if (config.containsKey("localDistance")) {
+            return Boolean.parseBoolean(config.getProperty("localDistance"));
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the edge length in meters of the cells in which OSM nodes share a candidate query,
+     * 0 if only nodes with identical coordinates share their candidates
+     */
+    public static double getCoordinatePrecision() {
+        if (config.containsKey("coordinatePrecision")) {
+            return Double.parseDouble(config.getProperty("coordinatePrecision"));
+        } else {
+            return 0;
+        }
+    }
+
+    public static boolean adaptiveRadius() {
+        if (config.containsKey("adaptiveRadius")) {
+            return Boolean.parseBoolean(config.getProperty("adaptiveRadius"));
+        } else {
+            return false;
+        }
+    }
+
+    public static double getAdaptiveMinRadius() {
+        if (config.containsKey("adaptiveMinRadius")) {
+            return Double.parseDouble(config.getProperty("adaptiveMinRadius"));
+        } else {
+            return 500;
+        }
+    }
+
+    public static double getAdaptiveMaxRadius() {
+        if (config.containsKey("adaptiveMaxRadius")) {
+            return Double.parseDouble(config.getProperty("adaptiveMaxRadius"));
+        } else {
+            return 5000;
+        }
+    }
+
+    /**
+     * Returns the number of entities that are expected within the adaptive radius of a node
+     */
+    public static int getAdaptiveCandidates() {
+        if (config.containsKey("adaptiveCandidates")) {
+            return Integer.parseInt(config.getProperty("adaptiveCandidates"));
+        } else {
+            return 50;
+        }
+    }
+
+    /**
+     * Returns the radius of knowledge graph types, configured as comma separated list of type:radius
+     */
+    public static Map<String, Double> getAdaptiveTypeRadius() {
+        Map<String, Double> result = new HashMap<>();
+        if (config.containsKey("adaptiveTypeRadius") && !config.getProperty("adaptiveTypeRadius").trim().isEmpty()) {
+            for (String entry: config.getProperty("adaptiveTypeRadius").split(",")) {
+                int separator = entry.lastIndexOf(':');
+                result.put(entry.substring(0, separator).trim(), Double.parseDouble(entry.substring(separator+1)));
+            }
+        }
+        return result;
+    }
+
+    public static String getDensityGridPath() {
+        return config.getProperty("densityGrid");
+    }
+
+    public static String getDensityGridPath(KGName kg) {
+        return getKGProperty("densityGrid", kg);
+    }
+
+    public static double getDensityCellSize() {
+        if (config.containsKey("densityCellSize")) {
+            return Double.parseDouble(config.getProperty("densityCellSize"));
+        } else {
+            return 0.02;
+        }
+    }
+
+    public static String getCheckpointPath() {
+        return config.getProperty("checkpointPath");
+    }
+
+    public static boolean onnxInference() {
+        return "onnx".equals(config.getProperty("inference"));
+    }
+
+    public static int getInferenceBatchSize() {
+        if (config.containsKey("inferenceBatchSize")) {
+            return Integer.parseInt(config.getProperty("inferenceBatchSize"));
+        } else {
+            return 4096;
+        }
+    }
+
     public static KGName getKGName() {
         String kgString = config.getProperty("KGName");
+        if (kgString == null && config.containsKey("KGNames")) {
+            //the first of several knowledge graphs, e.g. for the tools that handle a single knowledge graph
+            kgString = config.getProperty("KGNames").split(",")[0].trim();
+        }
+        return parseKGName(kgString);
+    }
+
+    /**
+     * Returns the knowledge graphs the OSM nodes are linked to in a single run, i.e. the comma separated
+     * list of KGNames or KGName if KGNames is not set
+     * @return The knowledge graphs, in the order of the configuration
+     */
+    public static List<KGName> getKGNames() {
+        if (!config.containsKey("KGNames")) {
+            return Collections.singletonList(getKGName());
+        }
+        List<KGName> result = new ArrayList<>();
+        for (String kgString: config.getProperty("KGNames").split(",")) {
+            KGName kg = parseKGName(kgString.trim());
+            if (!result.contains(kg)) result.add(kg);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of a property for a knowledge graph, i.e. of key.kg, e.g. featurePath.dbpedia_de,
+     * or of key if the property is not set for the knowledge graph
+     */
+    private static String getKGProperty(String key, KGName kg) {
+        return config.getProperty(key+"."+kg, config.getProperty(key));
+    }
+
+    private static KGName parseKGName(String kgString) {
         switch (kgString) {
             case "dbpedia_de":
                 return KGName.dbpedia_de;
@@ -38,6 +38,15 @@ public class ProgressBar {
         if (pb.getCurrent() == pb.getMax()) stop();
     }
 
+    /**
+     * Increment the progress bar by n, e.g. for work that was skipped. Stops the progressbar if the workload is reached.
+     * @param n Number of steps
+     */
+    public synchronized void stepBy(long n) {
+        pb.stepBy(n);
+        if (pb.getCurrent() >= pb.getMax()) stop();
+    }
+
     /**
      * Stops the progress bar, regardless of the current progress.
      */
@@ -1,5 +1,6 @@
 package de.l3s.osmlinks;
 
+import de.l3s.osmlinks.io.OsmPbfReader;
 import org.mozilla.universalchardet.UniversalDetector;
 
 import java.io.*;
@@ -27,10 +28,13 @@ public class Util {
      */
     public static Vector<OSMRecord> parseOSMRecords(String path) throws IOException {
         System.out.println("[OSM-Parser]: Parsing OSM Records...");
+        if (path.endsWith(".pbf")) {
+            Vector<OSMRecord> records = OsmPbfReader.parseOSMRecords(path);
+            System.out.println("[OSM-Parser]: Parsing OSM Records... done");
+            return records;
+        }
         Vector<OSMRecord> records = new Vector<>();
 
-        List<Options.KGName> dBPediaKgs = Arrays.asList(Options.KGName.dbpedia_de, Options.KGName.dbpedia_it,Options.KGName.dbpedia_fr);
-
         try(BufferedReader br = new BufferedReader(new FileReader(path))) {
             boolean first=true;
             for(String line; (line = br.readLine()) != null; ) {
@@ -38,16 +42,10 @@ public class Util {
                     first = false;
                     continue;
                 }
-                OSMRecord r = new OSMRecord(line);
-                //only add records that link to the current KG
-                if (r.getKgId().equals("")) {
-                    continue;
-                } else if (dBPediaKgs.contains(Options.getKGName())) {
-                    String geoEntityFoundFlag = line.split("\t")[8];
-                    if (geoEntityFoundFlag.equals("False")) continue;
+                OSMRecord r = parseOSMRecord(line);
+                if (r != null) {
+                    records.add(r);
                 }
-
-                records.add(r);
             }
         }
         System.out.println("[OSM-Parser]: Parsing OSM Records... done");
@@ -55,6 +53,61 @@ public class Util {
         return records;
     }
 
+    /**
+     * Parses a single line of the OpenStreetMap data.
+     * @param line Line in the tsv file
+     * @return The OSM node or null if the node does not link to any of the current KGs
+     */
+    public static OSMRecord parseOSMRecord(String line) {
+        OSMRecord r = new OSMRecord(line);
+        //only add records that link to the current KGs
+        for (Options.KGName kg: Options.getKGNames()) {
+            if (linksTo(r, kg)) return r;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether an OSM node is linked to an entity of a knowledge graph,
+     * for DBpedia the entity also has to be a geo entity
+     * @param r The OSM node
+     * @param kg The knowledge graph
+     * @return True if the node is linked to the knowledge graph
+     */
+    public static boolean linksTo(OSMRecord r, Options.KGName kg) {
+        List<Options.KGName> dBPediaKgs = Arrays.asList(Options.KGName.dbpedia_de, Options.KGName.dbpedia_it,Options.KGName.dbpedia_fr);
+
+        if (r.getKgId(kg).equals("")) {
+            return false;
+        } else if (dBPediaKgs.contains(kg)) {
+            String geoEntityFoundFlag = r.getTsvEntry().split("\t")[8];
+            if (geoEntityFoundFlag.equals("False")) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes a stable 64 bit fingerprint (FNV-1a) of the given values.
+     * Unlike String.hashCode() the result does not collide for swapped or concatenated values.
+     * @param values Values to be fingerprinted
+     * @return The fingerprint
+     */
+    public static long fingerprint(String... values) {
+        long hash = 0xcbf29ce484222325L;
+        for (String v: values) {
+            if (v != null) {
+                for (int i=0; i<v.length(); ++i) {
+                    hash ^= v.charAt(i);
+                    hash *= 0x100000001b3L;
+                }
+            }
+            //separator
+            hash ^= 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
     /**
      * Returns the current id of the process
      */
@@ -90,12 +143,34 @@ public class Util {
         return result;
     }
 
+    /**
+     * Converts an array of doubles to a list of strings
+     * @param in Array of doubles
+     * @return List of strings
+     */
+    public static List<String> arrayDoubleToString(double[] in) {
+        List<String> result = new ArrayList<>(in.length);
+        for (double d: in) {
+            result.add(Double.toString(d));
+        }
+        return result;
+    }
+
     /**
      * Get the name of the table in the database in wich the current KG is stored
      * @return Name of the KG table
      */
     public static String getTableName() {
-        switch (Options.getKGName()) {
+        return getTableName(Options.getKGName());
+    }
+
+    /**
+     * Get the name of the table in the database in wich a KG is stored
+     * @param kg The knowledge graph
+     * @return Name of the KG table
+     */
+    public static String getTableName(Options.KGName kg) {
+        switch (kg) {
             case dbpedia_de:
                 return "osmlinks.dbpedia_de";
             case dbpedia_it:
@@ -114,7 +189,16 @@ public class Util {
      * @return Column name of the URI
      */
     public static String getIdCol() {
-        switch (Options.getKGName()){
+        return getIdCol(Options.getKGName());
+    }
+
+    /**
+     * Returns the name of the column in which the URI of the geo entity is stored in the table of a KG
+     * @param kg The knowledge graph
+     * @return Column name of the URI
+     */
+    public static String getIdCol(Options.KGName kg) {
+        switch (kg){
             case dbpedia_de:
             case dbpedia_it:
             case dbpedia_fr:
@@ -131,7 +215,16 @@ public class Util {
      * @return Column name of the entity name
      */
     public static String getNameCol() {
-        switch (Options.getKGName()) {
+        return getNameCol(Options.getKGName());
+    }
+
+    /**
+     * Returns the name of the column in which the name of the geo entity is stored in the table of a KG
+     * @param kg The knowledge graph
+     * @return Column name of the entity name
+     */
+    public static String getNameCol(Options.KGName kg) {
+        switch (kg) {
             case dbpedia_de:
             case dbpedia_it:
             case dbpedia_fr:
@@ -0,0 +1,191 @@
+package de.l3s.osmlinks.application;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.Util;
+import de.l3s.osmlinks.models.AbstractModel;
+import de.l3s.osmlinks.store.LinkResult;
+import de.l3s.osmlinks.store.LinkResultStore;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents the changes of the OSM nodes between a previous run and the current run.
+ */
+public class ChangeSet {
+
+    public enum Change {
+        added, modified, deleted, unchanged, relinked;
+    }
+
+    private Map<String, Change> changes;
+
+    private ChangeSet() {
+        this.changes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Determines the changed nodes by comparing the fingerprints of the current nodes to the ones of the previous run.
+     * @param current Current OSM nodes
+     * @param previous Results of the previous run
+     * @param m Model that computes the fingerprints
+     * @return The change set
+     */
+    public static ChangeSet compute(Vector<OSMRecord> current, LinkResultStore previous, AbstractModel m) throws IOException {
+        ChangeSet result = new ChangeSet();
+
+        Set<String> currentIds = ConcurrentHashMap.newKeySet();
+        current.stream().parallel().forEach(r -> {
+            currentIds.add(r.getOsmId());
+            LinkResult old;
+            try {
+                old = previous.get(r.getOsmId());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (old == null) {
+                result.changes.put(r.getOsmId(), Change.added);
+            } else if (old.getRecordFingerprint() != m.recordFingerprint(r)) {
+                result.changes.put(r.getOsmId(), Change.modified);
+            } else {
+                result.changes.put(r.getOsmId(), Change.unchanged);
+            }
+        });
+
+        previous.forEach(old -> {
+            if (!currentIds.contains(old.getOsmId())) {
+                result.changes.put(old.getOsmId(), Change.deleted);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the result of a node in the first of the stores of the previous run that holds it
+     * @param previous Results of the previous run, e.g. one store per model
+     * @param osmId ID of the OSM node
+     * @return The result, null if the node is new
+     * @throws IOException
+     */
+    public static LinkResult previousResult(List<LinkResultStore> previous, String osmId) throws IOException {
+        for (LinkResultStore store: previous) {
+            LinkResult result = store.get(osmId);
+            if (result != null) return result;
+        }
+        return null;
+    }
+
+    /**
+     * Reconstructs the current OSM nodes from the nodes of the previous run and an osmChange-style diff.
+     * The nodes of the previous run are the union of the nodes of the given stores, as the store of a model
+     * only holds the nodes that are linked to its knowledge graph.
+     * Each line of the diff has the format action \tab line of the OSM tsv file, where action is one of
+     * create, modify or delete. For delete, only the id of the node is required.
+     * @param previous Results of the previous run, e.g. one store per model
+     * @param diffPath Path to the diff
+     * @return The current OSM nodes
+     * @throws IOException
+     */
+    public static Vector<OSMRecord> applyDiff(List<LinkResultStore> previous, String diffPath) throws IOException {
+        System.out.println("[ChangeSet]: Applying diff "+diffPath+"...");
+        Map<String, String> lines = new HashMap<>();
+        for (LinkResultStore store: previous) {
+            store.forEach(old -> lines.putIfAbsent(old.getOsmId(), old.getTsvEntry()));
+        }
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(diffPath), StandardCharsets.UTF_8))) {
+            for (String line; (line = br.readLine()) != null; ) {
+                if (line.trim().isEmpty()) continue;
+                String[] cols = line.split("\t", 2);
+                if (cols.length < 2 || cols[1].isEmpty()) {
+                    System.out.println("[ChangeSet]: Malformed line: "+line);
+                    continue;
+                }
+                String id = cols[1].split("\t")[0];
+                switch (cols[0]) {
+                    case "create":
+                    case "modify":
+                        lines.put(id, cols[1]);
+                        break;
+                    case "delete":
+                        lines.remove(id);
+                        break;
+                    default:
+                        System.out.println("[ChangeSet]: Unknown action: "+cols[0]);
+                }
+            }
+        }
+
+        Vector<OSMRecord> result = new Vector<>();
+        List<String> ids = new ArrayList<>(lines.keySet());
+        Collections.sort(ids);
+        for (String id: ids) {
+            OSMRecord r = Util.parseOSMRecord(lines.get(id));
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        System.out.println("[ChangeSet]: Applying diff "+diffPath+"... done");
+        return result;
+    }
+
+    /**
+     * Marks an unchanged node as changed because its neighbourhood in the knowledge graph changed
+     * @param osmId ID of the OSM node
+     */
+    public void relinked(String osmId) {
+        changes.put(osmId, Change.relinked);
+    }
+
+    /**
+     * Returns the change of a node
+     * @param osmId ID of the OSM node
+     * @return The change
+     */
+    public Change get(String osmId) {
+        return changes.get(osmId);
+    }
+
+    /**
+     * Returns true if the node has to be linked again
+     * @param osmId ID of the OSM node
+     */
+    public boolean isDirty(String osmId) {
+        Change c = changes.get(osmId);
+        return c != Change.unchanged && c != Change.deleted;
+    }
+
+    /**
+     * Returns the ids of all nodes with the given change
+     * @param change The change
+     * @return List of ids
+     */
+    public List<String> getIds(Change change) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Change> e: changes.entrySet()) {
+            if (e.getValue() == change) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a summary of the changes
+     */
+    @Override
+    public String toString() {
+        List<String> result = new ArrayList<>();
+        for (Change c: Change.values()) {
+            result.add(c+"="+getIds(c).size());
+        }
+        return String.join(", ", result);
+    }
+}
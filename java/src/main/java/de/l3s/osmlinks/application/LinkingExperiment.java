@@ -2,7 +2,15 @@ package de.l3s.osmlinks.application;
 
 import de.l3s.osmlinks.*;
 import de.l3s.osmlinks.blocking.Candidate;
+import de.l3s.osmlinks.feature.FeatureArena;
+import de.l3s.osmlinks.io.KGFeatureParser;
+import de.l3s.osmlinks.jfr.FindLinkEvent;
+import de.l3s.osmlinks.jfr.FlightRecording;
+import de.l3s.osmlinks.jfr.ScoreEvent;
 import de.l3s.osmlinks.models.*;
+import de.l3s.osmlinks.store.LinkResult;
+import de.l3s.osmlinks.store.LinkResultStore;
+import de.l3s.osmlinks.store.RunCheckpoint;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -10,6 +18,7 @@ import org.postgresql.util.PSQLException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.sql.Connection;
@@ -19,7 +28,9 @@ import java.sql.Statement;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -35,7 +46,11 @@ public class LinkingExperiment {
     private Map<AbstractModel, Score> scores;
     private Map<AbstractModel,Integer> experimentIds;
     private int noFolds=Options.getNoFolds();
-    private Map<String, String> kgToType;
+    private Map<Options.KGName, Map<String, String>> kgToType;
+    private Map<AbstractModel, LinkResultStore> resultStores;
+    private RunCheckpoint checkpoint;
+    //several classifiers are trained on the same node candidate pairs, see compareClassifiers
+    private boolean compareClassifiers;
 
 
     /**
@@ -50,6 +65,7 @@ public class LinkingExperiment {
         this.models=new ArrayList<>();
         this.experimentIds=new ConcurrentHashMap<>();
         this.kgToType=new ConcurrentHashMap<>();
+        this.resultStores=new ConcurrentHashMap<>();
     }
 
     /**
@@ -58,39 +74,56 @@ public class LinkingExperiment {
      * @throws SQLException
      */
     private void parseData() throws IOException, SQLException {
-       osmData = Util.parseOSMRecords(Options.getOSMPath());
+       //in diff mode, the nodes are reconstructed from the previous run
+       if (Options.getOSMChangePath() == null) {
+           osmData = Util.parseOSMRecords(Options.getOSMPath());
+       }
 
+       //the models of all knowledge graphs share the OSM nodes, the folds and the OSM embeddings
        List<Options.ModelName> models = Options.getModels();
-       for (Options.ModelName n: models) {
-           AbstractModel m=null;
-           switch (n) {
-               case embedding:
-                    for (String osmEmbedding: Options.getOSMEmbeddingPaths()) {
-                            for (double geoThreshold: Options.getGeoThreshold()) {
-                                    m = new EmbeddingModel(osmEmbedding,
-                                            Options.getOsmTfIdfPath(),
-                                            Options.getKGEmbeddingPath(),
-                                            geoThreshold,
-                                            Options.getMLModelPath(),
-                                            configName,
-                                            Options.logCandidates(),
-                                            Options.features(),
-                                            Options.getKGFeaturePath());
-
-                            }
-                            scores.put(m, new Score(noFolds));
-                            this.models.add(m);
-                    }
-                    break;
-            }
-       }
+       for (Options.KGName kg: Options.getKGNames()) {
+           for (Options.ModelName n: models) {
+               AbstractModel m=null;
+               switch (n) {
+                   case embedding:
+                        for (String osmEmbedding: Options.getOSMEmbeddingPaths()) {
+                                for (double geoThreshold: Options.getGeoThreshold()) {
+                                        m = new EmbeddingModel(kg,
+                                                osmEmbedding,
+                                                Options.getOsmTfIdfPath(),
+                                                Options.getKGEmbeddingPath(),
+                                                geoThreshold,
+                                                Options.getMLModelPath(),
+                                                configName,
+                                                Options.logCandidates(),
+                                                Options.features(),
+                                                Options.getKGFeaturePath(kg));
+
+                                }
+                                scores.put(m, new Score(noFolds));
+                                this.models.add(m);
+
+                                //the other classifiers are trained on the node candidate pairs of the model
+                                List<String> classifiers = Options.getClassifiers();
+                                if (classifiers.size() > 1 && Options.getPreviousRunPath() != null) {
+                                    System.out.println("[LinkingExperiment]: Incremental runs do not compare classifiers, linking with "+((EmbeddingModel) m).getClassifier());
+                                } else {
+                                    for (String classifier: classifiers.subList(0, classifiers.size()-1)) {
+                                        AbstractModel sibling = new EmbeddingModel((EmbeddingModel) m, classifier);
+                                        scores.put(sibling, new Score(noFolds));
+                                        this.models.add(sibling);
+                                        compareClassifiers = true;
+                                    }
+                                }
+                        }
+                        break;
+               }
+           }
 
-       try(Stream<String> inputStream = Files.lines(new File(Options.getKGFeaturePath()).toPath(), StandardCharsets.UTF_8)) {
-                inputStream.parallel().forEach( line -> {
-                    String[] parts = line.split("\t");
-                    kgToType.put(parts[0], parts[1]);
-                });
-            }
+           Map<String, String> types = new ConcurrentHashMap<>();
+           KGFeatureParser.parse(Options.getKGFeaturePath(kg), types, null);
+           kgToType.put(kg, types);
+       }
         }
 
     /**
@@ -99,13 +132,42 @@ public class LinkingExperiment {
      * @throws SQLException
      */
     private void run() throws IOException, SQLException {
+        //the diff is applied to the nodes of the previous run
+        if (Options.getOSMChangePath() != null && Options.getPreviousRunPath() == null) {
+            System.out.println("[LinkingExperiment]: osmChangePath requires previousRun");
+            System.exit(2);
+        }
+
+        startFlightRecording("");
         parseData();
+        openResultStores();
 
-        createFolds(noFolds);
-        runExperiments();
+        if (Options.getPreviousRunPath() != null) {
+            runIncremental();
+        } else {
+            openCheckpoint();
+            createFolds(noFolds);
+            runExperiments();
+        }
         destroyModels();
+        System.out.println("[LinkingExperiment]: Feature matrices: "+FeatureArena.global().summary());
 
         reportResults(Options.print());
+        saveResults();
+        FlightRecording.stop();
+    }
+
+    /**
+     * Starts the flight recording of the run, if flightRecording is set. The recording is written to
+     * flightRecordings/, next to typeReports/.
+     * @param suffix Distinguishes the recordings of the processes of a sharded run
+     */
+    private void startFlightRecording(String suffix) {
+        if (!Options.flightRecording()) return;
+
+        String osmName = new File(Options.getOSMPath()).getName();
+        String configName = new File(this.configName).getName();
+        FlightRecording.start(new File("flightRecordings/"+osmName+"_"+configName+"_"+Util.getPID()+suffix+".jfr"));
     }
 
     /**
@@ -118,6 +180,20 @@ public class LinkingExperiment {
         }
     }
 
+    /**
+     * Opens the checkpoint of the current configuration, if a checkpoint path is configured.
+     * Completed folds of a previous run with the same configuration are reused.
+     */
+    private void openCheckpoint() {
+        if (Options.getCheckpointPath() == null) return;
+
+        checkpoint = new RunCheckpoint(Options.getCheckpointPath(), Options.configFingerprint(false), Options.configFingerprint(true));
+        System.out.println("[LinkingExperiment]: Checkpointing to "+checkpoint.getDirectory());
+        for (int j=0; j<models.size(); ++j) {
+            models.get(j).setCheckpoint(checkpoint.forModel(j));
+        }
+    }
+
     /**
      * Creates the folds from the groundtruh for cross-fold validation
      * @param n Number of folds
@@ -149,54 +225,69 @@ public class LinkingExperiment {
      * Runs the experiments
      * @throws SQLException
      */
-    private void runExperiments() throws  SQLException {
-
-        AtomicInteger foldNo = new AtomicInteger(0);
+    private void runExperiments() throws  SQLException, IOException {
         determineExperimentIds();
 
-        int workload=noFolds*osmData.size();
+        if (Options.getShards() > 1) {
+            runSharded(Options.getShards());
+        } else {
+            runShard(0, 1);
+        }
+    }
+
+    /**
+     * Runs the part of the experiments that belongs to the given shard. The experiments are split into
+     * units of (model, fold), unit i belongs to shard i mod shards.
+     * @param shard Number of the shard
+     * @param shards Number of shards
+     */
+    private void runShard(int shard, int shards) {
+        int units=0;
+        for (int i=0; i<noFolds; ++i) {
+            for (int j=0; j<models.size(); ++j) {
+                if (isInShard(i, j, shard, shards)) ++units;
+            }
+        }
 
-        ProgressBar blockingProgress = new ProgressBar("Training", workload);
-        blockingProgress.start();
+        int workload=units*osmData.size();
 
+        //a model may classify the folds of the models that share its node candidate pairs
+        for (AbstractModel m: models) {
+            m.setExperimentId(experimentIds.get(m));
+        }
 
-        folds.stream().parallel().forEach(test -> {
-            int i = foldNo.getAndIncrement();
-            Vector<OSMRecord> train = new Vector<>(osmData);
-            train.removeAll(test);
+        ProgressBar blockingProgress = new ProgressBar("Training", Math.max(workload, 1));
+        blockingProgress.start();
 
-            for (AbstractModel m : models) {
-                    m.setExperimentId(experimentIds.get(m));
-                try {
-                    m.train(train, test, i, blockingProgress);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    System.exit(3);
+
+        //the classifier processes share the cores among the folds that run concurrently
+        int noShardFolds = 0;
+        for (int i=0; i<noFolds; ++i) {
+            for (int j=0; j<models.size(); ++j) {
+                if (isInShard(i, j, shard, shards)) {
+                    ++noShardFolds;
+                    break;
                 }
+            }
+        }
+        AtomicInteger remainingFolds = new AtomicInteger(noShardFolds);
+        expectConcurrentFolds(noShardFolds);
 
-                Score sc = scores.get(m);
-                final int currentIndex = i;
-                test.stream().parallel().forEach(r ->  {
-                    Candidate c = null;
-                    try {
-                        c = m.findLink(r, currentIndex);
-                    } catch (IOException | SQLException | ParseException e) {
-                        e.printStackTrace();
-                        System.exit(1);
-                    }
+        IntStream.range(0, noFolds).parallel().forEach(i -> {
+            Vector<OSMRecord> test = folds.get(i);
+            Vector<OSMRecord> train = null;
 
-                    if (!kgToType.containsKey(r.getKgId())) {
-                        System.out.println("[LinkingExperiment]: No type for: "+r.getKgId());
-                    }
+            for (int j=0; j<models.size(); ++j) {
+                if (!isInShard(i, j, shard, shards)) continue;
 
-                    if (c.equals(Candidate.negativeHit())) {
-                        sc.noCandidate(currentIndex, kgToType.get(r.getKgId()));
-                    } else if (c.getId().equals(r.getKgId())) {
-                        sc.correct(currentIndex, kgToType.get(r.getKgId()));
-                    } else {
-                        sc.incorrect(currentIndex, kgToType.get(r.getKgId()));
-                    }
-                });
+                if (train == null) {
+                    train = new Vector<>(osmData);
+                    train.removeAll(test);
+                }
+                linkFold(models.get(j), train, test, i, blockingProgress);
+            }
+            if (train != null) {
+                expectConcurrentFolds(remainingFolds.decrementAndGet());
             }
         });
 
@@ -204,6 +295,547 @@ public class LinkingExperiment {
         blockingProgress.stop();
     }
 
+    /**
+     * Sets the number of folds whose classifiers share the cores, i.e. the remaining folds limited by the
+     * parallelism of the folds
+     * @param remainingFolds Number of folds that are not completed
+     */
+    private static void expectConcurrentFolds(int remainingFolds) {
+        CoreBudget.global().setConcurrentFolds(Math.min(remainingFolds, ForkJoinPool.getCommonPoolParallelism()+1));
+    }
+
+    /**
+     * Returns whether a unit belongs to a shard. Models that share their node candidate pairs belong to the shard
+     * of the model that computes them.
+     */
+    private boolean isInShard(int fold, int model, int shard, int shards) {
+        model = models.indexOf(models.get(model).getFeatureSource());
+        return (fold*models.size()+model) % shards == shard;
+    }
+
+    /**
+     * Runs the experiments in several processes. The current process runs the first shard and coordinates
+     * the workers, each worker is a separate JVM that runs one of the remaining shards. The workers
+     * report their scores via files that are merged by the coordinator.
+     * @param shards Number of shards
+     * @throws IOException
+     */
+    private void runSharded(int shards) throws IOException {
+        File shardDir = new File("shards/"+Util.getPID());
+        shardDir.mkdirs();
+
+        List<String> ids = new ArrayList<>();
+        for (AbstractModel m: models) {
+            ids.add(""+experimentIds.get(m));
+        }
+
+        List<String> hosts = Options.getWorkerHosts();
+        List<Process> workers = new ArrayList<>();
+        for (int shard=1; shard<shards; ++shard) {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(System.getProperty("java.home")+File.separator+"bin"+File.separator+"java");
+            cmd.addAll(Options.getWorkerJvmArgs());
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(LinkingExperiment.class.getName());
+            cmd.add("--worker");
+            cmd.add(new File(configName).getAbsolutePath());
+            cmd.add(""+shard);
+            cmd.add(""+shards);
+            cmd.add(shardDir.getAbsolutePath());
+            cmd.add(String.join(",", ids));
+
+            if (!hosts.isEmpty()) {
+                //workers on other machines need the same paths, e.g. a shared file system.
+                //ssh passes the command to the remote shell, so each argument is quoted
+                List<String> remote = new ArrayList<>();
+                for (String arg: cmd) {
+                    remote.add(shellQuote(arg));
+                }
+                cmd = Arrays.asList("ssh", hosts.get((shard-1) % hosts.size()),
+                        "cd "+shellQuote(new File("").getAbsolutePath())+" && "+String.join(" ", remote));
+            }
+
+            System.out.println("[LinkingExperiment]: Starting worker "+shard+": "+String.join(" ", cmd));
+            workers.add(new ProcessBuilder(cmd).inheritIO().start());
+        }
+
+        runShard(0, shards);
+
+        for (int shard=1; shard<shards; ++shard) {
+            Process p = workers.get(shard-1);
+            int exitval;
+            try {
+                exitval = p.waitFor();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                p.destroy();
+                exitval = -1;
+            }
+
+            if (exitval != 0) {
+                System.out.println("[LinkingExperiment]: Worker "+shard+" failed with exit code "+exitval);
+                System.exit(7);
+            }
+
+            for (AbstractModel m: models) {
+                File partial = new File(shardDir, scorePartialName(m, shard));
+                scores.get(m).merge(partial.getPath());
+
+                LinkResultStore store = resultStores.get(m);
+                if (store != null) {
+                    String shardStorePath = resultStorePath(Options.getResultStorePath(), m)+"/shard"+shard;
+                    LinkResultStore shardStore = new LinkResultStore(shardStorePath);
+                    shardStore.forEach(r -> {
+                        try {
+                            store.put(r);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    shardStore.close();
+                    FileUtils.deleteDirectory(new File(shardStorePath));
+                }
+            }
+        }
+
+        FileUtils.deleteDirectory(shardDir);
+    }
+
+    /**
+     * Runs a single shard of the experiments as worker process and writes the scores to the shard directory.
+     * @param shard Number of the shard
+     * @param shards Number of shards
+     * @param shardDir Directory in which the scores are written
+     * @param ids Experiment ids of the models, determined by the coordinator
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void runWorker(int shard, int shards, String shardDir, String[] ids) throws IOException, SQLException {
+        startFlightRecording("_shard"+shard);
+        parseData();
+        openCheckpoint();
+        createFolds(noFolds);
+
+        for (int j=0; j<models.size(); ++j) {
+            AbstractModel m = models.get(j);
+            experimentIds.put(m, Integer.parseInt(ids[j]));
+
+            if (Options.getResultStorePath() != null) {
+                LinkResultStore store = LinkResultStore.create(resultStorePath(Options.getResultStorePath(), m)+"/shard"+shard);
+                resultStores.put(m, store);
+                m.setResultStore(store);
+                m.setClassifierDirectories(classifierDirectory(Options.getResultStorePath(), m), null);
+            }
+        }
+
+        runShard(shard, shards);
+        destroyModels();
+
+        for (AbstractModel m: models) {
+            scores.get(m).write(new File(shardDir, scorePartialName(m, shard)).getPath());
+            if (resultStores.containsKey(m)) {
+                resultStores.get(m).close();
+            }
+        }
+        FlightRecording.stop();
+    }
+
+    /**
+     * Quotes an argument for a POSIX shell, i.e. encloses it in single quotes
+     * @param arg The argument
+     * @return The quoted argument
+     */
+    private static String shellQuote(String arg) {
+        return "'"+arg.replace("'", "'\\''")+"'";
+    }
+
+    private String scorePartialName(AbstractModel m, int shard) {
+        return "model"+models.indexOf(m)+"_shard"+shard+".score";
+    }
+
+    /**
+     * Trains a model on a fold and links the test nodes of the fold.
+     * If a checkpoint is open, the score of the fold is persisted and a completed fold is skipped,
+     * unless its links are needed for a result store.
+     * @param m The model
+     * @param train Training nodes
+     * @param test Test nodes
+     * @param foldNo Number of the fold
+     * @param progress Progressbar that reflects the current progress
+     */
+    private void linkFold(AbstractModel m, Vector<OSMRecord> train, Vector<OSMRecord> test, int foldNo, ProgressBar progress) {
+        File partial = checkpoint == null ? null : checkpoint.forModel(models.indexOf(m)).classifierFile(foldNo, "score");
+        try {
+            if (partial != null && partial.exists() && !resultStores.containsKey(m)) {
+                System.out.println("[LinkingExperiment]: Using score of fold "+foldNo+" from "+partial);
+                scores.get(m).merge(partial.getPath());
+                progress.stepBy(train.size()+test.size());
+                //the predictions may have been computed together with another model
+                m.releaseFold(foldNo);
+                return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(3);
+        }
+
+        m.setExperimentId(experimentIds.get(m));
+        train = linkedTo(m, train);
+        test = linkedTo(m, test);
+
+        //the number of folds that are trained concurrently is limited by the memory of their feature matrices
+        FeatureArena arena = FeatureArena.global();
+        try {
+            arena.enterFold();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(3);
+        }
+        try {
+            m.train(train, test, foldNo, progress);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(3);
+        } finally {
+            arena.leaveFold();
+        }
+
+        Score sc = partial == null ? scores.get(m) : new Score(noFolds);
+
+        ScoreEvent scoreEvent = new ScoreEvent();
+        scoreEvent.begin();
+        test.stream().parallel().forEach(r ->  {
+            FindLinkEvent event = new FindLinkEvent();
+            event.begin();
+            Candidate c = null;
+            try {
+                c = m.findLink(r, foldNo);
+            } catch (IOException | SQLException | ParseException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.model = modelName(m);
+                event.fold = foldNo;
+                event.osmId = r.getOsmId();
+                event.linked = !c.getId().equals(Candidate.negativeHit().getId());
+                event.commit();
+            }
+
+            score(m, sc, r, c.getId(), foldNo);
+        });
+        m.releaseFold(foldNo);
+
+        scoreEvent.end();
+        if (scoreEvent.shouldCommit()) {
+            scoreEvent.model = modelName(m);
+            scoreEvent.fold = foldNo;
+            scoreEvent.nodes = test.size();
+            scoreEvent.correct = sc.getCorrect(foldNo);
+            scoreEvent.incorrect = sc.getIncorrect(foldNo);
+            scoreEvent.noCandidate = sc.getNoCandidate(foldNo);
+            scoreEvent.commit();
+        }
+
+        if (partial != null) {
+            try {
+                sc.write(RunCheckpoint.temporary(partial).getPath());
+                RunCheckpoint.complete(partial);
+                scores.get(m).merge(partial.getPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(3);
+            }
+        }
+    }
+
+    /**
+     * Returns the nodes that are linked to the knowledge graph of a model. If several knowledge graphs are
+     * linked in the same run, the nodes of a fold may only be linked to some of them.
+     * @param m The model
+     * @param records The nodes
+     * @return The nodes linked to the knowledge graph
+     */
+    private Vector<OSMRecord> linkedTo(AbstractModel m, Vector<OSMRecord> records) {
+        if (kgToType.size() <= 1) return records;
+
+        Vector<OSMRecord> result = new Vector<>();
+        for (OSMRecord r: records) {
+            if (Util.linksTo(r, m.getKGName())) result.add(r);
+        }
+        return result;
+    }
+
+    /**
+     * Updates the score with the link created for a node
+     * @param m The model that created the link
+     * @param sc The score
+     * @param r The OSM node
+     * @param kgId ID of the linked entity
+     * @param foldNo Number of the fold
+     */
+    private void score(AbstractModel m, Score sc, OSMRecord r, String kgId, int foldNo) {
+        Map<String, String> types = kgToType.get(m.getKGName());
+        String correctId = r.getKgId(m.getKGName());
+        if (!types.containsKey(correctId)) {
+            System.out.println("[LinkingExperiment]: No type for: "+correctId);
+        }
+
+        if (kgId.equals(Candidate.negativeHit().getId())) {
+            sc.noCandidate(foldNo, types.get(correctId));
+        } else if (kgId.equals(correctId)) {
+            sc.correct(foldNo, types.get(correctId));
+        } else {
+            sc.incorrect(foldNo, types.get(correctId));
+        }
+    }
+
+    /**
+     * Runs the experiment incrementally, i.e. only the nodes that changed since the previous run are linked again.
+     * The links of all other nodes are taken from the previous run. If the result store of the current run is
+     * the one of the previous run, only the changed links are appended to it.
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void runIncremental() throws IOException, SQLException {
+        Map<AbstractModel, LinkResultStore> previousStores = new HashMap<>();
+        for (AbstractModel m: models) {
+            if (inPlace()) {
+                previousStores.put(m, resultStores.get(m));
+            } else {
+                previousStores.put(m, new LinkResultStore(resultStorePath(Options.getPreviousRunPath(), m)));
+            }
+        }
+        //in a run with several knowledge graphs, a store only holds the nodes that are linked to the graph of its model
+        List<LinkResultStore> references = new ArrayList<>();
+        for (AbstractModel m: models) {
+            references.add(previousStores.get(m));
+        }
+
+        if (Options.getOSMChangePath() != null) {
+            osmData = ChangeSet.applyDiff(references, Options.getOSMChangePath());
+        }
+
+        //nodes keep their fold, new nodes are assigned to a fold by their id
+        for (int i=0; i<noFolds; ++i) {
+            folds.add(new Vector<>());
+        }
+        for (OSMRecord r: osmData) {
+            LinkResult old = ChangeSet.previousResult(references, r.getOsmId());
+            int fold;
+            if (old != null && old.getFold() < noFolds) {
+                fold = old.getFold();
+            } else {
+                fold = (int) Math.floorMod(Util.fingerprint(r.getOsmId()), (long) noFolds);
+            }
+            folds.get(fold).add(r);
+        }
+
+        determineExperimentIds();
+
+        for (AbstractModel m: models) {
+            LinkResultStore previous = previousStores.get(m);
+            LinkResultStore store = resultStores.get(m);
+            Vector<OSMRecord> linked = linkedTo(m, osmData);
+            ChangeSet changes = ChangeSet.compute(linked, previous, m);
+
+            System.out.println("[LinkingExperiment]: Checking neighbourhoods of unchanged nodes...");
+            List<OSMRecord> clean = new ArrayList<>();
+            for (OSMRecord r: linked) {
+                if (!changes.isDirty(r.getOsmId())) clean.add(r);
+            }
+            Map<String, Long> fingerprints = m.neighbourhoodFingerprints(clean);
+            Map<String, LinkResult> unchanged = new HashMap<>();
+            for (OSMRecord r: clean) {
+                LinkResult old = previous.get(r.getOsmId());
+                if (fingerprints.get(r.getOsmId()) != old.getNeighbourhoodFingerprint()) {
+                    changes.relinked(r.getOsmId());
+                } else {
+                    unchanged.put(r.getOsmId(), old);
+                }
+            }
+            System.out.println("[LinkingExperiment]: Changes: "+changes);
+
+            //links before the nodes are linked again, used to compute the delta
+            Map<String, LinkResult> before = new HashMap<>();
+            for (ChangeSet.Change change: ChangeSet.Change.values()) {
+                if (change == ChangeSet.Change.unchanged) continue;
+                for (String id: changes.getIds(change)) {
+                    LinkResult old = previous.get(id);
+                    if (old != null) before.put(id, old);
+                }
+            }
+
+            for (String id: changes.getIds(ChangeSet.Change.deleted)) {
+                store.delete(id);
+            }
+
+            int workload = 0;
+            List<Vector<OSMRecord>> dirtyFolds = new ArrayList<>();
+            for (Vector<OSMRecord> test: folds) {
+                Vector<OSMRecord> linkedTest = linkedTo(m, test);
+                Vector<OSMRecord> dirty = new Vector<>();
+                for (OSMRecord r: linkedTest) {
+                    if (changes.isDirty(r.getOsmId())) dirty.add(r);
+                }
+                dirtyFolds.add(dirty);
+                if (!dirty.isEmpty()) {
+                    workload += linked.size() - linkedTest.size() + dirty.size();
+                }
+            }
+
+            ProgressBar progress = new ProgressBar("Training", Math.max(workload, 1));
+            progress.start();
+
+            Score sc = scores.get(m);
+            int noDirtyFolds = 0;
+            for (Vector<OSMRecord> dirty: dirtyFolds) {
+                if (!dirty.isEmpty()) ++noDirtyFolds;
+            }
+            AtomicInteger remainingFolds = new AtomicInteger(noDirtyFolds);
+            expectConcurrentFolds(noDirtyFolds);
+            IntStream.range(0, noFolds).parallel().forEach(i -> {
+                Vector<OSMRecord> test = folds.get(i);
+                Vector<OSMRecord> dirty = dirtyFolds.get(i);
+
+                //reuse the links of unchanged nodes
+                for (OSMRecord r: linkedTo(m, test)) {
+                    LinkResult old = unchanged.get(r.getOsmId());
+                    if (old == null) continue;
+                    if (!inPlace()) {
+                        try {
+                            store.put(old);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            System.exit(1);
+                        }
+                    }
+                    score(m, sc, r, old.getKgId(), i);
+                }
+
+                if (dirty.isEmpty()) return;
+
+                Vector<OSMRecord> train = new Vector<>(osmData);
+                train.removeAll(test);
+                linkFold(m, train, dirty, i, progress);
+                expectConcurrentFolds(remainingFolds.decrementAndGet());
+            });
+            progress.stop();
+
+            writeLinkDelta(m, before, changes);
+        }
+
+        if (!inPlace()) {
+            for (LinkResultStore previous: previousStores.values()) {
+                previous.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the links that changed with respect to the previous run. Each line has the format
+     * osmid \tab change \tab previous link \tab current link \tab confidence of the current link
+     * @param m The model
+     * @param before Links of the changed nodes in the previous run
+     * @param changes Changes of the OSM nodes
+     * @throws IOException
+     */
+    private void writeLinkDelta(AbstractModel m, Map<String, LinkResult> before, ChangeSet changes) throws IOException {
+        LinkResultStore current = resultStores.get(m);
+        List<String> lines = new ArrayList<>();
+
+        for (ChangeSet.Change change: ChangeSet.Change.values()) {
+            if (change == ChangeSet.Change.unchanged) continue;
+
+            List<String> ids = changes.getIds(change);
+            Collections.sort(ids);
+            for (String id: ids) {
+                LinkResult old = before.get(id);
+                LinkResult now = current.get(id);
+                String beforeId = old == null ? "" : old.getKgId();
+                String afterId = now == null ? "" : now.getKgId();
+
+                if (beforeId.equals(afterId)) continue;
+
+                List<String> cols = new ArrayList<>();
+                cols.add(id);
+                cols.add(change.toString());
+                cols.add(beforeId);
+                cols.add(afterId);
+                cols.add(now == null ? "" : ""+now.getConfidence());
+                lines.add(String.join("\t", cols));
+            }
+        }
+
+        String fName = resultStorePath(Options.getResultStorePath(), m)+".delta";
+        FileUtils.writeLines(new File(fName), "utf-8", lines);
+        System.out.println("[LinkingExperiment]: Wrote "+lines.size()+" changed links to "+fName);
+    }
+
+    /**
+     * Opens the result stores of all models, if a result store is configured.
+     * The stores are emptied unless the previous run is continued in place.
+     * @throws IOException
+     */
+    private void openResultStores() throws IOException {
+        if (Options.getResultStorePath() == null) return;
+
+        for (AbstractModel m: models) {
+            String path = resultStorePath(Options.getResultStorePath(), m);
+            LinkResultStore store = inPlace() ? new LinkResultStore(path) : LinkResultStore.create(path);
+            resultStores.put(m, store);
+            m.setResultStore(store);
+            m.setClassifierDirectories(classifierDirectory(Options.getResultStorePath(), m),
+                    Options.getPreviousRunPath() == null ? null : classifierDirectory(Options.getPreviousRunPath(), m));
+        }
+    }
+
+    /**
+     * Returns true if the results of the current run are appended to the store of the previous run.
+     */
+    private boolean inPlace() {
+        return Options.getPreviousRunPath() != null
+                && new File(Options.getPreviousRunPath()).getAbsoluteFile().equals(new File(Options.getResultStorePath()).getAbsoluteFile());
+    }
+
+    /**
+     * Writes the remaining links of all models to the result stores.
+     * @throws IOException
+     */
+    private void saveResults() throws IOException {
+        for (AbstractModel m: models) {
+            LinkResultStore store = resultStores.get(m);
+            if (store == null) continue;
+
+            if (Options.compactResultStore()) {
+                store.compact();
+            }
+            store.close();
+        }
+    }
+
+    /**
+     * Returns the path of the result store of a model
+     * @param directory Directory of the result stores
+     * @param m The model
+     * @return Path of the result store
+     */
+    private String resultStorePath(String directory, AbstractModel m) {
+        return directory+"/"+m.getClass().getSimpleName()+"_"+models.indexOf(m);
+    }
+
+    /**
+     * Returns the directory in which the classifiers of the folds of a model are kept, next to its result store
+     * @param directory Directory of the result stores
+     * @param m The model
+     * @return The directory
+     */
+    private File classifierDirectory(String directory, AbstractModel m) {
+        return new File(resultStorePath(directory, m), "classifiers");
+    }
+
     /**
      * Reports the results either to stdout or to the database.
      * @param print If true, results will be printed but not stored in the database.
@@ -234,6 +866,9 @@ public class LinkingExperiment {
 
         for (AbstractModel m: models) {
             String fName= "typeReports/"+osmName+"_"+m.getClass().getSimpleName();
+            for (String qualifier: qualifiers(m)) {
+                fName += "_"+qualifier;
+            }
             Score sc = scores.get(m);
             List<String> lines = sc.typeReport();
             FileUtils.writeStringToFile(new File(fName), String.join("\n", lines), "utf-8");
@@ -248,7 +883,7 @@ public class LinkingExperiment {
         for (AbstractModel m: models) {
             Score sc = scores.get(m);
 
-            System.out.println(m.getClass().getSimpleName());
+            System.out.println(modelName(m));
             System.out.println("\t\tFold\tCorrect\tIncorrect\tNo Candidate\tPrecision\tRecall\tF1");
             for (int i=0; i<noFolds; ++i) {
                 System.out.printf("\t\t%d\t%d\t%d\t%d\t%f\t%f\t%f\n", i, sc.getCorrect(i), sc.getIncorrect(i), sc.getNoCandidate(i), sc.getPrecision(i), sc.getRecall(i), sc.getF1(i));
@@ -259,6 +894,32 @@ public class LinkingExperiment {
         }
     }
 
+    /**
+     * Returns the name of a model in the reports, i.e. its class and its qualifiers
+     */
+    private String modelName(AbstractModel m) {
+        List<String> name = new ArrayList<>(Collections.singletonList(m.getClass().getSimpleName()));
+        name.addAll(qualifiers(m));
+        return String.join(" ", name);
+    }
+
+    /**
+     * Returns what distinguishes the results of a model from the results of the other models with the same class,
+     * i.e. the knowledge graph if several knowledge graphs are linked and the classifier if classifiers are compared
+     * @param m The model
+     * @return The qualifiers
+     */
+    private List<String> qualifiers(AbstractModel m) {
+        List<String> result = new ArrayList<>();
+        if (kgToType.size() > 1) {
+            result.add(m.getKGName().toString());
+        }
+        if (compareClassifiers && m instanceof EmbeddingModel) {
+            result.add(((EmbeddingModel) m).getClassifier());
+        }
+        return result;
+    }
+
     /**
      * Determines the id of the current experiment from the database.
      * @throws SQLException
@@ -311,7 +972,7 @@ public class LinkingExperiment {
             //(model, osm, kg, params, correct, incorrect, not_found, precision , recall, f1)
 
             avgQuery += "osm='"+Options.getOSMPath()+"', ";
-            avgQuery += "kg='"+Options.getKGName()+"', ";
+            avgQuery += "kg='"+m.getKGName()+"', ";
             avgQuery += "model='"+m.getClass().getSimpleName()+"', ";
 
 
@@ -320,7 +981,7 @@ public class LinkingExperiment {
 
                 avgQuery +="osm_embedding='"+emb.getOsmEmbeddingPath()+"', ";
                 avgQuery +="features='"+String.join(",", emb.getFeatures())+"', ";
-                avgQuery +="classifier='"+Options.getClassifier()+"', ";
+                avgQuery +="classifier='"+emb.getClassifier()+"', ";
                 avgQuery +="threshold="+Options.getGeoThreshold().get(0)+", ";
             }
 
@@ -375,12 +1036,21 @@ public class LinkingExperiment {
 
     /**
      * Main method. Expects configuration file as argument. If multiple files are given,
-     * multiple independent experiments are run.
+     * multiple independent experiments are run. Worker processes of sharded experiments
+     * are started with --worker as first argument.
      * @param args One ore more configuration files.
      * @throws IOException
      * @throws SQLException
      */
     public static void main(String[] args) throws IOException, SQLException {
+        if (args.length > 0 && args[0].equals("--worker")) {
+            //--worker config shard shards shardDir experimentIds
+            Options.parseConfig(args[1]);
+            LinkingExperiment app = new LinkingExperiment(args[1]);
+            app.runWorker(Integer.parseInt(args[2]), Integer.parseInt(args[3]), args[4], args[5].split(","));
+            return;
+        }
+
         for (int i=0; i<args.length; ++i) {
             System.out.println("[LinkingExperiment]: Running "+args[i]);
             Options.parseConfig(args[i]);
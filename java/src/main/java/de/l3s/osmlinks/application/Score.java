@@ -1,5 +1,7 @@
 package de.l3s.osmlinks.application;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -106,6 +108,84 @@ public class Score {
         return result;
     }
 
+    /**
+     * Writes all counts to a file, such that scores of experiments that ran in different processes can be merged.
+     * @param path Path of the file
+     * @throws IOException
+     */
+    public synchronized void write(String path) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            writeCounts(out, "correct", correct);
+            writeCounts(out, "incorrect", incorrect);
+            writeCounts(out, "noCandidate", noCandidate);
+            writeTypeCounts(out, "correct", type_correct);
+            writeTypeCounts(out, "incorrect", type_incorrect);
+            writeTypeCounts(out, "noCandidate", type_noCandidate);
+        }
+    }
+
+    /**
+     * Adds the counts of a file written by write() to this score.
+     * @param path Path of the file
+     * @throws IOException
+     */
+    public synchronized void merge(String path) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] cols = line.split("\t");
+                if (cols[0].equals("count")) {
+                    Map<Integer, Integer> m = countMap(cols[1]);
+                    int fold = Integer.parseInt(cols[2]);
+                    m.put(fold, m.getOrDefault(fold, 0)+Integer.parseInt(cols[3]));
+                } else {
+                    Map<String, Map<Integer, Integer>> m = typeCountMap(cols[1]);
+                    if (!m.containsKey(cols[2])) {
+                        m.put(cols[2], new HashMap<>());
+                    }
+                    Map<Integer, Integer> foldMap = m.get(cols[2]);
+                    int fold = Integer.parseInt(cols[3]);
+                    foldMap.put(fold, foldMap.getOrDefault(fold, 0)+Integer.parseInt(cols[4]));
+                }
+            }
+        }
+    }
+
+    private Map<Integer, Integer> countMap(String name) {
+        switch (name) {
+            case "correct":
+                return correct;
+            case "incorrect":
+                return incorrect;
+            default:
+                return noCandidate;
+        }
+    }
+
+    private Map<String, Map<Integer, Integer>> typeCountMap(String name) {
+        switch (name) {
+            case "correct":
+                return type_correct;
+            case "incorrect":
+                return type_incorrect;
+            default:
+                return type_noCandidate;
+        }
+    }
+
+    private static void writeCounts(BufferedWriter out, String name, Map<Integer, Integer> m) throws IOException {
+        for (int fold: m.keySet()) {
+            out.write("count\t"+name+"\t"+fold+"\t"+m.get(fold)+"\n");
+        }
+    }
+
+    private static void writeTypeCounts(BufferedWriter out, String name, Map<String, Map<Integer, Integer>> m) throws IOException {
+        for (String t: m.keySet()) {
+            for (int fold: m.get(t).keySet()) {
+                out.write("type\t"+name+"\t"+t+"\t"+fold+"\t"+m.get(t).get(fold)+"\n");
+            }
+        }
+    }
+
     /**
      * Helper method to log the progress
      */
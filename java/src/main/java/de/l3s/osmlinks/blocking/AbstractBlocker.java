@@ -4,7 +4,9 @@ import de.l3s.osmlinks.OSMRecord;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Prototype for candidate generation implementations
@@ -29,6 +31,50 @@ public abstract class AbstractBlocker {
      */
     public abstract List<Candidate> generateCandidates(OSMRecord r) throws IOException, SQLException;
 
+    /**
+     * Generates the candidates for a group of spatially close OSM nodes, e.g. a tile of the SpatialPartitioner.
+     * Implementations can override this method to look up the neighbourhood of the group only once.
+     *
+     * @param records The OSM nodes.
+     * @return Map from OSM nodes to their candidates, in the order of the given nodes
+     * @throws IOException
+     * @throws SQLException
+     */
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records) throws IOException, SQLException {
+        Map<OSMRecord, List<Candidate>> result = new LinkedHashMap<>();
+        for (OSMRecord r: records) {
+            result.put(r, generateCandidates(r));
+        }
+        return result;
+    }
+
+    /**
+     * Generates the candidates within a radius for a group of OSM nodes. The radius must not exceed the threshold
+     * of the blocker. Implementations can override this method to look up the smaller radius only.
+     *
+     * @param records The OSM nodes.
+     * @param radius The radius in meters.
+     * @return Map from OSM nodes to their candidates, in the order of the given nodes
+     * @throws IOException
+     * @throws SQLException
+     */
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records, double radius) throws IOException, SQLException {
+        Map<OSMRecord, List<Candidate>> result = generateCandidates(records);
+        for (List<Candidate> candidates: result.values()) {
+            candidates.removeIf(c -> c.getGeoDistance() > radius);
+        }
+        return result;
+    }
+
+    /**
+     * Returns statistics of the blocker that are reported at the end of a run.
+     *
+     * @return The statistics or null if the blocker keeps no statistics.
+     */
+    public String getStatistics() {
+        return null;
+    }
+
     /**
      * Returns the name of the current blocker.
      *
@@ -0,0 +1,242 @@
+package de.l3s.osmlinks.blocking;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.Options;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * This class adapts the blocking radius of each OSM node to the density of the knowledge graph around the node.
+ * The radius is chosen such that about adaptiveCandidates entities are expected within the radius, bounded by
+ * adaptiveMinRadius and adaptiveMaxRadius, and rounded up to a level of a geometric series with factor 1.25.
+ * The nodes of a group are blocked with one query per level. Candidates with a type of adaptiveTypeRadius are
+ * kept up to the radius of their type, e.g. for cities whose coordinates are far from the OSM node; this increases
+ * the radius of all queries to the largest radius of a type.
+ * To report the trade-off of the radius, the number of candidates and the recall of the correct entity are recorded
+ * per level and compared to the number of candidates that the density grid predicts for th_block.
+ */
+public class AdaptiveBlocker extends AbstractBlocker {
+
+    private static final double LEVEL_FACTOR = 1.25;
+
+    private AbstractBlocker blocker;
+    private DensityGrid grid;
+    private double threshold;
+    private int targetCandidates;
+    private double[] levels;
+    private Map<String, Double> typeRadius;
+    private double maxTypeRadius;
+    private Map<String, String> kgTypes;
+    private Options.KGName kg;
+
+    //statistics per level
+    private AtomicLongArray noRecords, noLabelled, noCandidates, noFound;
+    private DoubleAdder expectedFixed = new DoubleAdder();
+
+    /**
+     * Constructor
+     * @param blocker The wrapped blocker, created with queryRadius()
+     * @param grid Density of the knowledge graph
+     * @param threshold Threshold used for blocking, i.e. th_block, only used for the statistics
+     * @param kgTypes Types of the entities, may be empty if adaptiveTypeRadius is not set
+     * @param kg Knowledge graph of the correct entities of the nodes, only used for the statistics
+     */
+    public AdaptiveBlocker(AbstractBlocker blocker, DensityGrid grid, double threshold, Map<String, String> kgTypes, Options.KGName kg) {
+        this.blocker = blocker;
+        this.grid = grid;
+        this.threshold = threshold;
+        this.targetCandidates = Options.getAdaptiveCandidates();
+        this.typeRadius = Options.getAdaptiveTypeRadius();
+        this.maxTypeRadius = 0;
+        for (double radius: typeRadius.values()) {
+            maxTypeRadius = Math.max(maxTypeRadius, radius);
+        }
+        this.kgTypes = kgTypes;
+        this.kg = kg;
+
+        List<Double> levels = new ArrayList<>();
+        double maxRadius = Options.getAdaptiveMaxRadius();
+        for (double radius = Options.getAdaptiveMinRadius(); radius < maxRadius; radius *= LEVEL_FACTOR) {
+            levels.add(radius);
+        }
+        levels.add(maxRadius);
+        this.levels = new double[levels.size()];
+        for (int i=0; i<levels.size(); ++i) {
+            this.levels[i] = levels.get(i);
+        }
+
+        this.noRecords = new AtomicLongArray(this.levels.length);
+        this.noLabelled = new AtomicLongArray(this.levels.length);
+        this.noCandidates = new AtomicLongArray(this.levels.length);
+        this.noFound = new AtomicLongArray(this.levels.length);
+    }
+
+    /**
+     * Returns the threshold the wrapped blocker has to be created with, i.e. the largest radius of a query
+     * @return The radius in meters
+     */
+    public static double queryRadius() {
+        double result = Options.getAdaptiveMaxRadius();
+        for (double radius: Options.getAdaptiveTypeRadius().values()) {
+            result = Math.max(result, radius);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the level of the blocking radius of a node. As in GeoBlocker, the first coordinate is interpreted as x.
+     * @param r The OSM node
+     * @return Index of the level
+     */
+    private int level(OSMRecord r) {
+        double density = density(r);
+        if (density <= 0) return levels.length-1;
+
+        double radius = Math.sqrt(targetCandidates / (Math.PI * density));
+        int result = 0;
+        while (result < levels.length-1 && levels[result] < radius) {
+            ++result;
+        }
+        return result;
+    }
+
+    private double density(OSMRecord r) {
+        return grid.density(Double.parseDouble(r.getLat()), Double.parseDouble(r.getLon()));
+    }
+
+    /**
+     * Returns the blocking radius of a node
+     * @param r The OSM node
+     * @return The radius in meters
+     */
+    public double radius(OSMRecord r) {
+        return levels[level(r)];
+    }
+
+    @Override
+    public void destroy() {
+        blocker.destroy();
+    }
+
+    @Override
+    public List<Candidate> generateCandidates(OSMRecord r) throws IOException, SQLException {
+        return generateCandidates(Collections.singletonList(r)).get(r);
+    }
+
+    /**
+     * Determines the candidates of the nodes within their radius, with one call of the wrapped blocker per level
+     * @param records The OSM nodes.
+     * @return Map from OSM nodes to their candidates, in the order of the given nodes
+     * @throws IOException
+     * @throws SQLException
+     */
+    @Override
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records) throws IOException, SQLException {
+        Map<Integer, List<OSMRecord>> byLevel = new TreeMap<>();
+        for (OSMRecord r: records) {
+            byLevel.computeIfAbsent(level(r), k -> new ArrayList<>()).add(r);
+        }
+
+        Map<OSMRecord, List<Candidate>> candidates = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<OSMRecord>> e: byLevel.entrySet()) {
+            double radius = levels[e.getKey()];
+            Map<OSMRecord, List<Candidate>> levelCandidates = blocker.generateCandidates(e.getValue(), Math.max(radius, maxTypeRadius));
+            for (OSMRecord r: e.getValue()) {
+                candidates.put(r, filter(r, levelCandidates.get(r), e.getKey()));
+            }
+        }
+
+        Map<OSMRecord, List<Candidate>> result = new LinkedHashMap<>();
+        for (OSMRecord r: records) {
+            result.put(r, candidates.get(r));
+        }
+        return result;
+    }
+
+    /**
+     * Removes the candidates beyond the radius of the node and records the statistics
+     * @param r The OSM node
+     * @param candidates The candidates of the query, ordered by distance
+     * @param level Level of the radius of the node
+     * @return The candidates within the radius, ordered by distance
+     */
+    private List<Candidate> filter(OSMRecord r, List<Candidate> candidates, int level) {
+        double radius = levels[level];
+        String kgId = r.getKgId(kg);
+        boolean labelled = kgId != null && !kgId.isEmpty();
+        boolean found = false;
+
+        List<Candidate> result = new ArrayList<>();
+        for (Candidate c: candidates) {
+            if (c.getGeoDistance() <= radius || c.getGeoDistance() <= typeRadius(c)) {
+                result.add(c);
+                found |= labelled && kgId.equals(c.getId());
+            }
+        }
+
+        double density = density(r);
+        expectedFixed.add(density * Math.PI * threshold * threshold);
+        noRecords.incrementAndGet(level);
+        noCandidates.addAndGet(level, result.size());
+        if (labelled) noLabelled.incrementAndGet(level);
+        if (found) noFound.incrementAndGet(level);
+        return result;
+    }
+
+    /**
+     * Returns the largest radius of the types of a candidate, 0 if none of its types has a radius
+     */
+    private double typeRadius(Candidate c) {
+        if (typeRadius.isEmpty()) return 0;
+        String types = kgTypes.get(c.getId());
+        if (types == null || types.isEmpty()) return 0;
+
+        double result = 0;
+        for (String type: types.split(",")) {
+            Double radius = typeRadius.get(type);
+            if (radius != null) result = Math.max(result, radius);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the candidates per node and the recall of the correct entity in total and per level,
+     * and the candidates per node the density grid predicts for th_block
+     */
+    @Override
+    public String getStatistics() {
+        long records = 0, labelled = 0, candidates = 0, found = 0;
+        StringBuilder perLevel = new StringBuilder();
+        for (int i=0; i<levels.length; ++i) {
+            if (noRecords.get(i) == 0) continue;
+            records += noRecords.get(i);
+            labelled += noLabelled.get(i);
+            candidates += noCandidates.get(i);
+            found += noFound.get(i);
+            perLevel.append(String.format(", %.0f m: %d nodes, %.2f candidates/node, recall %.4f", levels[i],
+                    noRecords.get(i), noCandidates.get(i) / (double) noRecords.get(i),
+                    noFound.get(i) / (double) Math.max(1, noLabelled.get(i))));
+        }
+
+        String result = String.format("adaptive radius: %.2f candidates/node, recall %.4f (th_block %.0f m: about %.2f candidates/node)",
+                candidates / (double) Math.max(1, records), found / (double) Math.max(1, labelled),
+                threshold, expectedFixed.sum() / Math.max(1, records));
+        result += perLevel;
+        String wrapped = blocker.getStatistics();
+        return wrapped == null ? result : result+"; "+wrapped;
+    }
+
+    @Override
+    public String getName() {
+        return "AdaptiveBlocker "+levels[0]+"-"+levels[levels.length-1];
+    }
+}
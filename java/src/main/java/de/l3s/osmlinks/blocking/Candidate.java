@@ -11,6 +11,9 @@ public class Candidate {
     private String id;
     private String name;
     private double geoDistance;
+    private double confidence;
+    //location of the entity, NaN if the distance was computed by the database
+    private double x = Double.NaN, y = Double.NaN;
 
     /**
      * Constructor
@@ -25,6 +28,19 @@ public class Candidate {
         this.name = name;
     }
 
+    /**
+     * Returns a copy of the candidate, e.g. to assign it to several OSM nodes
+     * @return The copy
+     */
+    public Candidate copy() {
+        Candidate result = new Candidate(id, name);
+        result.geoDistance = geoDistance;
+        result.confidence = confidence;
+        result.x = x;
+        result.y = y;
+        return result;
+    }
+
     public String getId() {
         return id;
     }
@@ -58,6 +74,36 @@ public class Candidate {
         this.geoDistance = geoDistance;
     }
 
+    /**
+     * Sets the location of the entity
+     * @param x Longitude
+     * @param y Latitude
+     */
+    public void setLocation(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public boolean hasLocation() {
+        return !Double.isNaN(x);
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
     public String getName() {
         return name;
     }
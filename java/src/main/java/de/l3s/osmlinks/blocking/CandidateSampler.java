@@ -0,0 +1,105 @@
+package de.l3s.osmlinks.blocking;
+
+import de.l3s.osmlinks.Util;
+
+import java.util.*;
+
+/**
+ * This class samples the negative candidates of an OSM node that are used for training.
+ * The random numbers of a node are derived from the experiment seed, the fold and the id of the node,
+ * such that the sample does not depend on the order or the number of threads in which the nodes are processed.
+ */
+public class CandidateSampler {
+
+    public enum Strategy {
+        //uniform sample of the negative candidates
+        uniform,
+        //the negative candidates that are closest to the node
+        nearest,
+        //one negative candidate of each of the distance ranges that contain equally many candidates
+        stratified
+    }
+
+    private Strategy strategy;
+    private int sampleSize;
+    private long seed;
+
+    /**
+     * Constructor
+     * @param strategy Sampling strategy
+     * @param sampleSize Number of negative candidates per node
+     * @param seed Seed of the experiment
+     */
+    public CandidateSampler(Strategy strategy, int sampleSize, long seed) {
+        this.strategy = strategy;
+        this.sampleSize = sampleSize;
+        this.seed = seed;
+    }
+
+    /**
+     * Samples negative candidates. The candidate list is not modified.
+     * @param osmId ID of the OSM node
+     * @param kgId ID of the entity linked to the node, which is excluded from the sample
+     * @param candidates The candidates of the node
+     * @param foldNo Number of the current fold
+     * @return The sampled candidates
+     */
+    public List<Candidate> sample(String osmId, String kgId, List<Candidate> candidates, int foldNo) {
+        List<Candidate> negatives = new ArrayList<>(candidates.size());
+        for (Candidate c: candidates) {
+            if (!c.getId().equals(kgId)) negatives.add(c);
+        }
+        if (negatives.size() <= sampleSize) {
+            return negatives;
+        }
+
+        switch (strategy) {
+            case nearest:
+                return nearest(negatives);
+            case stratified:
+                return stratified(negatives, random(osmId, foldNo));
+            default:
+                return reservoir(negatives, random(osmId, foldNo));
+        }
+    }
+
+    private SplittableRandom random(String osmId, int foldNo) {
+        return new SplittableRandom(Util.fingerprint(Long.toString(seed), Integer.toString(foldNo), osmId));
+    }
+
+    /**
+     * Uniform sample of sampleSize candidates without shuffling all candidates
+     */
+    private List<Candidate> reservoir(List<Candidate> negatives, SplittableRandom random) {
+        List<Candidate> result = new ArrayList<>(negatives.subList(0, sampleSize));
+        for (int i=sampleSize; i<negatives.size(); ++i) {
+            int j = random.nextInt(i+1);
+            if (j < sampleSize) {
+                result.set(j, negatives.get(i));
+            }
+        }
+        return result;
+    }
+
+    private List<Candidate> nearest(List<Candidate> negatives) {
+        List<Candidate> sorted = new ArrayList<>(negatives);
+        sorted.sort(Comparator.comparingDouble(Candidate::getGeoDistance));
+        return new ArrayList<>(sorted.subList(0, sampleSize));
+    }
+
+    /**
+     * Divides the candidates ordered by distance into sampleSize ranges and draws one candidate of each range
+     */
+    private List<Candidate> stratified(List<Candidate> negatives, SplittableRandom random) {
+        List<Candidate> sorted = new ArrayList<>(negatives);
+        sorted.sort(Comparator.comparingDouble(Candidate::getGeoDistance));
+
+        List<Candidate> result = new ArrayList<>(sampleSize);
+        for (int s=0; s<sampleSize; ++s) {
+            int from = (int) ((long) s * sorted.size() / sampleSize);
+            int to = (int) ((long) (s+1) * sorted.size() / sampleSize);
+            result.add(sorted.get(from + random.nextInt(to-from)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,255 @@
+package de.l3s.osmlinks.blocking;
+
+import de.l3s.osmlinks.OSMRecord;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class deduplicates the candidate generation of OSM nodes with equal or nearly equal coordinates,
+ * e.g. stacked POIs of a building. The coordinates are quantized to a grid with cells of the given precision
+ * and the wrapped blocker is queried only once per cell, for the first node of the cell. The candidate lists of the
+ * cells are kept in a cache of at most CACHE_SIZE candidates, such that nodes of the same cell in later groups
+ * are not blocked again.
+ * If the precision is 0, only nodes with identical coordinates share their candidates, which then do not differ
+ * from the ones of the wrapped blocker. Otherwise, the wrapped blocker has to be created with th_block
+ * plus halo(precision) and has to provide the locations of the candidates: the distances are recomputed
+ * for each node and the candidates beyond th_block are removed.
+ */
+public class DedupBlocker extends AbstractBlocker {
+
+    private static final double METERS_PER_DEGREE = Geodesic.EARTH_RADIUS * Math.PI / 180;
+    private static final int CACHE_SIZE = 1 << 20;
+
+    private AbstractBlocker blocker;
+    private double threshold;
+    private double precision;
+    private double cellSize;
+    private LinkedHashMap<Point, Cell> cache;
+    private long cachedCandidates;
+
+    private AtomicLong noRecords = new AtomicLong();
+    private AtomicLong noQueries = new AtomicLong();
+    private AtomicLong noCacheHits = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param blocker The wrapped blocker, created with threshold+halo(precision)
+     * @param threshold Threshold used for blocking, i.e. th_block
+     * @param precision Edge length of the cells in meters, 0 to deduplicate identical coordinates only
+     */
+    public DedupBlocker(AbstractBlocker blocker, double threshold, double precision) {
+        this.blocker = blocker;
+        this.threshold = threshold;
+        this.precision = precision;
+        this.cellSize = precision / METERS_PER_DEGREE;
+        this.cache = new LinkedHashMap<>(1024, 0.75f, true);
+        this.cachedCandidates = 0;
+    }
+
+    /**
+     * Returns the distance by which the threshold of the wrapped blocker has to be increased,
+     * i.e. an upper bound of the distance of two points in a cell with a margin for the ellipsoid
+     * @param precision Edge length of the cells in meters
+     * @return The distance in meters
+     */
+    public static double halo(double precision) {
+        return 1.5 * precision;
+    }
+
+    @Override
+    public void destroy() {
+        blocker.destroy();
+    }
+
+    @Override
+    public List<Candidate> generateCandidates(OSMRecord r) throws IOException, SQLException {
+        return generateCandidates(Collections.singletonList(r)).get(r);
+    }
+
+    @Override
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records) throws IOException, SQLException {
+        return generateCandidates(records, threshold);
+    }
+
+    /**
+     * Determines the candidates of the nodes, the wrapped blocker is called once for the cells that are not cached
+     * @param records The OSM nodes.
+     * @param radius The radius in meters, at most th_block
+     * @return Map from OSM nodes to their candidates, in the order of the given nodes
+     * @throws IOException
+     * @throws SQLException
+     */
+    @Override
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records, double radius) throws IOException, SQLException {
+        radius = Math.min(radius, threshold);
+        List<Point> points = new ArrayList<>(records.size());
+        Map<Point, Cell> cells = new LinkedHashMap<>();
+        Map<Point, OSMRecord> missing = new LinkedHashMap<>();
+        int hits = 0;
+        for (OSMRecord r: records) {
+            Point p = point(r, radius);
+            points.add(p);
+            if (cells.containsKey(p) || missing.containsKey(p)) continue;
+
+            Cell cached;
+            synchronized (cache) {
+                cached = cache.get(p);
+            }
+            if (cached != null) {
+                cells.put(p, cached);
+                ++hits;
+            } else {
+                missing.put(p, r);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<OSMRecord> representatives = new ArrayList<>(missing.values());
+            Map<OSMRecord, List<Candidate>> candidates = blocker.generateCandidates(representatives, radius + halo(precision));
+            for (Map.Entry<Point, OSMRecord> e: missing.entrySet()) {
+                Cell cell = new Cell(candidates.get(e.getValue()));
+                cells.put(e.getKey(), cell);
+                cache(e.getKey(), cell);
+            }
+        }
+
+        noRecords.addAndGet(records.size());
+        noQueries.addAndGet(missing.size());
+        noCacheHits.addAndGet(hits);
+
+        Map<OSMRecord, List<Candidate>> result = new LinkedHashMap<>();
+        for (int i=0; i<records.size(); ++i) {
+            OSMRecord r = records.get(i);
+            result.put(r, candidates(cells.get(points.get(i)), r, radius));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the candidates of a cell to the cache, the least recently used cells are removed
+     * if the cache holds more than CACHE_SIZE candidates
+     */
+    private void cache(Point p, Cell cell) {
+        synchronized (cache) {
+            Cell previous = cache.put(p, cell);
+            cachedCandidates += cell.candidates.size() - (previous == null ? 0 : previous.candidates.size());
+            Iterator<Cell> eldest = cache.values().iterator();
+            while (cachedCandidates > CACHE_SIZE && eldest.hasNext()) {
+                cachedCandidates -= eldest.next().candidates.size();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the candidates of a node from the candidates of its cell
+     * @param cell The cell of the node
+     * @param r The OSM node
+     * @param radius The radius in meters
+     * @return Copies of the candidates, ordered by distance
+     */
+    private List<Candidate> candidates(Cell cell, OSMRecord r, double radius) {
+        List<Candidate> result = new ArrayList<>(cell.candidates.size());
+        if (precision <= 0) {
+            //identical coordinates, the distances do not change
+            for (Candidate c: cell.candidates) {
+                result.add(c.copy());
+            }
+            return result;
+        }
+
+        int n = cell.candidates.size();
+        double[] xs = new double[n], ys = new double[n], distances = new double[n];
+        for (int i=0; i<n; ++i) {
+            xs[i] = cell.candidates.get(i).getX();
+            ys[i] = cell.candidates.get(i).getY();
+        }
+        Geodesic.distances(Double.parseDouble(r.getLat()), Double.parseDouble(r.getLon()), xs, ys, n, distances);
+        for (int i=0; i<n; ++i) {
+            if (distances[i] <= radius) {
+                Candidate c = cell.candidates.get(i).copy();
+                c.setGeoDistance(distances[i]);
+                result.add(c);
+            }
+        }
+        result.sort((c1, c2) -> {
+            int c = Double.compare(c1.getGeoDistance(), c2.getGeoDistance());
+            return c != 0 ? c : c1.getId().compareTo(c2.getId());
+        });
+        return result;
+    }
+
+    /**
+     * Returns the key of the cell of a node and the radius. As in GeoBlocker, the first coordinate is interpreted as x.
+     */
+    private Point point(OSMRecord r, double radius) {
+        double x = Double.parseDouble(r.getLat());
+        double y = Double.parseDouble(r.getLon());
+        if (precision <= 0) {
+            return new Point(Double.doubleToLongBits(x), Double.doubleToLongBits(y), radius);
+        }
+        return new Point((long) Math.floor(x / cellSize), (long) Math.floor(y / cellSize), radius);
+    }
+
+    /**
+     * Returns the number of blocked nodes, of the queries of the wrapped blocker and the dedupe ratio
+     */
+    @Override
+    public String getStatistics() {
+        long records = noRecords.get(), queries = noQueries.get();
+        String result = String.format("%d nodes, %d queries, %d cache hits, dedupe ratio %.3f",
+                records, queries, noCacheHits.get(), records / (double) Math.max(1, queries));
+        String wrapped = blocker.getStatistics();
+        return wrapped == null ? result : result+"; "+wrapped;
+    }
+
+    @Override
+    public String getName() {
+        return blocker.getClass().getSimpleName()+" "+threshold;
+    }
+
+    /**
+     * Quantized coordinates of a node and the radius of the query
+     */
+    private static class Point {
+        private long x, y;
+        private double radius;
+
+        private Point(long x, long y, double radius) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Point)) return false;
+            Point p = (Point) o;
+            return x == p.x && y == p.y && radius == p.radius;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode((x * 31 + y) * 31 + Double.doubleToLongBits(radius));
+        }
+    }
+
+    /**
+     * Candidates of the first node of a cell
+     */
+    private static class Cell {
+        private List<Candidate> candidates;
+
+        private Cell(List<Candidate> candidates) {
+            this.candidates = candidates;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package de.l3s.osmlinks.blocking;
+
+import de.l3s.osmlinks.Options;
+import de.l3s.osmlinks.PostGreDB;
+import de.l3s.osmlinks.Util;
+import de.l3s.osmlinks.io.KGSnapshot;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class holds the number of knowledge graph entities per cell of a grid in degrees,
+ * e.g. to determine the blocking radius of an OSM node from the local density of the knowledge graph.
+ * The grid is stored as tsv file, the first line contains the cell size, all other lines have the format
+ * cell x \tab cell y \tab number of entities.
+ * Usage: DensityGrid config path [cell size in degrees]
+ */
+public class DensityGrid {
+
+    private static final double METERS_PER_DEGREE = Geodesic.EARTH_RADIUS * Math.PI / 180;
+
+    private double cellSize;
+    //sorted keys of the non-empty cells and their number of entities
+    private long[] cells;
+    private int[] counts;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        Options.parseConfig(args[0]);
+        double cellSize = args.length > 2 ? Double.parseDouble(args[2]) : Options.getDensityCellSize();
+
+        long start = System.nanoTime();
+        DensityGrid grid = build(cellSize);
+        grid.write(args[1]);
+        System.out.println(String.format("[DensityGrid]: Counted %d entities of %s in %d cells in %.1f s",
+                grid.size(), Util.getTableName(), grid.cells.length, (System.nanoTime()-start) / 1e9));
+    }
+
+    private DensityGrid(double cellSize, Map<Long, int[]> grid) {
+        this.cellSize = cellSize;
+        this.cells = new long[grid.size()];
+        int i = 0;
+        for (long cell: grid.keySet()) {
+            cells[i++] = cell;
+        }
+        Arrays.sort(cells);
+        this.counts = new int[cells.length];
+        for (i=0; i<cells.length; ++i) {
+            counts[i] = grid.get(cells[i])[0];
+        }
+    }
+
+    /**
+     * Loads the grid of the configuration if it exists, otherwise counts the entities of the knowledge graph
+     * and stores the grid
+     * @param path Path of the grid, may be null if the grid is not stored
+     * @return The grid
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static DensityGrid loadOrBuild(String path) throws IOException, SQLException {
+        return loadOrBuild(path, Options.getKGName());
+    }
+
+    /**
+     * Loads the grid of the configuration if it exists, otherwise counts the entities of a knowledge graph
+     * and stores the grid
+     * @param path Path of the grid, may be null if the grid is not stored
+     * @param kg The knowledge graph
+     * @return The grid
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static DensityGrid loadOrBuild(String path, Options.KGName kg) throws IOException, SQLException {
+        if (path != null && new File(path).exists()) {
+            return load(path);
+        }
+        DensityGrid result = build(Options.getDensityCellSize(), kg);
+        if (path != null) {
+            result.write(path);
+        }
+        System.out.println("[DensityGrid]: "+result.size()+" entities in "+result.cells.length+" cells");
+        return result;
+    }
+
+    /**
+     * Counts the entities of the knowledge graph of the configuration, i.e. of standInKG, kgSnapshot
+     * or the knowledge graph table
+     * @param cellSize Edge length of the cells in degrees
+     * @return The grid
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static DensityGrid build(double cellSize) throws IOException, SQLException {
+        return build(cellSize, Options.getKGName());
+    }
+
+    /**
+     * Counts the entities of a knowledge graph, i.e. of its standInKG, kgSnapshot or table
+     * @param cellSize Edge length of the cells in degrees
+     * @param kg The knowledge graph
+     * @return The grid
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static DensityGrid build(double cellSize, Options.KGName kg) throws IOException, SQLException {
+        Map<Long, int[]> grid = new HashMap<>();
+        if (Options.getStandInKGPath(kg) != null) {
+            for (String line: Files.readAllLines(Paths.get(Options.getStandInKGPath(kg)), StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) continue;
+                String[] cols = line.split("\t");
+                add(grid, cellSize, Double.parseDouble(cols[1]), Double.parseDouble(cols[2]));
+            }
+        } else if (Options.getKGSnapshotPath(kg) != null) {
+            KGSnapshot snapshot = KGSnapshot.open(Options.getKGSnapshotPath(kg));
+            for (int i=0; i<snapshot.size(); ++i) {
+                add(grid, cellSize, snapshot.getX(i), snapshot.getY(i));
+            }
+        } else {
+            PostGreDB db = new PostGreDB(Options.dbHost(), Options.dbName(), Options.dbUser(), Options.dbPassword(), 1);
+            try (Connection con = db.getConnection(); Statement stmt = con.createStatement()) {
+                ResultSet rs = stmt.executeQuery("select floor(ST_X(geometry::geometry) / "+cellSize+")::bigint, " +
+                        "floor(ST_Y(geometry::geometry) / "+cellSize+")::bigint, count(*) " +
+                        "from "+Util.getTableName(kg)+" group by 1, 2;");
+                while (rs.next()) {
+                    grid.put(cell(rs.getInt(1), rs.getInt(2)), new int[]{rs.getInt(3)});
+                }
+                rs.close();
+            } finally {
+                db.close();
+            }
+        }
+        return new DensityGrid(cellSize, grid);
+    }
+
+    private static void add(Map<Long, int[]> grid, double cellSize, double x, double y) {
+        ++grid.computeIfAbsent(cell((int) Math.floor(x / cellSize), (int) Math.floor(y / cellSize)), k -> new int[1])[0];
+    }
+
+    /**
+     * Loads a grid
+     * @param path Path of the grid
+     * @return The grid
+     * @throws IOException
+     */
+    public static DensityGrid load(String path) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String[] header = in.readLine().split("\t");
+            double cellSize = Double.parseDouble(header[1]);
+            Map<Long, int[]> grid = new HashMap<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] cols = line.split("\t");
+                grid.put(cell(Integer.parseInt(cols[0]), Integer.parseInt(cols[1])), new int[]{Integer.parseInt(cols[2])});
+            }
+            return new DensityGrid(cellSize, grid);
+        }
+    }
+
+    /**
+     * Stores the grid
+     * @param path Path of the grid
+     * @throws IOException
+     */
+    public void write(String path) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            out.write("cellSize\t"+cellSize+"\n");
+            for (int i=0; i<cells.length; ++i) {
+                out.write((int) (cells[i] >> 32)+"\t"+(int) cells[i]+"\t"+counts[i]+"\n");
+            }
+        }
+    }
+
+    /**
+     * Returns the density of the knowledge graph around a point, i.e. the number of entities in the cell of the point
+     * and its eight neighbours divided by their area
+     * @param x Longitude
+     * @param y Latitude
+     * @return Entities per square meter
+     */
+    public double density(double x, double y) {
+        int cx = (int) Math.floor(x / cellSize), cy = (int) Math.floor(y / cellSize);
+        long n = 0;
+        for (int i=cx-1; i<=cx+1; ++i) {
+            for (int j=cy-1; j<=cy+1; ++j) {
+                int c = Arrays.binarySearch(cells, cell(i, j));
+                if (c >= 0) n += counts[c];
+            }
+        }
+        //a degree of longitude gets shorter towards the poles
+        double edge = cellSize * METERS_PER_DEGREE;
+        double area = 9 * edge * edge * Math.max(Math.cos(Math.toRadians(y)), 1e-3);
+        return n / area;
+    }
+
+    /**
+     * Returns the number of entities in the grid
+     */
+    public long size() {
+        long result = 0;
+        for (int c: counts) {
+            result += c;
+        }
+        return result;
+    }
+
+    private static long cell(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+}
@@ -4,6 +4,7 @@ import de.l3s.osmlinks.OSMRecord;
 import de.l3s.osmlinks.Options;
 import de.l3s.osmlinks.PostGreDB;
 import de.l3s.osmlinks.Util;
+import de.l3s.osmlinks.jfr.BlockingQueryEvent;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -11,7 +12,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class represnts the candidate generation step with respect
@@ -20,15 +24,27 @@ import java.util.List;
 public class GeoBlocker extends AbstractBlocker{
 
     private PostGreDB db;
+    private Options.KGName kg;
     private double threshold;
+    private boolean localDistance;
     private List<Integer> noCandidates;
 
     /*
      * @param threshold Threshold used for blocking, i.e. th_block
      */
     public GeoBlocker(double threshold) {
+        this(Options.getKGName(), threshold);
+    }
+
+    /*
+     * @param kg Knowledge graph whose table is queried
+     * @param threshold Threshold used for blocking, i.e. th_block
+     */
+    public GeoBlocker(Options.KGName kg, double threshold) {
+        this.kg = kg;
         this.db = new PostGreDB(Options.dbHost(), Options.dbName(), Options.dbUser(), Options.dbPassword(), Options.dbMaxConnections());
         this.threshold = threshold;
+        this.localDistance = Options.localDistance();
         this.noCandidates = new ArrayList<>();
     }
 
@@ -49,15 +65,17 @@ public class GeoBlocker extends AbstractBlocker{
      */
     @Override
     public List<Candidate> generateCandidates(OSMRecord r) throws IOException,  SQLException {
+        BlockingQueryEvent event = new BlockingQueryEvent();
+        event.begin();
         Connection con = db.getConnection();
         Statement stmt = con.createStatement();
 
-        String tableName= Util.getTableName();
-        String idColumn=Util.getIdCol();
+        String tableName= Util.getTableName(kg);
+        String idColumn=Util.getIdCol(kg);
 
 
-        ResultSet rs = stmt.executeQuery("select  "+idColumn+", " +Util.getNameCol()+", "+
-                "ST_Distance(geometry, ST_PointFromText('POINT("+r.getLat()+" "+r.getLon()+")', 4326)::geography)" +
+        ResultSet rs = stmt.executeQuery("select  "+idColumn+", " +Util.getNameCol(kg)+", "+
+                distanceColumns("geometry", "ST_PointFromText('POINT("+r.getLat()+" "+r.getLon()+")', 4326)::geography") +
                 "\n " +
                 "from " +tableName+" "+
                 "where ST_DWithin(geometry, " +
@@ -69,9 +87,8 @@ public class GeoBlocker extends AbstractBlocker{
         while(rs.next()) {
             String id = rs.getString(1);
             String name = rs.getString(2);
-            Double dist = rs.getDouble(3);
             Candidate c = new Candidate(id, name);
-            c.setGeoDistance(dist);
+            readDistance(rs, 3, c);
             result.add(c);
         }
 
@@ -79,10 +96,155 @@ public class GeoBlocker extends AbstractBlocker{
         stmt.close();
         con.close();
 
+        computeDistances(r, result);
+
         logCandidates(result.size());
+        commit(event, 1, result.size(), threshold);
+        return result;
+    }
+
+    /**
+     * Determines the candidates for a group of spatially close OSM nodes with a single query.
+     * The query first selects the entities within th_block of any of the nodes, i.e. the neighbourhood of the
+     * group with a halo of th_block, and then computes the candidates of each node within this neighbourhood.
+     * The candidates are the same as the ones of generateCandidates(OSMRecord).
+     * @param records The OSM nodes
+     * @return Map from OSM nodes to their candidates, ordered by distance
+     * @throws IOException
+     * @throws SQLException
+     */
+    @Override
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records) throws IOException, SQLException {
+        return generateCandidates(records, threshold);
+    }
+
+    /**
+     * Determines the candidates of a group of OSM nodes within a radius with a single query,
+     * as generateCandidates(List) does for th_block
+     * @param records The OSM nodes
+     * @param radius The radius in meters, at most th_block
+     * @return Map from OSM nodes to their candidates, ordered by distance
+     * @throws IOException
+     * @throws SQLException
+     */
+    @Override
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records, double radius) throws IOException, SQLException {
+        radius = Math.min(radius, threshold);
+        Map<OSMRecord, List<Candidate>> result = new LinkedHashMap<>();
+        if (records.isEmpty()) return result;
+
+        BlockingQueryEvent event = new BlockingQueryEvent();
+        event.begin();
+
+        List<String> points = new ArrayList<>();
+        for (int i=0; i<records.size(); ++i) {
+            OSMRecord r = records.get(i);
+            points.add("("+i+", ST_PointFromText('POINT("+r.getLat()+" "+r.getLon()+")', 4326)::geography)");
+            result.put(r, new ArrayList<>());
+        }
+
+        String tableName= Util.getTableName(kg);
+        String idColumn=Util.getIdCol(kg);
+
+        String query = "with pts(idx, g) as (values "+String.join(",", points)+"),\n" +
+                "neighbourhood as (select "+idColumn+" as id, "+Util.getNameCol(kg)+" as name, geometry from "+tableName+" " +
+                "where ST_DWithin(geometry, (select ST_Collect(g::geometry) from pts)::geography, "+radius+"))\n" +
+                "select pts.idx, n.id, n.name, "+distanceColumns("n.geometry", "pts.g")+" " +
+                "from pts join neighbourhood n on ST_DWithin(n.geometry, pts.g, "+radius+") " +
+                (localDistance ? "order by pts.idx, n.id;" : "order by pts.idx, dist, n.id;");
+
+        Connection con = db.getConnection();
+        Statement stmt = con.createStatement();
+        ResultSet rs = stmt.executeQuery(query);
+
+        while(rs.next()) {
+            OSMRecord r = records.get(rs.getInt(1));
+            Candidate c = new Candidate(rs.getString(2), rs.getString(3));
+            readDistance(rs, 4, c);
+            result.get(r).add(c);
+        }
+
+        rs.close();
+        stmt.close();
+        con.close();
+
+        for (Map.Entry<OSMRecord, List<Candidate>> e: result.entrySet()) {
+            computeDistances(e.getKey(), e.getValue());
+            //the candidates are ordered by id, the stable sort keeps this order for equal distances
+            if (localDistance) {
+                e.getValue().sort(Comparator.comparingDouble(Candidate::getGeoDistance));
+            }
+        }
+
+        int noCandidates = 0;
+        for (List<Candidate> candidates: result.values()) {
+            logCandidates(candidates.size());
+            noCandidates += candidates.size();
+        }
+        commit(event, records.size(), noCandidates, radius);
         return result;
     }
 
+    /**
+     * Commits the flight recorder event of a query, if the event is recorded
+     * @param event The event, begun before the query
+     * @param nodes Number of OSM nodes of the query
+     * @param candidates Number of candidates of all nodes
+     * @param radius Radius of the query in meters
+     */
+    private void commit(BlockingQueryEvent event, int nodes, int candidates, double radius) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.blocker = getName();
+            event.nodes = nodes;
+            event.candidates = candidates;
+            event.threshold = radius;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the columns of the query that determine the distance of an entity to a point,
+     * i.e. the distance computed by the database or the location of the entity if the distance is computed locally
+     * @param geometry Geometry of the entity
+     * @param point Geography of the point
+     */
+    private String distanceColumns(String geometry, String point) {
+        if (localDistance) {
+            return "ST_X("+geometry+"::geometry), ST_Y("+geometry+"::geometry)";
+        } else {
+            return "ST_Distance("+geometry+", "+point+") as dist";
+        }
+    }
+
+    private void readDistance(ResultSet rs, int column, Candidate c) throws SQLException {
+        if (localDistance) {
+            c.setLocation(rs.getDouble(column), rs.getDouble(column+1));
+        } else {
+            c.setGeoDistance(rs.getDouble(column));
+        }
+    }
+
+    /**
+     * Computes the distances of the candidates of a node with Geodesic, if the distances are computed locally
+     * @param r The OSM node
+     * @param candidates The candidates, with their locations
+     */
+    private void computeDistances(OSMRecord r, List<Candidate> candidates) {
+        if (!localDistance || candidates.isEmpty()) return;
+
+        int n = candidates.size();
+        double[] xs = new double[n], ys = new double[n], distances = new double[n];
+        for (int i=0; i<n; ++i) {
+            xs[i] = candidates.get(i).getX();
+            ys[i] = candidates.get(i).getY();
+        }
+        Geodesic.distances(Double.parseDouble(r.getLat()), Double.parseDouble(r.getLon()), xs, ys, n, distances);
+        for (int i=0; i<n; ++i) {
+            candidates.get(i).setGeoDistance(distances[i]);
+        }
+    }
+
     /**
      * Method use to keep track of candidate list sizes
      * @param n
@@ -0,0 +1,173 @@
+package de.l3s.osmlinks.blocking;
+
+/**
+ * This class computes geodesic distances on the WGS84 spheroid, i.e. the distances of ST_Distance(..::geography)
+ * in PostGIS, without a round trip to the database.
+ * The distances are computed with the inverse formula of Vincenty, which agrees with the algorithm of Karney
+ * used by PostGIS to far below a millimeter for all point pairs that are not nearly antipodal.
+ * For nearly antipodal points, for which the iteration does not converge, the spherical distance is returned.
+ *
+ * As in GeoBlocker, the first coordinate of a point is x, i.e. longitude, and the second one is y, i.e. latitude.
+ * The batched methods run over primitive coordinate arrays and reject points with a spherical distance that is
+ * clearly above the threshold before the exact distance is computed.
+ */
+public class Geodesic {
+
+    //WGS84
+    private static final double A = 6378137.0;
+    private static final double F = 1 / 298.257223563;
+    private static final double B = A * (1 - F);
+
+    //mean earth radius, used by the spherical approximation
+    static final double EARTH_RADIUS = 6371008.8;
+
+    //the spherical distance deviates from the geodesic distance by less than 0.6%
+    private static final double SPHERE_MARGIN = 1.01;
+
+    private static final int MAX_ITERATIONS = 200;
+
+    /**
+     * Geodesic distance in meters
+     * @param x1 Longitude of the first point in degrees
+     * @param y1 Latitude of the first point in degrees
+     * @param x2 Longitude of the second point in degrees
+     * @param y2 Latitude of the second point in degrees
+     * @return The distance
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double u1 = reducedLatitude(y1);
+        double u2 = reducedLatitude(y2);
+        return distance(Math.sin(u1), Math.cos(u1), Math.sin(u2), Math.cos(u2), x1, y1, x2, y2);
+    }
+
+    /**
+     * Computes the geodesic distances between a point and a set of points
+     * @param x Longitude of the point
+     * @param y Latitude of the point
+     * @param xs Longitudes of the other points
+     * @param ys Latitudes of the other points
+     * @param n Number of other points
+     * @param target Receives the distances
+     */
+    public static void distances(double x, double y, double[] xs, double[] ys, int n, double[] target) {
+        double u1 = reducedLatitude(y);
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        for (int i=0; i<n; ++i) {
+            double u2 = reducedLatitude(ys[i]);
+            target[i] = distance(sinU1, cosU1, Math.sin(u2), Math.cos(u2), x, y, xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Determines the points of a set within a distance of a point
+     * @param x Longitude of the point
+     * @param y Latitude of the point
+     * @param xs Longitudes of the other points
+     * @param ys Latitudes of the other points
+     * @param n Number of other points
+     * @param threshold Maximum distance in meters
+     * @param indices Receives the indices of the points within the threshold
+     * @param target Receives the distances of the points within the threshold
+     * @return Number of points within the threshold
+     */
+    public static int within(double x, double y, double[] xs, double[] ys, int n, double threshold,
+                             int[] indices, double[] target) {
+        return within(x, y, xs, ys, 0, n, threshold, indices, target);
+    }
+
+    /**
+     * Determines the points of a range of a set within a distance of a point
+     * @param x Longitude of the point
+     * @param y Latitude of the point
+     * @param xs Longitudes of the other points
+     * @param ys Latitudes of the other points
+     * @param from First index of the range
+     * @param to Index after the range
+     * @param threshold Maximum distance in meters
+     * @param indices Receives the indices of the points within the threshold
+     * @param target Receives the distances of the points within the threshold
+     * @return Number of points within the threshold
+     */
+    public static int within(double x, double y, double[] xs, double[] ys, int from, int to, double threshold,
+                             int[] indices, double[] target) {
+        double u1 = reducedLatitude(y);
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double cosY = Math.cos(Math.toRadians(y));
+        double maxSpherical = threshold * SPHERE_MARGIN;
+
+        int result = 0;
+        for (int i=from; i<to; ++i) {
+            if (sphericalDistance(x, y, cosY, xs[i], ys[i]) > maxSpherical) continue;
+
+            double u2 = reducedLatitude(ys[i]);
+            double d = distance(sinU1, cosU1, Math.sin(u2), Math.cos(u2), x, y, xs[i], ys[i]);
+            if (d <= threshold) {
+                indices[result] = i;
+                target[result] = d;
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Haversine distance in meters on a sphere with the mean earth radius
+     */
+    public static double sphericalDistance(double x1, double y1, double x2, double y2) {
+        return sphericalDistance(x1, y1, Math.cos(Math.toRadians(y1)), x2, y2);
+    }
+
+    private static double sphericalDistance(double x1, double y1, double cosY1, double x2, double y2) {
+        double sinLat = Math.sin(Math.toRadians(y2-y1) / 2);
+        double sinLon = Math.sin(Math.toRadians(x2-x1) / 2);
+        double a = sinLat * sinLat + cosY1 * Math.cos(Math.toRadians(y2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static double reducedLatitude(double y) {
+        return Math.atan((1 - F) * Math.tan(Math.toRadians(y)));
+    }
+
+    private static double distance(double sinU1, double cosU1, double sinU2, double cosU2,
+                                   double x1, double y1, double x2, double y2) {
+        double l = Math.toRadians(x2 - x1);
+        //longitude difference in [-pi, pi]
+        l = Math.IEEEremainder(l, 2 * Math.PI);
+
+        double lambda = l;
+        double sinSigma, cosSigma, sigma, cos2Alpha, cos2SigmaM;
+        int iteration = 0;
+        while (true) {
+            double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if (sinSigma == 0) {
+                //coincident points
+                return 0;
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cos2Alpha = 1 - sinAlpha * sinAlpha;
+            //on the equator, cos2Alpha is 0
+            cos2SigmaM = cos2Alpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cos2Alpha : 0;
+            double c = F / 16 * cos2Alpha * (4 + F * (4 - 3 * cos2Alpha));
+            double previous = lambda;
+            lambda = l + (1 - c) * F * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+
+            if (Math.abs(lambda - previous) < 1e-12) break;
+            if (++iteration >= MAX_ITERATIONS) {
+                return sphericalDistance(x1, y1, x2, y2);
+            }
+        }
+
+        double uSq = cos2Alpha * (A * A - B * B) / (B * B);
+        double a = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double b = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+                - b / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return B * a * (sigma - deltaSigma);
+    }
+}
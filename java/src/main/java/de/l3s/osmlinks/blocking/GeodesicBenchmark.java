@@ -0,0 +1,103 @@
+package de.l3s.osmlinks.blocking;
+
+import java.util.Random;
+
+/**
+ * This class checks the distances of Geodesic against reference distances of PostGIS and GeographicLib
+ * and compares the throughput of the batched kernel with single distance computations and the spherical distance.
+ * Exits with 1 if a distance deviates by more than the tolerance.
+ * Usage: GeodesicBenchmark [number of points]
+ */
+public class GeodesicBenchmark {
+
+    //tolerance in meters
+    private static final double TOLERANCE = 1e-3;
+
+    //x1, y1, x2, y2, distance
+    private static final double[][] REFERENCE = {
+            //Flinders Peak - Buninyong, Vincenty (1975)
+            {144.42486788888888, -37.95103341666667, 143.92649552777777, -37.65282113888889, 54972.271},
+            //JFK - LHR, GeographicLib
+            {-73.8, 40.6, -0.5, 51.6, 5551759.400319},
+            //LAX - CDG, ST_Distance(..::geography)
+            {-118.4079, 33.9434, 2.5559, 49.0083, 9124665.2732},
+            //nearly antipodal, GeographicLib
+            {0, 0, 179.5, 0.5, 19936288.578981},
+            //across the antimeridian
+            {179.9, 0, -179.9, 0, 22263.898},
+            {9.73, 52.37, 9.73, 52.37, 0},
+    };
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int mismatches = checkReference();
+        benchmark(n);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int checkReference() {
+        int mismatches = 0;
+        for (double[] r: REFERENCE) {
+            double d = Geodesic.distance(r[0], r[1], r[2], r[3]);
+            if (Math.abs(d - r[4]) > TOLERANCE) {
+                System.out.println("[GeodesicBenchmark]: Distance of "+r[0]+" "+r[1]+" - "+r[2]+" "+r[3]+
+                        " is "+d+", expected "+r[4]);
+                ++mismatches;
+            }
+        }
+        System.out.println("[GeodesicBenchmark]: "+REFERENCE.length+" reference distances, "+mismatches+" mismatches");
+        return mismatches;
+    }
+
+    private static void benchmark(int n) {
+        //points within 0.1 degrees of a query point, i.e. the neighbourhood of a blocking query
+        Random random = new Random(42);
+        double x = 9.73, y = 52.37;
+        double[] xs = new double[n], ys = new double[n];
+        for (int i=0; i<n; ++i) {
+            xs[i] = x + (random.nextDouble() - 0.5) * 0.2;
+            ys[i] = y + (random.nextDouble() - 0.5) * 0.2;
+        }
+        double[] target = new double[n];
+        int[] indices = new int[n];
+
+        for (int round=0; round<3; ++round) {
+            long start = System.nanoTime();
+            double sum = 0;
+            for (int i=0; i<n; ++i) {
+                sum += Geodesic.sphericalDistance(x, y, xs[i], ys[i]);
+            }
+            report("spherical", n, start, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int i=0; i<n; ++i) {
+                sum += Geodesic.distance(x, y, xs[i], ys[i]);
+            }
+            report("geodesic", n, start, sum);
+
+            start = System.nanoTime();
+            Geodesic.distances(x, y, xs, ys, n, target);
+            report("batched geodesic", n, start, target[n-1]);
+
+            start = System.nanoTime();
+            int within = Geodesic.within(x, y, xs, ys, n, 1000, indices, target);
+            report("batched geodesic within 1000m", n, start, within);
+        }
+
+        //deviation of the spherical distance, which bounds the prefilter
+        double maxDeviation = 0;
+        for (int i=0; i<n; ++i) {
+            double d = Geodesic.distance(x, y, xs[i], ys[i]);
+            maxDeviation = Math.max(maxDeviation, Math.abs(Geodesic.sphericalDistance(x, y, xs[i], ys[i]) - d) / d);
+        }
+        System.out.println(String.format("[GeodesicBenchmark]: Maximum relative deviation of the spherical distance %.5f", maxDeviation));
+    }
+
+    private static void report(String name, int n, long start, double checksum) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("[GeodesicBenchmark]: %s: %.1f M distances/s (%.1f)", name, n / seconds / 1e6, checksum));
+    }
+}
@@ -0,0 +1,161 @@
+package de.l3s.osmlinks.blocking;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.jfr.BlockingQueryEvent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * This class generates candidates from a small knowledge graph that is held in memory instead of the database,
+ * e.g. a local stand-in for tests of the linking service. The entities are read from a tsv file with the format
+ * id \tab coordinate \tab coordinate \tab name, where the coordinates have the same order as in the OSM tsv file.
+ * As in GeoBlocker, the first coordinate is interpreted as x, i.e. longitude, and the second one as y.
+ * The distances are geodesic distances computed by Geodesic, i.e. they match the distances of GeoBlocker.
+ */
+public class InMemoryBlocker extends AbstractBlocker {
+
+    private static final double METERS_PER_DEGREE = Geodesic.EARTH_RADIUS * Math.PI / 180;
+
+    private double threshold;
+    private double cellSize;
+    private Map<Long, Cell> grid;
+
+    /**
+     * Constructor
+     * @param path Path of the tsv file of the entities
+     * @param threshold Threshold used for blocking, i.e. th_block
+     * @throws IOException
+     */
+    public InMemoryBlocker(String path, double threshold) throws IOException {
+        this.threshold = threshold;
+        this.cellSize = Math.max(threshold / METERS_PER_DEGREE, 1e-6);
+        this.grid = new HashMap<>();
+
+        for (String line: Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) continue;
+            String[] cols = line.split("\t");
+            double x = Double.parseDouble(cols[1]);
+            double y = Double.parseDouble(cols[2]);
+            grid.computeIfAbsent(cell(cellX(x), cellY(y)), k -> new Cell()).add(cols[0], x, y, cols.length > 3 ? cols[3] : "");
+        }
+    }
+
+    /**
+     * Given a OSM node, determines all entities which are in geograhpic proximity of th_block.
+     * @param r The OSM node.
+     * @return Candidates ordered by distance
+     */
+    @Override
+    public List<Candidate> generateCandidates(OSMRecord r) {
+        return generateCandidates(r, threshold);
+    }
+
+    /**
+     * Determines the candidates of the nodes within a radius, at most th_block
+     * @param records The OSM nodes.
+     * @param radius The radius in meters
+     * @return Map from OSM nodes to their candidates, ordered by distance
+     */
+    @Override
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records, double radius) {
+        BlockingQueryEvent event = new BlockingQueryEvent();
+        event.begin();
+        Map<OSMRecord, List<Candidate>> result = new LinkedHashMap<>();
+        int noCandidates = 0;
+        for (OSMRecord r: records) {
+            List<Candidate> candidates = generateCandidates(r, Math.min(radius, threshold));
+            result.put(r, candidates);
+            noCandidates += candidates.size();
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.blocker = getName();
+            event.nodes = records.size();
+            event.candidates = noCandidates;
+            event.threshold = Math.min(radius, threshold);
+            event.commit();
+        }
+        return result;
+    }
+
+    private List<Candidate> generateCandidates(OSMRecord r, double radius) {
+        double x = Double.parseDouble(r.getLat());
+        double y = Double.parseDouble(r.getLon());
+
+        //a degree of longitude gets shorter towards the poles
+        double cos = Math.max(Math.cos(Math.toRadians(y)), 1e-3);
+        int rangeX = (int) Math.ceil(radius / (METERS_PER_DEGREE * cos) / cellSize);
+        int rangeY = (int) Math.ceil(radius / METERS_PER_DEGREE / cellSize);
+
+        List<Candidate> result = new ArrayList<>();
+        int[] indices = new int[0];
+        double[] distances = new double[0];
+        int cx = cellX(x), cy = cellY(y);
+        for (int i=cx-rangeX; i<=cx+rangeX; ++i) {
+            for (int j=cy-rangeY; j<=cy+rangeY; ++j) {
+                Cell cell = grid.get(cell(i, j));
+                if (cell == null) continue;
+                if (indices.length < cell.size) {
+                    indices = new int[cell.size];
+                    distances = new double[cell.size];
+                }
+                int n = Geodesic.within(x, y, cell.xs, cell.ys, cell.size, radius, indices, distances);
+                for (int k=0; k<n; ++k) {
+                    Candidate c = new Candidate(cell.ids.get(indices[k]), cell.names.get(indices[k]));
+                    c.setGeoDistance(distances[k]);
+                    c.setLocation(cell.xs[indices[k]], cell.ys[indices[k]]);
+                    result.add(c);
+                }
+            }
+        }
+
+        result.sort((c1, c2) -> {
+            int c = Double.compare(c1.getGeoDistance(), c2.getGeoDistance());
+            return c != 0 ? c : c1.getId().compareTo(c2.getId());
+        });
+        return result;
+    }
+
+    private int cellX(double x) {
+        return (int) Math.floor(x / cellSize);
+    }
+
+    private int cellY(double y) {
+        return (int) Math.floor(y / cellSize);
+    }
+
+    private static long cell(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    @Override
+    public String getName() {
+        return "InMemoryBlocker";
+    }
+
+    /**
+     * Entities of a grid cell, the coordinates are kept in arrays for the distance kernel
+     */
+    private static class Cell {
+        private List<String> ids = new ArrayList<>(), names = new ArrayList<>();
+        private double[] xs = new double[4], ys = new double[4];
+        private int size = 0;
+
+        private void add(String id, double x, double y, String name) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, 2*size);
+                ys = Arrays.copyOf(ys, 2*size);
+            }
+            ids.add(id);
+            names.add(name);
+            xs[size] = x;
+            ys[size] = y;
+            ++size;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package de.l3s.osmlinks.blocking;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.io.KGSnapshot;
+import de.l3s.osmlinks.jfr.BlockingQueryEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class generates candidates from a KGSnapshot instead of the database.
+ * The entities are grouped by the cells of a grid with cells of about th_block. The locations of the entities are
+ * copied into arrays that are ordered by cell, such that the candidates of a node are determined by running
+ * Geodesic over the contiguous ranges of the neighbouring cells. The distances match the ones of GeoBlocker.
+ * As in GeoBlocker, the first coordinate of a node is interpreted as x, i.e. longitude, and the second one as y.
+ */
+public class SnapshotBlocker extends AbstractBlocker {
+
+    private static final double METERS_PER_DEGREE = Geodesic.EARTH_RADIUS * Math.PI / 180;
+
+    private KGSnapshot snapshot;
+    private double threshold;
+    private double cellSize;
+    //sorted keys of the non-empty cells and the start of each cell in the arrays below
+    private long[] cells;
+    private int[] cellStarts;
+    //entities ordered by cell
+    private int[] rows;
+    private double[] xs, ys;
+
+    /**
+     * Constructor
+     * @param snapshot Snapshot of the knowledge graph
+     * @param threshold Threshold used for blocking, i.e. th_block
+     */
+    public SnapshotBlocker(KGSnapshot snapshot, double threshold) {
+        this.snapshot = snapshot;
+        this.threshold = threshold;
+        this.cellSize = Math.max(threshold / METERS_PER_DEGREE, 1e-6);
+
+        int n = snapshot.size();
+        long[] keys = new long[n];
+        for (int i=0; i<n; ++i) {
+            keys[i] = cell(cellX(snapshot.getX(i)), cellY(snapshot.getY(i)));
+        }
+
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int noCells = 0;
+        for (int i=0; i<n; ++i) {
+            if (i == 0 || sorted[i] != sorted[i-1]) {
+                sorted[noCells++] = sorted[i];
+            }
+        }
+        this.cells = Arrays.copyOf(sorted, noCells);
+
+        this.cellStarts = new int[noCells+1];
+        int[] cellOfRow = new int[n];
+        for (int i=0; i<n; ++i) {
+            cellOfRow[i] = Arrays.binarySearch(cells, keys[i]);
+            ++cellStarts[cellOfRow[i]+1];
+        }
+        for (int c=0; c<noCells; ++c) {
+            cellStarts[c+1] += cellStarts[c];
+        }
+
+        this.rows = new int[n];
+        this.xs = new double[n];
+        this.ys = new double[n];
+        int[] next = Arrays.copyOf(cellStarts, noCells);
+        for (int i=0; i<n; ++i) {
+            int position = next[cellOfRow[i]]++;
+            rows[position] = i;
+            xs[position] = snapshot.getX(i);
+            ys[position] = snapshot.getY(i);
+        }
+        System.out.println("[SnapshotBlocker]: "+n+" entities in "+noCells+" cells");
+    }
+
+    /**
+     * Given a OSM node, determines all entities which are in geograhpic proximity of th_block.
+     * @param r The OSM node.
+     * @return Candidates ordered by distance
+     */
+    @Override
+    public List<Candidate> generateCandidates(OSMRecord r) {
+        return generateCandidates(r, threshold);
+    }
+
+    /**
+     * Determines the candidates of the nodes within a radius, at most th_block
+     * @param records The OSM nodes.
+     * @param radius The radius in meters
+     * @return Map from OSM nodes to their candidates, ordered by distance
+     */
+    @Override
+    public Map<OSMRecord, List<Candidate>> generateCandidates(List<OSMRecord> records, double radius) {
+        BlockingQueryEvent event = new BlockingQueryEvent();
+        event.begin();
+        Map<OSMRecord, List<Candidate>> result = new LinkedHashMap<>();
+        int noCandidates = 0;
+        for (OSMRecord r: records) {
+            List<Candidate> candidates = generateCandidates(r, Math.min(radius, threshold));
+            result.put(r, candidates);
+            noCandidates += candidates.size();
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.blocker = getName();
+            event.nodes = records.size();
+            event.candidates = noCandidates;
+            event.threshold = Math.min(radius, threshold);
+            event.commit();
+        }
+        return result;
+    }
+
+    private List<Candidate> generateCandidates(OSMRecord r, double radius) {
+        double x = Double.parseDouble(r.getLat());
+        double y = Double.parseDouble(r.getLon());
+
+        //a degree of longitude gets shorter towards the poles
+        double cos = Math.max(Math.cos(Math.toRadians(y)), 1e-3);
+        int rangeX = (int) Math.ceil(radius / (METERS_PER_DEGREE * cos) / cellSize);
+        int rangeY = (int) Math.ceil(radius / METERS_PER_DEGREE / cellSize);
+
+        List<Candidate> result = new ArrayList<>();
+        int[] indices = new int[0];
+        double[] distances = new double[0];
+        int cx = cellX(x), cy = cellY(y);
+        for (int i=cx-rangeX; i<=cx+rangeX; ++i) {
+            for (int j=cy-rangeY; j<=cy+rangeY; ++j) {
+                int c = Arrays.binarySearch(cells, cell(i, j));
+                if (c < 0) continue;
+                int from = cellStarts[c], to = cellStarts[c+1];
+                if (indices.length < to-from) {
+                    indices = new int[to-from];
+                    distances = new double[to-from];
+                }
+                int n = Geodesic.within(x, y, xs, ys, from, to, radius, indices, distances);
+                for (int k=0; k<n; ++k) {
+                    int row = rows[indices[k]];
+                    Candidate candidate = new Candidate(snapshot.getId(row), snapshot.getName(row));
+                    candidate.setGeoDistance(distances[k]);
+                    candidate.setLocation(xs[indices[k]], ys[indices[k]]);
+                    result.add(candidate);
+                }
+            }
+        }
+
+        result.sort((c1, c2) -> {
+            int c = Double.compare(c1.getGeoDistance(), c2.getGeoDistance());
+            return c != 0 ? c : c1.getId().compareTo(c2.getId());
+        });
+        return result;
+    }
+
+    private int cellX(double x) {
+        return (int) Math.floor(x / cellSize);
+    }
+
+    private int cellY(double y) {
+        return (int) Math.floor(y / cellSize);
+    }
+
+    private static long cell(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    @Override
+    public String getName() {
+        return "SnapshotBlocker "+threshold;
+    }
+}
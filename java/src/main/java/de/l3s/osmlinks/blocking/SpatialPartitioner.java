@@ -0,0 +1,133 @@
+package de.l3s.osmlinks.blocking;
+
+import de.l3s.osmlinks.OSMRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class partitions OSM nodes into spatially compact tiles. The nodes are sorted along a Hilbert curve
+ * over their bounding box and consecutive nodes are grouped into tiles, such that the nodes of a tile
+ * share most of their candidates.
+ */
+public class SpatialPartitioner {
+
+    //number of cells per axis of the grid the Hilbert curve is computed on
+    private static final int GRID_SIZE = 1 << 15;
+
+    private int tileSize;
+
+    /**
+     * Constructor
+     * @param tileSize Maximum number of nodes per tile
+     */
+    public SpatialPartitioner(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Partitions the nodes into tiles.
+     * @param records The OSM nodes
+     * @return List of tiles, ordered along the Hilbert curve
+     */
+    public List<Tile> partition(Collection<OSMRecord> records) {
+        List<OSMRecord> input = new ArrayList<>(records);
+        int n = input.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i=0; i<n; ++i) {
+            x[i] = Double.parseDouble(input.get(i).getLat());
+            y[i] = Double.parseDouble(input.get(i).getLon());
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        double width = Math.max(maxX-minX, 1e-9);
+        double height = Math.max(maxY-minY, 1e-9);
+
+        //sort the positions of the nodes by their position on the curve
+        long[] keys = new long[n];
+        for (int i=0; i<n; ++i) {
+            int cx = (int) Math.min(GRID_SIZE-1, (x[i]-minX) / width * GRID_SIZE);
+            int cy = (int) Math.min(GRID_SIZE-1, (y[i]-minY) / height * GRID_SIZE);
+            //the curve index needs 30 bits, the lower 32 bits keep the position for a stable order
+            keys[i] = (hilbertIndex(cx, cy) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        List<Tile> result = new ArrayList<>();
+        Tile current = null;
+        for (int k=0; k<n; ++k) {
+            int i = (int) (keys[k] & 0xffffffffL);
+            if (current == null || current.records.size() >= tileSize) {
+                current = new Tile();
+                result.add(current);
+            }
+            current.add(input.get(i), x[i], y[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the position of a cell on the Hilbert curve that fills the grid.
+     * @param x Column of the cell
+     * @param y Row of the cell
+     * @return Position on the curve
+     */
+    static long hilbertIndex(int x, int y) {
+        long d = 0;
+        for (int s = GRID_SIZE/2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+
+            //rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s-1 - x;
+                    y = s-1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Class that represents a group of spatially close OSM nodes.
+     */
+    public static class Tile {
+        private List<OSMRecord> records = new ArrayList<>();
+        private double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        private double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+        private void add(OSMRecord r, double x, double y) {
+            records.add(r);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+
+        public List<OSMRecord> getRecords() {
+            return records;
+        }
+
+        /**
+         * Returns the bounding box of the nodes in the order of the coordinates of the OSM tsv file
+         * @return minimum and maximum of the first and the second coordinate
+         */
+        public double[] getBoundingBox() {
+            return new double[]{minX, minY, maxX, maxY};
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package de.l3s.osmlinks.embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * This class holds a dense float matrix outside of the heap. The rows are stored in direct buffers of at most
+ * 1 GB, such that matrices with more than 2^31 values can be held. The accesses are not synchronized,
+ * concurrent updates of the same row may be lost, as intended by Hogwild training.
+ */
+class FloatMatrix {
+
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private int rows;
+    private int dimension;
+    private int rowsPerSegment;
+    private FloatBuffer[] segments;
+
+    /**
+     * Constructor, all values are 0
+     * @param rows Number of rows
+     * @param dimension Number of columns
+     */
+    FloatMatrix(int rows, int dimension) {
+        this.rows = rows;
+        this.dimension = dimension;
+        this.rowsPerSegment = (int) Math.max(1, SEGMENT_BYTES / (4L*dimension));
+        int noSegments = (rows + rowsPerSegment - 1) / rowsPerSegment;
+        this.segments = new FloatBuffer[noSegments];
+        for (int s=0; s<noSegments; ++s) {
+            int segmentRows = Math.min(rowsPerSegment, rows - s*rowsPerSegment);
+            segments[s] = ByteBuffer.allocateDirect(4*segmentRows*dimension).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+    }
+
+    /**
+     * Returns the buffer that holds a row
+     */
+    FloatBuffer segment(int row) {
+        return segments[row / rowsPerSegment];
+    }
+
+    /**
+     * Returns the position of the first value of a row in its buffer
+     */
+    int offset(int row) {
+        return (row % rowsPerSegment) * dimension;
+    }
+
+    /**
+     * Copies a row
+     * @param row Number of the row
+     * @param target Receives the values
+     */
+    void get(int row, float[] target) {
+        FloatBuffer s = segment(row);
+        int o = offset(row);
+        for (int d=0; d<dimension; ++d) {
+            target[d] = s.get(o+d);
+        }
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getDimension() {
+        return dimension;
+    }
+}
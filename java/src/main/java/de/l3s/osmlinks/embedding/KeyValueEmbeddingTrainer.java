@@ -0,0 +1,461 @@
+package de.l3s.osmlinks.embedding;
+
+import de.l3s.osmlinks.ProgressBar;
+import de.l3s.osmlinks.io.EmbeddingTable;
+import de.l3s.osmlinks.io.TextFileParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class trains key-value embeddings of OSM nodes, as python/EmbeddingKeyValue.py.
+ * Each record id \tab key \tab value yields the pairs (id, key) and (id, value), where the values are restricted
+ * to the most common ones and all other values are mapped to UNK. The embedding of an id is trained to predict
+ * the keys and values of the id. Instead of the full softmax, the objective is approximated by negative sampling.
+ * The epochs are computed by several threads that update the off-heap matrices without locks (Hogwild).
+ * The embeddings are written in the binary format of EmbeddingTable.
+ * Usage: KeyValueEmbeddingTrainer keyvalue.tsv epochs dimension outDir [threads] [negatives]
+ */
+public class KeyValueEmbeddingTrainer {
+
+    private static final int NUM_VALUES = 1000;
+    private static final float ALPHA = 0.025f;
+    private static final int TABLE_SIZE = 1 << 23;
+    private static final int MAX_EXP = 6;
+    private static final int EXP_TABLE_SIZE = 1000;
+    private static final int PROGRESS_STEP = 10000;
+    //the loss is estimated on every n-th record
+    private static final int LOSS_SAMPLE = 64;
+
+    private static final float[] EXP_TABLE = new float[EXP_TABLE_SIZE];
+    static {
+        for (int i=0; i<EXP_TABLE_SIZE; ++i) {
+            double e = Math.exp((i / (double) EXP_TABLE_SIZE * 2 - 1) * MAX_EXP);
+            EXP_TABLE[i] = (float) (e / (e + 1));
+        }
+    }
+
+    private int[] records;
+    private int noRecords;
+    private List<String> ids;
+    private int noKeys;
+    private int noValues;
+
+    private int dimension;
+    private int negatives;
+    private FloatMatrix input;
+    private FloatMatrix output;
+    private int[] table;
+
+    private AtomicLong processed;
+    private long total;
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: KeyValueEmbeddingTrainer keyvalue.tsv epochs dimension outDir [threads] [negatives]");
+            System.exit(1);
+        }
+
+        String path = args[0];
+        int epochs = Integer.parseInt(args[1]);
+        int dimension = Integer.parseInt(args[2]);
+        String outDir = args[3];
+        int noThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        int negatives = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+
+        try {
+            KeyValueEmbeddingTrainer trainer = new KeyValueEmbeddingTrainer(dimension, negatives);
+            trainer.encode(path);
+
+            long start = System.nanoTime();
+            trainer.train(epochs, noThreads);
+            System.out.printf("[KeyValueEmbeddingTrainer]: Training of embeddings took %.2f s\n", (System.nanoTime()-start) / 1e9);
+
+            String out = outDir+File.separator+new File(path).getName()+"_embeddings_"+dimension+"_"+epochs+".bin";
+            trainer.save(out);
+            System.out.println("[KeyValueEmbeddingTrainer]: Saved embeddings to "+out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Constructor
+     * @param dimension Dimension of the embeddings
+     * @param negatives Number of negative samples per pair
+     */
+    public KeyValueEmbeddingTrainer(int dimension, int negatives) {
+        this.dimension = dimension;
+        this.negatives = negatives;
+    }
+
+    /**
+     * Parses and encodes the records. The ids and keys are numbered in the order of their first occurrence,
+     * the values in the order of their frequency.
+     * @param path Path of the key-value tsv file
+     * @throws IOException
+     */
+    public void encode(String path) throws IOException {
+        List<Chunk> chunks = TextFileParser.parse(path, Chunk::new, KeyValueEmbeddingTrainer::parseLine);
+
+        //merge the dictionaries of the chunks in the order of the file
+        Map<String, Integer> idIndex = new HashMap<>();
+        Map<String, Integer> keyIndex = new HashMap<>();
+        Map<String, long[]> valueCounts = new LinkedHashMap<>();
+        ids = new ArrayList<>();
+        long n = 0;
+        for (Chunk c: chunks) {
+            c.idMap = new int[c.ids.size()];
+            int i = 0;
+            for (String id: c.ids.keySet()) {
+                Integer index = idIndex.get(id);
+                if (index == null) {
+                    index = ids.size();
+                    idIndex.put(id, index);
+                    ids.add(id);
+                }
+                c.idMap[i++] = index;
+            }
+            c.keyMap = new int[c.keys.size()];
+            i = 0;
+            for (String key: c.keys.keySet()) {
+                c.keyMap[i++] = keyIndex.computeIfAbsent(key, k -> keyIndex.size());
+            }
+            for (int v=0; v<c.values.size(); ++v) {
+                valueCounts.computeIfAbsent(c.valueList.get(v), k -> new long[1])[0] += c.valueCounts[v];
+            }
+            n += c.size / 3;
+        }
+        if (3*n > Integer.MAX_VALUE - 8) {
+            throw new IOException("Too many records: "+n);
+        }
+
+        //UNK and the most common values, ties in the order of the first occurrence
+        List<Map.Entry<String, long[]>> sorted = new ArrayList<>(valueCounts.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        Map<String, Integer> valueIndex = new HashMap<>();
+        valueIndex.put("UNK", 0);
+        for (int v=0; v<sorted.size() && v<NUM_VALUES-1; ++v) {
+            valueIndex.putIfAbsent(sorted.get(v).getKey(), valueIndex.size());
+        }
+
+        noRecords = (int) n;
+        noKeys = keyIndex.size();
+        noValues = valueIndex.size();
+        records = new int[3*noRecords];
+        int r = 0;
+        for (Chunk c: chunks) {
+            int[] valueMap = new int[c.valueList.size()];
+            for (int v=0; v<valueMap.length; ++v) {
+                valueMap[v] = valueIndex.getOrDefault(c.valueList.get(v), 0);
+            }
+            for (int i=0; i<c.size; i+=3) {
+                records[r++] = c.idMap[c.records[i]];
+                records[r++] = c.keyMap[c.records[i+1]];
+                //values are placed after the keys in the output layer
+                records[r++] = noKeys + valueMap[c.records[i+2]];
+            }
+        }
+
+        System.out.println("[KeyValueEmbeddingTrainer]: Number of records: "+noRecords+"\tNumber of ids: "+ids.size()
+                +"\tNumber of keys: "+noKeys+"\tNumber of values: "+noValues);
+    }
+
+    private static void parseLine(ByteBuffer buffer, int start, int end, Chunk chunk) {
+        int idEnd = TextFileParser.indexOf(buffer, start, end, (byte) '\t');
+        if (idEnd == end) return;
+        int keyEnd = TextFileParser.indexOf(buffer, idEnd+1, end, (byte) '\t');
+
+        String id = TextFileParser.string(buffer, start, idEnd).trim();
+        String key = TextFileParser.string(buffer, idEnd+1, keyEnd);
+        //further columns belong to the value
+        String value = keyEnd < end ? TextFileParser.string(buffer, keyEnd+1, end).replace('\t', ' ').trim() : "";
+        chunk.add(id, key, value);
+    }
+
+    /**
+     * Trains the embeddings, the learning rate decreases linearly over all epochs
+     * @param epochs Number of epochs
+     * @param noThreads Number of threads
+     * @throws InterruptedException
+     */
+    public void train(int epochs, int noThreads) throws InterruptedException {
+        int noOutputs = noKeys + noValues;
+        input = new FloatMatrix(ids.size(), dimension);
+        output = new FloatMatrix(noOutputs, dimension);
+        Random random = new Random(1);
+        for (int row=0; row<ids.size(); ++row) {
+            FloatBuffer s = input.segment(row);
+            int o = input.offset(row);
+            for (int d=0; d<dimension; ++d) {
+                s.put(o+d, (random.nextFloat() - 0.5f) / dimension);
+            }
+        }
+        buildTable(noOutputs);
+
+        processed = new AtomicLong();
+        total = (long) epochs * noRecords;
+
+        List<Worker> workers = new ArrayList<>();
+        int noBlocks = 0;
+        for (int t=0; t<noThreads; ++t) {
+            Worker w = new Worker((int) ((long) noRecords * t / noThreads), (int) ((long) noRecords * (t+1) / noThreads), t);
+            workers.add(w);
+            noBlocks += (w.to - w.from + PROGRESS_STEP - 1) / PROGRESS_STEP;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(noThreads);
+        try {
+            for (int epoch=0; epoch<epochs; ++epoch) {
+                long start = System.nanoTime();
+                ProgressBar pb = new ProgressBar("Epoch "+(epoch+1)+"/"+epochs, noBlocks);
+                pb.start();
+
+                List<Future<?>> futures = new ArrayList<>();
+                for (Worker w: workers) {
+                    futures.add(executor.submit(() -> w.epoch(pb)));
+                }
+                for (Future<?> f: futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+                pb.stop();
+
+                double loss = 0;
+                long pairs = 0;
+                for (Worker w: workers) {
+                    loss += w.loss;
+                    pairs += w.lossPairs;
+                }
+                double seconds = (System.nanoTime()-start) / 1e9;
+                System.out.printf("[KeyValueEmbeddingTrainer]: Epoch %d/%d, loss %.4f, %.0f records/s\n", epoch+1, epochs,
+                        loss / Math.max(1, pairs), noRecords / seconds);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Builds the table for the negative samples, i.e. the outputs are drawn proportional to their frequency^0.75
+     */
+    private void buildTable(int noOutputs) {
+        double[] weights = new double[noOutputs];
+        for (int r=0; r<noRecords; ++r) {
+            ++weights[records[3*r+1]];
+            ++weights[records[3*r+2]];
+        }
+        double sum = 0;
+        for (int o=0; o<noOutputs; ++o) {
+            weights[o] = Math.pow(weights[o], 0.75);
+            sum += weights[o];
+        }
+
+        table = new int[TABLE_SIZE];
+        int o = 0;
+        double cumulative = weights[0] / sum;
+        for (int i=0; i<TABLE_SIZE; ++i) {
+            table[i] = o;
+            if (i / (double) TABLE_SIZE > cumulative && o < noOutputs-1) {
+                ++o;
+                cumulative += weights[o] / sum;
+            }
+        }
+    }
+
+    /**
+     * Trains a range of the records. The records are visited in a pseudo-random order, i.e. with a stride
+     * that is coprime to the length of the range, such that the records of one id are not processed in a row.
+     */
+    private class Worker {
+
+        private int from, to;
+        private long next;
+        private float[] error = new float[dimension];
+        private double loss;
+        private long lossPairs;
+
+        Worker(int from, int to, long seed) {
+            this.from = from;
+            this.to = to;
+            this.next = seed * 0x9E3779B97F4A7C15L + 11;
+        }
+
+        private long random() {
+            next = next * 25214903917L + 11;
+            return next >>> 16;
+        }
+
+        void epoch(ProgressBar pb) {
+            loss = 0;
+            lossPairs = 0;
+            int length = to - from;
+            if (length == 0) return;
+
+            long stride = length > 1 ? 1 + random() % (length - 1) : 1;
+            while (gcd(stride, length) != 1) ++stride;
+            long position = random() % length;
+
+            long sinceUpdate = 0;
+            float alpha = alpha(processed.get());
+            for (int k=0; k<length; ++k) {
+                int r = from + (int) position;
+                position = (position + stride) % length;
+                boolean sample = k % LOSS_SAMPLE == 0;
+
+                int id = records[3*r];
+                double l = trainPair(id, records[3*r+1], alpha, sample) + trainPair(id, records[3*r+2], alpha, sample);
+                if (sample) {
+                    loss += l;
+                    lossPairs += 2;
+                }
+
+                if (++sinceUpdate == PROGRESS_STEP) {
+                    alpha = alpha(processed.addAndGet(sinceUpdate));
+                    sinceUpdate = 0;
+                    pb.step();
+                }
+            }
+            if (sinceUpdate > 0) {
+                processed.addAndGet(sinceUpdate);
+                pb.step();
+            }
+        }
+
+        /**
+         * Updates the embedding of an id and the output vectors for the pair (id, target) and the negative samples
+         * @return The loss of the pair if requested, otherwise 0
+         */
+        private double trainPair(int id, int target, float alpha, boolean computeLoss) {
+            FloatBuffer in = input.segment(id);
+            int inOffset = input.offset(id);
+            Arrays.fill(error, 0);
+            double result = 0;
+
+            for (int j=0; j<=negatives; ++j) {
+                int out;
+                int label;
+                if (j == 0) {
+                    out = target;
+                    label = 1;
+                } else {
+                    out = table[(int) (random() % TABLE_SIZE)];
+                    if (out == target) continue;
+                    label = 0;
+                }
+
+                FloatBuffer o = output.segment(out);
+                int outOffset = output.offset(out);
+                float f = 0;
+                for (int d=0; d<dimension; ++d) {
+                    f += in.get(inOffset+d) * o.get(outOffset+d);
+                }
+
+                float g;
+                if (f > MAX_EXP) {
+                    g = (label - 1) * alpha;
+                } else if (f < -MAX_EXP) {
+                    g = label * alpha;
+                } else {
+                    g = (label - EXP_TABLE[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
+                }
+                if (computeLoss) {
+                    double z = label == 1 ? f : -f;
+                    //-log(sigmoid(z)), stable for large |z|
+                    result += z > 0 ? Math.log1p(Math.exp(-z)) : -z + Math.log1p(Math.exp(z));
+                }
+
+                for (int d=0; d<dimension; ++d) {
+                    error[d] += g * o.get(outOffset+d);
+                    o.put(outOffset+d, o.get(outOffset+d) + g * in.get(inOffset+d));
+                }
+            }
+
+            for (int d=0; d<dimension; ++d) {
+                in.put(inOffset+d, in.get(inOffset+d) + error[d]);
+            }
+            return result;
+        }
+    }
+
+    private float alpha(long done) {
+        return ALPHA * (float) Math.max(1e-4, 1 - done / (double) Math.max(1, total));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Saves the embeddings of the ids in the binary format of EmbeddingTable
+     * @param path Path of the embedding file
+     * @throws IOException
+     */
+    public void save(String path) throws IOException {
+        float[] vector = new float[dimension];
+        try (EmbeddingTable.Writer writer = new EmbeddingTable.Writer(path, dimension)) {
+            for (int row=0; row<ids.size(); ++row) {
+                input.get(row, vector);
+                writer.add(ids.get(row), vector);
+            }
+        }
+    }
+
+    /**
+     * Records and dictionaries of one chunk of the file, numbered locally in the order of the first occurrence
+     */
+    private static class Chunk {
+        private LinkedHashMap<String, Integer> ids = new LinkedHashMap<>();
+        private LinkedHashMap<String, Integer> keys = new LinkedHashMap<>();
+        private Map<String, Integer> values = new HashMap<>();
+        private List<String> valueList = new ArrayList<>();
+        private long[] valueCounts = new long[64];
+        private int[] records = new int[3*1024];
+        private int size = 0;
+
+        private int[] idMap;
+        private int[] keyMap;
+
+        private void add(String id, String key, String value) {
+            Integer i = ids.computeIfAbsent(id, x -> ids.size());
+            Integer k = keys.computeIfAbsent(key, x -> keys.size());
+            Integer v = values.get(value);
+            if (v == null) {
+                v = valueList.size();
+                values.put(value, v);
+                valueList.add(value);
+                if (v == valueCounts.length) {
+                    valueCounts = Arrays.copyOf(valueCounts, valueCounts.length*2);
+                }
+            }
+            ++valueCounts[v];
+
+            if (size + 3 > records.length) {
+                records = Arrays.copyOf(records, records.length*2);
+            }
+            records[size++] = i;
+            records[size++] = k;
+            records[size++] = v;
+        }
+    }
+}
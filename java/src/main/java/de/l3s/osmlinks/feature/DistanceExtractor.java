@@ -0,0 +1,25 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+
+/**
+ * Feature "distance": the geographic distance of the candidate in meters
+ */
+public class DistanceExtractor implements FeatureExtractor {
+
+    @Override
+    public int getWidth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isPerNode() {
+        return false;
+    }
+
+    @Override
+    public void extract(OSMRecord r, Candidate c, String[] row, int offset) {
+        row[offset] = ""+c.getGeoDistance();
+    }
+}
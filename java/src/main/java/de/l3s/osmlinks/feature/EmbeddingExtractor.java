@@ -0,0 +1,51 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.Options;
+import de.l3s.osmlinks.blocking.Candidate;
+import de.l3s.osmlinks.io.EmbeddingTable;
+
+/**
+ * Features "osm_embedding" and dense "osm_tf_idf": the vector of the OSM node, one column per dimension
+ */
+public class EmbeddingExtractor implements FeatureExtractor {
+
+    private EmbeddingTable table;
+
+    /**
+     * Constructor
+     * @param table Vectors of the OSM nodes
+     */
+    public EmbeddingExtractor(EmbeddingTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public int getWidth() {
+        return table.getDimension();
+    }
+
+    @Override
+    public boolean isPerNode() {
+        return true;
+    }
+
+    @Override
+    public boolean isKnown(OSMRecord r) {
+        return table.contains(r.getOsmId());
+    }
+
+    @Override
+    public void extract(OSMRecord r, Candidate c, String[] row, int offset) {
+        double[] osmFeatures = table.get(r.getOsmId());
+        if (osmFeatures == null && Options.debug) {
+            osmFeatures = new double[table.getDimension()];
+        } else if (osmFeatures == null) {
+            System.err.println("Null Feature for OSM encountered: "+r.getOsmId());
+            System.exit(2);
+        }
+        for (int d=0; d<osmFeatures.length; ++d) {
+            row[offset+d] = Double.toString(osmFeatures[d]);
+        }
+    }
+}
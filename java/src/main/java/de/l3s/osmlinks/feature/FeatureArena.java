@@ -0,0 +1,127 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.Options;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class manages the off-heap memory of the feature matrices under a global budget.
+ * The memory is handed out in segments of equal size. Released segments are kept for reuse instead of
+ * being freed, such that the direct memory of the process never exceeds the budget.
+ * If the budget is exhausted, no segment is handed out and the feature matrix spills to disk.
+ *
+ * The arena also limits the number of folds that are processed concurrently: until the first fold completed,
+ * only a single fold is processed, afterwards the memory of its feature matrices is used as estimate
+ * for the following folds.
+ */
+public class FeatureArena {
+
+    private static FeatureArena global;
+
+    private long budget;
+    private int segmentSize;
+    private long allocated;
+    private Deque<ByteBuffer> free;
+
+    private int activeFolds;
+    private long foldEstimate;
+    private long spilledBytes;
+
+    /**
+     * Constructor
+     * @param budget Maximum number of bytes held by the segments
+     * @param segmentSize Number of bytes of a segment
+     */
+    public FeatureArena(long budget, int segmentSize) {
+        this.budget = budget;
+        this.segmentSize = segmentSize;
+        this.allocated = 0;
+        this.free = new ArrayDeque<>();
+        this.activeFolds = 0;
+        this.foldEstimate = 0;
+        this.spilledBytes = 0;
+    }
+
+    /**
+     * Returns the arena shared by all feature matrices of the process, its budget is configured by featureMemory
+     */
+    public static synchronized FeatureArena global() {
+        if (global == null) {
+            global = new FeatureArena(Options.getFeatureMemory(), 8 << 20);
+            System.out.println("[FeatureArena]: Budget of "+(global.budget >> 20)+" MB for feature matrices");
+        }
+        return global;
+    }
+
+    /**
+     * Hands out an empty segment
+     * @return The segment or null if the budget is exhausted
+     */
+    synchronized ByteBuffer allocate() {
+        if (!free.isEmpty()) {
+            return free.pop();
+        }
+        if (allocated + segmentSize > budget) {
+            return null;
+        }
+        allocated += segmentSize;
+        return ByteBuffer.allocateDirect(segmentSize);
+    }
+
+    /**
+     * Takes back a segment
+     * @param segment The segment
+     */
+    synchronized void release(ByteBuffer segment) {
+        segment.clear();
+        free.push(segment);
+    }
+
+    synchronized void spilled(long bytes) {
+        spilledBytes += bytes;
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Blocks until another fold can be processed. A fold is admitted if no other fold is processed or
+     * if the estimated memory of all admitted folds fits into the budget. As long as no fold completed,
+     * there is no estimate and only a single fold is admitted.
+     * @throws InterruptedException
+     */
+    public synchronized void enterFold() throws InterruptedException {
+        while (activeFolds > 0 && (foldEstimate == 0 || (activeFolds+1) * foldEstimate > budget)) {
+            wait();
+        }
+        ++activeFolds;
+    }
+
+    /**
+     * Marks a fold as completed
+     */
+    public synchronized void leaveFold() {
+        --activeFolds;
+        notifyAll();
+    }
+
+    /**
+     * Reports the memory used by the feature matrices of a fold, which is used to estimate the memory of the next folds
+     * @param bytes Number of bytes
+     */
+    public synchronized void foldCompleted(long bytes) {
+        foldEstimate = Math.max(foldEstimate, bytes);
+        notifyAll();
+    }
+
+    /**
+     * Returns the budget, the size of the segments that were handed out and the number of spilled bytes
+     */
+    public synchronized String summary() {
+        return String.format("budget %d MB, allocated %d MB, spilled %d MB, estimate per fold %d MB",
+                budget >> 20, allocated >> 20, spilledBytes >> 20, foldEstimate >> 20);
+    }
+}
@@ -0,0 +1,46 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+
+/**
+ * This interface describes a feature of a node candidate pair that occupies a fixed range of columns
+ * in the rows of a FeaturePlan.
+ */
+public interface FeatureExtractor {
+
+    /**
+     * Returns the number of dense columns, a sparse feature occupies one sparse column instead
+     */
+    int getWidth();
+
+    /**
+     * Returns true if the feature is a sparse column with space separated index:value pairs
+     */
+    default boolean isSparse() {
+        return false;
+    }
+
+    /**
+     * Returns true if the feature only depends on the OSM node, such that it is computed once per node
+     * and copied to the rows of all candidates of the node
+     */
+    boolean isPerNode();
+
+    /**
+     * Returns false if the feature is not known for an OSM node, e.g. a node without embedding.
+     * Such a node cannot be classified.
+     */
+    default boolean isKnown(OSMRecord r) {
+        return true;
+    }
+
+    /**
+     * Writes the columns of the feature
+     * @param r The OSM node
+     * @param c The candidate, null for features computed per node
+     * @param row The dense columns of the row, or the sparse columns if the feature is sparse
+     * @param offset Position of the first column of the feature
+     */
+    void extract(OSMRecord r, Candidate c, String[] row, int offset);
+}
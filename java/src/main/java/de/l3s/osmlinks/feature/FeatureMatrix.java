@@ -0,0 +1,382 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.models.EmbeddingModel;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class holds node candidate pairs in a compact form outside of the heap, instead of a list of instances.
+ * A row stores the columns osm id, kg id, label and the dense features, followed by the sparse columns, as UTF-8 text.
+ * The type column is not stored. The types are encoded by a OneHotEncoder when the rows are read,
+ * such that the encoder can be fitted after all rows were added.
+ *
+ * The rows are appended to segments of a FeatureArena. If the budget of the arena is exhausted, the last full
+ * segment is compressed with LZ4 to a temporary file and reused. The rows are read in the order in which they
+ * were added, spilled segments are streamed back from the file.
+ */
+public class FeatureMatrix implements Closeable {
+
+    /**
+     * Receives the rows of the matrix as lines in the format of the files that are read by the classification model
+     */
+    public interface LineConsumer {
+        void accept(String line) throws IOException;
+    }
+
+    /**
+     * Receives the rows of the matrix as feature vectors, i.e. the dense features followed by the expanded sparse columns
+     */
+    public interface VectorConsumer {
+        /**
+         * @param osmId Id of the OSM node
+         * @param kgId Id of the knowledge graph entity
+         * @param label The label, correct or incorrect
+         * @param vector The features, the array is reused for the next row
+         */
+        void accept(String osmId, String kgId, String label, float[] vector) throws IOException;
+    }
+
+    private interface RowConsumer {
+        void accept(String prefix, String suffix) throws IOException;
+    }
+
+    private FeatureArena arena;
+    private boolean dropTypes;
+    //segments in the order of the rows, null if a segment was spilled
+    private List<ByteBuffer> segments;
+    private ByteBuffer current;
+    private File spillFile;
+    private DataOutputStream spill;
+    private int rows;
+    private long bytes;
+
+    /**
+     * Constructor
+     * @param arena Arena of the segments
+     * @param dropTypes Whether the first feature of the added instances is the type column
+     */
+    public FeatureMatrix(FeatureArena arena, boolean dropTypes) {
+        this.arena = arena;
+        this.dropTypes = dropTypes;
+        this.segments = new ArrayList<>();
+        this.rows = 0;
+        this.bytes = 0;
+    }
+
+    /**
+     * Appends an instance
+     * @param i The instance
+     * @throws IOException
+     */
+    public synchronized void add(EmbeddingModel.Instance i) throws IOException {
+        StringBuilder prefix = new StringBuilder();
+        prefix.append(i.osmID).append('\t').append(i.kgID).append('\t').append(i.label);
+        for (int f = dropTypes ? 1 : 0; f<i.features.size(); ++f) {
+            prefix.append('\t').append(i.features.get(f));
+        }
+        StringBuilder suffix = new StringBuilder();
+        for (String s: i.sparseFeatures) {
+            suffix.append('\t').append(s);
+        }
+
+        byte[] p = prefix.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] s = suffix.toString().getBytes(StandardCharsets.UTF_8);
+        int size = 8 + p.length + s.length;
+        if (size > arena.getSegmentSize()) {
+            throw new IOException("Row of "+size+" bytes does not fit into a segment");
+        }
+
+        if (current == null || current.remaining() < size) {
+            nextSegment();
+        }
+        current.putInt(p.length).put(p).putInt(s.length).put(s);
+        ++rows;
+        bytes += size;
+    }
+
+    private void nextSegment() throws IOException {
+        ByteBuffer full = current;
+        if (full != null) {
+            segments.add(full);
+        }
+
+        current = arena.allocate();
+        if (current == null && full != null) {
+            //budget exhausted, the full segment is moved to disk and reused
+            spill(full);
+            segments.set(segments.size()-1, null);
+            full.clear();
+            current = full;
+        } else if (current == null) {
+            //the matrix needs at least one segment to make progress
+            current = ByteBuffer.allocate(arena.getSegmentSize());
+        }
+    }
+
+    private void spill(ByteBuffer segment) throws IOException {
+        if (spill == null) {
+            spillFile = File.createTempFile("features", ".lz4");
+            spillFile.deleteOnExit();
+            //sync flush, such that the spilled segments can be read while rows are added
+            spill = new DataOutputStream(new LZ4BlockOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)),
+                    1 << 16, LZ4Factory.fastestInstance().fastCompressor(),
+                    XXHashFactory.fastestInstance().newStreamingHash32(0x9747b28c).asChecksum(), true));
+        }
+
+        ByteBuffer data = segment.duplicate();
+        data.flip();
+        spill.writeInt(data.remaining());
+        byte[] buffer = new byte[64 << 10];
+        while (data.hasRemaining()) {
+            int n = Math.min(buffer.length, data.remaining());
+            data.get(buffer, 0, n);
+            spill.write(buffer, 0, n);
+        }
+        arena.spilled(segment.position());
+    }
+
+    /**
+     * Passes all rows in the order in which they were added as lines in the format of the files
+     * that are read by the classification model
+     * @param encoder Encoder of the types, null if the instances have no type column
+     * @param consumer Receives the lines
+     * @throws IOException
+     */
+    public void forEachLine(OneHotEncoder encoder, LineConsumer consumer) throws IOException {
+        forEachRow((prefix, suffix) -> {
+            if (encoder == null) {
+                consumer.accept(prefix+suffix);
+                return;
+            }
+            String types = encoder.encode(kgId(prefix));
+            if (encoder.isSparse()) {
+                consumer.accept(prefix+suffix+"\t"+types);
+            } else {
+                consumer.accept(prefix+"\t"+types+suffix);
+            }
+        });
+    }
+
+    /**
+     * Passes all rows in the order in which they were added as feature vectors in the column order of the files
+     * that are read by the classification model. The values are parsed from the stored columns into the vector,
+     * without formatting the row as line, and the types are encoded into the vector directly.
+     * @param encoder Encoder of the types, null if the instances have no type column
+     * @param sparseWidths Number of dimensions of each sparse column, including the type column if it is sparse
+     * @param width Number of features of a vector
+     * @param consumer Receives the vectors
+     * @throws IOException
+     */
+    public void forEachVector(OneHotEncoder encoder, int[] sparseWidths, int width, VectorConsumer consumer) throws IOException {
+        float[] vector = new float[width];
+        boolean sparseTypes = encoder != null && encoder.isSparse();
+        forEachRow((prefix, suffix) -> {
+            Arrays.fill(vector, 0);
+            int kgStart = prefix.indexOf('\t')+1;
+            int labelStart = prefix.indexOf('\t', kgStart)+1;
+            int labelEnd = prefix.indexOf('\t', labelStart);
+            String kgId = prefix.substring(kgStart, labelStart-1);
+
+            int col = labelEnd < 0 ? 0 : parseDense(prefix, labelEnd+1, prefix.length(), vector, 0, width);
+            if (encoder != null && !encoder.isSparse()) {
+                checkWidth(col+encoder.getDimension(), width);
+                encoder.encode(kgId, vector, col);
+                col += encoder.getDimension();
+            }
+            int noSparse = sparseWidths.length - (sparseTypes ? 1 : 0);
+            col = parseSparse(suffix, 1, noSparse, sparseWidths, vector, col, width);
+            if (sparseTypes) {
+                checkWidth(col+sparseWidths[noSparse], width);
+                encoder.encode(kgId, vector, col);
+                col += sparseWidths[noSparse];
+            }
+            if (col != width) {
+                throw new IOException("Row of "+col+" features, expected "+width);
+            }
+
+            consumer.accept(prefix.substring(0, kgStart-1), kgId,
+                    labelEnd < 0 ? prefix.substring(labelStart) : prefix.substring(labelStart, labelEnd), vector);
+        });
+    }
+
+    /**
+     * Parses a line of the files that are read by the classification model to a feature vector,
+     * the counterpart of forEachVector() for rows that were written to a file
+     * @param line The line
+     * @param sparseWidths Number of dimensions of each sparse column
+     * @param vector Receives the features, its length is the number of features
+     * @param consumer Receives the vector
+     * @throws IOException
+     */
+    public static void parseLine(String line, int[] sparseWidths, float[] vector, VectorConsumer consumer) throws IOException {
+        Arrays.fill(vector, 0);
+        int kgStart = line.indexOf('\t')+1;
+        int labelStart = line.indexOf('\t', kgStart)+1;
+        int labelEnd = line.indexOf('\t', labelStart);
+
+        //the sparse columns are the last columns of the line
+        int sparseStart = line.length()+1;
+        for (int s=0; s<sparseWidths.length; ++s) {
+            sparseStart = line.lastIndexOf('\t', sparseStart-2)+1;
+        }
+        int col = 0;
+        if (labelEnd >= 0 && sparseStart-1 > labelEnd) {
+            col = parseDense(line, labelEnd+1, sparseStart-1, vector, 0, vector.length);
+        }
+        col = parseSparse(line, sparseStart, sparseWidths.length, sparseWidths, vector, col, vector.length);
+        if (col != vector.length) {
+            throw new IOException("Row of "+col+" features, expected "+vector.length);
+        }
+
+        consumer.accept(line.substring(0, kgStart-1), line.substring(kgStart, labelStart-1),
+                labelEnd < 0 ? line.substring(labelStart) : line.substring(labelStart, labelEnd), vector);
+    }
+
+    /**
+     * Parses the tab separated dense columns between from and to
+     * @return Position of the next column of the vector
+     */
+    private static int parseDense(String text, int from, int to, float[] vector, int col, int width) throws IOException {
+        while (from <= to) {
+            int end = text.indexOf('\t', from);
+            if (end < 0 || end > to) end = to;
+            checkWidth(col+1, width);
+            vector[col++] = Float.parseFloat(text.substring(from, end));
+            from = end+1;
+        }
+        return col;
+    }
+
+    /**
+     * Parses tab separated sparse columns of space separated index:value pairs, starting at from
+     * @return Position of the next column of the vector
+     */
+    private static int parseSparse(String text, int from, int noColumns, int[] sparseWidths, float[] vector,
+                                   int col, int width) throws IOException {
+        for (int s=0; s<noColumns; ++s) {
+            checkWidth(col+sparseWidths[s], width);
+            int end = text.indexOf('\t', from);
+            if (end < 0) end = text.length();
+            while (from < end) {
+                int pairEnd = text.indexOf(' ', from);
+                if (pairEnd < 0 || pairEnd > end) pairEnd = end;
+                int sep = text.indexOf(':', from);
+                int index = Integer.parseInt(text.substring(from, sep));
+                if (index < 0 || index >= sparseWidths[s]) {
+                    throw new IOException("Index "+index+" exceeds the "+sparseWidths[s]+" dimensions of a sparse column");
+                }
+                vector[col+index] = Float.parseFloat(text.substring(sep+1, pairEnd));
+                from = pairEnd+1;
+            }
+            col += sparseWidths[s];
+            from = end+1;
+        }
+        return col;
+    }
+
+    private static void checkWidth(int columns, int width) throws IOException {
+        if (columns > width) {
+            throw new IOException("Row of more than "+width+" features");
+        }
+    }
+
+    /**
+     * Passes the knowledge graph ids of all rows in the order in which they were added
+     * @param consumer Receives the ids
+     * @throws IOException
+     */
+    public void forEachKgId(Consumer<String> consumer) throws IOException {
+        forEachRow((prefix, suffix) -> consumer.accept(kgId(prefix)));
+    }
+
+    private static String kgId(String prefix) {
+        int start = prefix.indexOf('\t')+1;
+        return prefix.substring(start, prefix.indexOf('\t', start));
+    }
+
+    private synchronized void forEachRow(RowConsumer consumer) throws IOException {
+        DataInputStream in = null;
+        if (spill != null) {
+            spill.flush();
+            in = new DataInputStream(new LZ4BlockInputStream(new BufferedInputStream(new FileInputStream(spillFile))));
+        }
+
+        try {
+            List<ByteBuffer> all = new ArrayList<>(segments);
+            if (current != null) {
+                all.add(current);
+            }
+            for (ByteBuffer segment: all) {
+                ByteBuffer data;
+                if (segment == null) {
+                    byte[] spilled = new byte[in.readInt()];
+                    in.readFully(spilled);
+                    data = ByteBuffer.wrap(spilled);
+                } else {
+                    data = segment.duplicate();
+                    data.flip();
+                }
+
+                while (data.hasRemaining()) {
+                    byte[] p = new byte[data.getInt()];
+                    data.get(p);
+                    byte[] s = new byte[data.getInt()];
+                    data.get(s);
+                    consumer.accept(new String(p, StandardCharsets.UTF_8), new String(s, StandardCharsets.UTF_8));
+                }
+            }
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    public synchronized int size() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of bytes of the rows
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the segments to the arena and deletes the spilled rows
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (current != null) {
+            segments.add(current);
+            current = null;
+        }
+        for (ByteBuffer segment: segments) {
+            if (segment != null && segment.isDirect()) {
+                arena.release(segment);
+            }
+        }
+        segments.clear();
+
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            spillFile.delete();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+
+import java.util.List;
+
+/**
+ * This class computes the features of node candidate pairs with a fixed list of extractors.
+ * The columns of the extractors are laid out in the given order, e.g. the type column first, as expected by
+ * FeatureMatrix and OneHotEncoder. The features that only depend on the OSM node are computed once per node
+ * by node() and copied to the rows of its candidates.
+ */
+public class FeaturePlan {
+
+    private FeatureExtractor[] extractors;
+    private int[] offsets;
+    private int width;
+    private int sparseWidth;
+
+    /**
+     * Constructor
+     * @param extractors The extractors in the order of their columns
+     */
+    public FeaturePlan(List<FeatureExtractor> extractors) {
+        this.extractors = extractors.toArray(new FeatureExtractor[0]);
+        this.offsets = new int[this.extractors.length];
+        for (int i=0; i<this.extractors.length; ++i) {
+            FeatureExtractor e = this.extractors[i];
+            if (e.isSparse()) {
+                offsets[i] = sparseWidth++;
+            } else {
+                offsets[i] = width;
+                width += e.getWidth();
+            }
+        }
+    }
+
+    /**
+     * Computes the features of an OSM node that do not depend on the candidate
+     * @param r The OSM node
+     * @return The features of the node, used to fill the rows of its candidates
+     */
+    public Node node(OSMRecord r) {
+        Node result = new Node(r);
+        for (int i=0; i<extractors.length; ++i) {
+            FeatureExtractor e = extractors[i];
+            if (e.isPerNode()) {
+                e.extract(r, null, e.isSparse() ? result.sparseRow : result.row, offsets[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if all features of the plan are known for an OSM node, i.e. the node can be classified
+     * @param r The OSM node
+     */
+    public boolean isKnown(OSMRecord r) {
+        for (FeatureExtractor e: extractors) {
+            if (!e.isKnown(r)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of dense columns
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of sparse columns
+     */
+    public int getSparseWidth() {
+        return sparseWidth;
+    }
+
+    /**
+     * Features of an OSM node, the columns of the candidate dependent features are empty
+     */
+    public class Node {
+        private OSMRecord r;
+        private String[] row;
+        private String[] sparseRow;
+
+        private Node(OSMRecord r) {
+            this.r = r;
+            this.row = new String[width];
+            this.sparseRow = new String[sparseWidth];
+        }
+
+        /**
+         * Fills the rows of a node candidate pair
+         * @param c The candidate
+         * @param row Receives the dense columns, of length getWidth()
+         * @param sparseRow Receives the sparse columns, of length getSparseWidth()
+         */
+        public void fill(Candidate c, String[] row, String[] sparseRow) {
+            System.arraycopy(this.row, 0, row, 0, width);
+            System.arraycopy(this.sparseRow, 0, sparseRow, 0, sparseWidth);
+            for (int i=0; i<extractors.length; ++i) {
+                FeatureExtractor e = extractors[i];
+                if (!e.isPerNode()) {
+                    e.extract(r, c, e.isSparse() ? sparseRow : row, offsets[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+
+/**
+ * Feature "lgd_distance": the geographic distance of the candidate relative to th_block, scaled by a logistic function
+ */
+public class LogisticDistanceExtractor implements FeatureExtractor {
+
+    private double threshold;
+
+    /**
+     * Constructor
+     * @param threshold Threshold used for blocking, i.e. th_block
+     */
+    public LogisticDistanceExtractor(double threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public int getWidth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isPerNode() {
+        return false;
+    }
+
+    @Override
+    public void extract(OSMRecord r, Candidate c, String[] row, int offset) {
+        double d = 1.0 / (1.0 + Math.exp(-12.0 * (1.0-c.getGeoDistance()/threshold)+6));
+        row[offset] = ""+d;
+    }
+}
@@ -0,0 +1,32 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+import org.apache.commons.text.similarity.JaroWinklerDistance;
+
+/**
+ * Feature "name": the Jaro-Winkler similarity of the names of the node and the candidate
+ */
+public class NameSimilarityExtractor implements FeatureExtractor {
+
+    private JaroWinklerDistance dist = new JaroWinklerDistance();
+
+    @Override
+    public int getWidth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isPerNode() {
+        return false;
+    }
+
+    @Override
+    public void extract(OSMRecord r, Candidate c, String[] row, int offset) {
+        if (r.getName() == null || c.getName() == null) {
+            row[offset] = ""+0;
+        } else {
+            row[offset] = ""+dist.apply(r.getName(), c.getName());
+        }
+    }
+}
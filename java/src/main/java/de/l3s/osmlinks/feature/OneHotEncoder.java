@@ -2,121 +2,253 @@ package de.l3s.osmlinks.feature;
 
 import de.l3s.osmlinks.models.EmbeddingModel;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class is a implementation of an one-hotencoder.
+ * The encoding either appends one "0"/"1" column per dimension to the features of an instance
+ * or, if it is sparse, a single column with the indices of the set dimensions.
  */
 public class OneHotEncoder {
 
 
     private int maxWords;
-    private ConcurrentMap<String, AtomicInteger> wordCounts;
-    private Map<String, Integer> wordToDimension;
+    private TypeVocabulary vocabulary;
+    private boolean sparse;
+    //maps type ids to dimensions, -1 if the type is not encoded
+    private int[] typeToDimension;
 
     /**
      * Constructor
      * @param maxWords Number of maximum allowed words, i.e. maxmium number of dimensions.
+     * @param vocabulary Interned types of the knowledge graph entities
+     * @param sparse Whether to produce a sparse column instead of one column per dimension
      */
-    public OneHotEncoder(int maxWords) {
+    public OneHotEncoder(int maxWords, TypeVocabulary vocabulary, boolean sparse) {
         this.maxWords = maxWords;
-        wordCounts = new ConcurrentHashMap<>();
-        wordToDimension = new HashMap<>();
+        this.vocabulary = vocabulary;
+        this.sparse = sparse;
+        this.typeToDimension = new int[0];
     }
 
     /**
-     * Computes the encoding
+     * Computes the encoding, i.e. selects the maxWords most frequent types.
      * @param train List of OpenStreetMap node knowledge graph entity pairs
-     * @param KGToType Maps knowledgraph entities to types
      */
-    public void fit(List<EmbeddingModel.Instance> train, Map<String, String> KGToType) {
-        //determine wordcounts
-        train.stream().parallel().forEach( r -> {
-            String typeString = KGToType.get(r.kgID);
+    public void fit(List<EmbeddingModel.Instance> train) {
+        //determine wordcounts, every thread counts into its own array
+        TypeCounts counts = train.stream().parallel().collect(TypeCounts::new,
+                (c, r) -> c.add(vocabulary.typesOf(r.kgID)),
+                TypeCounts::merge);
+        select(counts);
+    }
+
+    /**
+     * Computes the encoding from the pairs of a feature matrix, i.e. selects the maxWords most frequent types.
+     * @param train OpenStreetMap node knowledge graph entity pairs
+     * @throws IOException
+     */
+    public void fit(FeatureMatrix train) throws IOException {
+        TypeCounts counts = new TypeCounts();
+        train.forEachKgId(id -> counts.add(vocabulary.typesOf(id)));
+        select(counts);
+    }
 
+    private void select(TypeCounts counts) {
+        //select the most frequent types, ties are broken by the type name
+        Comparator<Integer> byCount = (t1, t2) -> {
+            int c = Integer.compare(counts.get(t1), counts.get(t2));
+            return c != 0 ? c : vocabulary.getType(t2).compareTo(vocabulary.getType(t1));
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(byCount);
+        for (int t=0; t<counts.counts.length; ++t) {
+            if (counts.get(t) == 0) continue;
+            heap.add(t);
+            if (heap.size() > maxWords) {
+                heap.poll();
+            }
+        }
 
-            if (typeString==null || typeString.equals("")) return;
+        List<Integer> selected = new ArrayList<>(heap);
+        selected.sort(byCount.reversed());
 
-            String[] types =typeString.split(",");
-            for(String t: types) {
-                if (!wordCounts.containsKey(t)) {
-                    wordCounts.put(t, new AtomicInteger(0));
+        typeToDimension = new int[counts.counts.length];
+        Arrays.fill(typeToDimension, -1);
+        for (int i=0; i<selected.size(); ++i) {
+            typeToDimension[selected.get(i)] = i;
+        }
+    }
+
+    /**
+     * Encodes the pairs. The type string is removed from the first position of the features of each pair.
+     * @param records List of OpenStreetMap node knowledge graph entity pairs
+     */
+    public void transform(List<EmbeddingModel.Instance> records) {
+        records.stream().parallel().forEach( r -> {
+            r.features.remove(0);
+
+            int[] dimensions = dimensions(vocabulary.typesOf(r.kgID));
+            if (sparse) {
+                StringBuilder column = new StringBuilder();
+                for (int d: dimensions) {
+                    if (column.length() > 0) column.append(' ');
+                    column.append(d).append(":1");
+                }
+                r.sparseFeatures.add(column.toString());
+            } else {
+                String[] row = new String[maxWords];
+                Arrays.fill(row, "0");
+                for (int d: dimensions) {
+                    row[d] = "1";
                 }
-                wordCounts.get(t).getAndIncrement();
+                r.features.addAll(Arrays.asList(row));
             }
         });
+    }
 
-        List<Entry<String, AtomicInteger>> sortedWords = new ArrayList<>(wordCounts.entrySet());
+    /**
+     * Encodes the types of a single entity in the format of the files that are read by the classification model
+     * @param kgID Id of the knowledge graph entity
+     * @return The tab separated "0"/"1" columns or, if the encoding is sparse, the space separated index:value pairs
+     */
+    public String encode(String kgID) {
+        int[] dimensions = dimensions(vocabulary.typesOf(kgID));
+        StringBuilder result = new StringBuilder();
+        if (sparse) {
+            for (int d: dimensions) {
+                if (result.length() > 0) result.append(' ');
+                result.append(d).append(":1");
+            }
+        } else {
+            int next = 0;
+            for (int i=0; i<maxWords; ++i) {
+                if (i > 0) result.append('\t');
+                boolean set = next < dimensions.length && dimensions[next] == i;
+                result.append(set ? '1' : '0');
+                if (set) ++next;
+            }
+        }
+        return result.toString();
+    }
 
-        sortedWords.sort((e1, e2) -> {
-            return e2.getValue().get() - e1.getValue().get();
-        });
+    /**
+     * Encodes the types of a single entity to a feature vector
+     * @param kgID Id of the knowledge graph entity
+     * @param vector The feature vector, the getDimension() columns of the encoding are 0
+     * @param offset Position of the first column of the encoding
+     */
+    public void encode(String kgID, float[] vector, int offset) {
+        for (int d: dimensions(vocabulary.typesOf(kgID))) {
+            vector[offset+d] = 1;
+        }
+    }
 
+    public boolean isSparse() {
+        return sparse;
+    }
 
-        int limit = Math.min(maxWords, sortedWords.size());
-        for(int i=0; i<limit; ++i) {
-            wordToDimension.put(sortedWords.get(i).getKey(), i);
+    /**
+     * Writes the encoded types to a file, one type per line in the order of the dimensions
+     * @param path Path of the file
+     * @throws IOException
+     */
+    public void save(String path) throws IOException {
+        String[] types = new String[maxWords];
+        Arrays.fill(types, "");
+        for (int t=0; t<typeToDimension.length; ++t) {
+            if (typeToDimension[t] >= 0) {
+                types[typeToDimension[t]] = vocabulary.getType(t);
+            }
         }
+        Files.write(Paths.get(path), Arrays.asList(types), StandardCharsets.UTF_8);
     }
 
     /**
-     * Encodes the pairs
-     * @param records List of OpenStreetMap node knowledge graph entity pairs
-     * @param KGToType Maps knowledgraph entities to types
+     * Restores an encoding written by save()
+     * @param path Path of the file
+     * @param vocabulary Interned types of the knowledge graph entities
+     * @param sparse Whether to produce a sparse column instead of one column per dimension
+     * @return The encoder
+     * @throws IOException
      */
-    public void transform(List<EmbeddingModel.Instance> records, Map<String, String> KGToType) {
-            records.stream().parallel().forEach( r -> {
-                String typeString = r.features.remove(0);
-
-                if (typeString.equals("")) {
-                        r.features.addAll(zeros(maxWords));
-                    return;
-                }
-
-                String[] types =typeString.split(",");
-                List<Integer> indices = new ArrayList<>();
-                for(String s: types) {
-                    if (wordToDimension.keySet().contains(s)) {
-                        indices.add(wordToDimension.get(s));
-                    }
-                }
-                r.features.addAll(nHot(indices, maxWords));
-            });
+    public static OneHotEncoder load(String path, TypeVocabulary vocabulary, boolean sparse) throws IOException {
+        List<String> types = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        OneHotEncoder result = new OneHotEncoder(types.size(), vocabulary, sparse);
+
+        int[] ids = new int[types.size()];
+        int size = 0;
+        for (int i=0; i<types.size(); ++i) {
+            ids[i] = types.get(i).equals("") ? -1 : vocabulary.intern(types.get(i));
+            size = Math.max(size, ids[i]+1);
         }
+        result.typeToDimension = new int[size];
+        Arrays.fill(result.typeToDimension, -1);
+        for (int i=0; i<ids.length; ++i) {
+            if (ids[i] >= 0) result.typeToDimension[ids[i]] = i;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of dimensions of the encoding
+     */
+    public int getDimension() {
+        return maxWords;
+    }
 
     /**
-     * Creates a list containing zeros
-     * @param n Number of zeors
-     * @return List of zeros
+     * Maps type ids to the sorted and distinct dimensions of the encoding
      */
-    private static List<String> zeros(int n) {
-        List<String> result = new ArrayList<>();
-        for(int i=0; i<n; ++i) {
-                result.add("0");
+    private int[] dimensions(int[] types) {
+        int[] result = new int[types.length];
+        int n = 0;
+        for (int t: types) {
+            if (t < typeToDimension.length && typeToDimension[t] >= 0) {
+                result[n++] = typeToDimension[t];
             }
-            return result;
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+
+        int distinct = 0;
+        for (int i=0; i<result.length; ++i) {
+            if (i == 0 || result[i] != result[i-1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
     }
 
     /**
-     * Transform a list of numbers to a vector where the corresponding dimension are set to 1.
-     * E.g. 1,3 -> 1 0 1
-     * @param n List of numbers
-     * @param dim Number of dimensions
-     * @return
+     * Number of occurrences of each type id
      */
-    private static List<String> nHot(List<Integer> n, int dim) {
-        List<String> result = new ArrayList<>();
-        for(int i=0; i<dim; ++i) {
-            if (n.contains(i)) {
-                result.add("1");
-            } else {
-                result.add("0");
+    private static class TypeCounts {
+        private int[] counts = new int[0];
+
+        private void add(int[] types) {
+            for (int t: types) {
+                if (t >= counts.length) {
+                    counts = Arrays.copyOf(counts, Math.max(t+1, counts.length*2));
+                }
+                ++counts[t];
             }
         }
-        return result;
+
+        private void merge(TypeCounts other) {
+            if (other.counts.length > counts.length) {
+                counts = Arrays.copyOf(counts, other.counts.length);
+            }
+            for (int t=0; t<other.counts.length; ++t) {
+                counts[t] += other.counts[t];
+            }
+        }
+
+        private int get(int t) {
+            return t < counts.length ? counts[t] : 0;
+        }
     }
 }
@@ -0,0 +1,51 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+import de.l3s.osmlinks.io.SparseVectorStore;
+
+/**
+ * Feature "osm_tf_idf" with sparseTfIdf: the vector of the OSM node as sparse column
+ */
+public class SparseVectorExtractor implements FeatureExtractor {
+
+    private SparseVectorStore store;
+
+    /**
+     * Constructor
+     * @param store Vectors of the OSM nodes
+     */
+    public SparseVectorExtractor(SparseVectorStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public int getWidth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isSparse() {
+        return true;
+    }
+
+    @Override
+    public boolean isPerNode() {
+        return true;
+    }
+
+    @Override
+    public boolean isKnown(OSMRecord r) {
+        return store.contains(r.getOsmId());
+    }
+
+    @Override
+    public void extract(OSMRecord r, Candidate c, String[] row, int offset) {
+        String osmFeatures = store.toSparseString(r.getOsmId());
+        if (osmFeatures == null) {
+            System.err.println("Null Feature for OSM encountered: "+r.getOsmId());
+            System.exit(2);
+        }
+        row[offset] = osmFeatures;
+    }
+}
@@ -0,0 +1,38 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+
+import java.util.Map;
+
+/**
+ * Feature "statement_count": the number of statements of the candidate in the knowledge graph
+ */
+public class StatementCountExtractor implements FeatureExtractor {
+
+    private Map<String, Integer> KGStatementCount;
+
+    /**
+     * Constructor
+     * @param KGStatementCount Maps knowledge graph entities to their number of statements
+     */
+    public StatementCountExtractor(Map<String, Integer> KGStatementCount) {
+        this.KGStatementCount = KGStatementCount;
+    }
+
+    @Override
+    public int getWidth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isPerNode() {
+        return false;
+    }
+
+    @Override
+    public void extract(OSMRecord r, Candidate c, String[] row, int offset) {
+        Integer count = KGStatementCount.get(c.getId());
+        row[offset] = count == null ? "0" : ""+count;
+    }
+}
@@ -0,0 +1,38 @@
+package de.l3s.osmlinks.feature;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.blocking.Candidate;
+
+import java.util.Map;
+
+/**
+ * Feature "types": the comma separated types of the candidate, encoded later by a OneHotEncoder
+ */
+public class TypeExtractor implements FeatureExtractor {
+
+    private Map<String, String> KGTypes;
+
+    /**
+     * Constructor
+     * @param KGTypes Maps knowledge graph entities to comma separated types
+     */
+    public TypeExtractor(Map<String, String> KGTypes) {
+        this.KGTypes = KGTypes;
+    }
+
+    @Override
+    public int getWidth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isPerNode() {
+        return false;
+    }
+
+    @Override
+    public void extract(OSMRecord r, Candidate c, String[] row, int offset) {
+        String types = KGTypes.get(c.getId());
+        row[offset] = types == null ? "" : types;
+    }
+}
@@ -0,0 +1,88 @@
+package de.l3s.osmlinks.feature;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class interns the types of knowledge graph entities to ints, such that the type string
+ * of an entity is split only once.
+ */
+public class TypeVocabulary {
+
+    private static final int[] NO_TYPES = new int[0];
+
+    private Map<String, String> KGToType;
+    private Map<String, Integer> typeToId;
+    private Map<Integer, String> idToType;
+    private Map<String, int[]> entityTypes;
+
+    /**
+     * Constructor
+     * @param KGToType Maps knowledge graph entities to comma separated types
+     */
+    public TypeVocabulary(Map<String, String> KGToType) {
+        this.KGToType = KGToType;
+        this.typeToId = new ConcurrentHashMap<>();
+        this.idToType = new ConcurrentHashMap<>();
+        this.entityTypes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the ids of the types of an entity
+     * @param kgId ID of the entity
+     * @return Array of type ids, empty if the entity has no types
+     */
+    public int[] typesOf(String kgId) {
+        int[] result = entityTypes.get(kgId);
+        if (result != null) return result;
+
+        String typeString = KGToType.get(kgId);
+        if (typeString == null || typeString.equals("")) {
+            result = NO_TYPES;
+        } else {
+            String[] types = typeString.split(",");
+            result = new int[types.length];
+            for (int i=0; i<types.length; ++i) {
+                result[i] = intern(types[i]);
+            }
+        }
+        entityTypes.put(kgId, result);
+        return result;
+    }
+
+    /**
+     * Returns the type of an id
+     * @param id The id
+     * @return The type
+     */
+    public String getType(int id) {
+        return idToType.get(id);
+    }
+
+    /**
+     * Returns the number of types that were interned so far
+     */
+    public int size() {
+        return typeToId.size();
+    }
+
+    /**
+     * Returns the id of a type, a new id is assigned to unknown types
+     * @param type The type
+     * @return The id
+     */
+    public int intern(String type) {
+        Integer id = typeToId.get(type);
+        if (id != null) return id;
+
+        synchronized (this) {
+            id = typeToId.get(type);
+            if (id == null) {
+                id = typeToId.size();
+                idToType.put(id, type);
+                typeToId.put(type, id);
+            }
+            return id;
+        }
+    }
+}
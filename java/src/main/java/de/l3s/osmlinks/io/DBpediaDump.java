@@ -0,0 +1,137 @@
+package de.l3s.osmlinks.io;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class extracts the entities with a location from the N-Triples dumps of a DBpedia language edition.
+ * The locations are read from the geo coordinates dump (wgs84_pos#lat and #long or georss:point) first.
+ * The further dumps, e.g. labels and instance types, are read afterwards and only the triples of
+ * entities with a location are kept: rdfs:label in the language of the edition as name, rdf:type as types.
+ * The statement count of an entity is its number of triples in all dumps.
+ */
+public class DBpediaDump {
+
+    private static final String LAT = "http://www.w3.org/2003/01/geo/wgs84_pos#lat";
+    private static final String LONG = "http://www.w3.org/2003/01/geo/wgs84_pos#long";
+    private static final String POINT = "http://www.georss.org/georss/point";
+    private static final String LABEL = "http://www.w3.org/2000/01/rdf-schema#label";
+    private static final String TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+    /**
+     * Extracts the entities of a language edition
+     * @param geoPath Path of the geo coordinates dump
+     * @param otherPaths Paths of the further dumps
+     * @param language Language of the names, e.g. de
+     * @param noThreads Number of parsing threads
+     * @param writer Receives the entities
+     * @throws IOException
+     */
+    public static void ingest(String geoPath, String[] otherPaths, String language, int noThreads, KGTableWriter writer) throws IOException {
+        Map<String, KGEntity> entities = new ConcurrentHashMap<>();
+
+        DumpLines.forEach(geoPath, noThreads, line -> {
+            Triple t = Triple.parse(line);
+            if (t == null) return;
+            KGEntity e = entities.computeIfAbsent(t.subject, s -> new KGEntity(s, 1));
+            synchronized (e) {
+                e.setStatementCount(e.getStatementCount()+1);
+                if (t.predicate.equals(LAT)) {
+                    e.setY(Double.parseDouble(t.object));
+                } else if (t.predicate.equals(LONG)) {
+                    e.setX(Double.parseDouble(t.object));
+                } else if (t.predicate.equals(POINT)) {
+                    String[] latLong = t.object.trim().split("\\s+");
+                    e.setY(Double.parseDouble(latLong[0]));
+                    e.setX(Double.parseDouble(latLong[1]));
+                }
+            }
+        });
+        System.out.println("[DBpediaDump]: "+entities.size()+" entities in "+geoPath);
+
+        for (String path: otherPaths) {
+            DumpLines.forEach(path, noThreads, line -> {
+                Triple t = Triple.parse(line);
+                if (t == null) return;
+                KGEntity e = entities.get(t.subject);
+                if (e == null) return;
+                synchronized (e) {
+                    e.setStatementCount(e.getStatementCount()+1);
+                    if (t.predicate.equals(LABEL) && language.equals(t.language)) {
+                        e.setName(0, t.object);
+                    } else if (t.predicate.equals(TYPE) && !e.getTypes().contains(t.object)) {
+                        e.getTypes().add(t.object);
+                    }
+                }
+            });
+        }
+
+        for (KGEntity e: entities.values()) {
+            writer.write(e);
+        }
+    }
+
+    /**
+     * A triple of a N-Triples file, the object is the IRI or the lexical form of the literal
+     */
+    static class Triple {
+        String subject, predicate, object, language;
+
+        /**
+         * Parses a line
+         * @param line The line
+         * @return The triple or null if the line is empty, a comment or has a blank node as subject
+         */
+        static Triple parse(String line) {
+            if (line.isEmpty() || line.charAt(0) != '<') return null;
+
+            Triple t = new Triple();
+            int subjectEnd = line.indexOf('>');
+            t.subject = line.substring(1, subjectEnd);
+            int predicateStart = line.indexOf('<', subjectEnd);
+            int predicateEnd = line.indexOf('>', predicateStart);
+            t.predicate = line.substring(predicateStart+1, predicateEnd);
+
+            int objectStart = predicateEnd+1;
+            while (line.charAt(objectStart) == ' ' || line.charAt(objectStart) == '\t') ++objectStart;
+            if (line.charAt(objectStart) == '<') {
+                t.object = line.substring(objectStart+1, line.indexOf('>', objectStart));
+            } else if (line.charAt(objectStart) == '"') {
+                StringBuilder value = new StringBuilder();
+                int i = objectStart+1;
+                for (; line.charAt(i) != '"'; ++i) {
+                    char c = line.charAt(i);
+                    if (c != '\\') {
+                        value.append(c);
+                        continue;
+                    }
+                    c = line.charAt(++i);
+                    switch (c) {
+                        case 't': value.append('\t'); break;
+                        case 'n': value.append('\n'); break;
+                        case 'r': value.append('\r'); break;
+                        case 'u':
+                            value.append((char) Integer.parseInt(line.substring(i+1, i+5), 16));
+                            i += 4;
+                            break;
+                        case 'U':
+                            value.appendCodePoint(Integer.parseInt(line.substring(i+1, i+9), 16));
+                            i += 8;
+                            break;
+                        default: value.append(c);
+                    }
+                }
+                t.object = value.toString();
+                if (i+1 < line.length() && line.charAt(i+1) == '@') {
+                    int end = i+2;
+                    while (end < line.length() && line.charAt(end) != ' ' && line.charAt(end) != '\t') ++end;
+                    t.language = line.substring(i+2, end);
+                }
+            } else {
+                return null;
+            }
+            return t;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package de.l3s.osmlinks.io;
+
+import de.l3s.osmlinks.Options;
+import de.l3s.osmlinks.PostGreDB;
+import de.l3s.osmlinks.Util;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class fills the knowledge graph table of a configuration, i.e. osmlinks.wikidata or osmlinks.dbpedia_*,
+ * and writes the feature file featurePath from a dump of the knowledge graph in a single pass.
+ * For Wikidata, the dump is the JSON dump. For DBpedia, the first dump is the geo coordinates dump
+ * of the language edition and the further dumps provide names and types, e.g. the labels and instance types dumps.
+ * The dumps may be compressed with bzip2 or gzip.
+ * Usage: DumpIngestion config dump [further dumps]
+ */
+public class DumpIngestion {
+
+    public static void main(String[] args) throws IOException, SQLException {
+        Options.parseConfig(args[0]);
+        int noThreads = Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+        long start = System.nanoTime();
+
+        PostGreDB db = new PostGreDB(Options.dbHost(), Options.dbName(), Options.dbUser(), Options.dbPassword());
+        Options.KGName kg = Options.getKGName();
+        List<String> nameColumns = kg == Options.KGName.wikidata ?
+                WikidataDump.NAME_COLUMNS : Collections.singletonList(Util.getNameCol());
+
+        try (KGTableWriter writer = new KGTableWriter(db, Util.getTableName(), Util.getIdCol(), nameColumns, Options.getKGFeaturePath())) {
+            if (kg == Options.KGName.wikidata) {
+                WikidataDump.ingest(args[1], noThreads, writer);
+            } else {
+                String language = kg.name().substring(kg.name().indexOf('_')+1);
+                DBpediaDump.ingest(args[1], Arrays.copyOfRange(args, 2, args.length), language, noThreads, writer);
+            }
+            System.out.printf("[DumpIngestion]: Wrote %d entities to %s and %s in %.1f s\n", writer.getRows(),
+                    Util.getTableName(), Options.getKGFeaturePath(), (System.nanoTime()-start) / 1e9);
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.l3s.osmlinks.io;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class passes the lines of a possibly compressed dump to handlers in parallel.
+ * Files ending with .bz2 or .gz are decompressed while they are read. A single thread reads and decompresses
+ * the file and hands batches of lines to the worker threads, such that parsing does not slow down the decompression.
+ * The lines are handled in no particular order.
+ */
+public class DumpLines {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final List<String> END = new ArrayList<>();
+
+    /**
+     * Handler for a single line, called concurrently
+     */
+    public interface Handler {
+        void line(String line) throws IOException;
+    }
+
+    /**
+     * Opens a dump for reading
+     * @param path Path of the dump
+     * @return Reader of the decompressed dump
+     * @throws IOException
+     */
+    public static BufferedReader open(String path) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path), 1 << 20);
+        if (path.endsWith(".bz2")) {
+            in = new BZip2CompressorInputStream(in, true);
+        } else if (path.endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 20);
+    }
+
+    /**
+     * Passes all lines of a dump to a handler
+     * @param path Path of the dump
+     * @param noThreads Number of threads that handle lines
+     * @param handler The handler
+     * @return Number of lines
+     * @throws IOException
+     */
+    public static long forEach(String path, int noThreads, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(4*noThreads);
+        AtomicLong lines = new AtomicLong(0);
+        IOException[] failure = new IOException[1];
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t=0; t<noThreads; ++t) {
+            Thread worker = new Thread(() -> {
+                try {
+                    for (List<String> batch = queue.take(); batch != END; batch = queue.take()) {
+                        for (String line: batch) {
+                            handler.line(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    //keep taking batches, such that the reader does not block
+                    drain(queue);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "DumpLines");
+            worker.start();
+            workers.add(worker);
+        }
+
+        try (BufferedReader reader = open(path)) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                batch.add(line);
+                if (batch.size() == BATCH_SIZE) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+                if (lines.incrementAndGet() % 10000000 == 0) {
+                    System.out.println("[DumpLines]: "+lines.get()+" lines of "+path);
+                }
+            }
+            queue.put(batch);
+            for (int t=0; t<noThreads; ++t) {
+                queue.put(END);
+            }
+            for (Thread worker: workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading "+path);
+        }
+
+        synchronized (failure) {
+            if (failure[0] != null) throw failure[0];
+        }
+        System.out.printf("[DumpLines]: Read %d lines of %s in %.1f s\n", lines.get(), path, (System.nanoTime()-start) / 1e9);
+        return lines.get();
+    }
+
+    private static void drain(BlockingQueue<List<String>> queue) {
+        try {
+            while (queue.take() != END) ;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package de.l3s.osmlinks.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds embeddings where the id is in the first column of a whitespace separated text file.
+ * The vectors are stored in one primitive array per chunk of the file instead of one list per id,
+ * such that files with more values than fit into a single array can be loaded.
+ * Embeddings can also be stored in a binary format, which is detected by its magic number: a header
+ * (magic, version, dimension, number of rows) followed by one record per row with the length of the UTF-8 id,
+ * the id and the vector as float values, all little-endian.
+ */
+public class EmbeddingTable {
+
+    static final long MAGIC = 0x4f534d4b56454d42L;
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private Map<String, Long> rows;
+    private double[][] blocks;
+    private int dimension;
+
+    private EmbeddingTable(Map<String, Long> rows, double[][] blocks, int dimension) {
+        this.rows = rows;
+        this.blocks = blocks;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Parses the embeddings in parallel or reads them from the binary format
+     * @param path Path of the embedding file
+     * @return The embeddings
+     * @throws IOException
+     */
+    public static EmbeddingTable parse(String path) throws IOException {
+        if (isBinary(path)) {
+            return read(path);
+        }
+
+        List<Chunk> chunks = TextFileParser.parse(path, Chunk::new, EmbeddingTable::parseLine);
+
+        int dimension = -1;
+        for (Chunk c: chunks) {
+            if (c.ids.isEmpty()) continue;
+            if (dimension < 0) dimension = c.dimension;
+            if (c.dimension != dimension) {
+                throw new IOException("Embeddings of different dimension in "+path+": "+dimension+" and "+c.dimension);
+            }
+        }
+        dimension = Math.max(dimension, 0);
+
+        Map<String, Long> rows = new HashMap<>();
+        double[][] blocks = new double[chunks.size()][];
+        for (int b=0; b<chunks.size(); ++b) {
+            Chunk c = chunks.get(b);
+            blocks[b] = Arrays.copyOf(c.values, c.size);
+            for (int i=0; i<c.ids.size(); ++i) {
+                //later lines replace earlier ones, as in a map
+                rows.put(c.ids.get(i), ((long) b << 32) | i);
+            }
+        }
+        return new EmbeddingTable(rows, blocks, dimension);
+    }
+
+    private static boolean isBinary(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0);
+            return !magic.hasRemaining() && magic.getLong(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads embeddings in the binary format, the float values are widened to double
+     */
+    private static EmbeddingTable read(String path) throws IOException {
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            buffer = fill(channel, buffer, HEADER_SIZE);
+            buffer.getLong();
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported embedding version "+version+" in "+path);
+            int dimension = buffer.getInt();
+            long noRows = buffer.getLong();
+
+            int rowsPerBlock = Math.max(1, (1 << 24) / Math.max(1, dimension));
+            int noBlocks = (int) ((noRows + rowsPerBlock - 1) / rowsPerBlock);
+            double[][] blocks = new double[noBlocks][];
+            Map<String, Long> rows = new HashMap<>((int) Math.min(Integer.MAX_VALUE, noRows*4/3+1));
+
+            for (long r=0; r<noRows; ++r) {
+                int b = (int) (r / rowsPerBlock);
+                int i = (int) (r % rowsPerBlock);
+                if (i == 0) {
+                    blocks[b] = new double[(int) Math.min(rowsPerBlock, noRows - r) * dimension];
+                }
+
+                buffer = fill(channel, buffer, 4);
+                int idLength = buffer.getInt();
+                buffer = fill(channel, buffer, idLength + 4*dimension);
+                String id = new String(buffer.array(), buffer.position(), idLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position()+idLength);
+
+                double[] block = blocks[b];
+                int offset = i*dimension;
+                for (int d=0; d<dimension; ++d) {
+                    block[offset+d] = buffer.getFloat();
+                }
+                rows.put(id, ((long) b << 32) | i);
+            }
+
+            double seconds = (System.nanoTime()-start) / 1e9;
+            System.out.printf("[EmbeddingTable]: Read %d binary vectors in %.2f s\n", noRows, seconds);
+            return new EmbeddingTable(rows, blocks, dimension);
+        }
+    }
+
+    /**
+     * Ensures that the buffer has at least n remaining bytes, grows the buffer if necessary
+     * @return The buffer, in read mode
+     */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, int n) throws IOException {
+        if (buffer.remaining() >= n) return buffer;
+        if (buffer.capacity() < n) {
+            ByteBuffer larger = ByteBuffer.allocate(Integer.highestOneBit(n) << 1).order(ByteOrder.LITTLE_ENDIAN);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) throw new IOException("Truncated embedding file");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void parseLine(ByteBuffer buffer, int start, int end, Chunk chunk) {
+        int pos = TextFileParser.skipWhitespace(buffer, start, end);
+        int idEnd = TextFileParser.nextWhitespace(buffer, pos, end);
+        String id = TextFileParser.string(buffer, pos, idEnd);
+
+        int n = 0;
+        pos = TextFileParser.skipWhitespace(buffer, idEnd, end);
+        while (pos < end) {
+            int valueEnd = TextFileParser.nextWhitespace(buffer, pos, end);
+            chunk.add(TextFileParser.parseDouble(buffer, pos, valueEnd));
+            ++n;
+            pos = TextFileParser.skipWhitespace(buffer, valueEnd, end);
+        }
+
+        if (chunk.dimension < 0) {
+            chunk.dimension = n;
+        } else if (chunk.dimension != n) {
+            throw new IllegalStateException("Embedding of "+id+" has dimension "+n+" instead of "+chunk.dimension);
+        }
+        chunk.ids.add(id);
+    }
+
+    /**
+     * Returns the embedding of an id
+     * @param id The id
+     * @return Copy of the vector or null if the id is not contained
+     */
+    public double[] get(String id) {
+        Long row = rows.get(id);
+        if (row == null) return null;
+        int block = (int) (row >>> 32);
+        int offset = (int) (row & 0xffffffffL) * dimension;
+        return Arrays.copyOfRange(blocks[block], offset, offset+dimension);
+    }
+
+    public boolean contains(String id) {
+        return rows.containsKey(id);
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * This class writes embeddings in the binary format. The rows are streamed to a temporary file,
+     * which replaces the target file when the writer is closed.
+     */
+    public static class Writer implements Closeable {
+
+        private Path path;
+        private Path tmp;
+        private FileChannel channel;
+        private ByteBuffer buffer;
+        private int dimension;
+        private long rows;
+
+        /**
+         * Constructor
+         * @param path Path of the embedding file
+         * @param dimension Dimension of the vectors
+         * @throws IOException
+         */
+        public Writer(String path, int dimension) throws IOException {
+            this.path = Paths.get(path);
+            this.tmp = Paths.get(path+".tmp");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.dimension = dimension;
+            this.rows = 0;
+            //the number of rows is written when the writer is closed
+            buffer.position(HEADER_SIZE);
+        }
+
+        /**
+         * Appends the vector of an id
+         * @param id The id
+         * @param vector Vector with the dimension of the writer
+         * @throws IOException
+         */
+        public void add(String id, float[] vector) throws IOException {
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException("Embedding of "+id+" has dimension "+vector.length+" instead of "+dimension);
+            }
+            byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+            int size = 4 + idBytes.length + 4*dimension;
+            if (buffer.remaining() < size) {
+                flush();
+                if (buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocate(Integer.highestOneBit(size) << 1).order(ByteOrder.LITTLE_ENDIAN);
+                }
+            }
+            buffer.putInt(idBytes.length);
+            buffer.put(idBytes);
+            for (float v: vector) {
+                buffer.putFloat(v);
+            }
+            ++rows;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public long size() {
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(VERSION).putInt(dimension).putLong(rows);
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Parsed vectors of one chunk of the file
+     */
+    private static class Chunk {
+        private List<String> ids = new ArrayList<>();
+        private double[] values = new double[1024];
+        private int size = 0;
+        private int dimension = -1;
+
+        private void add(double v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length*2);
+            }
+            values[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.l3s.osmlinks.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents an entity of a knowledge graph dump with a location and is only used to store data.
+ */
+public class KGEntity {
+    private String id;
+    //names in the order of the name columns of the knowledge graph table, null if unknown
+    private String[] names;
+    private double x, y;
+    private List<String> types;
+    private int statementCount;
+
+    /**
+     * Constructor
+     * @param id Id of the entity, as in the knowledge graph table
+     * @param noNames Number of name columns of the knowledge graph table
+     */
+    public KGEntity(String id, int noNames) {
+        this.id = id;
+        this.names = new String[noNames];
+        this.x = Double.NaN;
+        this.y = Double.NaN;
+        this.types = new ArrayList<>();
+        this.statementCount = 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String[] getNames() {
+        return names;
+    }
+
+    public void setName(int column, String name) {
+        names[column] = name;
+    }
+
+    public boolean hasLocation() {
+        return !Double.isNaN(x) && !Double.isNaN(y);
+    }
+
+    /**
+     * Returns the longitude
+     */
+    public double getX() {
+        return x;
+    }
+
+    public void setX(double x) {
+        this.x = x;
+    }
+
+    /**
+     * Returns the latitude
+     */
+    public double getY() {
+        return y;
+    }
+
+    public void setY(double y) {
+        this.y = y;
+    }
+
+    public List<String> getTypes() {
+        return types;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public void setStatementCount(int statementCount) {
+        this.statementCount = statementCount;
+    }
+}
@@ -0,0 +1,33 @@
+package de.l3s.osmlinks.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * This class parses the feature file of the knowledge graph. Each line has the format
+ * id \tab types \tab statement count.
+ */
+public class KGFeatureParser {
+
+    /**
+     * Parses the feature file in parallel
+     * @param path Path of the feature file
+     * @param types Map the types are added to
+     * @param statementCounts Map the statement counts are added to, may be null if they are not needed
+     * @throws IOException
+     */
+    public static void parse(String path, Map<String, String> types, Map<String, Integer> statementCounts) throws IOException {
+        TextFileParser.parse(path, () -> null, (ByteBuffer buffer, int start, int end, Object state) -> {
+            int idEnd = TextFileParser.indexOf(buffer, start, end, (byte) '\t');
+            int typesEnd = TextFileParser.indexOf(buffer, idEnd+1, end, (byte) '\t');
+            String id = TextFileParser.string(buffer, start, idEnd);
+
+            types.put(id, TextFileParser.string(buffer, Math.min(idEnd+1, end), typesEnd));
+            if (statementCounts != null) {
+                int countEnd = TextFileParser.indexOf(buffer, typesEnd+1, end, (byte) '\t');
+                statementCounts.put(id, TextFileParser.parseInt(buffer, typesEnd+1, countEnd));
+            }
+        });
+    }
+}
@@ -0,0 +1,330 @@
+package de.l3s.osmlinks.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This class holds the entities of a knowledge graph table, i.e. their ids, names and locations,
+ * in a local columnar file that is memory-mapped, such that no database is needed to access them.
+ *
+ * The file consists of a header and the following sections:
+ * ids: the distinct ids in sorted order as UTF-8 blob with int offsets (dictionary),
+ * rows: the dictionary index of the id of each entity,
+ * names: the names of the entities as UTF-8 blob with int offsets,
+ * x and y: the longitude and latitude of each entity as double arrays.
+ * The header contains the number of entities, the number of ids and the offset and length of each section.
+ */
+public class KGSnapshot {
+
+    private static final long MAGIC = 0x4f534d4b47534e50L;
+    private static final int VERSION = 1;
+    private static final int NO_SECTIONS = 7;
+    private static final int HEADER_SIZE = 8 + 4 + 4 + 4 + 4 + NO_SECTIONS * 16;
+
+    private int noRows, noIds;
+    private IntBuffer idOffsets, rowIds, nameOffsets;
+    private ByteBuffer idBlob, nameBlob;
+    private DoubleBuffer xs, ys;
+    //first entity of each id, built on the first lookup
+    private int[] firstRows;
+
+    private KGSnapshot() {
+    }
+
+    /**
+     * Maps a snapshot
+     * @param path Path of the snapshot file
+     * @return The snapshot
+     * @throws IOException
+     */
+    public static KGSnapshot open(String path) throws IOException {
+        KGSnapshot result = new KGSnapshot();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(path+" is not a knowledge graph snapshot of version "+VERSION);
+            }
+            result.noRows = header.getInt();
+            result.noIds = header.getInt();
+            header.getInt();
+
+            ByteBuffer[] sections = new ByteBuffer[NO_SECTIONS];
+            for (int s=0; s<NO_SECTIONS; ++s) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                sections[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            result.idOffsets = sections[0].asIntBuffer();
+            result.idBlob = sections[1];
+            result.rowIds = sections[2].asIntBuffer();
+            result.nameOffsets = sections[3].asIntBuffer();
+            result.nameBlob = sections[4];
+            result.xs = sections[5].asDoubleBuffer();
+            result.ys = sections[6].asDoubleBuffer();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of entities
+     */
+    public int size() {
+        return noRows;
+    }
+
+    /**
+     * Returns the id of an entity
+     * @param row Number of the entity
+     */
+    public String getId(int row) {
+        return dictionaryEntry(rowIds.get(row));
+    }
+
+    /**
+     * Returns the name of an entity
+     * @param row Number of the entity
+     */
+    public String getName(int row) {
+        return string(nameBlob, nameOffsets.get(row), nameOffsets.get(row+1));
+    }
+
+    /**
+     * Returns the longitude of an entity
+     */
+    public double getX(int row) {
+        return xs.get(row);
+    }
+
+    /**
+     * Returns the latitude of an entity
+     */
+    public double getY(int row) {
+        return ys.get(row);
+    }
+
+    /**
+     * Returns the number of the first entity with an id
+     * @param id The id
+     * @return The number of the entity or -1 if there is no entity with this id
+     */
+    public int find(String id) {
+        int index = dictionaryIndex(id);
+        if (index < 0) return -1;
+        return firstRows()[index];
+    }
+
+    private synchronized int[] firstRows() {
+        if (firstRows == null) {
+            firstRows = new int[noIds];
+            Arrays.fill(firstRows, -1);
+            for (int row=noRows-1; row>=0; --row) {
+                firstRows[rowIds.get(row)] = row;
+            }
+        }
+        return firstRows;
+    }
+
+    /**
+     * Returns the position of an id in the dictionary of sorted ids
+     * @param id The id
+     * @return The position or a negative value if the id is unknown
+     */
+    public int dictionaryIndex(String id) {
+        int low = 0, high = noIds-1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = dictionaryEntry(mid).compareTo(id);
+            if (c < 0) {
+                low = mid+1;
+            } else if (c > 0) {
+                high = mid-1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low+1);
+    }
+
+    private String dictionaryEntry(int index) {
+        return string(idBlob, idOffsets.get(index), idOffsets.get(index+1));
+    }
+
+    private static String string(ByteBuffer blob, int from, int to) {
+        byte[] bytes = new byte[to-from];
+        ByteBuffer b = blob.duplicate();
+        b.position(from);
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This class writes a snapshot. The entities are appended one by one, the names are streamed to a temporary
+     * file, such that only the ids and the locations are held in memory.
+     */
+    public static class Writer implements Closeable {
+
+        private File nameFile;
+        private OutputStream names;
+        private int nameBytes;
+        private int[] nameOffsets;
+        private Map<String, Integer> ids;
+        private int[] rowIds;
+        private double[] xs, ys;
+        private int size;
+
+        public Writer() throws IOException {
+            this.nameFile = File.createTempFile("names", ".bin");
+            this.nameFile.deleteOnExit();
+            this.names = new BufferedOutputStream(new FileOutputStream(nameFile), 1 << 16);
+            this.nameBytes = 0;
+            this.nameOffsets = new int[1024];
+            this.ids = new HashMap<>();
+            this.rowIds = new int[1024];
+            this.xs = new double[1024];
+            this.ys = new double[1024];
+            this.size = 0;
+        }
+
+        /**
+         * Appends an entity
+         * @param id Id of the entity
+         * @param name Name of the entity, null is stored as empty name
+         * @param x Longitude
+         * @param y Latitude
+         * @throws IOException
+         */
+        public void add(String id, String name, double x, double y) throws IOException {
+            if (size+1 >= rowIds.length) {
+                int capacity = 2*rowIds.length;
+                rowIds = Arrays.copyOf(rowIds, capacity);
+                nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+            }
+
+            byte[] bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+            if ((long) nameBytes + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Names exceed the size of a snapshot");
+            }
+            names.write(bytes);
+            nameOffsets[size] = nameBytes;
+            nameBytes += bytes.length;
+
+            Integer index = ids.get(id);
+            if (index == null) {
+                index = ids.size();
+                ids.put(id, index);
+            }
+            rowIds[size] = index;
+            xs[size] = x;
+            ys[size] = y;
+            ++size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the snapshot
+         * @param path Path of the snapshot file
+         * @throws IOException
+         */
+        public void write(String path) throws IOException {
+            names.flush();
+            nameOffsets[size] = nameBytes;
+
+            //the dictionary is sorted, such that ids can be found by binary search
+            String[] sorted = ids.keySet().toArray(new String[0]);
+            Arrays.sort(sorted);
+            int[] remap = new int[sorted.length];
+            ByteArrayOutputStream idBlob = new ByteArrayOutputStream();
+            int[] idOffsets = new int[sorted.length+1];
+            for (int i=0; i<sorted.length; ++i) {
+                remap[ids.get(sorted[i])] = i;
+                idOffsets[i] = idBlob.size();
+                byte[] bytes = sorted[i].getBytes(StandardCharsets.UTF_8);
+                idBlob.write(bytes, 0, bytes.length);
+            }
+            idOffsets[sorted.length] = idBlob.size();
+            int[] rows = new int[size];
+            for (int i=0; i<size; ++i) {
+                rows[i] = remap[rowIds[i]];
+            }
+
+            long[] lengths = {4L*(sorted.length+1), idBlob.size(), 4L*size, 4L*(size+1), nameBytes, 8L*size, 8L*size};
+            long[] offsets = new long[NO_SECTIONS];
+            long offset = HEADER_SIZE;
+            for (int s=0; s<NO_SECTIONS; ++s) {
+                //sections are aligned to 8 bytes
+                offset = (offset + 7) & ~7L;
+                offsets[s] = offset;
+                offset += lengths[s];
+            }
+
+            File tmp = new File(path+".tmp");
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putLong(MAGIC).putInt(VERSION).putInt(size).putInt(sorted.length).putInt(0);
+                for (int s=0; s<NO_SECTIONS; ++s) {
+                    header.putLong(offsets[s]).putLong(lengths[s]);
+                }
+                header.flip();
+                writeFully(channel, header, 0);
+
+                writeFully(channel, ints(idOffsets, sorted.length+1), offsets[0]);
+                writeFully(channel, ByteBuffer.wrap(idBlob.toByteArray()), offsets[1]);
+                writeFully(channel, ints(rows, size), offsets[2]);
+                writeFully(channel, ints(nameOffsets, size+1), offsets[3]);
+                try (FileChannel in = FileChannel.open(nameFile.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < nameBytes) {
+                        position += in.transferTo(position, nameBytes-position, channel.position(offsets[4]+position));
+                    }
+                }
+                writeFully(channel, doubles(xs, size), offsets[5]);
+                writeFully(channel, doubles(ys, size), offsets[6]);
+            }
+            Files.move(tmp.toPath(), Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private static ByteBuffer ints(int[] values, int n) {
+            ByteBuffer result = ByteBuffer.allocate(4*n).order(ByteOrder.LITTLE_ENDIAN);
+            result.asIntBuffer().put(values, 0, n);
+            return result;
+        }
+
+        private static ByteBuffer doubles(double[] values, int n) {
+            ByteBuffer result = ByteBuffer.allocate(8*n).order(ByteOrder.LITTLE_ENDIAN);
+            result.asDoubleBuffer().put(values, 0, n);
+            return result;
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        /**
+         * Deletes the temporary file of the names
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            names.close();
+            nameFile.delete();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package de.l3s.osmlinks.io;
+
+import de.l3s.osmlinks.Options;
+import de.l3s.osmlinks.PostGreDB;
+import de.l3s.osmlinks.Util;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * This class exports the knowledge graph table of a configuration, e.g. osmlinks.wikidata, to a KGSnapshot.
+ * The table is streamed with COPY in the binary format of PostgreSQL instead of being queried row by row.
+ * Usage: KGSnapshotExporter config path
+ */
+public class KGSnapshotExporter {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+    public static void main(String[] args) throws IOException, SQLException {
+        Options.parseConfig(args[0]);
+        PostGreDB db = new PostGreDB(Options.dbHost(), Options.dbName(), Options.dbUser(), Options.dbPassword());
+
+        long start = System.nanoTime();
+        int size;
+        try (KGSnapshot.Writer writer = new KGSnapshot.Writer()) {
+            export(db, writer);
+            size = writer.size();
+            writer.write(args[1]);
+        } finally {
+            db.close();
+        }
+        System.out.println(String.format("[KGSnapshotExporter]: Exported %d entities of %s in %.1f s",
+                size, Util.getTableName(), (System.nanoTime()-start) / 1e9));
+
+        start = System.nanoTime();
+        KGSnapshot snapshot = KGSnapshot.open(args[1]);
+        double sum = 0;
+        for (int i=0; i<snapshot.size(); ++i) {
+            sum += snapshot.getX(i) + snapshot.getY(i);
+        }
+        System.out.println(String.format("[KGSnapshotExporter]: Mapped and scanned %d entities in %.1f s (%.1f)",
+                snapshot.size(), (System.nanoTime()-start) / 1e9, sum));
+    }
+
+    /**
+     * Streams the entities of the knowledge graph table to a writer
+     * @param db The database
+     * @param writer The writer
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void export(PostGreDB db, KGSnapshot.Writer writer) throws IOException, SQLException {
+        String query = "COPY (select "+Util.getIdCol()+"::text, "+Util.getNameCol()+"::text, " +
+                "ST_X(geometry::geometry)::float8, ST_Y(geometry::geometry)::float8 " +
+                "from "+Util.getTableName()+" where geometry is not null) TO STDOUT (FORMAT binary)";
+
+        try (Connection con = db.getConnection()) {
+            CopyOut copy = con.unwrap(PGConnection.class).getCopyAPI().copyOut(query);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new CopyOutStream(copy), 1 << 16));
+            readRows(in, writer);
+        }
+    }
+
+    /**
+     * Reads rows of the columns id, name, x, y in the binary COPY format
+     */
+    static void readRows(DataInputStream in, KGSnapshot.Writer writer) throws IOException {
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("Unexpected COPY signature");
+        }
+        //flags and header extension
+        in.readInt();
+        in.skipBytes(in.readInt());
+
+        while (true) {
+            short fields = in.readShort();
+            if (fields == -1) break;
+            if (fields != 4) {
+                throw new IOException("Expected 4 columns, got "+fields);
+            }
+            String id = readText(in);
+            String name = readText(in);
+            double x = readDouble(in);
+            double y = readDouble(in);
+            if (id == null) continue;
+            writer.add(id, name, x, y);
+        }
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static double readDouble(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return Double.NaN;
+        if (length != 8) {
+            throw new IOException("Expected a float8 column, got "+length+" bytes");
+        }
+        return in.readDouble();
+    }
+
+    /**
+     * Provides the data of a COPY TO STDOUT as stream
+     */
+    private static class CopyOutStream extends InputStream {
+        private CopyOut copy;
+        private byte[] buffer;
+        private int position;
+
+        private CopyOutStream(CopyOut copy) {
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (buffer == null || position == buffer.length) {
+                try {
+                    buffer = copy.readFromCopy();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+                position = 0;
+                if (buffer == null) return -1;
+            }
+            int n = Math.min(len, buffer.length-position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
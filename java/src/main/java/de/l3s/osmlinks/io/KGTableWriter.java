@@ -0,0 +1,130 @@
+package de.l3s.osmlinks.io;
+
+import de.l3s.osmlinks.PostGreDB;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class writes entities to a knowledge graph table and to the feature file of the knowledge graph in one pass.
+ * The rows are sent to the database with COPY in the text format, in blocks of about a megabyte,
+ * instead of single inserts. Each line of the feature file has the format id \tab types \tab statement count,
+ * as read by KGFeatureParser. The methods are thread-safe.
+ */
+public class KGTableWriter implements Closeable {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private Connection connection;
+    private CopyIn copy;
+    private StringBuilder block;
+    private Writer features;
+    private long rows;
+
+    /**
+     * Starts a COPY into a knowledge graph table, the rows are appended to the existing rows
+     * @param db The database
+     * @param table Name of the table, e.g. osmlinks.wikidata
+     * @param idColumn Column of the id
+     * @param nameColumns Columns of the names
+     * @param featurePath Path of the feature file
+     * @throws IOException
+     * @throws SQLException
+     */
+    public KGTableWriter(PostGreDB db, String table, String idColumn, List<String> nameColumns, String featurePath)
+            throws IOException, SQLException {
+        String columns = idColumn+", "+String.join(", ", nameColumns)+", geometry";
+        this.connection = db.getConnection();
+        this.copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY "+table+" ("+columns+") FROM STDIN");
+        this.block = new StringBuilder(BLOCK_SIZE + (BLOCK_SIZE >> 2));
+        this.features = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(featurePath), StandardCharsets.UTF_8), 1 << 20);
+        this.rows = 0;
+    }
+
+    /**
+     * Writes an entity, entities without a location are skipped
+     * @param e The entity
+     * @throws IOException
+     */
+    public void write(KGEntity e) throws IOException {
+        if (!e.hasLocation()) return;
+
+        StringBuilder row = new StringBuilder();
+        escape(e.getId(), row);
+        for (String name: e.getNames()) {
+            row.append('\t');
+            escape(name, row);
+        }
+        row.append("\tSRID=4326;POINT(").append(e.getX()).append(' ').append(e.getY()).append(")\n");
+
+        String featureLine = e.getId()+"\t"+String.join(",", e.getTypes())+"\t"+e.getStatementCount()+"\n";
+
+        synchronized (this) {
+            block.append(row);
+            features.write(featureLine);
+            ++rows;
+            if (block.length() >= BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        byte[] bytes = block.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            copy.writeToCopy(bytes, 0, bytes.length);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        block.setLength(0);
+    }
+
+    /**
+     * Escapes a value for the text format of COPY, null is written as \N
+     */
+    private static void escape(String value, StringBuilder target) {
+        if (value == null) {
+            target.append("\\N");
+            return;
+        }
+        for (int i=0; i<value.length(); ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': target.append("\\\\"); break;
+                case '\t': target.append("\\t"); break;
+                case '\n': target.append("\\n"); break;
+                case '\r': target.append("\\r"); break;
+                default: target.append(c);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of written entities
+     */
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    /**
+     * Completes the COPY and the feature file
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flushBlock();
+            copy.endCopy();
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        } finally {
+            features.close();
+        }
+    }
+}
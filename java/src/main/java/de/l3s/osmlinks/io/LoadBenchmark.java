@@ -0,0 +1,99 @@
+package de.l3s.osmlinks.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * This class compares the load throughput of the parallel text parser with the line based parsing
+ * via Files.lines() and String.split() that was used before. It also checks that both produce the same values.
+ * Usage: LoadBenchmark embedding path [kg feature path]
+ */
+public class LoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        benchmarkEmbeddings(args[0]);
+        if (args.length > 1) {
+            benchmarkKGFeatures(args[1]);
+        }
+    }
+
+    private static void benchmarkEmbeddings(String path) throws IOException {
+        double mb = new File(path).length() / (1024d*1024d);
+
+        long start = System.nanoTime();
+        Map<String, List<Double>> lines = parseEmbeddingsByLine(path);
+        report("Files.lines embeddings", mb, start);
+
+        start = System.nanoTime();
+        EmbeddingTable table = EmbeddingTable.parse(path);
+        report("TextFileParser embeddings", mb, start);
+
+        int mismatches = 0;
+        for (Map.Entry<String, List<Double>> e: lines.entrySet()) {
+            double[] v = table.get(e.getKey());
+            if (v == null || v.length != e.getValue().size()) {
+                ++mismatches;
+                continue;
+            }
+            for (int i=0; i<v.length; ++i) {
+                if (Double.doubleToLongBits(v[i]) != Double.doubleToLongBits(e.getValue().get(i))) {
+                    ++mismatches;
+                    break;
+                }
+            }
+        }
+        System.out.println("[LoadBenchmark]: "+table.size()+" vectors, "+mismatches+" mismatches");
+    }
+
+    private static void benchmarkKGFeatures(String path) throws IOException {
+        double mb = new File(path).length() / (1024d*1024d);
+
+        long start = System.nanoTime();
+        Map<String, String> typesByLine = new ConcurrentHashMap<>();
+        Map<String, Integer> countsByLine = new ConcurrentHashMap<>();
+        try(Stream<String> inputStream = Files.lines(new File(path).toPath(), StandardCharsets.UTF_8)) {
+            inputStream.parallel().forEach( line -> {
+                String[] parts = line.split("\t");
+                typesByLine.put(parts[0], parts[1]);
+                countsByLine.put(parts[0], Integer.parseInt(parts[2]));
+            });
+        }
+        report("Files.lines kg features", mb, start);
+
+        start = System.nanoTime();
+        Map<String, String> types = new ConcurrentHashMap<>();
+        Map<String, Integer> counts = new ConcurrentHashMap<>();
+        KGFeatureParser.parse(path, types, counts);
+        report("TextFileParser kg features", mb, start);
+
+        boolean equal = typesByLine.equals(types) && countsByLine.equals(counts);
+        System.out.println("[LoadBenchmark]: "+types.size()+" entities, results "+(equal ? "equal" : "differ"));
+    }
+
+    private static Map<String, List<Double>> parseEmbeddingsByLine(String path) throws IOException {
+        Map<String, List<Double>> result = new ConcurrentHashMap<>();
+        try(Stream<String> inputStream = Files.lines(new File(path).toPath(), StandardCharsets.US_ASCII)) {
+            inputStream.parallel().forEach( line -> {
+                String[] cols = line.split("\\s+");
+                List<Double> vector=new ArrayList<>();
+                for (int i=1; i< cols.length; ++i) {
+                    vector.add(Double.parseDouble(cols[i]));
+                }
+                result.put(cols[0], vector);
+            });
+        }
+        return result;
+    }
+
+    private static void report(String name, double mb, long start) {
+        double seconds = (System.nanoTime()-start) / 1e9;
+        System.out.printf("[LoadBenchmark]: %s: %.1f MB in %.2f s (%.1f MB/s)\n", name, mb, seconds, mb/seconds);
+    }
+}
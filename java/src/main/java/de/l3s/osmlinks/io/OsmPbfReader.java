@@ -0,0 +1,400 @@
+package de.l3s.osmlinks.io;
+
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.Options;
+import de.l3s.osmlinks.Util;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class reads the nodes of an OpenStreetMap PBF file, e.g. a planet file or an extract, in a single pass.
+ * It produces the lines of the OSM tsv file and of the key-value tsv file read by EmbeddingKeyValue.py for all
+ * nodes that are linked to a knowledge graph, i.e. nodes with a wikidata or wikipedia tag.
+ *
+ * The file is read sequentially, the blobs are decompressed and decoded in parallel and
+ * their lines are passed on in the order of the file.
+ * A line of the OSM tsv file has the format
+ * id \tab lon \tab lat \tab name \tab name:en \tab wikidata \tab wikipedia \tab DBpedia URI \tab DBpedia entity found,
+ * where the DBpedia URI is derived from the wikipedia tag. The last column is False if there is no DBpedia URI or if
+ * a snapshot of the knowledge graph is given that does not contain the URI, and True otherwise.
+ * As in the existing tsv files, longitude is the first coordinate.
+ * The key-value file contains the tags of the linked nodes, except for the wikidata and wikipedia tags.
+ */
+public class OsmPbfReader {
+
+    public static final String HEADER = "osm_id\tlon\tlat\tname\tname_en\twikidata\twikipedia\tdbpedia\tdbpedia_found";
+
+    private static final List<String> SUPPORTED_FEATURES = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
+    private static final List<String> LINK_KEYS = Arrays.asList("wikidata", "wikipedia");
+
+    /**
+     * Receives the lines of the blobs in the order of the file
+     */
+    public interface Sink {
+        /**
+         * @param records Lines of the OSM tsv file, each ending with a line break
+         * @param tags Lines of the key-value tsv file, each ending with a line break
+         * @throws IOException
+         */
+        void block(String records, String tags) throws IOException;
+    }
+
+    /**
+     * Reads the linked nodes of a PBF file
+     * @param path Path of the PBF file
+     * @param noThreads Number of threads that decode blobs
+     * @param snapshot Snapshot of the knowledge graph that is used to check the DBpedia URIs, may be null
+     * @param sink Receives the lines
+     * @throws IOException
+     */
+    public static void read(String path, int noThreads, KGSnapshot snapshot, Sink sink) throws IOException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(noThreads, r -> {
+            Thread t = new Thread(r, "OsmPbfReader");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<String[]>> pending = new ArrayDeque<>();
+        long blobs = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 20))) {
+            while (true) {
+                int headerLength;
+                try {
+                    headerLength = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] header = new byte[headerLength];
+                in.readFully(header);
+
+                String type = null;
+                int dataSize = 0;
+                ProtoReader h = new ProtoReader(header, 0, headerLength);
+                while (h.next()) {
+                    if (h.field() == 1) type = h.string();
+                    else if (h.field() == 3) dataSize = (int) h.varint();
+                    else h.skip();
+                }
+                byte[] blob = new byte[dataSize];
+                in.readFully(blob);
+                ++blobs;
+
+                if ("OSMHeader".equals(type)) {
+                    checkHeader(decompress(blob));
+                } else if ("OSMData".equals(type)) {
+                    pending.add(executor.submit(() -> decodeBlock(decompress(blob), snapshot)));
+                    //bounds the number of decoded blobs held in memory
+                    if (pending.size() >= 2*noThreads) {
+                        deliver(pending.poll(), sink);
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                deliver(pending.poll(), sink);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.printf("[OsmPbfReader]: Read %d blobs of %s in %.1f s\n", blobs, path, (System.nanoTime()-start) / 1e9);
+    }
+
+    private static void deliver(Future<String[]> block, Sink sink) throws IOException {
+        try {
+            String[] lines = block.get();
+            sink.block(lines[0], lines[1]);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the data of a blob
+     */
+    private static byte[] decompress(byte[] blob) throws IOException {
+        ProtoReader b = new ProtoReader(blob, 0, blob.length);
+        int rawSize = 0;
+        byte[] zlib = null;
+        while (b.next()) {
+            switch (b.field()) {
+                case 1: return b.bytes();
+                case 2: rawSize = (int) b.varint(); break;
+                case 3: zlib = b.bytes(); break;
+                case 4: case 5: case 6: case 7:
+                    throw new IOException("Unsupported blob compression (field "+b.field()+"), only raw and zlib blobs are supported");
+                default: b.skip();
+            }
+        }
+        if (zlib == null) throw new IOException("Blob without data");
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] result = new byte[rawSize];
+            int n = 0;
+            while (n < rawSize && !inflater.finished()) {
+                n += inflater.inflate(result, n, rawSize-n);
+                if (n < rawSize && inflater.needsInput()) throw new IOException("Truncated zlib blob");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void checkHeader(byte[] data) throws IOException {
+        ProtoReader h = new ProtoReader(data, 0, data.length);
+        while (h.next()) {
+            if (h.field() == 4) {
+                String feature = h.string();
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IOException("Unsupported required feature "+feature);
+                }
+            } else {
+                h.skip();
+            }
+        }
+    }
+
+    /**
+     * Decodes a primitive block
+     * @return The lines of the OSM tsv file and of the key-value tsv file
+     */
+    private static String[] decodeBlock(byte[] data, KGSnapshot snapshot) throws IOException {
+        ProtoReader p = new ProtoReader(data, 0, data.length);
+        Block block = new Block(snapshot);
+        List<ProtoReader> groups = new ArrayList<>();
+        //the granularity and the offsets follow the groups
+        while (p.next()) {
+            switch (p.field()) {
+                case 1: block.strings = strings(p.message()); break;
+                case 2: groups.add(p.message()); break;
+                case 17: block.granularity = p.varint(); break;
+                case 19: block.latOffset = p.varint(); break;
+                case 20: block.lonOffset = p.varint(); break;
+                default: p.skip();
+            }
+        }
+
+        for (ProtoReader g: groups) {
+            while (g.next()) {
+                if (g.field() == 1) {
+                    decodeNode(g.message(), block);
+                } else if (g.field() == 2) {
+                    decodeDenseNodes(g.message(), block);
+                } else {
+                    //ways, relations and changesets
+                    g.skip();
+                }
+            }
+        }
+        return new String[]{block.records.toString(), block.tags.toString()};
+    }
+
+    private static String[] strings(ProtoReader table) throws IOException {
+        List<String> result = new ArrayList<>();
+        while (table.next()) {
+            if (table.field() == 1) result.add(table.string());
+            else table.skip();
+        }
+        return result.toArray(new String[0]);
+    }
+
+    private static void decodeNode(ProtoReader n, Block block) throws IOException {
+        long id = 0, lat = 0, lon = 0;
+        List<Integer> keys = new ArrayList<>(), values = new ArrayList<>();
+        while (n.next()) {
+            switch (n.field()) {
+                case 1: id = n.sint64(); break;
+                case 2: for (ProtoReader k = n.message(); k.hasRemaining(); ) keys.add((int) k.varint()); break;
+                case 3: for (ProtoReader v = n.message(); v.hasRemaining(); ) values.add((int) v.varint()); break;
+                case 8: lat = n.sint64(); break;
+                case 9: lon = n.sint64(); break;
+                default: n.skip();
+            }
+        }
+        block.clearTags();
+        for (int i=0; i<keys.size(); ++i) {
+            block.addTag(keys.get(i), values.get(i));
+        }
+        block.node(id, lat, lon);
+    }
+
+    private static void decodeDenseNodes(ProtoReader d, Block block) throws IOException {
+        ProtoReader ids = null, lats = null, lons = null, keysVals = null;
+        while (d.next()) {
+            switch (d.field()) {
+                case 1: ids = d.message(); break;
+                case 8: lats = d.message(); break;
+                case 9: lons = d.message(); break;
+                case 10: keysVals = d.message(); break;
+                default: d.skip();
+            }
+        }
+        if (ids == null) return;
+
+        long id = 0, lat = 0, lon = 0;
+        while (ids.hasRemaining()) {
+            id += ids.sint64();
+            lat += lats.sint64();
+            lon += lons.sint64();
+            block.clearTags();
+            //the tags of a node are delimited by 0
+            while (keysVals != null && keysVals.hasRemaining()) {
+                int key = (int) keysVals.varint();
+                if (key == 0) break;
+                block.addTag(key, (int) keysVals.varint());
+            }
+            block.node(id, lat, lon);
+        }
+    }
+
+    /**
+     * State of a primitive block: the string table, the coordinate transformation, the tags of the current node
+     * and the produced lines
+     */
+    private static class Block {
+        private KGSnapshot snapshot;
+        private String[] strings = new String[0];
+        private long granularity = 100, latOffset = 0, lonOffset = 0;
+        private int[] tagKeys = new int[16], tagValues = new int[16];
+        private int noTags;
+        private StringBuilder records = new StringBuilder(), tags = new StringBuilder();
+
+        private Block(KGSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        private void clearTags() {
+            noTags = 0;
+        }
+
+        private void addTag(int key, int value) {
+            if (noTags == tagKeys.length) {
+                tagKeys = Arrays.copyOf(tagKeys, 2*noTags);
+                tagValues = Arrays.copyOf(tagValues, 2*noTags);
+            }
+            tagKeys[noTags] = key;
+            tagValues[noTags] = value;
+            ++noTags;
+        }
+
+        private String tag(String key) {
+            for (int i=0; i<noTags; ++i) {
+                if (strings[tagKeys[i]].equals(key)) return clean(strings[tagValues[i]]);
+            }
+            return "";
+        }
+
+        private void node(long id, long lat, long lon) {
+            String wikidata = tag("wikidata");
+            String wikipedia = tag("wikipedia");
+            if (wikidata.isEmpty() && wikipedia.isEmpty()) return;
+
+            String dbpedia = dbpediaUri(wikipedia);
+            //the flag is never empty, such that String.split() keeps all columns
+            String found = dbpedia.isEmpty() || (snapshot != null && snapshot.find(dbpedia) < 0) ? "False" : "True";
+            records.append(id).append('\t')
+                    .append(degrees(lonOffset + granularity*lon)).append('\t')
+                    .append(degrees(latOffset + granularity*lat)).append('\t')
+                    .append(tag("name")).append('\t')
+                    .append(tag("name:en")).append('\t')
+                    .append(wikidata).append('\t')
+                    .append(wikipedia).append('\t')
+                    .append(dbpedia).append('\t')
+                    .append(found).append('\n');
+
+            for (int i=0; i<noTags; ++i) {
+                String key = clean(strings[tagKeys[i]]);
+                if (LINK_KEYS.contains(key)) continue;
+                tags.append(id).append('\t').append(key).append('\t').append(clean(strings[tagValues[i]])).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Formats a coordinate given in nanodegrees
+     */
+    private static String degrees(long nano) {
+        return BigDecimal.valueOf(nano, 9).stripTrailingZeros().toPlainString();
+    }
+
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Derives the DBpedia URI from a wikipedia tag, e.g. de:Hannover
+     */
+    static String dbpediaUri(String wikipedia) {
+        int colon = wikipedia.indexOf(':');
+        if (colon <= 0) return "";
+        String language = wikipedia.substring(0, colon);
+        String title = wikipedia.substring(colon+1).trim().replace(' ', '_');
+        if (title.isEmpty()) return "";
+        String host = language.equals("en") ? "dbpedia.org" : language+".dbpedia.org";
+        return "http://"+host+"/resource/"+title;
+    }
+
+    /**
+     * Parses the nodes of a PBF file that link to the current knowledge graph, like Util.parseOSMRecords
+     * @param path Path of the PBF file
+     * @return The OSM nodes
+     * @throws IOException
+     */
+    public static Vector<OSMRecord> parseOSMRecords(String path) throws IOException {
+        KGSnapshot snapshot = Options.getKGSnapshotPath() != null ? KGSnapshot.open(Options.getKGSnapshotPath()) : null;
+        Vector<OSMRecord> records = new Vector<>();
+        read(path, Runtime.getRuntime().availableProcessors(), snapshot, (lines, tags) -> {
+            for (String line: lines.split("\n")) {
+                if (line.isEmpty()) continue;
+                OSMRecord r = Util.parseOSMRecord(line);
+                if (r != null) {
+                    records.add(r);
+                }
+            }
+        });
+        return records;
+    }
+
+    /**
+     * Writes the OSM tsv file and the key-value tsv file of a PBF file.
+     * If a snapshot of a DBpedia knowledge graph is given, the last column states whether the DBpedia URI is in the snapshot.
+     * Usage: OsmPbfReader pbf osm.tsv keyvalue.tsv [snapshot]
+     */
+    public static void main(String[] args) throws IOException {
+        KGSnapshot snapshot = args.length > 3 ? KGSnapshot.open(args[3]) : null;
+        long[] counts = new long[2];
+        try (Writer records = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), StandardCharsets.UTF_8), 1 << 20);
+             Writer tags = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[2]), StandardCharsets.UTF_8), 1 << 20)) {
+            records.write(HEADER+"\n");
+            read(args[0], Runtime.getRuntime().availableProcessors(), snapshot, (r, t) -> {
+                records.write(r);
+                tags.write(t);
+                counts[0] += countLines(r);
+                counts[1] += countLines(t);
+            });
+        }
+        System.out.println("[OsmPbfReader]: "+counts[0]+" linked nodes, "+counts[1]+" tags");
+    }
+
+    private static long countLines(String s) {
+        long result = 0;
+        for (int i=0; i<s.length(); ++i) {
+            if (s.charAt(i) == '\n') ++result;
+        }
+        return result;
+    }
+}
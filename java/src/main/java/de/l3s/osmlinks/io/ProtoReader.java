@@ -0,0 +1,117 @@
+package de.l3s.osmlinks.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class decodes protocol buffer messages field by field, without generated classes.
+ * It only supports the wire types used by the OSM PBF format, i.e. varints, fixed 32 and 64 bit values
+ * and length-delimited fields. Nested messages and packed fields are read by a reader over their bytes.
+ */
+class ProtoReader {
+
+    private static final int VARINT = 0, FIXED64 = 1, LENGTH_DELIMITED = 2, FIXED32 = 5;
+
+    private byte[] data;
+    private int position, limit;
+    private int tag;
+
+    /**
+     * Constructor
+     * @param data Buffer of the message
+     * @param offset Position of the first byte of the message
+     * @param length Number of bytes of the message
+     */
+    ProtoReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset+length;
+    }
+
+    /**
+     * Reads the key of the next field
+     * @return false if the message has no further fields
+     * @throws IOException
+     */
+    boolean next() throws IOException {
+        if (position >= limit) return false;
+        tag = (int) varint();
+        return true;
+    }
+
+    int field() {
+        return tag >>> 3;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    long varint() throws IOException {
+        long result = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            if (position >= limit) throw new IOException("Truncated varint");
+            byte b = data[position++];
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a zigzag encoded varint
+     */
+    long sint64() throws IOException {
+        long v = varint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Returns a reader over the bytes of a length-delimited field, e.g. a nested message or a packed field
+     */
+    ProtoReader message() throws IOException {
+        int length = length();
+        ProtoReader result = new ProtoReader(data, position, length);
+        position += length;
+        return result;
+    }
+
+    byte[] bytes() throws IOException {
+        int length = length();
+        byte[] result = new byte[length];
+        System.arraycopy(data, position, result, 0, length);
+        position += length;
+        return result;
+    }
+
+    String string() throws IOException {
+        int length = length();
+        String result = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return result;
+    }
+
+    private int length() throws IOException {
+        int length = (int) varint();
+        if (length < 0 || position+length > limit) throw new IOException("Truncated field");
+        return length;
+    }
+
+    /**
+     * Skips the value of the current field
+     * @throws IOException
+     */
+    void skip() throws IOException {
+        switch (tag & 7) {
+            case VARINT: varint(); break;
+            case FIXED64: position += 8; break;
+            case LENGTH_DELIMITED:
+                //the length has to be read before position is evaluated
+                int length = length();
+                position += length;
+                break;
+            case FIXED32: position += 4; break;
+            default: throw new IOException("Unsupported wire type "+(tag & 7));
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package de.l3s.osmlinks.io;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * This class stores sparse vectors, e.g. tf-idf vectors over OSM tags, in compressed sparse row format.
+ * The vectors are parsed from a text file with the id in the first column, followed either by all values
+ * or by index:value pairs of the non-zero values. The parsed vectors are written to a binary cache next to
+ * the text file, whose index and value arrays are memory-mapped instead of being held on the heap.
+ */
+public class SparseVectorStore {
+
+    private static final int MAGIC = 0x43535231;
+
+    private Map<String, Integer> rows;
+    private int[] rowOffsets;
+    private IntBuffer indices;
+    private FloatBuffer values;
+    private int dimension;
+
+    private SparseVectorStore(Map<String, Integer> rows, int[] rowOffsets, IntBuffer indices, FloatBuffer values, int dimension) {
+        this.rows = rows;
+        this.rowOffsets = rowOffsets;
+        this.indices = indices;
+        this.values = values;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Loads the vectors. If the binary cache is older than the text file, it is created first.
+     * @param path Path of the text file
+     * @return The vectors
+     * @throws IOException
+     */
+    public static SparseVectorStore load(String path) throws IOException {
+        File text = new File(path);
+        File cache = new File(path+".csr");
+        if (!cache.exists() || cache.lastModified() < text.lastModified()) {
+            System.out.println("[SparseVectorStore]: Creating "+cache.getPath());
+            writeCache(path, cache);
+        }
+        return open(cache);
+    }
+
+    /**
+     * Returns the non-zero values of a vector as space separated index:value pairs
+     * @param id ID of the vector
+     * @return The pairs or null if the id is not contained
+     */
+    public String toSparseString(String id) {
+        Integer row = rows.get(id);
+        if (row == null) return null;
+
+        StringBuilder result = new StringBuilder();
+        for (int i=rowOffsets[row]; i<rowOffsets[row+1]; ++i) {
+            if (result.length() > 0) result.append(' ');
+            result.append(indices.get(i)).append(':').append(values.get(i));
+        }
+        return result.toString();
+    }
+
+    public boolean contains(String id) {
+        return rows.containsKey(id);
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Parses the text file and writes the binary cache, which has the format
+     * magic, number of rows, dimension, number of non-zero values, ids, row offsets, indices, values.
+     */
+    private static void writeCache(String path, File cache) throws IOException {
+        List<Chunk> chunks = TextFileParser.parse(path, Chunk::new, SparseVectorStore::parseLine);
+
+        int rows = 0;
+        long nnz = 0;
+        int dimension = 0;
+        for (Chunk c: chunks) {
+            rows += c.ids.size();
+            nnz += c.size;
+            dimension = Math.max(dimension, c.dimension);
+        }
+        if (nnz > Integer.MAX_VALUE / 4) {
+            throw new IOException("Too many non-zero values in "+path+": "+nnz);
+        }
+
+        File tmp = new File(cache.getPath()+".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(rows);
+            out.writeInt(dimension);
+            out.writeInt((int) nnz);
+            for (Chunk c: chunks) {
+                for (String id: c.ids) {
+                    out.writeUTF(id);
+                }
+            }
+
+            int offset = 0;
+            out.writeInt(offset);
+            for (Chunk c: chunks) {
+                for (int i=0; i<c.ids.size(); ++i) {
+                    offset += c.rowSizes[i];
+                    out.writeInt(offset);
+                }
+            }
+            for (Chunk c: chunks) {
+                for (int i=0; i<c.size; ++i) {
+                    out.writeInt(c.indices[i]);
+                }
+            }
+            for (Chunk c: chunks) {
+                for (int i=0; i<c.size; ++i) {
+                    out.writeFloat(c.values[i]);
+                }
+            }
+        }
+
+        if (cache.exists()) cache.delete();
+        if (!tmp.renameTo(cache)) {
+            throw new IOException("Could not create "+cache.getPath());
+        }
+    }
+
+    private static SparseVectorStore open(File cache) throws IOException {
+        Map<String, Integer> rows = new HashMap<>();
+        int[] rowOffsets;
+        int dimension, nnz;
+        long dataStart;
+
+        try (CountingInputStream count = new CountingInputStream(new BufferedInputStream(new FileInputStream(cache)));
+             DataInputStream in = new DataInputStream(count)) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sparse vector file: "+cache.getPath());
+            }
+            int noRows = in.readInt();
+            dimension = in.readInt();
+            nnz = in.readInt();
+            for (int i=0; i<noRows; ++i) {
+                //later lines replace earlier ones, as in a map
+                rows.put(in.readUTF(), i);
+            }
+            rowOffsets = new int[noRows+1];
+            for (int i=0; i<=noRows; ++i) {
+                rowOffsets[i] = in.readInt();
+            }
+            dataStart = count.getByteCount();
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r"); FileChannel channel = file.getChannel()) {
+            IntBuffer indices = channel.map(FileChannel.MapMode.READ_ONLY, dataStart, 4L*nnz).asIntBuffer();
+            FloatBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, dataStart+4L*nnz, 4L*nnz).asFloatBuffer();
+            return new SparseVectorStore(rows, rowOffsets, indices, values, dimension);
+        }
+    }
+
+    private static void parseLine(ByteBuffer buffer, int start, int end, Chunk chunk) {
+        int pos = TextFileParser.skipWhitespace(buffer, start, end);
+        int idEnd = TextFileParser.nextWhitespace(buffer, pos, end);
+        chunk.ids.add(TextFileParser.string(buffer, pos, idEnd));
+
+        int column = 0;
+        int nonZero = 0;
+        pos = TextFileParser.skipWhitespace(buffer, idEnd, end);
+        while (pos < end) {
+            int tokenEnd = TextFileParser.nextWhitespace(buffer, pos, end);
+            int separator = TextFileParser.indexOf(buffer, pos, tokenEnd, (byte) ':');
+
+            int index;
+            double value;
+            if (separator < tokenEnd) {
+                index = TextFileParser.parseInt(buffer, pos, separator);
+                value = TextFileParser.parseDouble(buffer, separator+1, tokenEnd);
+            } else {
+                index = column;
+                value = TextFileParser.parseDouble(buffer, pos, tokenEnd);
+            }
+            if (value != 0) {
+                chunk.add(index, (float) value);
+                ++nonZero;
+            }
+            chunk.dimension = Math.max(chunk.dimension, index+1);
+
+            ++column;
+            pos = TextFileParser.skipWhitespace(buffer, tokenEnd, end);
+        }
+        chunk.addRow(nonZero);
+    }
+
+    /**
+     * Non-zero values of one chunk of the text file
+     */
+    private static class Chunk {
+        private List<String> ids = new ArrayList<>();
+        private int[] rowSizes = new int[256];
+        private int[] indices = new int[1024];
+        private float[] values = new float[1024];
+        private int size = 0;
+        private int dimension = 0;
+
+        private void add(int index, float value) {
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, indices.length*2);
+                values = Arrays.copyOf(values, values.length*2);
+            }
+            indices[size] = index;
+            values[size] = value;
+            ++size;
+        }
+
+        private void addRow(int nonZero) {
+            //index:value pairs may be given in any order
+            for (int i=size-nonZero+1; i<size; ++i) {
+                int index = indices[i];
+                float value = values[i];
+                int j = i-1;
+                for (; j>=size-nonZero && indices[j] > index; --j) {
+                    indices[j+1] = indices[j];
+                    values[j+1] = values[j];
+                }
+                indices[j+1] = index;
+                values[j+1] = value;
+            }
+
+            int row = ids.size()-1;
+            if (row == rowSizes.length) {
+                rowSizes = Arrays.copyOf(rowSizes, rowSizes.length*2);
+            }
+            rowSizes[row] = nonZero;
+        }
+    }
+}
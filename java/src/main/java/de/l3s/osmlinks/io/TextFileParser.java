@@ -0,0 +1,278 @@
+package de.l3s.osmlinks.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * This class parses large text files in parallel. The file is split into byte ranges that end at line breaks,
+ * each range is memory-mapped and its lines are passed to a handler without creating Strings.
+ */
+public class TextFileParser {
+
+    private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Handler for the lines of a chunk of the file.
+     * @param <T> Type of the state of a chunk, e.g. the parsed values
+     */
+    public interface LineHandler<T> {
+        /**
+         * Handles a single line
+         * @param buffer Buffer of the chunk
+         * @param start Position of the first byte of the line
+         * @param end Position after the last byte of the line, without line break
+         * @param state State of the chunk
+         */
+        void line(ByteBuffer buffer, int start, int end, T state);
+    }
+
+    /**
+     * Parses the file in parallel.
+     * @param path Path to the file
+     * @param stateFactory Creates the state of a chunk
+     * @param handler Handles the lines
+     * @param <T> Type of the state of a chunk
+     * @return The states of all chunks in the order of the file
+     * @throws IOException
+     */
+    public static <T> List<T> parse(String path, Supplier<T> stateFactory, LineHandler<T> handler) throws IOException {
+        long start = System.nanoTime();
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            List<long[]> chunks = split(file, size);
+
+            List<T> result = chunks.stream().parallel().map(chunk -> {
+                T state = stateFactory.get();
+                try {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1]-chunk[0]);
+                    parseChunk(buffer, state, handler);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+                return state;
+            }).collect(Collectors.toList());
+
+            double seconds = (System.nanoTime()-start) / 1e9;
+            double mb = size / (1024d*1024d);
+            System.out.printf("[TextFileParser]: Parsed %.1f MB in %.2f s (%.1f MB/s)\n", mb, seconds, mb/seconds);
+            return result;
+        }
+    }
+
+    /**
+     * Splits the file into chunks of about CHUNK_SIZE bytes that end after a line break.
+     * @return List of [start, end) byte ranges
+     */
+    private static List<long[]> split(RandomAccessFile file, long size) throws IOException {
+        List<long[]> result = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start+CHUNK_SIZE);
+            if (end < size) {
+                file.seek(end);
+                int b;
+                while ((b = file.read()) != -1 && b != '\n') {
+                    ++end;
+                }
+                //include the line break
+                end = Math.min(size, end+1);
+            }
+            result.add(new long[]{start, end});
+            start = end;
+        }
+        return result;
+    }
+
+    private static <T> void parseChunk(ByteBuffer buffer, T state, LineHandler<T> handler) {
+        int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i=0; i<=limit; ++i) {
+            if (i == limit || buffer.get(i) == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && buffer.get(lineEnd-1) == '\r') {
+                    --lineEnd;
+                }
+                if (lineEnd > lineStart) {
+                    handler.line(buffer, lineStart, lineEnd, state);
+                }
+                lineStart = i+1;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the next occurrence of the separator or end
+     */
+    public static int indexOf(ByteBuffer buffer, int start, int end, byte separator) {
+        for (int i=start; i<end; ++i) {
+            if (buffer.get(i) == separator) return i;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the position of the next space or tab or end
+     */
+    public static int nextWhitespace(ByteBuffer buffer, int start, int end) {
+        for (int i=start; i<end; ++i) {
+            byte b = buffer.get(i);
+            if (b == ' ' || b == '\t') return i;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the position of the next character that is neither space nor tab or end
+     */
+    public static int skipWhitespace(ByteBuffer buffer, int start, int end) {
+        for (int i=start; i<end; ++i) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t') return i;
+        }
+        return end;
+    }
+
+    /**
+     * Decodes a range of the buffer as UTF-8 String
+     */
+    public static String string(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end-start];
+        for (int i=start; i<end; ++i) {
+            bytes[i-start] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a range of the buffer as integer
+     */
+    public static int parseInt(ByteBuffer buffer, int start, int end) {
+        boolean negative = false;
+        int i = start;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            ++i;
+        }
+        if (i == end) throw new NumberFormatException(string(buffer, start, end));
+
+        int result = 0;
+        for (; i<end; ++i) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException(string(buffer, start, end));
+            result = result*10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    //powers of ten that are exactly representable as double
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i=1; i<POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+        }
+    }
+
+    /**
+     * Parses a range of the buffer as double. Returns exactly the same value as Double.parseDouble():
+     * if the digits fit into the 53 bit mantissa and the exponent is small enough, a single multiplication
+     * or division by an exact power of ten is correctly rounded. All other numbers are passed to Double.parseDouble().
+     */
+    public static double parseDouble(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+
+        for (; i<end; ++i) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) break;
+            anyDigit = true;
+            if (mantissa == 0 && digit == 0) continue;
+            if (digits < 18) {
+                mantissa = mantissa*10 + digit;
+                ++digits;
+            } else {
+                return Double.parseDouble(string(buffer, start, end));
+            }
+        }
+
+        if (i < end && buffer.get(i) == '.') {
+            ++i;
+            for (; i<end; ++i) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) break;
+                anyDigit = true;
+                if (mantissa == 0 && digit == 0) {
+                    --exponent;
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa*10 + digit;
+                    ++digits;
+                    --exponent;
+                } else {
+                    return Double.parseDouble(string(buffer, start, end));
+                }
+            }
+        }
+
+        if (!anyDigit) {
+            //nan, inf, ...
+            return Double.parseDouble(string(buffer, start, end));
+        }
+
+        if (i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                ++i;
+            }
+            int e = 0;
+            int expStart = i;
+            for (; i<end; ++i) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) break;
+                if (e < 100000) e = e*10 + digit;
+            }
+            if (i == expStart) return Double.parseDouble(string(buffer, start, end));
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (i != end) {
+            return Double.parseDouble(string(buffer, start, end));
+        }
+
+        double result;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            if (exponent >= 0) {
+                result = mantissa * POWERS_OF_TEN[exponent];
+            } else {
+                result = mantissa / POWERS_OF_TEN[-exponent];
+            }
+        } else {
+            return Double.parseDouble(string(buffer, start, end));
+        }
+        return negative ? -result : result;
+    }
+}
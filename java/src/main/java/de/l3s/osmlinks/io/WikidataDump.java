@@ -0,0 +1,124 @@
+package de.l3s.osmlinks.io;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class extracts the entities with a coordinate location (P625) on earth from a Wikidata JSON dump,
+ * i.e. a JSON array with one entity per line. For each entity, the labels, the classes of instance of (P31)
+ * as types and the number of statements are extracted. Lines without P625 are skipped without being parsed.
+ */
+public class WikidataDump {
+
+    //languages of the name columns of osmlinks.wikidata
+    public static final List<String> LANGUAGES = Arrays.asList("en", "de", "fr", "it");
+    public static final List<String> NAME_COLUMNS = Arrays.asList("name_en", "name_ger", "name_fr", "name_it");
+
+    private static final String EARTH = "http://www.wikidata.org/entity/Q2";
+
+    /**
+     * Extracts the entities of a dump
+     * @param path Path of the dump, optionally compressed
+     * @param noThreads Number of parsing threads
+     * @param writer Receives the entities
+     * @throws IOException
+     */
+    public static void ingest(String path, int noThreads, KGTableWriter writer) throws IOException {
+        DumpLines.forEach(path, noThreads, line -> {
+            KGEntity e = parse(line);
+            if (e != null) {
+                writer.write(e);
+            }
+        });
+    }
+
+    /**
+     * Parses a line of the dump
+     * @param line The line
+     * @return The entity or null if the line is not an entity with a location on earth
+     * @throws IOException
+     */
+    static KGEntity parse(String line) throws IOException {
+        if (!line.contains("\"P625\"")) return null;
+
+        String json = line.endsWith(",") ? line.substring(0, line.length()-1) : line;
+        JSONObject entity;
+        try {
+            entity = (JSONObject) new JSONParser().parse(json);
+        } catch (ParseException | ClassCastException e) {
+            throw new IOException("Invalid entity: "+line.substring(0, Math.min(100, line.length())));
+        }
+
+        JSONObject claims = (JSONObject) entity.get("claims");
+        if (claims == null || !claims.containsKey("P625")) return null;
+
+        KGEntity result = new KGEntity((String) entity.get("id"), LANGUAGES.size());
+        JSONObject location = coordinate((JSONArray) claims.get("P625"));
+        if (location == null) return null;
+        result.setX(((Number) location.get("longitude")).doubleValue());
+        result.setY(((Number) location.get("latitude")).doubleValue());
+
+        JSONObject labels = (JSONObject) entity.get("labels");
+        if (labels != null) {
+            for (int l=0; l<LANGUAGES.size(); ++l) {
+                JSONObject label = (JSONObject) labels.get(LANGUAGES.get(l));
+                if (label != null) {
+                    result.setName(l, (String) label.get("value"));
+                }
+            }
+        }
+
+        int statements = 0;
+        for (Object property: claims.values()) {
+            statements += ((JSONArray) property).size();
+        }
+        result.setStatementCount(statements);
+
+        JSONArray instanceOf = (JSONArray) claims.get("P31");
+        if (instanceOf != null) {
+            for (Object statement: instanceOf) {
+                JSONObject value = value((JSONObject) statement);
+                if (value != null && value.get("id") != null) {
+                    result.getTypes().add((String) value.get("id"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the preferred coordinate statement or the first one of normal rank on earth
+     */
+    private static JSONObject coordinate(JSONArray statements) {
+        JSONObject result = null;
+        for (Object o: statements) {
+            JSONObject statement = (JSONObject) o;
+            JSONObject value = value(statement);
+            if (value == null || "deprecated".equals(statement.get("rank"))) continue;
+            if (value.get("globe") != null && !EARTH.equals(value.get("globe"))) continue;
+            if (value.get("latitude") == null || value.get("longitude") == null) continue;
+
+            if ("preferred".equals(statement.get("rank"))) {
+                return value;
+            } else if (result == null) {
+                result = value;
+            }
+        }
+        return result;
+    }
+
+    private static JSONObject value(JSONObject statement) {
+        JSONObject snak = (JSONObject) statement.get("mainsnak");
+        if (snak == null || !"value".equals(snak.get("snaktype"))) return null;
+        Map<?, ?> datavalue = (Map<?, ?>) snak.get("datavalue");
+        if (datavalue == null || !(datavalue.get("value") instanceof JSONObject)) return null;
+        return (JSONObject) datavalue.get("value");
+    }
+}
@@ -0,0 +1,31 @@
+package de.l3s.osmlinks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a blocking query, i.e. the candidates of a group of OSM nodes within a radius
+ */
+@Name("de.l3s.osmlinks.BlockingQuery")
+@Label("Blocking Query")
+@Category({"OSM2KG", "Blocking"})
+@StackTrace(false)
+public class BlockingQueryEvent extends Event {
+
+    @Label("Blocker")
+    public String blocker;
+
+    @Label("Nodes")
+    public int nodes;
+
+    @Label("Candidates")
+    public int candidates;
+
+    @Label("Threshold")
+    @Description("Radius of the query in meters")
+    public double threshold;
+}
@@ -0,0 +1,38 @@
+package de.l3s.osmlinks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a stage of the classification of a fold: writing the node candidate pairs,
+ * running the classifier process, parsing its predictions or classifying the pairs with an exported classifier
+ */
+@Name("de.l3s.osmlinks.Classifier")
+@Label("Classifier Stage")
+@Category({"OSM2KG", "Classifier"})
+@StackTrace(false)
+public class ClassifierEvent extends Event {
+
+    public static final String WRITE = "write";
+    public static final String EXEC = "exec";
+    public static final String PARSE = "parse";
+    public static final String PREDICT = "predict";
+
+    @Label("Stage")
+    @Description("write, exec, parse or predict")
+    public String stage;
+
+    @Label("Classifier")
+    public String classifier;
+
+    @Label("Fold")
+    public int fold;
+
+    @Label("Cores")
+    @Description("Cores of the classifier process, 0 if no process is run")
+    public int cores;
+}
@@ -0,0 +1,34 @@
+package de.l3s.osmlinks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a batch of node candidate pairs, i.e. the blocking and the features of a tile of OSM nodes
+ */
+@Name("de.l3s.osmlinks.FeatureBatch")
+@Label("Feature Batch")
+@Category({"OSM2KG", "Features"})
+@StackTrace(false)
+public class FeatureBatchEvent extends Event {
+
+    @Label("Knowledge Graph")
+    public String kg;
+
+    @Label("Fold")
+    public int fold;
+
+    @Label("Training")
+    @Description("Whether the pairs are training pairs, i.e. the negative candidates are sampled")
+    public boolean train;
+
+    @Label("Nodes")
+    public int nodes;
+
+    @Label("Pairs")
+    public int pairs;
+}
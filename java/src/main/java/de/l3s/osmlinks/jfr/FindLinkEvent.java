@@ -0,0 +1,31 @@
+package de.l3s.osmlinks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of the link of a single OSM node. Only slow links are recorded by default.
+ */
+@Name("de.l3s.osmlinks.FindLink")
+@Label("Find Link")
+@Category({"OSM2KG", "Linking"})
+@StackTrace(false)
+@Threshold("1 ms")
+public class FindLinkEvent extends Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Fold")
+    public int fold;
+
+    @Label("OSM ID")
+    public String osmId;
+
+    @Label("Linked")
+    public boolean linked;
+}
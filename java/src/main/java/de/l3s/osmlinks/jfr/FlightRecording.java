@@ -0,0 +1,53 @@
+package de.l3s.osmlinks.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * This class records a whole run with the Java Flight Recorder, including the events of this package,
+ * e.g. to diagnose a slow run after the fact. The recording uses the settings of the default configuration
+ * of the JDK, which is designed for continuous recordings in production. It is written when it is stopped
+ * or, e.g. after System.exit, when the JVM exits.
+ */
+public class FlightRecording {
+
+    private static Recording recording;
+
+    /**
+     * Starts the recording of the process
+     * @param file File the recording is written to, its directory is created if necessary
+     */
+    public static synchronized void start(File file) {
+        if (recording != null) return;
+        try {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("OSM2KG");
+            recording.setToDisk(true);
+            recording.setDumpOnExit(true);
+            recording.setDestination(file.toPath());
+            recording.start();
+            System.out.println("[FlightRecording]: Recording to "+file);
+        } catch (IOException | ParseException e) {
+            e.printStackTrace();
+            recording = null;
+        }
+    }
+
+    /**
+     * Stops the recording and writes it to its file
+     */
+    public static synchronized void stop() {
+        if (recording == null) return;
+        System.out.println("[FlightRecording]: Writing "+recording.getDestination());
+        recording.stop();
+        recording.close();
+        recording = null;
+    }
+}
@@ -0,0 +1,35 @@
+package de.l3s.osmlinks.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the linking and scoring of the test nodes of a fold
+ */
+@Name("de.l3s.osmlinks.Score")
+@Label("Score")
+@Category({"OSM2KG", "Linking"})
+@StackTrace(false)
+public class ScoreEvent extends Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Fold")
+    public int fold;
+
+    @Label("Nodes")
+    public int nodes;
+
+    @Label("Correct")
+    public int correct;
+
+    @Label("Incorrect")
+    public int incorrect;
+
+    @Label("No Candidate")
+    public int noCandidate;
+}
@@ -3,11 +3,17 @@ package de.l3s.osmlinks.models;
 import de.l3s.osmlinks.ProgressBar;
 import de.l3s.osmlinks.blocking.Candidate;
 import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.Options;
+import de.l3s.osmlinks.store.LinkResultStore;
+import de.l3s.osmlinks.store.RunCheckpoint;
 import org.apache.lucene.queryparser.classic.ParseException;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
@@ -63,6 +69,60 @@ public abstract class AbstractModel {
         trainProgress.stop();
     };
 
+    /**
+     * Returns a fingerprint of all inputs of the model that depend on the OSM node itself.
+     * Used to detect changed nodes in incremental runs.
+     * @param r The OSMRecord
+     * @return The fingerprint
+     */
+    public long recordFingerprint(OSMRecord r) {
+        return r.fingerprint();
+    }
+
+    /**
+     * Returns a fingerprint of the knowledge graph neighbourhood of an OSM node, i.e. of its candidates.
+     * Used to detect nodes whose candidates changed in incremental runs.
+     * @param r The OSMRecord
+     * @return The fingerprint
+     * @throws IOException
+     * @throws SQLException
+     */
+    public long neighbourhoodFingerprint(OSMRecord r) throws IOException, SQLException {
+        return 0;
+    }
+
+    /**
+     * Returns the fingerprints of the knowledge graph neighbourhoods of a batch of OSM nodes,
+     * see neighbourhoodFingerprint()
+     * @param records The OSMRecords
+     * @return The fingerprints by OSM id
+     * @throws IOException
+     * @throws SQLException
+     */
+    public Map<String, Long> neighbourhoodFingerprints(List<OSMRecord> records) throws IOException, SQLException {
+        Map<String, Long> result = new HashMap<>();
+        for (OSMRecord r: records) {
+            result.put(r.getOsmId(), neighbourhoodFingerprint(r));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the directories in which the classifiers of the folds are kept, such that an incremental run can
+     * classify the changed nodes of a fold with the classifier of the previous run instead of training it again
+     * @param directory Directory of the classifiers of the current run
+     * @param previous Directory of the classifiers of the previous run, null if the run is not incremental
+     */
+    public void setClassifierDirectories(File directory, File previous) {
+    }
+
+    /**
+     * Called when all nodes of a fold are linked, such that data of the fold can be released
+     * @param foldNo Number of the fold
+     */
+    public void releaseFold(int foldNo) {
+    }
+
     /**
      * Sets the id of the current experiment
      * @param experimentId
@@ -70,6 +130,38 @@ public abstract class AbstractModel {
     public void setExperimentId(int experimentId) {
     }
 
+    /**
+     * Sets the store in which the links created by findLink are persisted
+     * @param store The store
+     */
+    public void setResultStore(LinkResultStore store) {
+    }
+
+    /**
+     * Sets the checkpoint in which the model persists the intermediate results of the folds,
+     * such that they are reused by train() if the experiment is restarted
+     * @param checkpoint The checkpoint of the model, null to disable checkpointing
+     */
+    public void setCheckpoint(RunCheckpoint checkpoint) {
+    }
+
+    /**
+     * Returns the knowledge graph the model links to
+     * @return The knowledge graph
+     */
+    public Options.KGName getKGName() {
+        return Options.getKGName();
+    }
+
+    /**
+     * Returns the model that computes the features of the model, i.e. the model itself unless several
+     * models share their features, such that the models of a fold are trained after their feature source
+     * @return The model
+     */
+    public AbstractModel getFeatureSource() {
+        return this;
+    }
+
     /**
      * Returns a dummy id for the parameter set
      * @return The dummy id
@@ -0,0 +1,84 @@
+package de.l3s.osmlinks.models;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * This class runs BinaryLinkClassifier.py in serving mode. The process loads a saved classifier once
+ * and answers batches of instances via its standard input and output, such that the classifier does not
+ * need to be loaded for each request. Once the classifier is loaded, the process prints the name of its class.
+ * A batch is sent as a line with the number of instances, followed by the instances in the format of the
+ * test files. The process answers with one line prediction \tab confidence correct \tab confidence incorrect per instance.
+ */
+class ClassifierProcess {
+
+    private Process process;
+    private BufferedWriter input;
+    private BufferedReader output;
+    private String classifierName;
+
+    /**
+     * Starts the process
+     * @param pythonCmd Path to the python interpreter
+     * @param mlModelPath Path to the BinaryLinkClassifier.py file
+     * @param classifierPath Path of the saved classifier
+     * @throws IOException
+     */
+    ClassifierProcess(String pythonCmd, String mlModelPath, String classifierPath) throws IOException {
+        process = new ProcessBuilder().command(pythonCmd, mlModelPath, "--serve", classifierPath)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        classifierName = output.readLine();
+        if (classifierName == null) {
+            throw new IOException("Classifier process terminated");
+        }
+    }
+
+    /**
+     * Classifies a batch of instances
+     * @param lines The instances, in the format of the test files
+     * @return For each instance 1 if it is predicted as correct and 0 otherwise, and the confidence for the correct class
+     * @throws IOException
+     */
+    synchronized double[][] predict(List<String> lines) throws IOException {
+        input.write(lines.size()+"\n");
+        for (String l: lines) {
+            input.write(l);
+            input.write("\n");
+        }
+        input.flush();
+
+        double[][] result = new double[lines.size()][];
+        for (int i=0; i<result.length; ++i) {
+            String line = output.readLine();
+            if (line == null) {
+                throw new IOException("Classifier process terminated");
+            }
+            String[] cols = line.split("\t");
+            result[i] = new double[]{cols[0].equals("correct") ? 1 : 0, Double.parseDouble(cols[1])};
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the classifier class, e.g. RandomForestClassifier
+     */
+    String getClassifierName() {
+        return classifierName;
+    }
+
+    /**
+     * Stops the process
+     */
+    void close() {
+        try {
+            input.close();
+            process.waitFor();
+        } catch (IOException | InterruptedException e) {
+            process.destroy();
+        }
+    }
+}
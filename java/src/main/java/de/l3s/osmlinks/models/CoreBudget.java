@@ -0,0 +1,98 @@
+package de.l3s.osmlinks.models;
+
+import de.l3s.osmlinks.Options;
+
+/**
+ * This class shares the cores of the machine between the classifier processes of the folds that are processed
+ * concurrently. A process is started with the number of cores it may use, which BinaryLinkClassifier.py
+ * receives as --jobs and uses for the hyper parameter search. The cores are returned when the process terminated.
+ * The share of a process is sized from the number of folds that are expected to run concurrently, such that
+ * the first fold does not take the cores of the folds that are started after it.
+ */
+public class CoreBudget {
+
+    private static CoreBudget global;
+
+    private int cores;
+    private int free;
+    private int running;
+    private int concurrentFolds;
+
+    /**
+     * Constructor
+     * @param cores Number of cores shared by the classifier processes
+     */
+    public CoreBudget(int cores) {
+        this.cores = Math.max(1, cores);
+        this.free = this.cores;
+        this.running = 0;
+        this.concurrentFolds = 1;
+    }
+
+    /**
+     * Returns the budget shared by all classifier processes of the process, its size is configured by classifierCores
+     */
+    public static synchronized CoreBudget global() {
+        if (global == null) {
+            global = new CoreBudget(Options.getClassifierCores());
+        }
+        return global;
+    }
+
+    /**
+     * Sets the number of folds that are expected to run concurrently, e.g. the remaining folds of the experiment
+     * limited by the parallelism of the folds
+     * @param folds Number of folds
+     */
+    public synchronized void setConcurrentFolds(int folds) {
+        this.concurrentFolds = Math.max(1, folds);
+    }
+
+    /**
+     * Returns the share of the cores of a process without acquiring them, e.g. the threads of a classifier
+     * that runs in the Java process
+     * @param processes Number of processes of a fold that are started together, see acquire(int)
+     * @return Number of cores
+     */
+    public synchronized int share(int processes) {
+        return Math.max(1, cores / Math.max(running, concurrentFolds * processes));
+    }
+
+    /**
+     * Blocks until a core is free and hands out the cores of a classifier process, i.e. its share of all cores
+     * among the expected processes, but at most the free cores
+     * @return Number of cores
+     * @throws InterruptedException
+     */
+    public synchronized int acquire() throws InterruptedException {
+        return acquire(1);
+    }
+
+    /**
+     * Blocks until a core is free and hands out the cores of a classifier process that is started together with
+     * other processes, e.g. the classifiers that are trained on the same fold, such that the first process
+     * does not take the cores of the others
+     * @param processes Number of processes that are started together
+     * @return Number of cores
+     * @throws InterruptedException
+     */
+    public synchronized int acquire(int processes) throws InterruptedException {
+        while (free == 0) {
+            wait();
+        }
+        ++running;
+        int result = Math.min(free, share(processes));
+        free -= result;
+        return result;
+    }
+
+    /**
+     * Returns the cores of a terminated classifier process
+     * @param n Number of cores handed out by acquire()
+     */
+    public synchronized void release(int n) {
+        free += n;
+        --running;
+        notifyAll();
+    }
+}
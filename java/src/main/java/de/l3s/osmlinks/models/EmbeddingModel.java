@@ -2,22 +2,45 @@ package de.l3s.osmlinks.models;
 
 import de.l3s.osmlinks.*;
 import de.l3s.osmlinks.blocking.AbstractBlocker;
+import de.l3s.osmlinks.blocking.AdaptiveBlocker;
 import de.l3s.osmlinks.blocking.Candidate;
+import de.l3s.osmlinks.blocking.CandidateSampler;
+import de.l3s.osmlinks.blocking.DedupBlocker;
+import de.l3s.osmlinks.blocking.DensityGrid;
 import de.l3s.osmlinks.blocking.GeoBlocker;
-import de.l3s.osmlinks.feature.OneHotEncoder;
-import org.apache.commons.text.similarity.JaroWinklerDistance;
+import de.l3s.osmlinks.blocking.InMemoryBlocker;
+import de.l3s.osmlinks.blocking.SnapshotBlocker;
+import de.l3s.osmlinks.blocking.SpatialPartitioner;
+import de.l3s.osmlinks.feature.*;
+import de.l3s.osmlinks.io.EmbeddingTable;
+import de.l3s.osmlinks.io.KGFeatureParser;
+import de.l3s.osmlinks.io.KGSnapshot;
+import de.l3s.osmlinks.io.SparseVectorStore;
+import de.l3s.osmlinks.jfr.ClassifierEvent;
+import de.l3s.osmlinks.jfr.FeatureBatchEvent;
+import de.l3s.osmlinks.store.LinkResult;
+import de.l3s.osmlinks.store.LinkResultStore;
+import de.l3s.osmlinks.store.RunCheckpoint;
+import ai.onnxruntime.OrtException;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -25,12 +48,24 @@ import java.util.stream.Stream;
  */
 public class EmbeddingModel extends AbstractModel {
 
-    private AbstractBlocker blocker;
+    //distinguishes the runs with retune, such that the parameters are tuned once per run
+    private static final String RUN_TOKEN = Util.getPID()+"-"+System.currentTimeMillis();
+
+    //tables of the OSM side, shared by the models of the same run, e.g. of several knowledge graphs
+    private static final Map<String, WeakReference<Object>> sharedTables = new HashMap<>();
 
-    private Map<String, List<Double>> osmEmbeddings;
-    private Map<String, List<Double>> osmTfIdf;
+    private AbstractBlocker blocker;
+    private Options.KGName kg;
+    private String classifier;
+    //models that share the node candidate pairs, the first one computes them
+    private List<EmbeddingModel> group;
+
+    private EmbeddingTable osmEmbeddings;
+    private EmbeddingTable osmTfIdf;
+    private SparseVectorStore osmSparseTfIdf;
     private Map<String, Integer> KGStatementCount;
     private Map<String, String> KGTypes;
+    private TypeVocabulary typeVocabulary;
 
     private int experimentId;
 
@@ -41,11 +76,24 @@ public class EmbeddingModel extends AbstractModel {
     private AtomicInteger kgNotFoundCounter;
     private double threshold;
     private List<String> features;
+    private FeaturePlan featurePlan;
 
 
-    private int sampleCandidates=10;
-    private Map<Integer, Map<String, List<MLScore>>> foldToMLScore;
+    private CandidateSampler sampler;
+    private Map<Integer, PredictionTable> foldToPredictions;
     private Map<Integer, Integer> foldToNoCandidate;
+    private Map<String, Long> neighbourhoodFingerprints;
+    private LinkResultStore resultStore;
+    private RunCheckpoint checkpoint;
+    //classifiers of the folds, see setClassifierDirectories()
+    private File classifierDirectory;
+    private File previousClassifierDirectory;
+
+    //serving mode, see openServingModel()
+    private OneHotEncoder servingEncoder;
+    private ClassifierProcess classifierProcess;
+    private OnnxClassifier onnxClassifier;
+    private List<String> servingSparseColumns;
 
     //log variables
     private boolean logCandidates;
@@ -73,7 +121,30 @@ public class EmbeddingModel extends AbstractModel {
                           String configPath,  boolean logCandidates,
                           List<String> features,
                           String KGFeaturePath) throws IOException, SQLException {
+        this(Options.getKGName(), osmEmbeddingPath, osmTfIdfPath, KGEmbeddingPath, threshold, mlModelPath, configPath,
+                logCandidates, features, KGFeaturePath);
+    }
 
+    /**
+     * Creates a model that links to a knowledge graph, see above. The OSM embeddings and tf_idf vectors
+     * are shared with the other models of the run.
+     * @param kg The knowledge graph, e.g. one of KGNames
+     * @throws IOException
+     * @throws SQLException
+     */
+    public EmbeddingModel(Options.KGName kg,
+                          String osmEmbeddingPath,
+                          String osmTfIdfPath,
+                          String KGEmbeddingPath,
+                          Double threshold, String mlModelPath,
+                          String configPath,  boolean logCandidates,
+                          List<String> features,
+                          String KGFeaturePath) throws IOException, SQLException {
+
+        this.kg = kg;
+        List<String> classifiers = Options.getClassifiers();
+        this.classifier = classifiers.get(classifiers.size()-1);
+        this.group = new CopyOnWriteArrayList<>(Collections.singletonList(this));
         this.mlModelPath = mlModelPath;
         this.configPath = configPath;
         this.osmEmbeddingPath=osmEmbeddingPath;
@@ -85,11 +156,27 @@ public class EmbeddingModel extends AbstractModel {
         this.noOsmRecords=0;
 
         this.candidateLog=new ConcurrentHashMap<>();
-        this.foldToMLScore=new ConcurrentHashMap();
+        this.foldToPredictions=new ConcurrentHashMap<>();
         this.foldToNoCandidate=new ConcurrentHashMap<>();
-        this.osmEmbeddings = new ConcurrentHashMap<>();
-        this.osmTfIdf = new ConcurrentHashMap<>();
-        this.blocker = new GeoBlocker(threshold);
+        this.neighbourhoodFingerprints=new ConcurrentHashMap<>();
+        double precision = Options.getCoordinatePrecision();
+        if (precision > 0 && Options.getStandInKGPath(kg) == null && Options.getKGSnapshotPath(kg) == null && !Options.localDistance()) {
+            System.out.println("[EmbeddingModel]: coordinatePrecision requires localDistance, only identical coordinates are deduplicated");
+            precision = 0;
+        }
+        //the adaptive radius filters the candidates of its largest radius
+        double queryRadius = Options.adaptiveRadius() ? AdaptiveBlocker.queryRadius() : threshold;
+        //nodes of the same cell share the candidates of a query with a larger threshold
+        double blockingThreshold = queryRadius + DedupBlocker.halo(precision);
+        if (Options.getStandInKGPath(kg) != null) {
+            this.blocker = new InMemoryBlocker(Options.getStandInKGPath(kg), blockingThreshold);
+        } else if (Options.getKGSnapshotPath(kg) != null) {
+            this.blocker = new SnapshotBlocker(KGSnapshot.open(Options.getKGSnapshotPath(kg)), blockingThreshold);
+        } else {
+            this.blocker = new GeoBlocker(kg, blockingThreshold);
+        }
+        this.blocker = new DedupBlocker(blocker, queryRadius, precision);
+        this.sampler = new CandidateSampler(Options.getSamplingStrategy(), Options.getSampleCandidates(), Options.getExperimentSeed());
 
         this.kgNotFoundCounter = new AtomicInteger(0);
 
@@ -98,73 +185,112 @@ public class EmbeddingModel extends AbstractModel {
 
         if (features.contains("osm_embedding")) {
             System.out.println("[EmbeddingModel]: Parsing OSM embeddings...");
-            osmEmbeddings = parseEmbeddings(osmEmbeddingPath);
+            osmEmbeddings = shared(osmEmbeddingPath, EmbeddingTable::parse);
             System.out.println("[EmbeddingModel]: Parsing OSM embeddings... done");
         }
 
         if (features.contains("osm_tf_idf")) {
             System.out.println("[EmbeddingModel]: Parsing OSM tf_idf...");
-            osmTfIdf = parseEmbeddings(osmTfIdfPath);
+            if (Options.sparseTfIdf()) {
+                osmSparseTfIdf = shared(osmTfIdfPath, SparseVectorStore::load);
+            } else {
+                osmTfIdf = shared(osmTfIdfPath, EmbeddingTable::parse);
+            }
             System.out.println("[EmbeddingModel]: Parsing OSM tf_idf... done");
 
         }
 
         if (features.contains("types") || features.contains("statement_count")) {
             System.out.println("[EmbeddingModel]: Parsing types and statement counts... ");
-            parseTypesAndStatementCounts(KGFeaturePath);
+            KGFeatureParser.parse(KGFeaturePath, KGTypes, KGStatementCount);
+            typeVocabulary = new TypeVocabulary(KGTypes);
             System.out.println("[EmbeddingModel]: Parsing types and statement counts... done");
 
         }
 
+        if (Options.adaptiveRadius()) {
+            if (KGTypes.isEmpty() && !Options.getAdaptiveTypeRadius().isEmpty()) {
+                KGFeatureParser.parse(KGFeaturePath, KGTypes, null);
+            }
+            this.blocker = new AdaptiveBlocker(blocker, DensityGrid.loadOrBuild(Options.getDensityGridPath(kg), kg), threshold, KGTypes, kg);
+        }
 
+        this.featurePlan = compileFeaturePlan();
     }
 
     /**
-     * Parses the features for the knowledge graph
-     * @param kgFeaturePath Path to the features fo the knowledge graph
-     * @throws IOException
+     * Creates a model that shares the blocking and the node candidate pairs with another model,
+     * but trains another classifier on them
+     * @param other The model that computes the node candidate pairs
+     * @param classifier Name of the classifier, e.g. rf
      */
-    private void parseTypesAndStatementCounts(String kgFeaturePath) throws IOException {
-        try(Stream<String> inputStream = Files.lines(new File(kgFeaturePath).toPath(), StandardCharsets.UTF_8)) {
-            inputStream.parallel().forEach( line -> {
-                String[] parts = line.split("\t");
-                String id = parts[0];
-                String types = parts[1];
-                int stmtCount = Integer.parseInt(parts[2]);
+    public EmbeddingModel(EmbeddingModel other, String classifier) {
+        this.kg = other.kg;
+        this.classifier = classifier;
+        this.group = other.group;
+        this.mlModelPath = other.mlModelPath;
+        this.configPath = other.configPath;
+        this.osmEmbeddingPath = other.osmEmbeddingPath;
+        this.KGEmbeddingPath = other.KGEmbeddingPath;
+        this.threshold = other.threshold;
+        this.logCandidates = other.logCandidates;
+        this.features = other.features;
+        this.avgNoCandidates=0;
+        this.noOsmRecords=0;
 
-                KGStatementCount.put(id, stmtCount);
-                KGTypes.put(id, types);
-            });
-        }
+        this.candidateLog=new ConcurrentHashMap<>();
+        this.foldToPredictions=new ConcurrentHashMap<>();
+        this.foldToNoCandidate=new ConcurrentHashMap<>();
+        this.neighbourhoodFingerprints=other.neighbourhoodFingerprints;
+
+        this.blocker = other.blocker;
+        this.sampler = other.sampler;
+        this.kgNotFoundCounter = other.kgNotFoundCounter;
+        this.osmEmbeddings = other.osmEmbeddings;
+        this.osmTfIdf = other.osmTfIdf;
+        this.osmSparseTfIdf = other.osmSparseTfIdf;
+        this.KGStatementCount = other.KGStatementCount;
+        this.KGTypes = other.KGTypes;
+        this.typeVocabulary = other.typeVocabulary;
+        this.featurePlan = other.featurePlan;
+
+        group.add(this);
     }
 
-
     /**
-     * Parses embeddings where the id is in the first colum
-     * @param embeddingPath Path of the pretrained embeddings
-     * @return Map with embeddings
+     * Returns the table of a path that is already loaded by another model, or loads it
+     * @param path Path of the table
+     * @param loader Loads the table, e.g. EmbeddingTable::parse
+     * @return The table
      * @throws IOException
      */
-    private Map<String, List<Double>> parseEmbeddings(String embeddingPath) throws IOException {
-        Map<String, List<Double>> result = new ConcurrentHashMap<>();
-
-        try(Stream<String> inputStream = Files.lines(new File(embeddingPath).toPath(), StandardCharsets.US_ASCII)) {
-            inputStream.parallel().forEach( line -> {
-                String[] cols = line.split("\\s+");
-                String id = cols[0];
-                List<Double> vector=new ArrayList<>();
-                for (int i=1; i< cols.length; ++i) {
-                    vector.add(Double.parseDouble(cols[i]));
-                }
-                result.put(id, vector);
-            });
+    @SuppressWarnings("unchecked")
+    private static <T> T shared(String path, TableLoader<T> loader) throws IOException {
+        synchronized (sharedTables) {
+            WeakReference<Object> ref = sharedTables.get(path);
+            Object table = ref == null ? null : ref.get();
+            if (table == null) {
+                table = loader.load(path);
+                sharedTables.put(path, new WeakReference<>(table));
+            } else {
+                System.out.println("[EmbeddingModel]: Sharing "+path+" with the other models");
+            }
+            return (T) table;
         }
+    }
 
-        return result;
+    private interface TableLoader<T> {
+        T load(String path) throws IOException;
     }
 
     /**
-     * Trains the classification model
+     * Trains the classification model and classifies the test data.
+     * If a checkpoint is set, the encoded node candidate pairs and the predictions of the fold are
+     * persisted and reused instead of being computed again.
+     * The models of a group share the node candidate pairs: the first model of the group that trains a fold
+     * computes the pairs once and trains the classifiers of all models of the group on them in parallel.
+     * In an incremental run, the test nodes are classified with the classifier the previous run kept for the fold,
+     * see reclassify().
      * @param train Path to training data
      * @param test Path to test data (not used in the training process)
      * @param foldNo Number of the current fold
@@ -174,196 +300,788 @@ public class EmbeddingModel extends AbstractModel {
     public void train(Vector<OSMRecord> train, Vector<OSMRecord> test, int foldNo, ProgressBar trainProgress) throws IOException {
         currentProgress = trainProgress;
 
-        Map<String, List<MLScore>> mlscores = new ConcurrentHashMap<>();
+        if (foldToPredictions.containsKey(foldNo)) {
+            //classified by another model of the group
+            trainProgress.stepBy(train.size()+test.size());
+            return;
+        }
 
-        List<Instance> featureTrain = BlockAndTransformToFeatureSpace(train, true);
-        List<Instance> featureTest = BlockAndTransformToFeatureSpace(test, false);
+        File predictionFile = predictionFile(foldNo);
+        if (predictionFile != null && predictionFile.exists()) {
+            System.out.println("[EmbeddingModel]: Using predictions of fold "+foldNo+" from "+predictionFile);
+            foldToPredictions.put(foldNo, PredictionTable.parse(predictionFile.getPath()));
+            trainProgress.stepBy(train.size()+test.size());
+            return;
+        }
 
-        System.out.println("Number of kg entries not found: "+kgNotFoundCounter.get());
+        File previous = previousClassifierFile(foldNo);
+        if (previous != null && group.size() == 1) {
+            reclassify(train, test, foldNo, previous, trainProgress);
+            return;
+        }
 
-        if (features.contains("types")) {
-            OneHotEncoder enc = new OneHotEncoder(20);
-            enc.fit(featureTrain, KGTypes);
-            enc.transform(featureTrain, KGTypes );
-            enc.transform(featureTest, KGTypes);
+        //the models of the group that still have to classify the fold
+        List<EmbeddingModel> classified = new ArrayList<>();
+        for (EmbeddingModel m: group) {
+            File f = m.predictionFile(foldNo);
+            if (m == this || (!m.foldToPredictions.containsKey(foldNo) && (f == null || !f.exists()))) {
+                classified.add(m);
+            }
         }
 
+        RunCheckpoint pairs = group.get(0).checkpoint;
+        File trainFile = pairs == null ? tempFile("train", foldNo) : pairs.featureFile(foldNo, "train");
+        File testFile = pairs == null ? tempFile("test", foldNo) : pairs.featureFile(foldNo, "test");
+        String trainDataPath = trainFile.getAbsolutePath();
+        String testDataPath = testFile.getAbsolutePath();
+
+        VectorSource testLines = (widths, width, consumer) -> forEachVector(testFile, widths, width, consumer);
+        FeatureMatrix featureTest = null;
+        List<String> sparseColumns;
+        if (pairs != null && trainFile.exists() && testFile.exists()) {
+            System.out.println("[EmbeddingModel]: Using features of fold "+foldNo+" from "+testFile.getParent());
+            sparseColumns = readSparseColumns(testFile);
+            trainProgress.stepBy(train.size()+test.size());
+        } else {
+            FeatureMatrix featureTrain = BlockAndTransformToFeatureSpace(train, true, foldNo);
+            featureTest = BlockAndTransformToFeatureSpace(test, false, foldNo);
 
-        //pass to ML Model
-        String trainDataPath = writeToFile(featureTrain, "train", foldNo);
-        String testDataPath = writeToFile(featureTest, "test", foldNo);
+            System.out.println("Number of kg entries not found: "+kgNotFoundCounter.get());
 
-        //run MLModel
+            sparseColumns = sparseColumns();
 
-        String command = "python3 "+mlModelPath+" "+trainDataPath+" "+testDataPath+" "+configPath+" "+ experimentId +" "+foldNo;
-        System.out.println("[EmbeddingModel]: Running command "+command);
+            //the types are encoded when the pairs are written
+            OneHotEncoder enc = null;
+            if (features.contains("types")) {
+                enc = new OneHotEncoder(Options.getMaxTypes(), typeVocabulary, Options.sparseTypes());
+                enc.fit(featureTrain);
+                if (Options.sparseTypes()) {
+                    sparseColumns.add(sparseTypeColumn(enc));
+                }
+                for (EmbeddingModel m: classified) {
+                    if (m.classifierDirectory != null) {
+                        File typesFile = m.foldTypesFile(m.classifierDirectory, foldNo);
+                        enc.save(RunCheckpoint.temporary(typesFile).getPath());
+                        RunCheckpoint.complete(typesFile);
+                    }
+                }
+            }
 
-        Process p=null;
-        try {
-            ProcessBuilder pb = new ProcessBuilder().command(Options.getPythonCmd(), mlModelPath, trainDataPath, testDataPath, configPath, ""+ experimentId, ""+foldNo)
-                    .redirectError(ProcessBuilder.Redirect.INHERIT);
-            p= pb.start();
-            int exitval = p.waitFor();
-
-            if (exitval!=0) {
-                System.out.println("Command: "+command);
-                BufferedReader errinput = new BufferedReader(new InputStreamReader(
-                        p.getErrorStream()));
-                errinput.lines().forEach(System.out::println);
-                p.destroy();
+            //pass to ML Model, the test data is classified in memory by the exported classifier of a single model
+            ClassifierEvent event = classifierEvent(foldNo);
+            event.classifier = classified.stream().map(m -> m.classifier).collect(Collectors.joining(","));
+            event.begin();
+            writeToFile(featureTrain, enc, trainFile, sparseColumns);
+            FeatureArena.global().foldCompleted(featureTrain.getBytes()+featureTest.getBytes());
+            featureTrain.close();
+            if (pairs != null || !Options.onnxInference() || classified.size() > 1) {
+                writeToFile(featureTest, enc, testFile, sparseColumns);
+                featureTest.close();
+                featureTest = null;
+            } else {
+                FeatureMatrix matrix = featureTest;
+                OneHotEncoder encoder = enc;
+                testLines = (widths, width, consumer) -> matrix.forEachVector(encoder, widths, width, consumer);
+            }
+            event.stage = ClassifierEvent.WRITE;
+            event.commit();
+        }
+
+        String dataFingerprint = dataFingerprint(train, test);
+        if (classified.size() == 1) {
+            classify(trainDataPath, testDataPath, testLines, sparseColumns, foldNo, dataFingerprint, 1);
+        } else {
+            System.out.println("[EmbeddingModel]: Training "+classified.size()+" classifiers on the pairs of fold "+foldNo);
+            ExecutorService executor = Executors.newFixedThreadPool(classified.size());
+            try {
+                List<Future<?>> results = new ArrayList<>();
+                for (EmbeddingModel m: classified) {
+                    VectorSource lines = testLines;
+                    results.add(executor.submit(() -> {
+                        m.classify(trainDataPath, testDataPath, lines, sparseColumns, foldNo, dataFingerprint, classified.size());
+                        return null;
+                    }));
+                }
+                for (Future<?> result: results) {
+                    result.get();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
                 System.exit(5);
+            } finally {
+                executor.shutdown();
             }
+        }
+        if (featureTest != null) {
+            featureTest.close();
+        }
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            p.destroy();
+        if (pairs == null) {
+            //delete files
+            new File(trainDataPath).delete();
+            new File(testDataPath).delete();
+            new File(trainDataPath+".meta").delete();
+            new File(testDataPath+".meta").delete();
         }
+    }
 
+    /**
+     * Trains the classifier of the model on the pairs of a fold and classifies the test pairs
+     * @param trainDataPath Path to the training pairs
+     * @param testDataPath Path to the test pairs
+     * @param testLines Test pairs
+     * @param sparseColumns Descriptions of the sparse columns
+     * @param foldNo Number of the current fold
+     * @param dataFingerprint Fingerprint of the nodes, see dataFingerprint()
+     * @param processes Number of classifiers that are trained together, see CoreBudget
+     * @throws IOException
+     */
+    private void classify(String trainDataPath, String testDataPath, VectorSource testLines, List<String> sparseColumns,
+                          int foldNo, String dataFingerprint, int processes) throws IOException {
+        PredictionTable predictions;
+        String tuningKey = tuningKey(dataFingerprint);
+        if (Options.onnxInference()) {
+            String onnxPath = tempFile("classifier_"+classifier+"_", foldNo).getAbsolutePath()+".onnx";
+            runClassifier("--export", onnxPath, trainDataPath, tuningKey, processes, foldNo);
+            ClassifierEvent event = classifierEvent(foldNo);
+            event.begin();
+            predictions = predictFold(onnxPath, testLines, sparseColumns, foldNo, processes);
+            event.stage = ClassifierEvent.PREDICT;
+            event.commit();
+            if (classifierDirectory != null) {
+                Files.move(Paths.get(onnxPath), foldClassifierFile(classifierDirectory, foldNo).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                new File(onnxPath).delete();
+            }
+        } else {
+            //run MLModel
+            String predictionPath = testDataPath+"_pred_"+classifier;
+            List<String> cmd = new ArrayList<>(Arrays.asList(Options.getPythonCmd(), mlModelPath, trainDataPath, testDataPath, configPath, ""+ experimentId, ""+foldNo,
+                    "--predictions", predictionPath));
+            File kept = classifierDirectory == null ? null : foldClassifierFile(classifierDirectory, foldNo);
+            if (kept != null) {
+                cmd.add("--keep");
+                cmd.add(RunCheckpoint.temporary(kept).getAbsolutePath());
+            }
 
-        //parse ML results
-        BufferedReader clfOut = new BufferedReader(new FileReader(testDataPath+"_pred"));
-        clfOut.lines().forEach(s -> {
-            String[] cols = s.split("\t");
+            Process p=null;
+            int jobs = 0;
+            ClassifierEvent event = classifierEvent(foldNo);
+            try {
+                jobs = CoreBudget.global().acquire(processes);
+                cmd.addAll(classifierOptions(jobs, tuningKey));
+                String command = String.join(" ", cmd);
+                System.out.println("[EmbeddingModel]: Running command "+command);
+
+                event.begin();
+                ProcessBuilder pb = new ProcessBuilder().command(cmd)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT);
+                p= pb.start();
+                int exitval = p.waitFor();
+                event.stage = ClassifierEvent.EXEC;
+                event.cores = jobs;
+                event.commit();
+
+                //the error stream of the process is inherited, i.e. already printed
+                if (exitval!=0) {
+                    System.out.println("[EmbeddingModel]: Classifier failed with exit code "+exitval+": "+command);
+                    System.exit(5);
+                }
 
-            String osmID = cols[0];
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                if (p != null) p.destroy();
+                System.exit(5);
+            } finally {
+                if (jobs > 0) CoreBudget.global().release(jobs);
+            }
 
-            if (!mlscores.containsKey(osmID)) {
-                mlscores.put(osmID, new ArrayList<>());
+            if (kept != null) {
+                RunCheckpoint.complete(kept);
             }
 
-            MLScore msc = new MLScore(cols[1], cols[2].equals("correct"), Double.parseDouble(cols[3]), Double.parseDouble(cols[4]));
-            mlscores.get(osmID).add(msc);
-        });
+            //parse ML results
+            event = classifierEvent(foldNo);
+            event.begin();
+            predictions = PredictionTable.parse(predictionPath);
+            event.stage = ClassifierEvent.PARSE;
+            event.commit();
 
-        foldToMLScore.put(foldNo, mlscores);
+            new File(predictionPath).delete();
+        }
 
-        p.destroy();
+        File predictionFile = predictionFile(foldNo);
+        if (predictionFile != null) {
+            predictions.write(RunCheckpoint.temporary(predictionFile).getPath());
+            RunCheckpoint.complete(predictionFile);
+        }
+        foldToPredictions.put(foldNo, predictions);
+    }
 
-        //delete files
-        new File(trainDataPath).delete();
-        new File(testDataPath).delete();
-        new File(testDataPath+"_pred").delete();
+    /**
+     * Creates the flight recorder event of a stage of the classifier of the model
+     * @param foldNo Number of the fold
+     * @return The event, its stage is set when it is committed
+     */
+    private ClassifierEvent classifierEvent(int foldNo) {
+        ClassifierEvent event = new ClassifierEvent();
+        event.classifier = classifier;
+        event.fold = foldNo;
+        return event;
     }
 
     /**
-     * Write test and train data to a file that is read by the classifcation mopdel
-     * @param instances List of instances
-     * @param part Distinguishes test and train data
-     * @param foldNo Number of the current fold
-     * @return Name of the file
+     * Returns the file of the checkpoint in which the predictions of a fold are stored, null if no checkpoint is set
+     */
+    private File predictionFile(int foldNo) {
+        return checkpoint == null ? null : checkpoint.classifierFile(foldNo, "predictions");
+    }
+
+    /**
+     * Returns the file in which the classifier of a fold is kept, see setClassifierDirectories()
+     * @param directory Directory of the classifiers of a run
+     * @param foldNo Number of the fold
+     */
+    private File foldClassifierFile(File directory, int foldNo) {
+        return new File(directory, classifier+"_fold"+foldNo+(Options.onnxInference() ? ".onnx" : ".pkl"));
+    }
+
+    /**
+     * Returns the file in which the encoding of the types of the classifier of a fold is kept
+     * @param directory Directory of the classifiers of a run
+     * @param foldNo Number of the fold
+     */
+    private File foldTypesFile(File directory, int foldNo) {
+        return new File(directory, classifier+"_fold"+foldNo+"_types.txt");
+    }
+
+    /**
+     * Returns the classifier the previous run kept for a fold, null if the run is not incremental
+     * or the previous run did not keep the classifier of the fold
+     * @param foldNo Number of the fold
+     */
+    private File previousClassifierFile(int foldNo) {
+        if (previousClassifierDirectory == null) return null;
+
+        File result = foldClassifierFile(previousClassifierDirectory, foldNo);
+        if (!result.exists() || (features.contains("types") && !foldTypesFile(previousClassifierDirectory, foldNo).exists())) {
+            System.out.println("[EmbeddingModel]: No classifier of fold "+foldNo+" in "+previousClassifierDirectory+", training it again");
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Classifies the test nodes of a fold of an incremental run with the classifier that the previous run kept
+     * for the fold. Only the test nodes, i.e. the changed nodes of the fold, are blocked and transformed to the
+     * feature space. The training nodes are not blocked and the classifier is not trained again, such that changes
+     * of the training nodes are only considered by the next run that is not incremental.
+     * @param train Training nodes
+     * @param test Test nodes
+     * @param foldNo Number of the fold
+     * @param classifierFile The classifier of the previous run
+     * @param trainProgress Progressbar that reflects the current trainProgress
      * @throws IOException
      */
-    private String writeToFile(List<Instance> instances, String part, int foldNo) throws IOException {
-        File directory = new File("testTrain");
-        if (! directory.exists()){
-            directory.mkdir();
+    private void reclassify(Vector<OSMRecord> train, Vector<OSMRecord> test, int foldNo, File classifierFile,
+                            ProgressBar trainProgress) throws IOException {
+        System.out.println("[EmbeddingModel]: Classifying "+test.size()+" nodes of fold "+foldNo+" with "+classifierFile);
+        trainProgress.stepBy(train.size());
+
+        FeatureMatrix featureTest = BlockAndTransformToFeatureSpace(test, false, foldNo);
+        List<String> sparseColumns = sparseColumns();
+        File typesFile = foldTypesFile(previousClassifierDirectory, foldNo);
+        OneHotEncoder enc = null;
+        if (features.contains("types")) {
+            enc = OneHotEncoder.load(typesFile.getPath(), typeVocabulary, Options.sparseTypes());
+            if (Options.sparseTypes()) {
+                sparseColumns.add(sparseTypeColumn(enc));
+            }
         }
 
+        ClassifierEvent event = classifierEvent(foldNo);
+        event.begin();
+        PredictionTable predictions;
+        if (Options.onnxInference()) {
+            OneHotEncoder encoder = enc;
+            predictions = predictFold(classifierFile.getPath(),
+                    (widths, width, consumer) -> featureTest.forEachVector(encoder, widths, width, consumer),
+                    sparseColumns, foldNo, 1);
+        } else {
+            predictions = serveFold(classifierFile, featureTest, enc, foldNo);
+        }
+        event.stage = ClassifierEvent.PREDICT;
+        event.commit();
+        FeatureArena.global().foldCompleted(featureTest.getBytes());
+        featureTest.close();
+
+        //the classifier is kept for the next incremental run
+        if (classifierDirectory != null
+                && !classifierDirectory.getAbsoluteFile().equals(previousClassifierDirectory.getAbsoluteFile())) {
+            Files.copy(classifierFile.toPath(), foldClassifierFile(classifierDirectory, foldNo).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            if (enc != null) {
+                Files.copy(typesFile.toPath(), foldTypesFile(classifierDirectory, foldNo).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        foldToPredictions.put(foldNo, predictions);
+    }
 
-        String fName = "testTrain/"+ Util.getPID()+part+foldNo;
+    /**
+     * Classifies the test pairs of a fold with a classifier saved by BinaryLinkClassifier.py
+     * and stores the classification scores in the database.
+     * The pairs are passed to the classifier process in chunks of inferenceBatchSize pairs.
+     * @param classifierFile The saved classifier
+     * @param test Test pairs
+     * @param encoder Encoder of the types, null if the types are not considered
+     * @param foldNo Number of the current fold
+     * @return The predictions
+     * @throws IOException
+     */
+    private PredictionTable serveFold(File classifierFile, FeatureMatrix test, OneHotEncoder encoder, int foldNo) throws IOException {
+        ClassifierProcess process = new ClassifierProcess(Options.getPythonCmd(), mlModelPath, classifierFile.getAbsolutePath());
+        try {
+            List<String> osmIds = new ArrayList<>();
+            List<String> kgIds = new ArrayList<>();
+            BitSet correct = new BitSet();
+            boolean[] predictions = new boolean[test.size()];
+            float[] confCorrect = new float[test.size()];
+            List<String> chunk = new ArrayList<>();
+            test.forEachLine(encoder, line -> {
+                String[] cols = line.split("\t", 4);
+                correct.set(osmIds.size(), cols[2].equals("correct"));
+                osmIds.add(cols[0]);
+                kgIds.add(cols[1]);
+                chunk.add(line);
+                if (chunk.size() >= Options.getInferenceBatchSize()) {
+                    serveChunk(process, chunk, osmIds.size(), predictions, confCorrect);
+                }
+            });
+            serveChunk(process, chunk, osmIds.size(), predictions, confCorrect);
 
-        List<String> lines = new ArrayList<>();
+            saveClassificationScores(correct, predictions, osmIds.size(), foldNo, process.getClassifierName());
+            return PredictionTable.of(osmIds, kgIds, predictions, confCorrect);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.exit(5);
+            return null;
+        } finally {
+            process.close();
+        }
+    }
 
+    /**
+     * Classifies a chunk of pairs with a classifier process and empties the chunk
+     * @param process The classifier process
+     * @param chunk The pairs, in the format of the test files
+     * @param end Position after the last pair of the chunk in predictions and confCorrect
+     * @param predictions Receives for each pair whether it is predicted as correct
+     * @param confCorrect Receives for each pair the confidence for the correct class
+     * @throws IOException
+     */
+    private static void serveChunk(ClassifierProcess process, List<String> chunk, int end,
+                                   boolean[] predictions, float[] confCorrect) throws IOException {
+        if (chunk.isEmpty()) return;
+
+        double[][] result = process.predict(chunk);
+        int offset = end-chunk.size();
+        for (int i=0; i<result.length; ++i) {
+            predictions[offset+i] = result[i][0] > 0;
+            confCorrect[offset+i] = (float) result[i][1];
+        }
+        chunk.clear();
+    }
 
-        for (Instance i: instances) {
-                List<String> cols = new ArrayList<>();
-                cols.add(i.osmID);
-                cols.add(i.kgID);
-                cols.add(i.label);
-                for (String val: i.features) {
-                    cols.add(""+val);
-                }
-                lines.add(String.join("\t", cols));
+    /**
+     * Runs BinaryLinkClassifier.py to train a classifier on the given data and save it
+     * @param mode --save to pickle the classifier, --export to export it in the ONNX format
+     * @param classifierPath Path of the saved classifier
+     * @param trainDataPath Path to the training data
+     * @param tuningKey Key of the hyper parameters, see tuningKey()
+     * @param processes Number of classifiers that are trained together, see CoreBudget
+     * @param foldNo Number of the fold, only used for the flight recorder
+     */
+    private void runClassifier(String mode, String classifierPath, String trainDataPath, String tuningKey, int processes, int foldNo) {
+        int jobs = 0;
+        try {
+            jobs = CoreBudget.global().acquire(processes);
+            List<String> cmd = new ArrayList<>(Arrays.asList(Options.getPythonCmd(), mlModelPath, mode,
+                    classifierPath, trainDataPath, configPath));
+            cmd.addAll(classifierOptions(jobs, tuningKey));
+            ClassifierEvent event = classifierEvent(foldNo);
+            event.begin();
+            Process p = new ProcessBuilder().command(cmd)
+                    .inheritIO().start();
+            if (p.waitFor() != 0) {
+                System.out.println("[EmbeddingModel]: Could not train the classifier");
+                System.exit(5);
+            }
+            event.stage = ClassifierEvent.EXEC;
+            event.cores = jobs;
+            event.commit();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(5);
+        } finally {
+            if (jobs > 0) CoreBudget.global().release(jobs);
+        }
+    }
+
+    /**
+     * Returns the options of BinaryLinkClassifier.py for the classifier of the model, the number of cores
+     * of the process and the tuning cache
+     * @param jobs Number of cores, see CoreBudget
+     * @param tuningKey Key of the hyper parameters, see tuningKey()
+     * @return The options
+     */
+    private List<String> classifierOptions(int jobs, String tuningKey) {
+        List<String> result = new ArrayList<>(Arrays.asList("--classifier", classifier, "--jobs", ""+jobs));
+        if (Options.getTuningCachePath() != null) {
+            new File(Options.getTuningCachePath()).mkdirs();
+            result.add("--tuning");
+            result.add(new File(Options.getTuningCachePath(), tuningKey+".json").getAbsolutePath());
+            if (Options.retune()) {
+                result.add("--retune");
+                result.add(RUN_TOKEN);
             }
+        }
+        return result;
+    }
 
-        Path textFile = Paths.get(fName);
-         Files.write(textFile, lines, StandardCharsets.UTF_8);
+    /**
+     * Returns the key under which the hyper parameters found by the search are cached, i.e. a fingerprint
+     * of the classifier, the features, the knowledge graph, th_block and the nodes.
+     * @param dataFingerprint Fingerprint of the nodes, see dataFingerprint()
+     * @return The key as hex string
+     */
+    private String tuningKey(String dataFingerprint) {
+        return Long.toHexString(Util.fingerprint(classifier, String.join(",", features), kg.toString(),
+                ""+threshold, dataFingerprint));
+    }
 
-        File f = new File(fName);
-        switch (part) {
-            case "train":
-                fName=f.getAbsolutePath();
-                break;
-            case "test":
-                fName=f.getAbsolutePath();
-                break;
+    /**
+     * Returns the fingerprint of the nodes of a fold. The training and test nodes of a fold together
+     * are the nodes of the experiment, such that all folds share the fingerprint.
+     * @param train Training nodes
+     * @param test Test nodes
+     * @return The fingerprint as hex string
+     */
+    private static String dataFingerprint(Vector<OSMRecord> train, Vector<OSMRecord> test) {
+        long data = 0;
+        for (OSMRecord r: train) {
+            data += r.fingerprint();
+        }
+        for (OSMRecord r: test) {
+            data += r.fingerprint();
         }
+        return Long.toHexString(data);
+    }
 
-        return fName;
+    /**
+     * Classifies the test set of a fold with an exported classifier
+     * and stores the classification scores in the database.
+     * The test pairs are read as feature vectors and classified in chunks, such that only one chunk is held on the heap.
+     * The classifier is run with the share of the cores of the fold, see CoreBudget.
+     * @param onnxPath Path of the exported classifier
+     * @param test Test pairs
+     * @param sparseColumns Descriptions of the sparse columns
+     * @param foldNo Number of the current fold
+     * @param processes Number of classifiers that classify the fold together, see CoreBudget
+     * @return The predictions
+     */
+    private PredictionTable predictFold(String onnxPath, VectorSource test, List<String> sparseColumns, int foldNo, int processes) {
+        OnnxClassifier classifier = null;
+        int threads = 0;
+        try {
+            threads = CoreBudget.global().acquire(processes);
+            classifier = new OnnxClassifier(onnxPath, Options.getInferenceBatchSize(), threads);
+            FoldPredictions result = new FoldPredictions(classifier, Options.getInferenceBatchSize() * threads);
+            test.forEach(sparseWidths(sparseColumns), classifier.getNoFeatures(), result::add);
+            result.flush();
+
+            saveClassificationScores(result.correct, result.predictions, result.osmIds.size(), foldNo, classifier.getClassifierName());
+            return PredictionTable.of(result.osmIds, result.kgIds, result.predictions, result.confCorrect);
+        } catch (OrtException | SQLException | IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(5);
+            return null;
+        } finally {
+            if (classifier != null) {
+                classifier.close();
+            }
+            if (threads > 0) {
+                CoreBudget.global().release(threads);
+            }
+        }
     }
 
     /**
-     * Computes the features for a node candidate pair
-     * @param c Current candidate
-     * @param r Current node
-     * @return Feature representation for the current pair.
+     * Classifies instances with an exported classifier.
+     * The sparse columns are expanded, such that the columns match the columns of the training data.
+     * @param classifier The classifier
+     * @param instances The instances
+     * @param sparseColumns Descriptions of the sparse columns
+     * @param predictions Receives for each instance whether it is predicted as correct
+     * @param confCorrect Receives for each instance the confidence for the correct class
+     * @param offset Position of the first instance in predictions and confCorrect
+     * @throws OrtException
      */
-    private Instance computeFeatures(Candidate c, OSMRecord r) {
-        List<String> featuresValues = new ArrayList<>();
+    private static void predict(OnnxClassifier classifier, List<Instance> instances, List<String> sparseColumns,
+                                boolean[] predictions, float[] confCorrect, int offset) throws OrtException {
+        if (instances.isEmpty()) return;
+
+        int[] widths = sparseWidths(sparseColumns);
+        int noFeatures = instances.get(0).features.size();
+        for (int w: widths) {
+            noFeatures += w;
+        }
+        if (noFeatures != classifier.getNoFeatures()) {
+            System.out.println("[EmbeddingModel]: The classifier expects "+classifier.getNoFeatures()+" features, but got "+noFeatures);
+            System.exit(5);
+        }
 
-        
+        boolean[] chunkPredictions = new boolean[instances.size()];
+        float[] chunkConfCorrect = new float[instances.size()];
+        classifier.predict((row, target, start) -> {
+            Instance i = instances.get(row);
+            int col = start;
+            for (String val: i.features) {
+                target[col++] = Float.parseFloat(val);
+            }
+            for (int s=0; s<widths.length; ++s) {
+                String val = i.sparseFeatures.get(s);
+                if (!val.isEmpty()) {
+                    for (String pair: val.split(" ")) {
+                        int sep = pair.indexOf(':');
+                        target[col+Integer.parseInt(pair.substring(0, sep))] = Float.parseFloat(pair.substring(sep+1));
+                    }
+                }
+                col += widths[s];
+            }
+        }, instances.size(), chunkPredictions, chunkConfCorrect);
 
-        if (features.contains("types")) {
-            String types=null;
-            if (KGTypes.get(c.getId())==null) {
-                types="";
-            } else {
-                types=KGTypes.get(c.getId());
+        System.arraycopy(chunkPredictions, 0, predictions, offset, instances.size());
+        System.arraycopy(chunkConfCorrect, 0, confCorrect, offset, instances.size());
+    }
+
+    /**
+     * Computes scores for the prediction performance (not link discovery performance) and stores
+     * them in the database, in the same way as BinaryLinkClassifier.py does for its predictions.
+     * @param correct For each instance whether its label is correct
+     * @param predictions For each instance whether it is predicted as correct
+     * @param n Number of instances
+     * @param foldNo Number of the current fold
+     * @param classifier Name of the classifier
+     * @throws SQLException
+     */
+    private void saveClassificationScores(BitSet correct, boolean[] predictions, int n, int foldNo, String classifier) throws SQLException {
+        if (n == 0) return;
+
+        //rows: actual class, columns: predicted class, in the order correct, incorrect
+        long[][] confusion = new long[2][2];
+        for (int i=0; i<n; ++i) {
+            ++confusion[correct.get(i) ? 0 : 1][predictions[i] ? 0 : 1];
+        }
+
+        double[] prec = new double[2];
+        double[] recall = new double[2];
+        double[] f1 = new double[2];
+        for (int c=0; c<2; ++c) {
+            long predicted = confusion[0][c]+confusion[1][c];
+            long actual = confusion[c][0]+confusion[c][1];
+            prec[c] = predicted == 0 ? 0 : (double) confusion[c][c] / predicted;
+            recall[c] = actual == 0 ? 0 : (double) confusion[c][c] / actual;
+            f1[c] = prec[c]+recall[c] == 0 ? 0 : 2*prec[c]*recall[c] / (prec[c]+recall[c]);
+        }
+        //for two classes, the micro averages equal the accuracy
+        double acc = (double) (confusion[0][0]+confusion[1][1]) / n;
+
+        String tuple = "(";
+        tuple+=experimentId+",";
+        tuple+=foldNo+",";
+        tuple+="'"+classifier+"',";
+        tuple+=prec[0]+","+prec[1]+","+acc+","+(prec[0]+prec[1])/2+",";
+        tuple+=recall[0]+","+recall[1]+","+acc+","+(recall[0]+recall[1])/2+",";
+        tuple+=f1[0]+","+f1[1]+","+acc+","+(f1[0]+f1[1])/2+",";
+        tuple+=acc+",";
+        tuple+="'"+confusionMatrixToString(confusion)+"'";
+        tuple+=")";
+
+        PostGreDB db = new PostGreDB(Options.dbHost(), Options.dbName(), Options.dbUser(), Options.dbPassword(), 1);
+        Connection con = db.getConnection();
+        Statement stmt = con.createStatement();
+        stmt.execute("INSERT INTO osmlinks.classification_results VALUES "+tuple);
+        stmt.close();
+        con.close();
+        db.close();
+    }
+
+    /**
+     * Formats a confusion matrix like numpy, e.g. [[12  3]\n [ 4 20]]
+     */
+    private static String confusionMatrixToString(long[][] confusion) {
+        int width = 1;
+        for (long[] row: confusion) {
+            for (long v: row) {
+                width = Math.max(width, Long.toString(v).length());
             }
-            featuresValues.add(types);
         }
+        String format = "%"+width+"d %"+width+"d";
+        return "[["+String.format(format, confusion[0][0], confusion[0][1])+"]\n ["
+                +String.format(format, confusion[1][0], confusion[1][1])+"]]";
+    }
 
-        if (features.contains("distance")) {
-            featuresValues.add(""+c.getGeoDistance());
+    /**
+     * Returns a file in the directory of the temporary files that are read by the classification model
+     * @param part Distinguishes test and train data
+     * @param foldNo Number of the current fold
+     * @return The file
+     */
+    private static File tempFile(String part, int foldNo) {
+        File directory = new File("testTrain");
+        if (! directory.exists()){
+            directory.mkdir();
         }
+        return new File("testTrain/"+ Util.getPID()+part+foldNo);
+    }
 
-        if (features.contains("lgd_distance")) {
-            double d = 1.0 / (1.0 + Math.exp(-12.0 * (1.0-c.getGeoDistance()/threshold)+6));
-            featuresValues.add(""+d);
+    /**
+     * Write test and train data to a file that is read by the classifcation mopdel.
+     * Sparse columns follow the dense features and are described in an additional file with the suffix .meta.
+     * The data is written to a temporary file first, such that the file is only present once it is complete.
+     * @param instances The node candidate pairs
+     * @param encoder Encoder of the types, null if the types are not considered
+     * @param file The file
+     * @param sparseColumns Descriptions of the sparse columns
+     * @throws IOException
+     */
+    private static void writeToFile(FeatureMatrix instances, OneHotEncoder encoder, File file, List<String> sparseColumns) throws IOException {
+        if (!sparseColumns.isEmpty()) {
+            Files.write(Paths.get(file.getPath()+".meta"), sparseColumns, StandardCharsets.UTF_8);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(RunCheckpoint.temporary(file).toPath(), StandardCharsets.UTF_8)) {
+            instances.forEachLine(encoder, line -> {
+                out.write(line);
+                out.newLine();
+            });
         }
+        RunCheckpoint.complete(file);
+    }
 
-        if (features.contains("name")) {
-            if (r.getName() == null || c.getName() == null) {
-                featuresValues.add(""+0);
-            } else {
-                JaroWinklerDistance dist = new JaroWinklerDistance();
-                featuresValues.add(""+dist.apply(r.getName(), c.getName()));
+    /**
+     * Passes the lines of a file written by writeToFile()
+     */
+    private static void forEachLine(File file, FeatureMatrix.LineConsumer consumer) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String line; (line = in.readLine()) != null; ) {
+                consumer.accept(line);
             }
+        }
+    }
 
+    /**
+     * Passes the lines of a file written by writeToFile() as feature vectors
+     * @param file The file
+     * @param sparseWidths Number of dimensions of each sparse column
+     * @param width Number of features of a vector
+     * @param consumer Receives the vectors
+     * @throws IOException
+     */
+    private static void forEachVector(File file, int[] sparseWidths, int width, FeatureMatrix.VectorConsumer consumer) throws IOException {
+        float[] vector = new float[width];
+        forEachLine(file, line -> FeatureMatrix.parseLine(line, sparseWidths, vector, consumer));
+    }
+
+    /**
+     * Returns the number of dimensions of each sparse column
+     * @param sparseColumns Descriptions of the sparse columns, see sparseColumns()
+     */
+    private static int[] sparseWidths(List<String> sparseColumns) {
+        int[] result = new int[sparseColumns.size()];
+        for (int s=0; s<result.length; ++s) {
+            result[s] = Integer.parseInt(sparseColumns.get(s).split("\t")[1]);
         }
+        return result;
+    }
 
-        if (features.contains("osm_embedding")) {
-            List<Double> osmFeatures = osmEmbeddings.get(r.getOsmId());
-            if (Options.debug && osmFeatures == null) {
-                osmFeatures = Util.getDummyEmbedding(19);
-            } else if (osmFeatures == null) {
-                System.err.println("Null Feature for OSM encountered: "+r.getOsmId());
-                System.exit(2);
-            }
-            featuresValues.addAll(Util.listDoubleToString(osmFeatures));
+    /**
+     * Reads the descriptions of the sparse columns of a file written by writeToFile()
+     */
+    private static List<String> readSparseColumns(File file) throws IOException {
+        File meta = new File(file.getPath()+".meta");
+        return meta.exists() ? Files.readAllLines(meta.toPath(), StandardCharsets.UTF_8) : new ArrayList<>();
+    }
+
+    /**
+     * Formats an instance as line of the files that are read by the classification model
+     * @param i The instance
+     * @return The line
+     */
+    private static String toLine(Instance i) {
+        List<String> cols = new ArrayList<>();
+        cols.add(i.osmID);
+        cols.add(i.kgID);
+        cols.add(i.label);
+        for (String val: i.features) {
+            cols.add(""+val);
         }
+        cols.addAll(i.sparseFeatures);
+        return String.join("\t", cols);
+    }
 
-        if (features.contains("osm_tf_idf")) {
-            List<Double> osmFeatures = osmTfIdf.get(r.getOsmId());
-            if (osmFeatures == null) {
-                System.err.println("Null Feature for OSM encountered: "+r.getOsmId());
-                System.exit(2);
-            }
-            featuresValues.addAll(Util.listDoubleToString(osmFeatures));
+    /**
+     * Returns the sparse columns that precede the type column,
+     * each column is described by "name \tab number of dimensions"
+     */
+    private List<String> sparseColumns() {
+        List<String> result = new ArrayList<>();
+        if (osmSparseTfIdf != null) {
+            result.add("osm_tf_idf\t"+osmSparseTfIdf.getDimension());
         }
+        return result;
+    }
 
-        if (features.contains("statement_count")) {
-            String stmtCount=null;
-            if (KGStatementCount.get(c.getId()) == null) {
-                stmtCount="0";
-            } else {
-                stmtCount=""+KGStatementCount.get(c.getId());
-            }
-            featuresValues.add(stmtCount);
+    private static String sparseTypeColumn(OneHotEncoder enc) {
+        return "types\t"+enc.getDimension();
+    }
+
+    /**
+     * Compiles the features of the configuration to a plan, the order of the extractors is the order of the columns
+     * @return The plan
+     */
+    private FeaturePlan compileFeaturePlan() {
+        List<FeatureExtractor> extractors = new ArrayList<>();
+        //the type column has to be the first column, see FeatureMatrix and OneHotEncoder
+        if (features.contains("types")) extractors.add(new TypeExtractor(KGTypes));
+        if (features.contains("distance")) extractors.add(new DistanceExtractor());
+        if (features.contains("lgd_distance")) extractors.add(new LogisticDistanceExtractor(threshold));
+        if (features.contains("name")) extractors.add(new NameSimilarityExtractor());
+        if (features.contains("osm_embedding")) extractors.add(new EmbeddingExtractor(osmEmbeddings));
+        if (features.contains("osm_tf_idf") && osmSparseTfIdf != null) {
+            extractors.add(new SparseVectorExtractor(osmSparseTfIdf));
+        } else if (features.contains("osm_tf_idf")) {
+            extractors.add(new EmbeddingExtractor(osmTfIdf));
         }
+        if (features.contains("statement_count")) extractors.add(new StatementCountExtractor(KGStatementCount));
+        return new FeaturePlan(extractors);
+    }
+
+    /**
+     * Computes the features for a node candidate pair
+     * @param c Current candidate
+     * @param r Current node
+     * @param node Features of the node, see FeaturePlan.node()
+     * @return Feature representation for the current pair.
+     */
+    private Instance computeFeatures(Candidate c, OSMRecord r, FeaturePlan.Node node) {
+        String[] row = new String[featurePlan.getWidth()];
+        String[] sparseRow = new String[featurePlan.getSparseWidth()];
+        node.fill(c, row, sparseRow);
 
         String label;
-        if (r.getKgId().equals(c.getId())) {
+        if (r.getKgId(kg).equals(c.getId())) {
             label = "correct";
         } else  if (Options.debug && Math.random() < 0.5){
             label= "correct";
@@ -371,51 +1089,83 @@ public class EmbeddingModel extends AbstractModel {
             label= "incorrect";
         }
 
-        return new Instance(r.getOsmId(), c.getId(), label, featuresValues);
+        Instance result = new Instance(r.getOsmId(), c.getId(), label, new ArrayList<>(Arrays.asList(row)));
+        result.sparseFeatures.addAll(Arrays.asList(sparseRow));
+        return result;
     }
 
     /**
-     * Determines candidates for OSM nodes and transforms them to the feature space
+     * Determines candidates for OSM nodes and transforms them to the feature space.
+     * The nodes are processed in spatial tiles, such that the neighbourhood of a tile in the knowledge graph
+     * is only looked up once and consecutive nodes share their candidates.
+     * The result is in the order of the tiles, such that it does not depend on the number of threads.
+     * The pairs are stored in a feature matrix as soon as the pairs of the preceding tiles are stored.
      * @param osmRecords List of OSM nodes to be transformed
-     * @param train True if the osm nodes are training data
-     * @return List of transformed node candidate pairs.
+     * @param train True if the osm nodes are training data, i.e. the negative candidates are sampled
+     * @param foldNo Number of the current fold
+     * @return The transformed node candidate pairs, without the encoding of the types.
      */
-    private List<Instance> BlockAndTransformToFeatureSpace(Vector<OSMRecord> osmRecords, boolean train)  {
-        List<Instance> result = Collections.synchronizedList(new ArrayList<>());
-
-        Random seed = new Random(2);
-
-        osmRecords.stream().parallel().forEach(r -> {
+    private FeatureMatrix BlockAndTransformToFeatureSpace(Vector<OSMRecord> osmRecords, boolean train, int foldNo)  {
+        List<SpatialPartitioner.Tile> tiles = new SpatialPartitioner(Options.getTileSize()).partition(osmRecords);
+
+        FeatureMatrix result = new FeatureMatrix(FeatureArena.global(), features.contains("types"));
+        tiles.stream().parallel().map(tile -> {
+            FeatureBatchEvent event = new FeatureBatchEvent();
+            event.begin();
+            List<Instance> instances = new ArrayList<>();
             try {
-                List<Candidate> candidates = blocker.generateCandidates(r);
-
-                for (Candidate c:  candidates) {
-                    if (r.getKgId().equals(c.getId())) {
-                        result.add(computeFeatures(c, r));
-                       break;
+                Map<OSMRecord, List<Candidate>> tileCandidates = blocker.generateCandidates(tile.getRecords());
+
+                for (OSMRecord r: tile.getRecords()) {
+                    List<Candidate> candidates = tileCandidates.get(r);
+                    neighbourhoodFingerprints.put(r.getOsmId(), candidateFingerprint(candidates));
+                    FeaturePlan.Node node = featurePlan.node(r);
+
+                    for (Candidate c:  candidates) {
+                        if (r.getKgId(kg).equals(c.getId())) {
+                            instances.add(computeFeatures(c, r, node));
+                           break;
+                        }
                     }
-                }
 
-                int limit = candidates.size();
-                if (train) {
-                    Collections.shuffle(candidates,seed);
-                    limit=Math.min(sampleCandidates, limit);
-                }
+                    List<Candidate> negatives;
+                    if (train) {
+                        negatives = sampler.sample(r.getOsmId(), r.getKgId(kg), candidates, foldNo);
+                    } else {
+                        negatives = candidates;
+                    }
 
-                for (int i=0; i<limit; ++i) {
-                    Candidate c = candidates.get(i);
-                    if (c.getId().equals(r.getKgId())) {
-                        limit=Math.min(candidates.size(), limit+1);
-                        continue;
+                    for (Candidate c: negatives) {
+                        if (c.getId().equals(r.getKgId(kg))) continue;
+                        instances.add(computeFeatures(c, r, node));
                     }
-                    result.add(computeFeatures(c, r));
+                    currentProgress.step();
                 }
-                currentProgress.step();
             } catch (IOException |  SQLException e) {
                 e.printStackTrace();
                 blocker.destroy();
                 System.exit(1);
             }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.kg = kg.toString();
+                event.fold = foldNo;
+                event.train = train;
+                event.nodes = tile.getRecords().size();
+                event.pairs = instances.size();
+                event.commit();
+            }
+            return instances;
+        }).forEachOrdered(instances -> {
+            try {
+                for (Instance i: instances) {
+                    result.add(i);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
         });
         return result;
     }
@@ -434,51 +1184,54 @@ public class EmbeddingModel extends AbstractModel {
             candidateLog.put(foldNo, Collections.synchronizedList(new ArrayList<>()));
         }
 
-        List<MLScore> scores = foldToMLScore.get(foldNo).get(r.getOsmId());
+        PredictionTable predictions = foldToPredictions.get(foldNo);
+        int row = predictions.row(r.getOsmId());
 
-        if (scores==null) {
+        if (row < 0) {
             if (!foldToNoCandidate.containsKey(foldNo)) {
                 foldToNoCandidate.put(foldNo, 0);
             }
             foldToNoCandidate.put(foldNo, foldToNoCandidate.get(foldNo)+1);
 
             if (logCandidates) {
-                logNoHit(r.getOsmId(), r.getKgId(), foldNo);
+                logNoHit(r.getOsmId(), r.getKgId(kg), foldNo);
             }
+            storeResult(r, foldNo, Candidate.negativeHit(), predictions, row);
             return Candidate.negativeHit();
         }
 
 
         double bestConfidence = -1;
-        MLScore bestScore=null;
-        for (MLScore sc: scores) {
-            if (sc.prediction && sc.confCorrect > bestConfidence) {
-                bestConfidence=sc.confCorrect;
-                bestScore=sc;
+        int best = -1;
+        for (int i=predictions.start(row); i<predictions.end(row); ++i) {
+            if (predictions.prediction(i) && predictions.confCorrect(i) > bestConfidence) {
+                bestConfidence=predictions.confCorrect(i);
+                best=i;
                 avgNoCandidates+=1;
             }
         }
 
-        if (bestScore == null) {
+        if (best < 0) {
             if (logCandidates) {
-                logNoHit(r.getOsmId(), r.getKgId(), foldNo);
+                logNoHit(r.getOsmId(), r.getKgId(kg), foldNo);
             }
+            storeResult(r, foldNo, Candidate.negativeHit(), predictions, row);
             return Candidate.negativeHit();
         }
 
         if (logCandidates) {
-            for (MLScore sc: scores) {
-                boolean picked = sc.kgID.equals(bestScore.kgID);
-                boolean correct = sc.kgID.equals(r.getKgId());
+            for (int i=predictions.start(row); i<predictions.end(row); ++i) {
+                boolean picked = predictions.kgId(i).equals(predictions.kgId(best));
+                boolean correct = predictions.kgId(i).equals(r.getKgId(kg));
 
                 String tuple = "(";
                 tuple+=experimentId+",";
                 tuple+=foldNo+",";
                 tuple+=r.getOsmId()+",";
                 tuple+=correct+",";
-                tuple+="'"+sc.kgID+"',";
-                tuple+=sc.confCorrect+",";
-                tuple+=sc.prediction+",";
+                tuple+="'"+predictions.kgId(i)+"',";
+                tuple+=predictions.confCorrect(i)+",";
+                tuple+=predictions.prediction(i)+",";
                 tuple+=picked+",";
                 tuple+="false";
                 tuple+= ")";
@@ -487,7 +1240,119 @@ public class EmbeddingModel extends AbstractModel {
         }
 
         noOsmRecords+=1;
-        return new Candidate(bestScore.kgID);
+        Candidate result = new Candidate(predictions.kgId(best));
+        result.setConfidence(bestConfidence);
+        storeResult(r, foldNo, result, predictions, row);
+        return result;
+    }
+
+    /**
+     * Persists the link of an OSM node together with the candidates with the highest confidences,
+     * if a result store is set.
+     * @param r The OSMRecord
+     * @param foldNo The current fold
+     * @param link The linked candidate
+     * @param predictions Predictions of the current fold
+     * @param row Row of the node in the predictions, -1 if the node has no candidates
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void storeResult(OSMRecord r, int foldNo, Candidate link, PredictionTable predictions, int row) throws IOException, SQLException {
+        if (resultStore == null) return;
+
+        int[] top = row < 0 ? new int[0] : predictions.topK(row, Options.getTopK());
+        String[] alternativeIds = new String[top.length];
+        double[] alternativeConfidences = new double[top.length];
+        for (int i=0; i<top.length; ++i) {
+            alternativeIds[i] = predictions.kgId(top[i]);
+            alternativeConfidences[i] = predictions.confCorrect(top[i]);
+        }
+
+        resultStore.put(new LinkResult(r.getOsmId(), foldNo, recordFingerprint(r), neighbourhoodFingerprint(r),
+                link.getId(), link.getConfidence(), alternativeIds, alternativeConfidences, r.getTsvEntry()));
+    }
+
+    /**
+     * Combines the fingerprint of the OSM node with the fingerprints of its OSM features,
+     * such that changed tags are detected via changed embeddings.
+     * @param r The OSMRecord
+     * @return The fingerprint
+     */
+    @Override
+    public long recordFingerprint(OSMRecord r) {
+        return Util.fingerprint(Long.toHexString(r.fingerprint()),
+                Arrays.toString(osmEmbeddings == null ? null : osmEmbeddings.get(r.getOsmId())),
+                osmSparseTfIdf != null ? osmSparseTfIdf.toSparseString(r.getOsmId())
+                        : Arrays.toString(osmTfIdf == null ? null : osmTfIdf.get(r.getOsmId())));
+    }
+
+    /**
+     * Returns the fingerprint of the candidates of an OSM node. Nodes that were blocked in the current
+     * run are not blocked again.
+     * @param r The OSMRecord
+     * @return The fingerprint
+     * @throws IOException
+     * @throws SQLException
+     */
+    @Override
+    public long neighbourhoodFingerprint(OSMRecord r) throws IOException, SQLException {
+        Long result = neighbourhoodFingerprints.get(r.getOsmId());
+        if (result == null) {
+            result = candidateFingerprint(blocker.generateCandidates(r));
+            neighbourhoodFingerprints.put(r.getOsmId(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the fingerprints of the candidates of a batch of OSM nodes. The nodes that were not blocked in the
+     * current run are blocked in spatial tiles, like the nodes of a fold, such that the neighbourhood of a tile
+     * is only looked up once.
+     * @param records The OSMRecords
+     * @return The fingerprints by OSM id
+     * @throws IOException
+     * @throws SQLException
+     */
+    @Override
+    public Map<String, Long> neighbourhoodFingerprints(List<OSMRecord> records) throws IOException, SQLException {
+        List<OSMRecord> missing = new ArrayList<>();
+        for (OSMRecord r: records) {
+            if (!neighbourhoodFingerprints.containsKey(r.getOsmId())) missing.add(r);
+        }
+
+        List<SpatialPartitioner.Tile> tiles = new SpatialPartitioner(Options.getTileSize()).partition(missing);
+        tiles.stream().parallel().forEach(tile -> {
+            try {
+                Map<OSMRecord, List<Candidate>> tileCandidates = blocker.generateCandidates(tile.getRecords());
+                for (OSMRecord r: tile.getRecords()) {
+                    neighbourhoodFingerprints.put(r.getOsmId(), candidateFingerprint(tileCandidates.get(r)));
+                }
+            } catch (IOException | SQLException e) {
+                e.printStackTrace();
+                blocker.destroy();
+                System.exit(1);
+            }
+        });
+
+        Map<String, Long> result = new HashMap<>();
+        for (OSMRecord r: records) {
+            result.put(r.getOsmId(), neighbourhoodFingerprints.get(r.getOsmId()));
+        }
+        return result;
+    }
+
+    /**
+     * Computes a fingerprint over the candidates and their knowledge graph features
+     * @param candidates List of candidates
+     * @return The fingerprint
+     */
+    private long candidateFingerprint(List<Candidate> candidates) {
+        List<String> values = new ArrayList<>();
+        for (Candidate c: candidates) {
+            values.add(c.getId()+" "+c.getGeoDistance()+" "+KGTypes.get(c.getId())+" "+KGStatementCount.get(c.getId()));
+        }
+        Collections.sort(values);
+        return Util.fingerprint(values.toArray(new String[0]));
     }
 
     /**
@@ -525,6 +1390,175 @@ public class EmbeddingModel extends AbstractModel {
         candidateLog.get(foldNo).add(tuple);
     }
 
+    /**
+     * Trains the classification model on all given nodes and saves it together with the type encoding,
+     * such that it can be used by the linking service.
+     * @param train Nodes used for training
+     * @param directory Directory of the saved model
+     * @throws IOException
+     */
+    public void trainServingModel(Vector<OSMRecord> train, String directory) throws IOException {
+        new File(directory).mkdirs();
+        currentProgress = new ProgressBar("Preparing serving model", train.size());
+        currentProgress.start();
+        FeatureMatrix featureTrain = BlockAndTransformToFeatureSpace(train, true, 0);
+        currentProgress.stop();
+
+        List<String> sparseColumns = sparseColumns();
+        OneHotEncoder enc = null;
+        if (features.contains("types")) {
+            enc = new OneHotEncoder(Options.getMaxTypes(), typeVocabulary, Options.sparseTypes());
+            enc.fit(featureTrain);
+            enc.save(directory+"/types.txt");
+            if (Options.sparseTypes()) {
+                sparseColumns.add(sparseTypeColumn(enc));
+            }
+        }
+        String trainDataPath = tempFile("serving", 0).getAbsolutePath();
+        writeToFile(featureTrain, enc, new File(trainDataPath), sparseColumns);
+        featureTrain.close();
+
+        runClassifier(Options.onnxInference() ? "--export" : "--save",
+                servingClassifierFile(directory).getAbsolutePath(), trainDataPath, tuningKey(dataFingerprint(train, new Vector<>())), 1, 0);
+
+        new File(trainDataPath).delete();
+        new File(trainDataPath+".meta").delete();
+    }
+
+    /**
+     * Returns the file of the classifier saved by trainServingModel()
+     * @param directory Directory of the saved model
+     * @return classifier.onnx if the ONNX inference is configured, classifier.pkl otherwise
+     */
+    public static File servingClassifierFile(String directory) {
+        return new File(directory, Options.onnxInference() ? "classifier.onnx" : "classifier.pkl");
+    }
+
+    /**
+     * Loads a model saved by trainServingModel() and starts the classifier used by rank(),
+     * i.e. the exported classifier or the classifier process.
+     * @param directory Directory of the saved model
+     * @throws IOException
+     */
+    public void openServingModel(String directory) throws IOException {
+        servingSparseColumns = sparseColumns();
+        if (features.contains("types")) {
+            servingEncoder = OneHotEncoder.load(directory+"/types.txt", typeVocabulary, Options.sparseTypes());
+            if (Options.sparseTypes()) {
+                servingSparseColumns.add(sparseTypeColumn(servingEncoder));
+            }
+        }
+
+        if (Options.onnxInference()) {
+            try {
+                onnxClassifier = new OnnxClassifier(servingClassifierFile(directory).getAbsolutePath(),
+                        Options.getInferenceBatchSize(), CoreBudget.global().share(1));
+            } catch (OrtException e) {
+                throw new IOException(e);
+            }
+        } else {
+            classifierProcess = new ClassifierProcess(Options.getPythonCmd(), mlModelPath,
+                    servingClassifierFile(directory).getAbsolutePath());
+        }
+    }
+
+    /**
+     * Returns true if the OSM features of a node are known, e.g. its embedding. Other nodes cannot be ranked,
+     * since the classifier never saw a node without OSM features.
+     * @param r The node
+     */
+    public boolean isKnown(OSMRecord r) {
+        return featurePlan.isKnown(r);
+    }
+
+    /**
+     * Ranks the candidates of a batch of nodes by the confidence of the classifier.
+     * The candidates of all nodes are blocked and classified together.
+     * @param records The nodes, their OSM features have to be known, see isKnown()
+     * @return The candidates of each node ordered by decreasing confidence, candidates predicted as incorrect last
+     * @throws IOException
+     * @throws SQLException
+     */
+    public Map<OSMRecord, List<Candidate>> rank(List<OSMRecord> records) throws IOException, SQLException {
+        for (OSMRecord r: records) {
+            if (!isKnown(r)) {
+                throw new IllegalArgumentException("Unknown OSM node: "+r.getOsmId());
+            }
+        }
+        Map<OSMRecord, List<Candidate>> candidates = blocker.generateCandidates(records);
+
+        List<Instance> instances = new ArrayList<>();
+        List<Candidate> instanceCandidates = new ArrayList<>();
+        for (OSMRecord r: records) {
+            FeaturePlan.Node node = featurePlan.node(r);
+            for (Candidate c: candidates.get(r)) {
+                instances.add(computeFeatures(c, r, node));
+                instanceCandidates.add(c);
+            }
+        }
+        if (servingEncoder != null) {
+            servingEncoder.transform(instances);
+        }
+
+        boolean[] predictions = new boolean[instances.size()];
+        float[] confCorrect = new float[instances.size()];
+        if (onnxClassifier != null) {
+            try {
+                predict(onnxClassifier, instances, servingSparseColumns, predictions, confCorrect, 0);
+            } catch (OrtException e) {
+                throw new IOException(e);
+            }
+        } else if (!instances.isEmpty()) {
+            List<String> lines = new ArrayList<>();
+            for (Instance i: instances) {
+                lines.add(toLine(i));
+            }
+            double[][] result = classifierProcess.predict(lines);
+            for (int i=0; i<result.length; ++i) {
+                predictions[i] = result[i][0] > 0;
+                confCorrect[i] = (float) result[i][1];
+            }
+        }
+
+        Map<Candidate, Boolean> predicted = new IdentityHashMap<>();
+        for (int i=0; i<predictions.length; ++i) {
+            instanceCandidates.get(i).setConfidence(confCorrect[i]);
+            predicted.put(instanceCandidates.get(i), predictions[i]);
+        }
+
+        Map<OSMRecord, List<Candidate>> result = new LinkedHashMap<>();
+        for (OSMRecord r: records) {
+            List<Candidate> ranked = new ArrayList<>(candidates.get(r));
+            ranked.sort((c1, c2) -> {
+                int c = Boolean.compare(predicted.get(c2), predicted.get(c1));
+                return c != 0 ? c : Double.compare(c2.getConfidence(), c1.getConfidence());
+            });
+            result.put(r, ranked);
+        }
+        return result;
+    }
+
+    /**
+     * Stops the classifier of the serving mode
+     */
+    public void closeServingModel() {
+        if (classifierProcess != null) {
+            classifierProcess.close();
+        }
+        if (onnxClassifier != null) {
+            onnxClassifier.close();
+        }
+    }
+
+    /**
+     * Releases the predictions of a fold once all of its nodes are linked
+     * @param foldNo Number of the fold
+     */
+    @Override
+    public void releaseFold(int foldNo) {
+        foldToPredictions.remove(foldNo);
+    }
+
     /**
      * Destroys the model and its components
      * @throws SQLException
@@ -535,13 +1569,18 @@ public class EmbeddingModel extends AbstractModel {
 
         avgNoCandidates /= noOsmRecords;
         System.out.println("[EmbeddingModel]: Found "+avgNoCandidates+" candidates on average.");
+        if (group.get(0) == this && blocker.getStatistics() != null) {
+            System.out.println("[EmbeddingModel]: Blocking: "+blocker.getStatistics());
+        }
 
         System.out.println("[EmbeddingModel]: Missing Candidates per Fold:");
         for(int i: foldToNoCandidate.keySet()) {
             System.out.println("\t"+i+"\t"+foldToNoCandidate.get(i));
         }
 
-        blocker.destroy();
+        if (group.get(0) == this) {
+            blocker.destroy();
+        }
 
 
         if (logCandidates) {
@@ -577,6 +1616,26 @@ public class EmbeddingModel extends AbstractModel {
         return osmEmbeddingPath;
     }
 
+    @Override
+    public Options.KGName getKGName() {
+        return kg;
+    }
+
+    /**
+     * Returns the name of the classifier of the model, e.g. rf
+     */
+    public String getClassifier() {
+        return classifier;
+    }
+
+    /**
+     * Returns the model that computes the node candidate pairs of the model
+     */
+    @Override
+    public AbstractModel getFeatureSource() {
+        return group.get(0);
+    }
+
     public double getThreshold() {
         return threshold;
     }
@@ -585,11 +1644,96 @@ public class EmbeddingModel extends AbstractModel {
         this.experimentId = experimentId;
     }
 
+    @Override
+    public void setResultStore(LinkResultStore store) {
+        this.resultStore = store;
+    }
+
+    @Override
+    public void setCheckpoint(RunCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public void setClassifierDirectories(File directory, File previous) {
+        this.classifierDirectory = directory;
+        this.previousClassifierDirectory = previous;
+        if (directory != null) {
+            directory.mkdirs();
+        }
+    }
+
     @Override
     public int getParamId() {
         return experimentId;
     }
 
+    /**
+     * Source of node candidate pairs as feature vectors in the column order of the files that are read by the
+     * classification model
+     */
+    private interface VectorSource {
+        void forEach(int[] sparseWidths, int width, FeatureMatrix.VectorConsumer consumer) throws IOException;
+    }
+
+    /**
+     * Collects the predictions of an exported classifier for pairs that are passed in chunks.
+     * The feature vectors of a chunk are copied to one matrix, from which the batches of the classifier are filled.
+     */
+    private static class FoldPredictions {
+        private OnnxClassifier classifier;
+        private int chunkSize;
+        private int noFeatures;
+        private float[] chunk;
+        private int chunkRows = 0;
+
+        private List<String> osmIds = new ArrayList<>();
+        private List<String> kgIds = new ArrayList<>();
+        private BitSet correct = new BitSet();
+        private boolean[] predictions = new boolean[0];
+        private float[] confCorrect = new float[0];
+
+        private FoldPredictions(OnnxClassifier classifier, int chunkSize) {
+            this.classifier = classifier;
+            this.chunkSize = chunkSize;
+            this.noFeatures = classifier.getNoFeatures();
+            this.chunk = new float[chunkSize*noFeatures];
+        }
+
+        private void add(String osmId, String kgId, String label, float[] vector) throws IOException {
+            correct.set(osmIds.size(), label.equals("correct"));
+            osmIds.add(osmId);
+            kgIds.add(kgId);
+            System.arraycopy(vector, 0, chunk, chunkRows*noFeatures, noFeatures);
+            if (++chunkRows >= chunkSize) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (chunkRows == 0) return;
+
+            int offset = osmIds.size()-chunkRows;
+            if (offset+chunkRows > predictions.length) {
+                int capacity = Math.max(offset+chunkRows, 2*predictions.length);
+                predictions = Arrays.copyOf(predictions, capacity);
+                confCorrect = Arrays.copyOf(confCorrect, capacity);
+            }
+
+            boolean[] chunkPredictions = new boolean[chunkRows];
+            float[] chunkConfCorrect = new float[chunkRows];
+            try {
+                classifier.predict((row, target, start) -> System.arraycopy(chunk, row*noFeatures, target, start, noFeatures),
+                        chunkRows, chunkPredictions, chunkConfCorrect);
+            } catch (OrtException e) {
+                throw new IOException(e);
+            }
+            System.arraycopy(chunkPredictions, 0, predictions, offset, chunkRows);
+            System.arraycopy(chunkConfCorrect, 0, confCorrect, offset, chunkRows);
+            chunkRows = 0;
+        }
+    }
+
     /**
      * Class used to represetn a node entity pair in feature space.
      */
@@ -597,6 +1741,8 @@ public class EmbeddingModel extends AbstractModel {
         public String osmID, kgID;
         public String label;
         public List<String> features;
+        //columns with space separated index:value pairs
+        public List<String> sparseFeatures;
 
 
         public Instance(String osmID, String kgID, String label, List<String> features) {
@@ -604,23 +1750,7 @@ public class EmbeddingModel extends AbstractModel {
             this.kgID = kgID;
             this.features = features;
             this.label=label;
-        }
-    }
-
-    /**
-     * Class that represents the prediction for a single entity with respect to a single node.
-     */
-    private static class MLScore {
-        String kgID;
-        boolean prediction;
-        double confCorrect;
-        double conIncorrect;
-
-        public MLScore(String kgID, boolean prediction, double confCorrect, double conIncorrect) {
-            this.kgID = kgID;
-            this.prediction = prediction;
-            this.confCorrect = confCorrect;
-            this.conIncorrect = conIncorrect;
+            this.sparseFeatures = new ArrayList<>();
         }
     }
 }
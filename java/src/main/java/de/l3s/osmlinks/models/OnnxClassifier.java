@@ -0,0 +1,174 @@
+package de.l3s.osmlinks.models;
+
+import ai.onnxruntime.*;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class classifies instances with a classifier that was exported by BinaryLinkClassifier.py in the ONNX format.
+ * The exported model contains the scaler and the classifier and is run by ONNX Runtime inside of the JVM,
+ * such that no python process and no files are needed at link time.
+ * The instances are scored in batches that are processed concurrently, the feature matrix of a batch
+ * is filled directly from the instances, such that only the batches in process are held in memory.
+ */
+class OnnxClassifier {
+
+    /**
+     * Writes the features of instances to a feature matrix
+     */
+    interface FeatureRows {
+        /**
+         * @param row Number of the instance
+         * @param target Feature matrix in row major order, all values are 0
+         * @param offset Position of the first feature of the instance in target
+         */
+        void copy(int row, float[] target, int offset);
+    }
+
+    private OrtEnvironment environment;
+    private OrtSession session;
+    private String inputName;
+    private int noFeatures;
+    private int correctIndex;
+    private String classifierName;
+    private int batchSize;
+    private ExecutorService executor;
+
+    /**
+     * Loads an exported classifier
+     * @param path Path of the ONNX file
+     * @param batchSize Number of instances per batch
+     * @param noThreads Number of batches that are scored concurrently
+     * @throws OrtException
+     */
+    OnnxClassifier(String path, int batchSize, int noThreads) throws OrtException {
+        this.environment = OrtEnvironment.getEnvironment();
+        this.batchSize = batchSize;
+
+        //the batches are parallelized, a single batch is scored by one thread
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+        options.setIntraOpNumThreads(1);
+        options.setInterOpNumThreads(1);
+        this.session = environment.createSession(path, options);
+
+        this.inputName = session.getInputNames().iterator().next();
+        long[] shape = ((TensorInfo) session.getInputInfo().get(inputName).getInfo()).getShape();
+        this.noFeatures = (int) shape[shape.length-1];
+
+        Map<String, String> metadata = session.getMetadata().getCustomMetadata();
+        this.correctIndex = Integer.parseInt(metadata.getOrDefault("correctIndex", "0"));
+        this.classifierName = metadata.getOrDefault("classifier", "unknown");
+
+        this.executor = Executors.newFixedThreadPool(noThreads, r -> {
+            Thread t = new Thread(r, "OnnxClassifier");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Classifies instances
+     * @param features Writes the getNoFeatures() features of each instance
+     * @param noRows Number of instances
+     * @param predictions Receives for each instance whether it is predicted as correct
+     * @param confCorrect Receives for each instance the confidence for the correct class
+     * @throws OrtException
+     */
+    void predict(FeatureRows features, int noRows, boolean[] predictions, float[] confCorrect) throws OrtException {
+        List<Future<Void>> batches = new ArrayList<>();
+        for (int start=0; start<noRows; start+=batchSize) {
+            int from = start;
+            int to = Math.min(noRows, start+batchSize);
+            batches.add(executor.submit(() -> {
+                predictBatch(features, from, to, predictions, confCorrect);
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<Void> f: batches) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OrtException("Interrupted while scoring");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OrtException) {
+                throw (OrtException) e.getCause();
+            }
+            throw new OrtException(String.valueOf(e.getCause()));
+        }
+    }
+
+    private void predictBatch(FeatureRows features, int from, int to, boolean[] predictions, float[] confCorrect) throws OrtException {
+        float[] matrix = new float[(to-from)*noFeatures];
+        for (int i=from; i<to; ++i) {
+            features.copy(i, matrix, (i-from)*noFeatures);
+        }
+
+        try (OnnxTensor input = OnnxTensor.createTensor(environment, FloatBuffer.wrap(matrix), new long[]{to-from, noFeatures});
+             OrtSession.Result result = session.run(Collections.singletonMap(inputName, input))) {
+
+            //first output: labels, second output: probabilities in the order of the classes
+            Object labels = result.get(0).getValue();
+            Object probabilities = result.get(1).getValue();
+
+            for (int i=0; i<to-from; ++i) {
+                if (labels instanceof String[]) {
+                    predictions[from+i] = ((String[]) labels)[i].equals("correct");
+                } else {
+                    predictions[from+i] = ((long[]) labels)[i] == correctIndex;
+                }
+                if (probabilities instanceof float[][]) {
+                    confCorrect[from+i] = ((float[][]) probabilities)[i][correctIndex];
+                } else {
+                    confCorrect[from+i] = confidence(((List<?>) probabilities).get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the confidence for the correct class from the output of a ZipMap operator,
+     * i.e. a map from the classes to their probabilities
+     */
+    private float confidence(Object zipMap) throws OrtException {
+        Map<?, ?> map = ((OnnxMap) zipMap).getValue();
+        Object result = map.containsKey("correct") ? map.get("correct") : map.get((long) correctIndex);
+        return ((Number) result).floatValue();
+    }
+
+    /**
+     * Returns the number of columns of the feature matrix
+     */
+    int getNoFeatures() {
+        return noFeatures;
+    }
+
+    /**
+     * Returns the name of the classifier class, e.g. RandomForestClassifier
+     */
+    String getClassifierName() {
+        return classifierName;
+    }
+
+    /**
+     * Releases the session
+     */
+    void close() {
+        executor.shutdown();
+        try {
+            session.close();
+        } catch (OrtException e) {
+            e.printStackTrace();
+        }
+    }
+}
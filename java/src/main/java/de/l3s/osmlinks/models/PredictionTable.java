@@ -0,0 +1,222 @@
+package de.l3s.osmlinks.models;
+
+import de.l3s.osmlinks.io.TextFileParser;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class holds the predictions of the classification model for the test set of a fold.
+ * The predictions are grouped by OSM node, such that the predictions for the candidates of a node form
+ * a contiguous slice of primitive arrays.
+ */
+class PredictionTable {
+
+    private Map<String, Integer> osmToRow;
+    private String[] osmIds;
+    //the predictions of row i are stored at positions rowOffsets[i] until rowOffsets[i+1]
+    private int[] rowOffsets;
+    private int[] kgIds;
+    private String[] kgNames;
+    private boolean[] predictions;
+    private float[] confCorrect;
+
+    private PredictionTable() {
+    }
+
+    /**
+     * Parses the predictions written by the classification model. Each line has the format
+     * osmid \tab kgid \tab correct|incorrect \tab confidence correct \tab confidence incorrect.
+     * @param path Path of the prediction file
+     * @return The predictions
+     * @throws IOException
+     */
+    static PredictionTable parse(String path) throws IOException {
+        return build(TextFileParser.parse(path, Chunk::new, PredictionTable::parseLine));
+    }
+
+    /**
+     * Creates the table from predictions that were computed in memory
+     * @param osmIds For each classified pair the id of the OSM node
+     * @param kgIds For each classified pair the id of the knowledge graph entity
+     * @param predictions For each pair whether it is predicted as correct
+     * @param confCorrect For each pair the confidence for the correct class
+     * @return The predictions
+     */
+    static PredictionTable of(List<String> osmIds, List<String> kgIds, boolean[] predictions, float[] confCorrect) {
+        Chunk chunk = new Chunk();
+        for (int i=0; i<osmIds.size(); ++i) {
+            chunk.add(osmIds.get(i), kgIds.get(i), predictions[i], confCorrect[i]);
+        }
+        return build(Collections.singletonList(chunk));
+    }
+
+    private static PredictionTable build(List<Chunk> chunks) {
+        int n = 0;
+        for (Chunk c: chunks) {
+            n += c.size;
+        }
+
+        //assign rows and entity ids in the order of the file
+        PredictionTable table = new PredictionTable();
+        table.osmToRow = new HashMap<>();
+        List<String> osmIds = new ArrayList<>();
+        Map<String, Integer> kgToInt = new HashMap<>();
+        List<String> kgNames = new ArrayList<>();
+        int[] rowOf = new int[n];
+        int[] kgOf = new int[n];
+        int[] rowSizes = new int[16];
+
+        int pos = 0;
+        for (Chunk c: chunks) {
+            for (int i=0; i<c.size; ++i, ++pos) {
+                Integer row = table.osmToRow.get(c.osmIds.get(i));
+                if (row == null) {
+                    row = table.osmToRow.size();
+                    table.osmToRow.put(c.osmIds.get(i), row);
+                    osmIds.add(c.osmIds.get(i));
+                    if (row == rowSizes.length) {
+                        rowSizes = Arrays.copyOf(rowSizes, rowSizes.length*2);
+                    }
+                }
+                ++rowSizes[row];
+                rowOf[pos] = row;
+
+                Integer kg = kgToInt.get(c.kgIds.get(i));
+                if (kg == null) {
+                    kg = kgNames.size();
+                    kgToInt.put(c.kgIds.get(i), kg);
+                    kgNames.add(c.kgIds.get(i));
+                }
+                kgOf[pos] = kg;
+            }
+        }
+
+        int rows = table.osmToRow.size();
+        table.rowOffsets = new int[rows+1];
+        for (int r=0; r<rows; ++r) {
+            table.rowOffsets[r+1] = table.rowOffsets[r] + rowSizes[r];
+        }
+
+        //scatter the predictions into their rows, keeping the order of the file within a row
+        table.kgIds = new int[n];
+        table.predictions = new boolean[n];
+        table.confCorrect = new float[n];
+        int[] next = Arrays.copyOf(table.rowOffsets, rows);
+        pos = 0;
+        for (Chunk c: chunks) {
+            for (int i=0; i<c.size; ++i, ++pos) {
+                int target = next[rowOf[pos]]++;
+                table.kgIds[target] = kgOf[pos];
+                table.predictions[target] = c.predictions[i];
+                table.confCorrect[target] = c.confCorrect[i];
+            }
+        }
+        table.kgNames = kgNames.toArray(new String[0]);
+        table.osmIds = osmIds.toArray(new String[0]);
+        return table;
+    }
+
+    /**
+     * Writes the predictions in the format read by parse(), grouped by OSM node
+     * @param path Path of the file
+     * @throws IOException
+     */
+    void write(String path) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            for (int row=0; row<osmIds.length; ++row) {
+                for (int i=start(row); i<end(row); ++i) {
+                    out.write(osmIds[row]+"\t"+kgId(i)+"\t"+(predictions[i] ? "correct" : "incorrect")
+                            +"\t"+confCorrect[i]+"\t"+(1-confCorrect[i])+"\n");
+                }
+            }
+        }
+    }
+
+    private static void parseLine(ByteBuffer buffer, int start, int end, Chunk chunk) {
+        int osmEnd = TextFileParser.indexOf(buffer, start, end, (byte) '\t');
+        int kgEnd = TextFileParser.indexOf(buffer, osmEnd+1, end, (byte) '\t');
+        int predictionEnd = TextFileParser.indexOf(buffer, kgEnd+1, end, (byte) '\t');
+        int confEnd = TextFileParser.indexOf(buffer, predictionEnd+1, end, (byte) '\t');
+
+        chunk.add(TextFileParser.string(buffer, start, osmEnd),
+                TextFileParser.string(buffer, osmEnd+1, kgEnd),
+                TextFileParser.string(buffer, kgEnd+1, predictionEnd).equals("correct"),
+                (float) TextFileParser.parseDouble(buffer, predictionEnd+1, confEnd));
+    }
+
+    /**
+     * Returns the row of an OSM node
+     * @param osmId ID of the OSM node
+     * @return The row or -1 if there are no predictions for the node
+     */
+    int row(String osmId) {
+        Integer row = osmToRow.get(osmId);
+        return row == null ? -1 : row;
+    }
+
+    int start(int row) {
+        return rowOffsets[row];
+    }
+
+    int end(int row) {
+        return rowOffsets[row+1];
+    }
+
+    String kgId(int i) {
+        return kgNames[kgIds[i]];
+    }
+
+    boolean prediction(int i) {
+        return predictions[i];
+    }
+
+    float confCorrect(int i) {
+        return confCorrect[i];
+    }
+
+    /**
+     * Returns the positions of the k predictions of a row with the highest confidence for the correct class
+     * @param row The row
+     * @param k Number of predictions
+     * @return Positions, ordered by decreasing confidence
+     */
+    int[] topK(int row, int k) {
+        Integer[] positions = new Integer[end(row)-start(row)];
+        for (int i=0; i<positions.length; ++i) {
+            positions[i] = start(row)+i;
+        }
+        Arrays.sort(positions, (p1, p2) -> Float.compare(confCorrect[p2], confCorrect[p1]));
+
+        int[] result = new int[Math.min(k, positions.length)];
+        for (int i=0; i<result.length; ++i) {
+            result[i] = positions[i];
+        }
+        return result;
+    }
+
+    /**
+     * Predictions of one chunk of the prediction file
+     */
+    private static class Chunk {
+        private List<String> osmIds = new ArrayList<>();
+        private List<String> kgIds = new ArrayList<>();
+        private boolean[] predictions = new boolean[1024];
+        private float[] confCorrect = new float[1024];
+        private int size = 0;
+
+        private void add(String osmId, String kgId, boolean prediction, float conf) {
+            if (size == predictions.length) {
+                predictions = Arrays.copyOf(predictions, size*2);
+                confCorrect = Arrays.copyOf(confCorrect, size*2);
+            }
+            osmIds.add(osmId);
+            kgIds.add(kgId);
+            predictions[size] = prediction;
+            confCorrect[size] = conf;
+            ++size;
+        }
+    }
+}
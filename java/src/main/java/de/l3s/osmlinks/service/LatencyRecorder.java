@@ -0,0 +1,56 @@
+package de.l3s.osmlinks.service;
+
+import java.util.Arrays;
+
+/**
+ * This class records latencies and reports their percentiles. Only the most recent latencies are kept.
+ */
+public class LatencyRecorder {
+
+    private static final int CAPACITY = 1 << 17;
+
+    private long[] latencies;
+    private long count;
+
+    public LatencyRecorder() {
+        this.latencies = new long[CAPACITY];
+        this.count = 0;
+    }
+
+    /**
+     * Records a latency
+     * @param nanos Latency in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        latencies[(int) (count % CAPACITY)] = nanos;
+        ++count;
+    }
+
+    /**
+     * Returns a percentile of the recorded latencies
+     * @param p The percentile, e.g. 0.99
+     * @return Latency in milliseconds, 0 if nothing was recorded
+     */
+    public double percentile(double p) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(latencies, (int) Math.min(count, CAPACITY));
+        }
+        if (sorted.length == 0) return 0;
+
+        Arrays.sort(sorted);
+        int index = (int) Math.min(sorted.length-1, Math.max(0, Math.ceil(p * sorted.length) - 1));
+        return sorted[index] / 1e6;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of recorded latencies and the p50 and p99 latency
+     */
+    public String summary() {
+        return String.format("n=%d, p50=%.2f ms, p99=%.2f ms", getCount(), percentile(0.5), percentile(0.99));
+    }
+}
@@ -0,0 +1,249 @@
+package de.l3s.osmlinks.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.l3s.osmlinks.OSMRecord;
+import de.l3s.osmlinks.Options;
+import de.l3s.osmlinks.Util;
+import de.l3s.osmlinks.blocking.Candidate;
+import de.l3s.osmlinks.models.EmbeddingModel;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides the link discovery of a trained EmbeddingModel as local HTTP service.
+ * The model, i.e. blocker, knowledge graph features, embeddings and classifier, is loaded once.
+ * Nodes of concurrent requests are coalesced into batches that are blocked and classified together.
+ *
+ * POST /link with a body like {"points": [{"id": "1", "lat": 9.73, "lon": 52.37, "name": "Opera", "tags": {...}}]}
+ * returns the ranked candidates of each point. The coordinates have the same order as in the OSM tsv file.
+ * Each point needs an id and numeric coordinates, otherwise the request is answered with 400.
+ * The OSM features of a point are looked up by its id. A point whose features are unknown, e.g. a new node without
+ * embedding, is not ranked, since the classifier never saw such a node: its result has an error instead of candidates.
+ * GET /stats returns the number of requests and batches and the p50 and p99 latency.
+ */
+public class LinkingService {
+
+    private EmbeddingModel model;
+    private MicroBatcher<OSMRecord, List<Candidate>> batcher;
+    private LatencyRecorder latencies;
+    private AtomicLong batches, batchedPoints;
+    private HttpServer server;
+
+    /**
+     * Starts the service
+     * @param model Model in serving mode
+     * @param port Port of the service
+     * @throws IOException
+     */
+    public LinkingService(EmbeddingModel model, int port) throws IOException {
+        this.model = model;
+        this.latencies = new LatencyRecorder();
+        this.batches = new AtomicLong(0);
+        this.batchedPoints = new AtomicLong(0);
+        this.batcher = new MicroBatcher<>(this::linkBatch, Options.getMaxBatchSize(), Options.getMaxBatchDelay(), 2);
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/link", this::handleLink);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        System.out.println("[LinkingService]: Listening on port "+port);
+    }
+
+    private List<List<Candidate>> linkBatch(List<OSMRecord> records) throws IOException, SQLException {
+        batches.incrementAndGet();
+        batchedPoints.addAndGet(records.size());
+
+        Map<OSMRecord, List<Candidate>> ranked = model.rank(records);
+        List<List<Candidate>> result = new ArrayList<>();
+        for (OSMRecord r: records) {
+            result.add(ranked.get(r));
+        }
+        return result;
+    }
+
+    private void handleLink(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, error("Use POST"));
+            return;
+        }
+
+        JSONArray points;
+        try (Reader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            points = (JSONArray) ((JSONObject) new JSONParser().parse(in)).get("points");
+            if (points == null) throw new ParseException(ParseException.ERROR_UNEXPECTED_EXCEPTION);
+        } catch (ParseException | ClassCastException e) {
+            respond(exchange, 400, error("Expected {\"points\": [...]}"));
+            return;
+        }
+
+        //all points are validated before any of them is batched with the points of other requests
+        List<JSONObject> requests = new ArrayList<>();
+        List<OSMRecord> records = new ArrayList<>();
+        for (int i=0; i<points.size(); ++i) {
+            if (!(points.get(i) instanceof JSONObject)) {
+                respond(exchange, 400, error("Point "+i+" is not an object"));
+                return;
+            }
+            JSONObject p = (JSONObject) points.get(i);
+            Double lat = coordinate(p.get("lat"));
+            Double lon = coordinate(p.get("lon"));
+            if (p.get("id") == null || lat == null || lon == null) {
+                respond(exchange, 400, error("Point "+i+" needs an id and numeric lat and lon"));
+                return;
+            }
+            requests.add(p);
+            records.add(new OSMRecord(String.valueOf(p.get("id")), lat.toString(), lon.toString(),
+                    p.containsKey("name") ? String.valueOf(p.get("name")) : ""));
+        }
+
+        List<CompletableFuture<List<Candidate>>> futures = new ArrayList<>();
+        for (OSMRecord r: records) {
+            futures.add(model.isKnown(r) ? batcher.submit(r) : null);
+        }
+
+        List<Object> results = new ArrayList<>();
+        try {
+            for (int i=0; i<futures.size(); ++i) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("id", requests.get(i).get("id"));
+                if (requests.get(i).containsKey("tags")) {
+                    result.put("tags", requests.get(i).get("tags"));
+                }
+                if (futures.get(i) == null) {
+                    result.put("error", "Unknown OSM node, its OSM features are not in the embeddings of the model");
+                } else {
+                    result.put("candidates", toJson(futures.get(i).get()));
+                }
+                results.add(result);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            respond(exchange, 500, error(String.valueOf(e.getCause())));
+            return;
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("results", results);
+        respond(exchange, 200, response);
+        latencies.record(System.nanoTime()-start);
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", latencies.getCount());
+        stats.put("batches", batches.get());
+        stats.put("avgBatchSize", batches.get() == 0 ? 0 : (double) batchedPoints.get() / batches.get());
+        stats.put("p50", latencies.percentile(0.5));
+        stats.put("p99", latencies.percentile(0.99));
+        respond(exchange, 200, stats);
+    }
+
+    /**
+     * Parses a coordinate of a point, i.e. a JSON number or a string with a number
+     * @return The coordinate or null if it is missing or not a finite number
+     */
+    private static Double coordinate(Object value) {
+        double result;
+        if (value instanceof Number) {
+            result = ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            try {
+                result = Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return Double.isNaN(result) || Double.isInfinite(result) ? null : result;
+    }
+
+    private static List<Object> toJson(List<Candidate> candidates) {
+        List<Object> result = new ArrayList<>();
+        for (int i=0; i<Math.min(Options.getTopK(), candidates.size()); ++i) {
+            Candidate c = candidates.get(i);
+            Map<String, Object> o = new LinkedHashMap<>();
+            o.put("id", c.getId());
+            o.put("name", c.getName());
+            o.put("distance", c.getGeoDistance());
+            o.put("confidence", c.getConfidence());
+            result.add(o);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private static void respond(HttpExchange exchange, int status, Map<String, Object> body) throws IOException {
+        byte[] bytes = JSONValue.toJSONString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Stops the service
+     */
+    public void stop() {
+        server.stop(0);
+        batcher.close();
+        System.out.println("[LinkingService]: "+latencies.summary()+", "+batches.get()+" batches");
+    }
+
+    /**
+     * Starts the service for the first embedding and threshold of the configuration.
+     * If the directory servingModel does not contain a trained model, the model is trained on all nodes of OSMPath first.
+     * Usage: LinkingService config [port]
+     * @param args Arguments
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        Options.parseConfig(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : Options.getServicePort();
+
+        EmbeddingModel model = new EmbeddingModel(Options.getOSMEmbeddingPaths().get(0),
+                Options.getOsmTfIdfPath(),
+                Options.getKGEmbeddingPath(),
+                Options.getGeoThreshold().get(0),
+                Options.getMLModelPath(),
+                args[0],
+                false,
+                Options.features(),
+                Options.getKGFeaturePath());
+
+        String directory = Options.getServingModelPath();
+        if (!EmbeddingModel.servingClassifierFile(directory).exists()) {
+            System.out.println("[LinkingService]: Training serving model...");
+            model.trainServingModel(Util.parseOSMRecords(Options.getOSMPath()), directory);
+            System.out.println("[LinkingService]: Training serving model... done");
+        }
+        model.openServingModel(directory);
+
+        LinkingService service = new LinkingService(model, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.stop();
+            model.closeServingModel();
+        }));
+    }
+}
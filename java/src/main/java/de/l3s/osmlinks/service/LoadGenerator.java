@@ -0,0 +1,100 @@
+package de.l3s.osmlinks.service;
+
+import org.json.simple.JSONValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class sends concurrent requests to the linking service and reports the latency on the client side.
+ * The points are drawn from an OSM tsv file.
+ * Usage: LoadGenerator url osm.tsv [concurrency] [requests] [points per request]
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = args[0];
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int noRequests = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int pointsPerRequest = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+        List<String[]> points = new ArrayList<>();
+        for (String line: Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            String[] cols = line.split("\t");
+            if (cols.length >= 4) points.add(cols);
+        }
+
+        LatencyRecorder latencies = new LatencyRecorder();
+        AtomicInteger errors = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+
+        long start = System.nanoTime();
+        for (int i=0; i<noRequests; ++i) {
+            String body = request(points, pointsPerRequest, new SplittableRandom(i));
+            executor.submit(() -> {
+                long requestStart = System.nanoTime();
+                try {
+                    if (post(url, body) != 200) errors.incrementAndGet();
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                }
+                latencies.record(System.nanoTime()-requestStart);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        double seconds = (System.nanoTime()-start) / 1e9;
+
+        System.out.println("[LoadGenerator]: "+latencies.summary()+", "+errors.get()+" errors");
+        System.out.printf("[LoadGenerator]: %.1f requests/s, %.1f points/s\n",
+                noRequests/seconds, noRequests*pointsPerRequest/seconds);
+    }
+
+    private static String request(List<String[]> points, int size, SplittableRandom random) {
+        List<Object> array = new ArrayList<>();
+        for (int i=0; i<size; ++i) {
+            String[] cols = points.get(random.nextInt(points.size()));
+            Map<String, Object> p = new LinkedHashMap<>();
+            p.put("id", cols[0]);
+            p.put("lat", cols[1]);
+            p.put("lon", cols[2]);
+            p.put("name", cols[3]);
+            array.add(p);
+        }
+        return JSONValue.toJSONString(Collections.singletonMap("points", array));
+    }
+
+    private static int post(String url, String body) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setRequestMethod("POST");
+        con.setDoOutput(true);
+        con.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = con.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = con.getResponseCode();
+        try (InputStream in = status == 200 ? con.getInputStream() : con.getErrorStream()) {
+            byte[] buffer = new byte[8192];
+            while (in != null && in.read(buffer) >= 0) {
+                //read the complete response to measure the full latency
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,132 @@
+package de.l3s.osmlinks.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class coalesces items that are submitted concurrently into batches.
+ * A batch is processed as soon as it contains maxBatchSize items or maxDelay milliseconds after its first item arrived.
+ * @param <I> Type of the items
+ * @param <O> Type of the results
+ */
+public class MicroBatcher<I, O> {
+
+    /**
+     * Processes a batch of items
+     * @param <I> Type of the items
+     * @param <O> Type of the results
+     */
+    public interface BatchFunction<I, O> {
+        /**
+         * @param batch The items
+         * @return The results in the order of the items
+         * @throws Exception
+         */
+        List<O> apply(List<I> batch) throws Exception;
+    }
+
+    private BatchFunction<I, O> function;
+    private int maxBatchSize;
+    private long maxDelay;
+    private BlockingQueue<Request> queue;
+    private List<Thread> workers;
+    private volatile boolean running;
+
+    /**
+     * Constructor
+     * @param function Processes the batches
+     * @param maxBatchSize Maximum number of items per batch
+     * @param maxDelay Maximum time in milliseconds an item waits for further items
+     * @param noWorkers Number of batches that are processed concurrently
+     */
+    public MicroBatcher(BatchFunction<I, O> function, int maxBatchSize, long maxDelay, int noWorkers) {
+        this.function = function;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.queue = new LinkedBlockingQueue<>();
+        this.workers = new ArrayList<>();
+        this.running = true;
+
+        for (int i=0; i<noWorkers; ++i) {
+            Thread t = new Thread(this::work, "MicroBatcher-"+i);
+            t.setDaemon(true);
+            t.start();
+            workers.add(t);
+        }
+    }
+
+    /**
+     * Submits an item
+     * @param item The item
+     * @return Future of the result of the item
+     */
+    public CompletableFuture<O> submit(I item) {
+        Request r = new Request(item);
+        queue.add(r);
+        return r.future;
+    }
+
+    /**
+     * Stops the workers, pending items are not processed
+     */
+    public void close() {
+        running = false;
+        for (Thread t: workers) {
+            t.interrupt();
+        }
+    }
+
+    private void work() {
+        while (running) {
+            List<Request> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize-batch.size());
+                    if (batch.size() >= maxBatchSize) break;
+
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) break;
+                    Request r = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (r == null) break;
+                    batch.add(r);
+                }
+            } catch (InterruptedException e) {
+                for (Request r: batch) {
+                    r.future.completeExceptionally(e);
+                }
+                return;
+            }
+
+            List<I> items = new ArrayList<>();
+            for (Request r: batch) {
+                items.add(r.item);
+            }
+            try {
+                List<O> results = function.apply(items);
+                for (int i=0; i<batch.size(); ++i) {
+                    batch.get(i).future.complete(results.get(i));
+                }
+            } catch (Exception e) {
+                for (Request r: batch) {
+                    r.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private class Request {
+        private I item;
+        private CompletableFuture<O> future;
+
+        private Request(I item) {
+            this.item = item;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.l3s.osmlinks.store;
+
+/**
+ * This class represents the link decision for a single OSM node as it is persisted between runs.
+ */
+public class LinkResult {
+
+    private String osmId;
+    private int fold;
+    private long recordFingerprint;
+    private long neighbourhoodFingerprint;
+    private String kgId;
+    private double confidence;
+    private String[] alternativeIds;
+    private double[] alternativeConfidences;
+    private String tsvEntry;
+
+    /**
+     * Constructor
+     * @param osmId ID of the OSM node
+     * @param fold Fold in which the node was linked
+     * @param recordFingerprint Fingerprint of the node, i.e. coordinates, names and tags
+     * @param neighbourhoodFingerprint Fingerprint of the candidates of the node
+     * @param kgId ID of the linked entity, -1 if no link was created
+     * @param confidence Confidence of the link
+     * @param alternativeIds IDs of the candidates with the highest confidence, in descending order
+     * @param alternativeConfidences Confidences of the alternatives
+     * @param tsvEntry Line of the OSM tsv file the node was created from
+     */
+    public LinkResult(String osmId, int fold, long recordFingerprint, long neighbourhoodFingerprint,
+                      String kgId, double confidence,
+                      String[] alternativeIds, double[] alternativeConfidences,
+                      String tsvEntry) {
+        this.osmId = osmId;
+        this.fold = fold;
+        this.recordFingerprint = recordFingerprint;
+        this.neighbourhoodFingerprint = neighbourhoodFingerprint;
+        this.kgId = kgId;
+        this.confidence = confidence;
+        this.alternativeIds = alternativeIds;
+        this.alternativeConfidences = alternativeConfidences;
+        this.tsvEntry = tsvEntry;
+    }
+
+    /**
+     * Creates a marker for a deleted node.
+     * @param osmId ID of the OSM node
+     */
+    static LinkResult deleted(String osmId) {
+        return new LinkResult(osmId, -1, 0, 0, null, 0, new String[0], new double[0], null);
+    }
+
+    boolean isDeleted() {
+        return kgId == null;
+    }
+
+    public String getOsmId() {
+        return osmId;
+    }
+
+    public int getFold() {
+        return fold;
+    }
+
+    public long getRecordFingerprint() {
+        return recordFingerprint;
+    }
+
+    public long getNeighbourhoodFingerprint() {
+        return neighbourhoodFingerprint;
+    }
+
+    public String getKgId() {
+        return kgId;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public String[] getAlternativeIds() {
+        return alternativeIds;
+    }
+
+    public double[] getAlternativeConfidences() {
+        return alternativeConfidences;
+    }
+
+    public String getTsvEntry() {
+        return tsvEntry;
+    }
+}
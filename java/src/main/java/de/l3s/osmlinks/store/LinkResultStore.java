@@ -0,0 +1,393 @@
+package de.l3s.osmlinks.store;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * This class persists the link decisions of a run, one entry per OSM node.
+ * New results are buffered in memory and appended to the store directory as sorted runs.
+ * Lookups check the buffer and then the runs from the newest to the oldest one, such that
+ * newer results replace older ones. compact() merges all runs into a single one.
+ */
+public class LinkResultStore {
+
+    private static final int DEFAULT_FLUSH_SIZE = 500000;
+
+    private String directory;
+    private int flushSize;
+    private int nextRun;
+    private volatile ConcurrentSkipListMap<String, LinkResult> buffer;
+    //results that are currently written to a new run
+    private volatile ConcurrentSkipListMap<String, LinkResult> flushing;
+    private AtomicInteger buffered;
+    //newest run first
+    private List<SortedRun> runs;
+    private ReadWriteLock lock;
+
+    /**
+     * Opens the store in the given directory. Results that are already stored in the directory are kept.
+     * @param directory Directory of the store, created if it does not exist
+     * @throws IOException
+     */
+    public LinkResultStore(String directory) throws IOException {
+        this(directory, DEFAULT_FLUSH_SIZE);
+    }
+
+    /**
+     * Opens the store in the given directory. Results that are already stored in the directory are kept.
+     * @param directory Directory of the store, created if it does not exist
+     * @param flushSize Number of buffered results after which a new run is written
+     * @throws IOException
+     */
+    public LinkResultStore(String directory, int flushSize) throws IOException {
+        this.directory = directory;
+        this.flushSize = flushSize;
+        this.buffer = new ConcurrentSkipListMap<>();
+        this.flushing = new ConcurrentSkipListMap<>();
+        this.buffered = new AtomicInteger(0);
+        this.runs = new ArrayList<>();
+        this.lock = new ReentrantReadWriteLock();
+
+        File dir = new File(directory);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+
+        List<Integer> runNumbers = new ArrayList<>();
+        for (File f: dir.listFiles()) {
+            if (f.getName().startsWith("run-") && f.getName().endsWith(".kgidx")) {
+                runNumbers.add(Integer.parseInt(f.getName().substring(4, f.getName().length()-6)));
+            }
+        }
+        Collections.sort(runNumbers);
+
+        nextRun = 0;
+        for (int n: runNumbers) {
+            runs.add(0, new SortedRun(runPrefix(n)));
+            nextRun = n+1;
+        }
+    }
+
+    /**
+     * Removes all results from the store in the given directory and opens it.
+     * @param directory Directory of the store
+     * @return The empty store
+     * @throws IOException
+     */
+    public static LinkResultStore create(String directory) throws IOException {
+        LinkResultStore store = new LinkResultStore(directory);
+        for (SortedRun run: store.runs) {
+            run.delete();
+        }
+        store.runs.clear();
+        return store;
+    }
+
+    /**
+     * Adds or replaces the result of a node
+     * @param result The result
+     * @throws IOException
+     */
+    public void put(LinkResult result) throws IOException {
+        lock.readLock().lock();
+        try {
+            buffer.put(result.getOsmId(), result);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (buffered.incrementAndGet() >= flushSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Marks a node as deleted
+     * @param osmId ID of the OSM node
+     * @throws IOException
+     */
+    public void delete(String osmId) throws IOException {
+        put(LinkResult.deleted(osmId));
+    }
+
+    /**
+     * Returns the result for an OSM node
+     * @param osmId ID of the OSM node
+     * @return The result or null if the node is not contained
+     * @throws IOException
+     */
+    public LinkResult get(String osmId) throws IOException {
+        LinkResult r = buffer.get(osmId);
+        if (r == null) {
+            r = flushing.get(osmId);
+        }
+        if (r == null) {
+            for (SortedRun run: currentRuns()) {
+                r = run.get(osmId);
+                if (r != null) break;
+            }
+        }
+
+        if (r == null || r.isDeleted()) return null;
+        return r;
+    }
+
+    /**
+     * Returns the results of all OSM nodes that are linked to the given entity
+     * @param kgId ID of the entity
+     * @return List of results
+     * @throws IOException
+     */
+    public List<LinkResult> getByKgId(String kgId) throws IOException {
+        Set<String> osmIds = new TreeSet<>();
+        for (LinkResult r: buffer.values()) {
+            if (kgId.equals(r.getKgId())) osmIds.add(r.getOsmId());
+        }
+        for (LinkResult r: flushing.values()) {
+            if (kgId.equals(r.getKgId())) osmIds.add(r.getOsmId());
+        }
+        for (SortedRun run: currentRuns()) {
+            osmIds.addAll(run.getOsmIds(kgId));
+        }
+
+        //a node may have been linked to the entity in an older run only
+        List<LinkResult> result = new ArrayList<>();
+        for (String osmId: osmIds) {
+            LinkResult r = get(osmId);
+            if (r != null && r.getKgId().equals(kgId)) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calls the consumer for the current result of every node in the order of the osm ids
+     * @param consumer The consumer
+     * @throws IOException
+     */
+    public void forEach(Consumer<LinkResult> consumer) throws IOException {
+        Iterator<LinkResult> it = mergedIterator();
+        while (it.hasNext()) {
+            LinkResult r = it.next();
+            if (!r.isDeleted()) consumer.accept(r);
+        }
+    }
+
+    /**
+     * Writes the buffered results to a new run
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        ConcurrentSkipListMap<String, LinkResult> flushed;
+        lock.writeLock().lock();
+        try {
+            if (buffer.isEmpty()) return;
+            flushed = buffer;
+            flushing = flushed;
+            buffer = new ConcurrentSkipListMap<>();
+            buffered.set(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        String prefix = runPrefix(nextRun++);
+        SortedRun.write(prefix, flushed.values().iterator());
+        SortedRun run = new SortedRun(prefix);
+
+        lock.writeLock().lock();
+        try {
+            runs.add(0, run);
+            flushing = new ConcurrentSkipListMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges all runs into a single run and removes deleted nodes.
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        flush();
+        if (runs.size() <= 1) return;
+
+        Iterator<LinkResult> merged = mergedIterator();
+        Iterator<LinkResult> live = new Iterator<LinkResult>() {
+            LinkResult next = advance();
+
+            private LinkResult advance() {
+                while (merged.hasNext()) {
+                    LinkResult r = merged.next();
+                    if (!r.isDeleted()) return r;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public LinkResult next() {
+                LinkResult r = next;
+                next = advance();
+                return r;
+            }
+        };
+
+        String prefix = runPrefix(nextRun++);
+        SortedRun.write(prefix, live);
+
+        SortedRun compacted = new SortedRun(prefix);
+        lock.writeLock().lock();
+        try {
+            for (SortedRun run: runs) {
+                run.delete();
+            }
+            runs.clear();
+            runs.add(compacted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Exports the links to a tsv file. Each line has the format
+     * osmid \tab kgid \tab confidence \tab alternatives, where alternatives is a comma separated list of kgid:confidence.
+     * @param path Path of the tsv file
+     * @throws IOException
+     */
+    public void exportTsv(String path) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            out.write("osm_id\tkg_id\tconfidence\talternatives\n");
+            forEach(r -> {
+                List<String> alternatives = new ArrayList<>();
+                for (int i=0; i<r.getAlternativeIds().length; ++i) {
+                    alternatives.add(r.getAlternativeIds()[i]+":"+r.getAlternativeConfidences()[i]);
+                }
+                try {
+                    out.write(r.getOsmId()+"\t"+r.getKgId()+"\t"+r.getConfidence()+"\t"+String.join(",", alternatives)+"\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes all buffered results and closes the store
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        for (SortedRun run: runs) {
+            run.close();
+        }
+        runs.clear();
+    }
+
+    private List<SortedRun> currentRuns() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(runs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String runPrefix(int n) {
+        return directory+"/run-"+String.format("%06d", n);
+    }
+
+    /**
+     * Merges the buffer and all runs. For every node, only the newest result is returned.
+     */
+    private Iterator<LinkResult> mergedIterator() throws IOException {
+        List<Iterator<LinkResult>> sources = new ArrayList<>();
+        sources.add(new ArrayList<>(buffer.values()).iterator());
+        sources.add(new ArrayList<>(flushing.values()).iterator());
+        for (SortedRun run: currentRuns()) {
+            sources.add(run.iterator());
+        }
+
+        //heap entries are (result, source), sources with lower index are newer
+        PriorityQueue<Object[]> heap = new PriorityQueue<>((e1, e2) -> {
+            int c = ((LinkResult) e1[0]).getOsmId().compareTo(((LinkResult) e2[0]).getOsmId());
+            return c != 0 ? c : Integer.compare((Integer) e1[1], (Integer) e2[1]);
+        });
+        for (int i=0; i<sources.size(); ++i) {
+            if (sources.get(i).hasNext()) heap.add(new Object[]{sources.get(i).next(), i});
+        }
+
+        return new Iterator<LinkResult>() {
+            @Override
+            public boolean hasNext() {
+                return !heap.isEmpty();
+            }
+
+            @Override
+            public LinkResult next() {
+                Object[] top = heap.poll();
+                LinkResult result = (LinkResult) top[0];
+                advance((Integer) top[1]);
+
+                //skip older results of the same node
+                while (!heap.isEmpty() && ((LinkResult) heap.peek()[0]).getOsmId().equals(result.getOsmId())) {
+                    advance((Integer) heap.poll()[1]);
+                }
+                return result;
+            }
+
+            private void advance(int source) {
+                if (sources.get(source).hasNext()) {
+                    heap.add(new Object[]{sources.get(source).next(), source});
+                }
+            }
+        };
+    }
+
+    /**
+     * Command line access to a store.
+     * Usage: LinkResultStore directory (export path | get osmid | kg kgid | compact)
+     * @param args Arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        LinkResultStore store = new LinkResultStore(args[0]);
+        switch (args[1]) {
+            case "export":
+                store.exportTsv(args[2]);
+                break;
+            case "get":
+                print(store.get(args[2]));
+                break;
+            case "kg":
+                for (LinkResult r: store.getByKgId(args[2])) {
+                    print(r);
+                }
+                break;
+            case "compact":
+                store.compact();
+                break;
+            default:
+                System.out.println("Unknown command: "+args[1]);
+        }
+        store.close();
+    }
+
+    private static void print(LinkResult r) {
+        if (r == null) {
+            System.out.println("not found");
+            return;
+        }
+        System.out.println(r.getOsmId()+"\t"+r.getKgId()+"\t"+r.getConfidence()+"\t"+String.join(",", r.getAlternativeIds()));
+    }
+}
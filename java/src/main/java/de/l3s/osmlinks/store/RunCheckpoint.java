@@ -0,0 +1,98 @@
+package de.l3s.osmlinks.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class persists the intermediate results of an experiment, such that a restarted experiment skips all
+ * stages that were completed before. The results are kept in a run directory that is named after a fingerprint
+ * of the configuration, i.e. a changed configuration starts a new run.
+ *
+ * The blocked and encoded node candidate pairs of a fold are stored under the fingerprint of the blocking and
+ * feature configuration. The predictions and scores are stored in a subdirectory named after the fingerprint of
+ * the classifier configuration, such that another classifier can be evaluated on the stored pairs.
+ *
+ * A stage writes its results to the temporary file of its result file, which is renamed once the stage is
+ * completed. Thus, a result file exists if and only if the stage was completed.
+ */
+public class RunCheckpoint {
+
+    private File directory;
+    private String classifierFingerprint;
+
+    /**
+     * Opens a run
+     * @param directory Directory of all runs
+     * @param featureFingerprint Fingerprint of the blocking and feature configuration
+     * @param classifierFingerprint Fingerprint of the classifier configuration
+     */
+    public RunCheckpoint(String directory, String featureFingerprint, String classifierFingerprint) {
+        this(new File(directory, featureFingerprint), classifierFingerprint);
+    }
+
+    private RunCheckpoint(File directory, String classifierFingerprint) {
+        this.directory = directory;
+        this.classifierFingerprint = classifierFingerprint;
+    }
+
+    /**
+     * Returns the part of the run that belongs to a model
+     * @param modelNo Number of the model in the experiment
+     * @return The checkpoint of the model
+     */
+    public RunCheckpoint forModel(int modelNo) {
+        return new RunCheckpoint(new File(directory, "model"+modelNo), classifierFingerprint);
+    }
+
+    /**
+     * Returns a result file of a fold that does not depend on the classifier, e.g. the encoded node candidate pairs
+     * @param foldNo Number of the fold
+     * @param name Name of the file
+     * @return The file, its directory is created if necessary
+     */
+    public File featureFile(int foldNo, String name) {
+        return file(new File(directory, "fold"+foldNo), name);
+    }
+
+    /**
+     * Returns a result file of a fold that depends on the classifier, e.g. the predictions
+     * @param foldNo Number of the fold
+     * @param name Name of the file
+     * @return The file, its directory is created if necessary
+     */
+    public File classifierFile(int foldNo, String name) {
+        return file(new File(directory, "fold"+foldNo+"/"+classifierFingerprint), name);
+    }
+
+    private static File file(File dir, String name) {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return new File(dir, name);
+    }
+
+    /**
+     * Returns the file to which the result file is written before it is completed
+     * @param result The result file
+     * @return The temporary file
+     */
+    public static File temporary(File result) {
+        return new File(result.getPath()+".tmp");
+    }
+
+    /**
+     * Marks a result file as completed by renaming its temporary file
+     * @param result The result file
+     * @throws IOException
+     */
+    public static void complete(File result) throws IOException {
+        Files.move(temporary(result).toPath(), result.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,292 @@
+package de.l3s.osmlinks.store;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This class represents an immutable file of link results sorted by OSM id.
+ * Besides the data file, a run consists of a sparse index that stores the key and offset of every
+ * BLOCK_SIZE-th result and of a second file of (kg id, osm id) pairs sorted by kg id that is indexed the same way.
+ */
+class SortedRun {
+
+    static final int BLOCK_SIZE = 64;
+
+    private File dataFile, kgFile;
+    private FileChannel data, kg;
+    private String[] keys, kgKeys;
+    private long[] offsets, kgOffsets;
+
+    /**
+     * Opens an existing run
+     * @param prefix Path of the run without file extension
+     * @throws IOException
+     */
+    SortedRun(String prefix) throws IOException {
+        this.dataFile = new File(prefix+".dat");
+        this.kgFile = new File(prefix+".kg");
+        this.data = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+        this.kg = FileChannel.open(kgFile.toPath(), StandardOpenOption.READ);
+
+        List<String> k = new ArrayList<>();
+        List<Long> o = new ArrayList<>();
+        readIndex(prefix+".idx", k, o);
+        keys = k.toArray(new String[0]);
+        offsets = toArray(o);
+
+        k.clear();
+        o.clear();
+        readIndex(prefix+".kgidx", k, o);
+        kgKeys = k.toArray(new String[0]);
+        kgOffsets = toArray(o);
+    }
+
+    /**
+     * Writes the given results to a new run. The results must be sorted by osm id.
+     * @param prefix Path of the run without file extension
+     * @param results Sorted results, deleted nodes included
+     * @throws IOException
+     */
+    static void write(String prefix, Iterator<LinkResult> results) throws IOException {
+        List<String[]> kgPairs = new ArrayList<>();
+
+        try (CountingOutputStream count = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(prefix+".dat")));
+             DataOutputStream out = new DataOutputStream(count);
+             DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(prefix+".idx")))) {
+            int n = 0;
+            while (results.hasNext()) {
+                LinkResult r = results.next();
+                if (n % BLOCK_SIZE == 0) {
+                    out.flush();
+                    idx.writeUTF(r.getOsmId());
+                    idx.writeLong(count.getByteCount());
+                }
+                writeResult(out, r);
+                if (!r.isDeleted()) {
+                    kgPairs.add(new String[]{r.getKgId(), r.getOsmId()});
+                }
+                ++n;
+            }
+            out.flush();
+            idx.writeUTF("");
+            idx.writeLong(count.getByteCount());
+        }
+
+        kgPairs.sort((p1, p2) -> {
+            int c = p1[0].compareTo(p2[0]);
+            return c != 0 ? c : p1[1].compareTo(p2[1]);
+        });
+
+        try (CountingOutputStream count = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(prefix+".kg")));
+             DataOutputStream out = new DataOutputStream(count);
+             DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(prefix+".kgidx")))) {
+            for (int n=0; n<kgPairs.size(); ++n) {
+                if (n % BLOCK_SIZE == 0) {
+                    out.flush();
+                    idx.writeUTF(kgPairs.get(n)[0]);
+                    idx.writeLong(count.getByteCount());
+                }
+                out.writeUTF(kgPairs.get(n)[0]);
+                out.writeUTF(kgPairs.get(n)[1]);
+            }
+            out.flush();
+            idx.writeUTF("");
+            idx.writeLong(count.getByteCount());
+        }
+    }
+
+    /**
+     * Returns the result for an OSM node
+     * @param osmId ID of the OSM node
+     * @return The result, a deleted marker or null if the run does not contain the node
+     * @throws IOException
+     */
+    LinkResult get(String osmId) throws IOException {
+        int block = findBlock(keys, osmId);
+        if (block < 0) return null;
+
+        DataInputStream in = readBlock(data, offsets, block);
+        while (in.available() > 0) {
+            LinkResult r = readResult(in);
+            int c = r.getOsmId().compareTo(osmId);
+            if (c == 0) return r;
+            if (c > 0) break;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the ids of all OSM nodes that were linked to the given entity in this run
+     * @param kgId ID of the entity
+     * @return List of OSM ids
+     * @throws IOException
+     */
+    List<String> getOsmIds(String kgId) throws IOException {
+        List<String> result = new ArrayList<>();
+
+        //entries of one entity may span several blocks and may start in the block before
+        //the first block that starts with the entity
+        int low = 0, high = kgKeys.length-1;
+        while (low < high) {
+            int mid = (low+high) >>> 1;
+            if (kgKeys[mid].compareTo(kgId) < 0) {
+                low = mid+1;
+            } else {
+                high = mid;
+            }
+        }
+        int block = Math.max(0, low-1);
+        for (; block < kgKeys.length-1; ++block) {
+            if (kgKeys[block].compareTo(kgId) > 0) break;
+
+            DataInputStream in = readBlock(kg, kgOffsets, block);
+            while (in.available() > 0) {
+                String k = in.readUTF();
+                String osmId = in.readUTF();
+                if (k.equals(kgId)) result.add(osmId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an iterator over all results of the run in the order of the osm ids
+     * @throws IOException
+     */
+    Iterator<LinkResult> iterator() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+
+        return new Iterator<LinkResult>() {
+            LinkResult next = read();
+
+            private LinkResult read() {
+                try {
+                    if (in.available() > 0) {
+                        return readResult(in);
+                    }
+                    in.close();
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public LinkResult next() {
+                if (next == null) throw new NoSuchElementException();
+                LinkResult r = next;
+                next = read();
+                return r;
+            }
+        };
+    }
+
+    /**
+     * Closes and deletes the files of the run
+     * @throws IOException
+     */
+    void delete() throws IOException {
+        close();
+        String prefix = dataFile.getPath().substring(0, dataFile.getPath().length()-4);
+        for (String ext: new String[]{".dat", ".idx", ".kg", ".kgidx"}) {
+            new File(prefix+ext).delete();
+        }
+    }
+
+    void close() throws IOException {
+        data.close();
+        kg.close();
+    }
+
+    /**
+     * Finds the last block whose first key is not greater than the given key
+     */
+    private static int findBlock(String[] blockKeys, String key) {
+        //the last entry only marks the end of the file
+        int pos = Arrays.binarySearch(blockKeys, 0, blockKeys.length-1, key);
+        if (pos >= 0) return pos;
+        return -pos-2;
+    }
+
+    private static DataInputStream readBlock(FileChannel channel, long[] blockOffsets, int block) throws IOException {
+        long start = blockOffsets[block];
+        int length = (int) (blockOffsets[block+1]-start);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start+buffer.position()) < 0) break;
+        }
+        return new DataInputStream(new ByteArrayInputStream(buffer.array()));
+    }
+
+    private static void readIndex(String path, List<String> keys, List<Long> offsets) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            while (in.available() > 0) {
+                keys.add(in.readUTF());
+                offsets.add(in.readLong());
+            }
+        }
+    }
+
+    private static long[] toArray(List<Long> list) {
+        long[] result = new long[list.size()];
+        for (int i=0; i<result.length; ++i) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private static void writeResult(DataOutputStream out, LinkResult r) throws IOException {
+        out.writeBoolean(r.isDeleted());
+        out.writeUTF(r.getOsmId());
+        if (r.isDeleted()) return;
+
+        out.writeInt(r.getFold());
+        out.writeLong(r.getRecordFingerprint());
+        out.writeLong(r.getNeighbourhoodFingerprint());
+        out.writeUTF(r.getKgId());
+        out.writeDouble(r.getConfidence());
+        out.writeInt(r.getAlternativeIds().length);
+        for (int i=0; i<r.getAlternativeIds().length; ++i) {
+            out.writeUTF(r.getAlternativeIds()[i]);
+            out.writeDouble(r.getAlternativeConfidences()[i]);
+        }
+        byte[] tsv = r.getTsvEntry().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(tsv.length);
+        out.write(tsv);
+    }
+
+    private static LinkResult readResult(DataInputStream in) throws IOException {
+        boolean deleted = in.readBoolean();
+        String osmId = in.readUTF();
+        if (deleted) return LinkResult.deleted(osmId);
+
+        int fold = in.readInt();
+        long recordFingerprint = in.readLong();
+        long neighbourhoodFingerprint = in.readLong();
+        String kgId = in.readUTF();
+        double confidence = in.readDouble();
+        int k = in.readInt();
+        String[] alternativeIds = new String[k];
+        double[] alternativeConfidences = new double[k];
+        for (int i=0; i<k; ++i) {
+            alternativeIds[i] = in.readUTF();
+            alternativeConfidences[i] = in.readDouble();
+        }
+        byte[] tsv = new byte[in.readInt()];
+        in.readFully(tsv);
+
+        return new LinkResult(osmId, fold, recordFingerprint, neighbourhoodFingerprint, kgId, confidence,
+                alternativeIds, alternativeConfidences, new String(tsv, StandardCharsets.UTF_8));
+    }
+}
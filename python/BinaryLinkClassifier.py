@@ -14,12 +14,37 @@
 #   4) Id of the current experiment
 #   5) Number of the current fold
 #
+#   For the linking service, the script is run with
+#   --save classifierPath trainPath configPath to train and save a classifier, and
+#   --serve classifierPath to classify batches read from the standard input.
+#
+#   If the Java implementation classifies in memory (inference=onnx), the script
+#   is run with --export onnxPath trainPath configPath to train a classifier and
+#   export it together with the scaler in the ONNX format.
+#
+#   The following options can be appended:
+#
+#   --jobs n           Number of cores used by the hyper parameter search
+#   --tuning path      Cache of the best hyper parameters, shared by the folds and runs
+#                      with the same key (see EmbeddingModel.tuningKey)
+#   --retune token     Ignore cached parameters that were not tuned by the run with this token
+#   --classifier name  Classifier to train instead of the last one of the config file, used to
+#                      train several classifiers on the same data in parallel
+#   --predictions path Path of the predictions for the test data, testPath_pred by default
+#
 # ==============================================================================
 
 
 import sys
+import os
+import io
+import json
+import time
+import fcntl
+import pickle
 import numpy as np
 import pandas as pd
+from scipy import sparse
 
 from sklearn import svm
 from sklearn.naive_bayes import GaussianNB
@@ -40,6 +65,11 @@ import multiprocessing
 import psycopg2
 
 numJobs = max(1, multiprocessing.cpu_count() // 9)
+tuningPath = None
+retuneToken = None
+classifierName = None
+predictionsPath = None
+keepPath = None
 np.random.seed(2)
 
 dbHost=""
@@ -48,6 +78,17 @@ dbUser=""
 dbPassword=""
 debug=True
 
+# Converts sparse features to a dense matrix for the classifiers that do not accept
+# sparse input, i.e. naive bayes. Other classifiers get the features unchanged.
+def densify(clf, x):
+    if isinstance(clf, RandomizedSearchCV):
+        clf = clf.estimator
+    if sparse.issparse(x) and isinstance(clf, GaussianNB):
+        print("Densifying %dx%d features for %s" % (x.shape[0], x.shape[1], type(clf).__name__), file=sys.stderr)
+        return x.toarray()
+    return x
+
+
 # Runs random search to determine the best hyper parameters.
 # Also computes the predictions on the train set.
 def runOptimization(clf, searchSpace, x_train, y_train, x_test):
@@ -63,16 +104,121 @@ def runOptimization(clf, searchSpace, x_train, y_train, x_test):
         clf.fit(x_train, y_train)
         return clf.predict(x_test), clf
 
+    params = loadTuning(clName)
+    if params is None and tuningPath is not None:
+        # only one of the concurrent folds searches, the others wait for its parameters
+        locked = lockTuning(clName)
+        params = loadTuning(clName)
+        if params is None:
+            try:
+                return search(clf, searchSpace, niter, x_train, y_train, x_test)
+            finally:
+                unlockTuning(locked)
+        if locked is not None:
+            unlockTuning(locked)
+
+    if params is None:
+        return search(clf, searchSpace, niter, x_train, y_train, x_test)
+
+    print("Using cached parameters for "+clName+": "+str(params), file=sys.stderr)
+    clf.set_params(**params)
+    clf.fit(x_train, y_train)
+    print("Evaluating: "+clName, file=sys.stderr)
+    return clf.predict(x_test), clf
+
+
+# Runs the random search and stores the best parameters in the tuning cache.
+def search(clf, searchSpace, niter, x_train, y_train, x_test):
+    clName = type(clf).__name__
     random_search = RandomizedSearchCV(clf, param_distributions=searchSpace, n_iter=niter, n_jobs=numJobs, \
                                        scoring=metrics.make_scorer(metrics.f1_score, average='macro'),\
                                        random_state=2)
 
     random_search.fit(x_train, y_train)
+    storeTuning(clName, random_search)
     print("Evaluating: "+clName, file=sys.stderr)
     pred = random_search.predict(x_test)
     return (pred, random_search)
 
 
+# Returns the cached parameters of the classifier or None if they have to be tuned.
+def loadTuning(clName):
+    if tuningPath is None or not os.path.exists(tuningPath):
+        return None
+    with open(tuningPath, 'r') as fi:
+        entry = json.load(fi)
+    if entry['classifier'] != clName:
+        return None
+    if retuneToken is not None and entry.get('run') != retuneToken:
+        return None
+    return entry['params']
+
+
+# Stores the best parameters of a search in the tuning cache.
+def storeTuning(clName, random_search):
+    if tuningPath is None:
+        return
+    entry = {'classifier': clName, 'params': random_search.best_params_,
+             'score': random_search.best_score_, 'run': retuneToken or ""}
+    tmp = tuningPath+".tmp"+str(os.getpid())
+    with open(tmp, 'w') as fo:
+        json.dump(entry, fo, default=lambda v: v.item() if hasattr(v, 'item') else str(v))
+    os.replace(tmp, tuningPath)
+
+
+# Waits until no other process tunes the classifier and takes over the tuning. Returns the
+# locked file, or None if the parameters were stored while waiting. The lock is an flock on
+# a file next to the cache entry, which the system releases when its holder terminates, such
+# that no stale locks are left, also for the workers of other hosts that share the cache.
+def lockTuning(clName):
+    lock = open(tuningPath+".lock", 'a')
+    while True:
+        try:
+            fcntl.flock(lock, fcntl.LOCK_EX | fcntl.LOCK_NB)
+            return lock
+        except (BlockingIOError, PermissionError):
+            pass
+
+        if loadTuning(clName) is not None:
+            lock.close()
+            return None
+        time.sleep(1)
+
+
+# Releases a lock taken by lockTuning(). The lock file is kept, removing it would allow
+# two processes to lock different files.
+def unlockTuning(lock):
+    fcntl.flock(lock, fcntl.LOCK_UN)
+    lock.close()
+
+
+# Removes the options from the arguments and sets the corresponding globals.
+def parseOptions(args):
+    global numJobs, tuningPath, retuneToken, classifierName, predictionsPath, keepPath
+
+    rest = []
+    i = 0
+    while i < len(args):
+        if args[i] == "--jobs":
+            numJobs = max(1, int(args[i+1]))
+        elif args[i] == "--tuning":
+            tuningPath = args[i+1]
+        elif args[i] == "--retune":
+            retuneToken = args[i+1]
+        elif args[i] == "--classifier":
+            classifierName = args[i+1]
+        elif args[i] == "--predictions":
+            predictionsPath = args[i+1]
+        elif args[i] == "--keep":
+            keepPath = args[i+1]
+        else:
+            rest.append(args[i])
+            i += 1
+            continue
+        i += 2
+    return rest
+
+
 # Parses the configuration file
 def parseConfig(configPath):
     global debug, dbHost, dbName, dbUser, dbPassword
@@ -95,22 +241,70 @@ def parseConfig(configPath):
                     dbPassword=v
             except:
                 continue
+    if classifierName is not None:
+        return [classifierName]
     return models
 
 
-# Parses the train and test data created by the OSM2KG Java implementation
+# Parses the train and test data created by the OSM2KG Java implementation.
+# If the file has sparse columns, they are described in dataPath.meta and
+# the features are returned as scipy CSR matrix.
 def parseData(dataPath):
-    data = pd.read_csv(dataPath, sep="\t", header=None)
+    return parseFrame(dataPath, parseSparseColumns(dataPath+".meta"))
+
+
+# Parses data in the format of the train and test data from a path or buffer
+def parseFrame(dataPath, sparseColumns):
+    if len(sparseColumns) > 0:
+        data = pd.read_csv(dataPath, sep="\t", header=None, keep_default_na=False)
+    else:
+        data = pd.read_csv(dataPath, sep="\t", header=None)
     data.columns = ['osmID', 'KGID', 'label'] + list(data.columns[3:])
 
     osmIDs = data.osmID.as_matrix()
     KGIDs = data.KGID.as_matrix()
     labels = data.label.as_matrix()
-    features = data.iloc[:, 3:].as_matrix()
+
+    if len(sparseColumns) == 0:
+        features = data.iloc[:, 3:].as_matrix()
+        return features, labels, osmIDs, KGIDs
+
+    noDense = data.shape[1] - 3 - len(sparseColumns)
+    blocks = [sparse.csr_matrix(data.iloc[:, 3:3+noDense].as_matrix().astype(float))]
+    for n, (_, width) in enumerate(sparseColumns):
+        blocks.append(parseSparseColumn(data.iloc[:, 3+noDense+n].astype(str).as_matrix(), width))
+    features = sparse.hstack(blocks).tocsr()
 
     return features, labels, osmIDs, KGIDs
 
 
+# Parses the descriptions of the sparse columns, one line "name \tab number of dimensions" per column
+def parseSparseColumns(metaPath):
+    result = []
+    if not os.path.exists(metaPath):
+        return result
+    with open(metaPath, 'r') as fi:
+        for l in fi:
+            name, width = l.strip().split("\t")
+            result.append((name, int(width)))
+    return result
+
+
+# Converts a column of space separated index:value pairs to a CSR matrix
+def parseSparseColumn(values, width):
+    indptr = [0]
+    indices = []
+    data = []
+    for v in values:
+        if v != "":
+            for pair in v.split(" "):
+                i, x = pair.split(":")
+                indices.append(int(i))
+                data.append(float(x))
+        indptr.append(len(indices))
+    return sparse.csr_matrix((data, indices, indptr), shape=(len(values), width))
+
+
 # Instantiates a classification model according to the configuration
 def createModel(modelNames):
     for t in modelNames:
@@ -191,16 +385,20 @@ def run(trainPath, testPath, configPath, experimentId, fold) :
 
     m = createModel(modelNames)
 
-    #preprocessing
-    scaler = StandardScaler()
-    x_train = scaler.fit_transform(x_train)
-    x_test = scaler.transform(x_test)
+    #preprocessing, centering would destroy the sparsity
+    scaler = StandardScaler(with_mean=not sparse.issparse(x_train))
+    x_train = densify(m[0], scaler.fit_transform(x_train))
+    x_test = densify(m[0], scaler.transform(x_test))
 
     con = psycopg2.connect(host=dbHost, database=dbName, user=dbUser, password=dbPassword)
     cur = con.cursor()
 
 
     pred, clf = runOptimization(m[0], m[1], x_train, y_train, x_test)
+    if keepPath is not None:
+        # kept in the format of save(), such that the classifier can be loaded by serve()
+        with open(keepPath, 'wb') as fo:
+            pickle.dump({'clf': clf, 'scaler': scaler, 'sparseColumns': parseSparseColumns(trainPath+".meta")}, fo)
     print("Determining scores", file=sys.stderr)
     score = computeScoresAndSaveToDB(pred, y_test, experimentId, fold, cur, m)
     print("Calculating probabilities", file=sys.stderr)
@@ -214,7 +412,7 @@ def run(trainPath, testPath, configPath, experimentId, fold) :
         correctIndex=1
         incorrectIndex=0
 
-    with open(testPath+"_pred", 'w') as fo:
+    with open(predictionsPath if predictionsPath is not None else testPath+"_pred", 'w') as fo:
 
         for n,_ in enumerate(osmIDs):
             out=[]
@@ -228,8 +426,114 @@ def run(trainPath, testPath, configPath, experimentId, fold) :
     con.commit()
     con.close()
 
+# Trains a classifier on the given data and saves it together with the scaler,
+# such that it can be loaded by serve().
+def save(classifierPath, trainPath, configPath):
+    modelNames = parseConfig(configPath)
+    sparseColumns = parseSparseColumns(trainPath+".meta")
+    x_train, y_train, _, __ = parseFrame(trainPath, sparseColumns)
+    x_train, y_train = SMOTE(random_state=1).fit_sample(x_train, y_train)
+
+    m = createModel(modelNames)
+    scaler = StandardScaler(with_mean=not sparse.issparse(x_train))
+    x_train = densify(m[0], scaler.fit_transform(x_train))
+
+    _, clf = runOptimization(m[0], m[1], x_train, y_train, x_train[:1])
+    with open(classifierPath, 'wb') as fo:
+        pickle.dump({'clf': clf, 'scaler': scaler, 'sparseColumns': sparseColumns}, fo)
+
+
+# Trains a classifier on the given data and exports the scaler and the best estimator
+# in the ONNX format, such that the classifier can be run by the Java implementation.
+# Sparse columns are expected as dense features by the exported model.
+def export(onnxPath, trainPath, configPath):
+    modelNames = parseConfig(configPath)
+    x_train, y_train, _, __ = parseData(trainPath)
+    x_train, y_train = SMOTE(random_state=1).fit_sample(x_train, y_train)
+
+    m = createModel(modelNames)
+    scaler = StandardScaler(with_mean=not sparse.issparse(x_train))
+    x_train = densify(m[0], scaler.fit_transform(x_train))
+
+    _, clf = runOptimization(m[0], m[1], x_train, y_train, x_train[:1])
+    if isinstance(clf, RandomizedSearchCV):
+        clf = clf.best_estimator_
+
+    print("Exporting: "+type(clf).__name__, file=sys.stderr)
+    onnxModel = toOnnx(scaler, clf, x_train.shape[1])
+    for key, value in [('classifier', type(m[0]).__name__),
+                       ('correctIndex', str(list(clf.classes_).index("correct")))]:
+        meta = onnxModel.metadata_props.add()
+        meta.key = key
+        meta.value = value
+
+    with open(onnxPath, 'wb') as fo:
+        fo.write(onnxModel.SerializeToString())
+
+
+# Converts the scaler and the classifier to one ONNX model with a float input of noFeatures columns.
+# The outputs are the labels and the probabilities in the order of clf.classes_.
+def toOnnx(scaler, clf, noFeatures):
+    from sklearn.pipeline import Pipeline
+    from skl2onnx import convert_sklearn, update_registered_converter
+    from skl2onnx.common.data_types import FloatTensorType
+
+    if isinstance(clf, XGBClassifier):
+        from skl2onnx.common.shape_calculator import calculate_linear_classifier_output_shapes
+        from onnxmltools.convert.xgboost.operator_converters.XGBoost import convert_xgboost
+        update_registered_converter(XGBClassifier, 'XGBoostXGBClassifier',
+                                    calculate_linear_classifier_output_shapes, convert_xgboost)
+
+    pipeline = Pipeline([('scaler', scaler), ('clf', clf)])
+    return convert_sklearn(pipeline, 'BinaryLinkClassifier',
+                           initial_types=[('features', FloatTensorType([None, noFeatures]))],
+                           options={id(clf): {'zipmap': False}})
+
+
+# Prints the name of the classifier class and classifies batches from the standard input until it is closed.
+# Each batch starts with a line
+# containing the number of instances, followed by the instances in the format of the test data.
+# For each instance, prediction \tab confidence correct \tab confidence incorrect is printed.
+def serve(classifierPath):
+    with open(classifierPath, 'rb') as fi:
+        model = pickle.load(fi)
+    clf = model['clf']
+    correctIndex = 0 if clf.classes_[0] == "correct" else 1
+    print(type(clf.estimator if isinstance(clf, RandomizedSearchCV) else clf).__name__)
+    sys.stdout.flush()
+
+    while True:
+        header = sys.stdin.readline()
+        if header == "":
+            break
+        n = int(header)
+        if n == 0:
+            continue
+        lines = [sys.stdin.readline() for _ in range(n)]
+
+        x, _, __, ___ = parseFrame(io.StringIO("".join(lines)), model['sparseColumns'])
+        x = densify(clf, model['scaler'].transform(x))
+        pred = clf.predict(x)
+        proba = clf.predict_proba(x)
+
+        for i in range(n):
+            print("%s\t%s\t%s" % (pred[i], proba[i][correctIndex], proba[i][1-correctIndex]))
+        sys.stdout.flush()
+
+
 # Parses arguments and calls the main method.
 if __name__ == "__main__":
+    sys.argv = parseOptions(sys.argv)
+    if sys.argv[1] == "--save":
+        save(sys.argv[2], sys.argv[3], sys.argv[4])
+        sys.exit(0)
+    if sys.argv[1] == "--export":
+        export(sys.argv[2], sys.argv[3], sys.argv[4])
+        sys.exit(0)
+    if sys.argv[1] == "--serve":
+        serve(sys.argv[2])
+        sys.exit(0)
+
     trainPath=sys.argv[1]
     testPath=sys.argv[2]
     configPath=sys.argv[3]
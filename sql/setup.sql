@@ -95,4 +95,34 @@ create table osmlinks.wikidata
   name_fr  text,
   name_it  text,
   geometry geography(Point, 4326)
+);
+
+create table osmlinks.dbpedia_de
+(
+  id       serial not null
+    constraint dbpedia_de_pkey
+      primary key,
+  "URI"    text,
+  "Name"   text,
+  geometry geography(Point, 4326)
+);
+
+create table osmlinks.dbpedia_fr
+(
+  id       serial not null
+    constraint dbpedia_fr_pkey
+      primary key,
+  "URI"    text,
+  "Name"   text,
+  geometry geography(Point, 4326)
+);
+
+create table osmlinks.dbpedia_it
+(
+  id       serial not null
+    constraint dbpedia_it_pkey
+      primary key,
+  "URI"    text,
+  "Name"   text,
+  geometry geography(Point, 4326)
 );
\ No newline at end of file